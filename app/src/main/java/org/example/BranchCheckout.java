@@ -1,9 +1,6 @@
 package org.example;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -44,18 +41,8 @@ public class BranchCheckout {
         ProcessBuilder builder = new ProcessBuilder(command);
         builder.directory(repoDir.toFile());
         builder.redirectErrorStream(true);
-        Process process = builder.start();
-
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
-            }
-        }
-
         try {
-            int exitCode = process.waitFor();
+            int exitCode = Utils.execTraced(builder, null, Utils::printLines);
             if (exitCode != 0) {
                 throw new IOException("git checkout failed with exit code " + exitCode);
             }
@@ -0,0 +1,584 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent index of the builds of one repository, stored as {@link #INDEX_FILE} in its log directory.
+ * <p>
+ * Each line of the index is one build: timestamp, commit SHA, branch, build status, test status, duration and
+ * the name of its JSON log file and the archive holding it (see {@link LogRetention}), separated by tabs. A build is appended when its log is saved. If a log
+ * directory has no index yet, it is rebuilt by reading the metadata of all JSON logs in parallel.
+ * The entries are kept in memory sorted by time, so listing builds does not touch the file system.
+ * </p>
+ */
+public class BuildIndex {
+
+    protected static final String INDEX_FILE = "builds.idx";
+
+    private static final long DEFAULT_PAGE_SCAN_LIMIT = 10_000;
+
+    private static final Map<Path, BuildIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /**
+     * One indexed build.
+     */
+    public static class Entry {
+        public String timestamp;
+        public String commitSha;
+        public String branch;
+        public String buildStatus;
+        public String testStatus;
+        public long durationMillis;
+        public String logFile;
+
+        /** The name of the archive holding the files of the build, or null if they are in the log directory. */
+        public String archive;
+
+        /** The timestamp as milliseconds since the epoch, used for ordering. */
+        public long epochMillis;
+
+        /**
+         * @return the status of the build step if it did not succeed, otherwise the status of the test step
+         */
+        public String status() {
+            return "SUCCESS".equals(buildStatus) ? testStatus : buildStatus;
+        }
+    }
+
+    /**
+     * Criteria for listing builds. Fields that are null match every build.
+     */
+    public static class Filter {
+        /** The overall status of the build, see {@link Entry#status()}. */
+        public String status;
+        public String branch;
+        /** A prefix of the commit SHA, case-insensitive. */
+        public String shaPrefix;
+
+        boolean matches(Entry entry) {
+            if (status != null && !status.equalsIgnoreCase(entry.status())) {
+                return false;
+            }
+            if (branch != null && !branch.equals(entry.branch)) {
+                return false;
+            }
+            return shaPrefix == null
+                || (entry.commitSha != null && entry.commitSha.regionMatches(true, 0, shaPrefix, 0, shaPrefix.length()));
+        }
+    }
+
+    /**
+     * A page of builds, newest first, with the cursor of the page after it.
+     */
+    public static class Page {
+        public final List<Entry> entries;
+        /** The cursor to pass as {@code before} for the next page, or null if there are no older matching builds. */
+        public final String next;
+
+        Page(List<Entry> entries, String next) {
+            this.entries = entries;
+            this.next = next;
+        }
+    }
+
+    /** Orders entries by time, then by timestamp so that entries with the same instant have a stable order. */
+    private static final Comparator<Entry> ORDER =
+        Comparator.<Entry>comparingLong(entry -> entry.epochMillis).thenComparing(entry -> entry.timestamp, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Path dir;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> byLogFile = new HashMap<>();
+    /** The builds of every commit, by lower-case SHA, so abbreviated SHAs are resolved with a range lookup. */
+    private final TreeMap<String, List<Entry>> bySha = new TreeMap<>();
+    private long version;
+
+    private BuildIndex(Path dir) {
+        this.dir = dir;
+        // Start from the load time so that versions are not reused after a restart
+        this.version = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the index of a log directory, loading it from disk or rebuilding it the first time.
+     *
+     * @param logDir the log directory of a repository
+     * @return the index of {@code logDir}
+     * @throws IOException if the index cannot be read or rebuilt
+     */
+    public static BuildIndex forDir(Path logDir) throws IOException {
+        try {
+            return INDEXES.computeIfAbsent(logDir.toAbsolutePath().normalize(), key -> {
+                try {
+                    BuildIndex index = new BuildIndex(logDir);
+                    index.load();
+                    return index;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the index of a directory only if it is loaded or stored already, so that looking up a file that
+     * does not exist never builds and caches an index for a directory that holds no builds.
+     *
+     * @param logDir the log directory of a repository
+     * @return the index of the directory, or null if it has none
+     * @throws IOException if the index cannot be loaded
+     */
+    public static BuildIndex existing(Path logDir) throws IOException {
+        BuildIndex index = INDEXES.get(logDir.toAbsolutePath().normalize());
+        if (index != null) {
+            return index;
+        }
+        return Files.isRegularFile(logDir.resolve(INDEX_FILE)) ? forDir(logDir) : null;
+    }
+
+    /**
+     * Loads the indexes of all repository directories ({@code <owner>/<repo>}) under {@code logsRoot},
+     * rebuilding the ones that are missing. Called once when the server starts.
+     *
+     * @param logsRoot the root of the log directories
+     * @throws IOException if a directory cannot be listed
+     */
+    public static void loadAll(Path logsRoot) throws IOException {
+        if (!Files.isDirectory(logsRoot)) {
+            return;
+        }
+        List<Path> repoDirs;
+        try (Stream<Path> owners = Files.list(logsRoot)) {
+            repoDirs = owners.filter(Files::isDirectory)
+                .flatMap(owner -> {
+                    try (Stream<Path> repos = Files.list(owner)) {
+                        return repos.filter(Files::isDirectory).collect(Collectors.toList()).stream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Path repoDir : repoDirs) {
+            BuildIndex index = forDir(repoDir);
+            System.out.println("Build index " + repoDir + ": " + index.size() + " build(s)");
+        }
+    }
+
+    private void load() throws IOException {
+        Path indexFile = dir.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            rebuild();
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parseLine(line);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+        entries.sort(ORDER);
+        entries.forEach(this::addToMaps);
+    }
+
+    /**
+     * Rebuilds the index by reading the metadata of every JSON log in the directory in parallel,
+     * then writes it to {@link #INDEX_FILE}. Builds in archives (see {@link LogRetention}) are read from the archives.
+     */
+    private void rebuild() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> logFiles;
+        List<Path> archives;
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> all = files.collect(Collectors.toList());
+            logFiles = all.stream().filter(BuildIndex::isBuildLog).collect(Collectors.toList());
+            archives = all.stream().filter(BuildIndex::isArchive).collect(Collectors.toList());
+        }
+        if (logFiles.isEmpty() && archives.isEmpty()) {
+            return;
+        }
+        List<Entry> scanned = logFiles.parallelStream()
+            .map(BuildIndex::readEntry)
+            .filter(entry -> entry != null)
+            .collect(Collectors.toCollection(ArrayList::new));
+        for (Path archive : archives) {
+            try (FileSystem zip = FileSystems.newFileSystem(archive);
+                 Stream<Path> files = Files.list(zip.getPath("/"))) {
+                files.filter(BuildIndex::isBuildLog).forEach(file -> {
+                    Entry entry = readEntry(file);
+                    if (entry != null) {
+                        entry.archive = archive.getFileName().toString();
+                        scanned.add(entry);
+                    }
+                });
+            }
+        }
+        scanned.sort(ORDER);
+        entries.addAll(scanned);
+        scanned.forEach(this::addToMaps);
+        writeAll();
+        System.out.println("Rebuilt build index " + dir + " from " + scanned.size() + " log(s)");
+    }
+
+    private static boolean isArchive(Path file) {
+        String name = file.getFileName().toString();
+        return (name.startsWith(LogRetention.ARCHIVE_PREFIX) && name.endsWith(LogRetention.ARCHIVE_SUFFIX))
+            || LogSegments.isSegment(file);
+    }
+
+    /**
+     * @param file a file in a log directory
+     * @return true if {@code file} is the JSON log of a build
+     */
+    protected static boolean isBuildLog(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".json") && !name.endsWith(TestResults.TEST_RESULTS_SUFFIX) && Files.isRegularFile(file);
+    }
+
+    /**
+     * Reads the metadata fields of a JSON log with a streaming parser, skipping the (possibly large) inline logs.
+     *
+     * @return the entry of the log, or null if it cannot be read
+     */
+    private static Entry readEntry(Path logFile) {
+        Entry entry = new Entry();
+        entry.logFile = logFile.getFileName().toString();
+        try {
+            LogInfo info = LogInfo.readMetadata(logFile);
+            entry.timestamp = info.timestamp;
+            entry.commitSha = info.commitIdentifier;
+            entry.branch = info.branch;
+            entry.buildStatus = info.buildStatus;
+            entry.testStatus = info.testStatus;
+            entry.durationMillis = info.durationMillis;
+        } catch (IOException e) {
+            System.out.println("Skipping unreadable build log " + logFile + ": " + e.getMessage());
+            return null;
+        }
+        if (entry.timestamp == null) {
+            String name = entry.logFile;
+            entry.timestamp = name.substring(0, name.length() - ".json".length());
+        }
+        entry.epochMillis = parseEpochMillis(entry.timestamp);
+        return entry;
+    }
+
+    private static long parseEpochMillis(String timestamp) {
+        try {
+            return OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private static Entry parseLine(String line) {
+        String[] fields = line.split("\t", -1);
+        // Indexes written before archives existed have no archive column
+        if (fields.length != 7 && fields.length != 8) {
+            return null;
+        }
+        Entry entry = new Entry();
+        entry.timestamp = fields[0];
+        entry.commitSha = emptyToNull(fields[1]);
+        entry.branch = emptyToNull(fields[2]);
+        entry.buildStatus = emptyToNull(fields[3]);
+        entry.testStatus = emptyToNull(fields[4]);
+        try {
+            entry.durationMillis = Long.parseLong(fields[5]);
+        } catch (NumberFormatException e) {
+            entry.durationMillis = 0;
+        }
+        entry.logFile = fields[6];
+        entry.archive = fields.length == 8 ? emptyToNull(fields[7]) : null;
+        entry.epochMillis = parseEpochMillis(entry.timestamp);
+        return entry;
+    }
+
+    private static String toLine(Entry entry) {
+        return String.join("\t",
+            clean(entry.timestamp),
+            clean(entry.commitSha),
+            clean(entry.branch),
+            clean(entry.buildStatus),
+            clean(entry.testStatus),
+            Long.toString(entry.durationMillis),
+            clean(entry.logFile),
+            clean(entry.archive));
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Rewrites {@link #INDEX_FILE} from the entries in memory, replacing it atomically.
+     */
+    private void writeAll() throws IOException {
+        Files.createDirectories(dir);
+        Path tempFile = dir.resolve(INDEX_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries) {
+                writer.write(toLine(entry));
+                writer.newLine();
+            }
+        }
+        // Loose files are deleted once the index names their archive, see LogRetention and LogSegments
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+        Files.move(tempFile, dir.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds a saved build to the index and appends it to {@link #INDEX_FILE}.
+     *
+     * @param info the metadata of the build
+     * @param logFileName the name of the JSON log of the build
+     * @throws IOException if the index file cannot be written
+     */
+    public synchronized void add(LogInfo info, String logFileName) throws IOException {
+        add(info, logFileName, null);
+    }
+
+    /**
+     * Adds a saved build whose files are in an archive or a {@link LogSegments} segment.
+     *
+     * @param info the metadata of the build
+     * @param logFileName the name of the JSON log of the build
+     * @param archive the name of the archive or segment in the log directory, or null if the files are loose
+     * @throws IOException if the index file cannot be written
+     */
+    public synchronized void add(LogInfo info, String logFileName, String archive) throws IOException {
+        if (byLogFile.containsKey(logFileName)) {
+            // Already found when the index was rebuilt right after the log was saved
+            return;
+        }
+        Entry entry = new Entry();
+        entry.timestamp = info.timestamp;
+        entry.commitSha = info.commitIdentifier;
+        entry.branch = info.branch;
+        entry.buildStatus = info.buildStatus;
+        entry.testStatus = info.testStatus;
+        entry.durationMillis = info.durationMillis;
+        entry.logFile = logFileName;
+        entry.archive = archive;
+        entry.epochMillis = parseEpochMillis(info.timestamp);
+
+        Files.createDirectories(dir);
+        try (FileChannel channel = FileChannel.open(dir.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer line = ByteBuffer.wrap((toLine(entry) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            if (archive != null) {
+                // The loose files of the build are deleted next, see Utils#saveLogToFile
+                channel.force(false);
+            }
+        }
+
+        // Builds are almost always saved in order, so this is normally an append
+        int position = entries.size();
+        while (position > 0 && ORDER.compare(entries.get(position - 1), entry) > 0) {
+            position--;
+        }
+        entries.add(position, entry);
+        addToMaps(entry);
+        version++;
+        PageCache.invalidate(dir);
+    }
+
+    /**
+     * Removes builds from the index and rewrites {@link #INDEX_FILE}.
+     *
+     * @param removed the builds to remove
+     * @throws IOException if the index file cannot be written
+     */
+    public synchronized void remove(Collection<Entry> removed) throws IOException {
+        Set<String> logFiles = new HashSet<>();
+        removed.forEach(entry -> logFiles.add(entry.logFile));
+        entries.removeIf(entry -> logFiles.contains(entry.logFile));
+        for (String logFile : logFiles) {
+            Entry entry = byLogFile.remove(logFile);
+            if (entry != null && entry.commitSha != null) {
+                String sha = entry.commitSha.toLowerCase();
+                List<Entry> builds = bySha.get(sha);
+                builds.remove(entry);
+                if (builds.isEmpty()) {
+                    bySha.remove(sha);
+                }
+            }
+        }
+        writeAll();
+        version++;
+        PageCache.invalidate(dir);
+    }
+
+    /**
+     * Records that the files of builds were moved into an archive and rewrites {@link #INDEX_FILE}.
+     *
+     * @param archived the archived builds
+     * @param archive the name of the archive in the log directory
+     * @throws IOException if the index file cannot be written
+     */
+    public synchronized void setArchive(Collection<Entry> archived, String archive) throws IOException {
+        for (Entry entry : archived) {
+            Entry indexed = byLogFile.get(entry.logFile);
+            if (indexed != null) {
+                indexed.archive = archive;
+            }
+        }
+        writeAll();
+        version++;
+    }
+
+    private void addToMaps(Entry entry) {
+        byLogFile.put(entry.logFile, entry);
+        if (entry.commitSha != null) {
+            bySha.computeIfAbsent(entry.commitSha.toLowerCase(), sha -> new ArrayList<>(1)).add(entry);
+        }
+    }
+
+    /**
+     * Finds the builds of the commits whose SHA starts with {@code prefix}.
+     *
+     * @param prefix a full or abbreviated commit SHA, case-insensitive
+     * @return the builds of the matching commits, newest first
+     */
+    public synchronized List<Entry> findByShaPrefix(String prefix) {
+        String lowerPrefix = prefix.toLowerCase();
+        List<Entry> builds = new ArrayList<>();
+        for (List<Entry> commitBuilds : bySha.subMap(lowerPrefix, true, lowerPrefix + Character.MAX_VALUE, false).values()) {
+            builds.addAll(commitBuilds);
+        }
+        builds.sort(ORDER.reversed());
+        return builds;
+    }
+
+    /**
+     * @param logFile the name of the JSON log of a build
+     * @return the indexed build, or null if it is not indexed
+     */
+    public synchronized Entry find(String logFile) {
+        return byLogFile.get(logFile);
+    }
+
+    /**
+     * @return the number of indexed builds
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return a number that changes whenever the index changes
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns a range of builds, ordered from oldest to newest.
+     *
+     * @param from the position of the first build to return
+     * @param count the maximum number of builds to return
+     * @return a copy of the entries in the range
+     */
+    public synchronized List<Entry> range(int from, int count) {
+        int start = Math.max(0, Math.min(from, entries.size()));
+        int end = (int) Math.min(entries.size(), (long) start + Math.max(0, count));
+        return Collections.unmodifiableList(new ArrayList<>(entries.subList(start, end)));
+    }
+
+    /**
+     * Returns one page of builds, newest first.
+     * <p>
+     * The page starts right after the cursor {@code before}, which is the timestamp of the last build of the
+     * previous page, so pages stay stable while new builds are added. The start of the page is found with a
+     * binary search and only the builds on the page (and those skipped by the filter) are visited.
+     * </p>
+     * <p>
+     * A filter that matches few builds could make one page walk the whole history while holding the lock of the
+     * index, so at most {@code INDEX_PAGE_SCAN_LIMIT} (default {@value #DEFAULT_PAGE_SCAN_LIMIT}) builds are
+     * visited per page. A page that reaches the limit may hold fewer builds than asked for, or none, and its
+     * {@link Page#next} cursor continues after the last build visited.
+     * </p>
+     *
+     * @param before the timestamp of the last build of the previous page, or null for the newest builds
+     * @param filter the builds to include
+     * @param limit the maximum number of builds to return
+     * @return the matching builds, newest first, and the cursor of the next page
+     */
+    public synchronized Page page(String before, Filter filter, int limit) {
+        int end = entries.size();
+        if (before != null) {
+            Entry cursor = new Entry();
+            cursor.timestamp = before;
+            cursor.epochMillis = parseEpochMillis(before);
+            int low = 0;
+            int high = entries.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ORDER.compare(entries.get(mid), cursor) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            end = low;
+        }
+        long scanLimit = Math.max(1, CiConfig.getLong("INDEX_PAGE_SCAN_LIMIT", DEFAULT_PAGE_SCAN_LIMIT));
+        List<Entry> page = new ArrayList<>(Math.min(limit, end));
+        int i = end - 1;
+        for (long scanned = 0; i >= 0 && scanned < scanLimit; i--, scanned++) {
+            Entry entry = entries.get(i);
+            if (filter.matches(entry)) {
+                if (page.size() == limit) {
+                    // Another matching build follows the page
+                    return new Page(page, page.get(limit - 1).timestamp);
+                }
+                page.add(entry);
+            }
+        }
+        return new Page(page, i >= 0 ? entries.get(i + 1).timestamp : null);
+    }
+}
@@ -0,0 +1,216 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the output of a step to its log file, keeping at most the first {@link #headBytes()} and the last
+ * {@link #tailBytes()} bytes of it.
+ * <p>
+ * The head is written to the log file as it arrives, so the log can be followed while the step runs. Once the
+ * head is full, the output goes through a ring buffer of the tail size. The bytes that fall out of the ring buffer
+ * are either spilled into a compressed overflow file next to the log ({@code <id>.build.overflow.log.gz}) or
+ * dropped, depending on {@code LOG_OVERFLOW}. When the stream is closed, a marker line and the tail are appended to
+ * the log file, so a stored log always shows the start and the end of the output, whatever the step printed.
+ * </p>
+ * <p>
+ * The ring buffer is only allocated once the head is full, so a step with short output costs no extra memory.
+ * </p>
+ */
+public class CappedLogOutput extends OutputStream {
+
+    protected static final String OVERFLOW_LOG_SUFFIX = ".overflow.log";
+
+    private static final long DEFAULT_HEAD_BYTES = 4 * 1024 * 1024;
+    private static final long DEFAULT_TAIL_BYTES = 1024 * 1024;
+
+    private final Path logFile;
+    private final OutputStream out;
+    private final long headSize;
+    private final int tailSize;
+    private final boolean spill;
+
+    private long headLength;
+    private byte[] tail;
+    private int tailStart;
+    private int tailLength;
+
+    private OutputStream overflow;
+    private long omittedBytes;
+
+    private final CiEvents.LogWrite event = new CiEvents.LogWrite();
+
+    /**
+     * Opens {@code logFile} for writing with the configured limits.
+     *
+     * @param logFile the log file of the step
+     * @throws IOException if the log file cannot be created
+     */
+    public CappedLogOutput(Path logFile) throws IOException {
+        this(logFile, headBytes(), tailBytes(), spillOverflow());
+    }
+
+    /**
+     * @param logFile the log file of the step
+     * @param headSize the number of leading bytes to keep
+     * @param tailSize the number of trailing bytes to keep
+     * @param spill true to keep the bytes in between in an overflow file, false to drop them
+     * @throws IOException if the log file cannot be created
+     */
+    public CappedLogOutput(Path logFile, long headSize, int tailSize, boolean spill) throws IOException {
+        this.logFile = logFile;
+        this.out = Files.newOutputStream(logFile);
+        this.headSize = headSize;
+        this.tailSize = tailSize;
+        this.spill = spill;
+        event.begin();
+    }
+
+    /**
+     * @return the configured number of leading bytes of a step's output that are kept
+     */
+    public static long headBytes() {
+        return Math.max(0, CiConfig.getLong("LOG_HEAD_BYTES", DEFAULT_HEAD_BYTES));
+    }
+
+    /**
+     * @return the configured number of trailing bytes of a step's output that are kept
+     */
+    public static int tailBytes() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE - 8, CiConfig.getLong("LOG_TAIL_BYTES", DEFAULT_TAIL_BYTES)));
+    }
+
+    /**
+     * @return true if the output between the head and the tail is kept in an overflow file
+     */
+    public static boolean spillOverflow() {
+        return !"drop".equalsIgnoreCase(CiConfig.get("LOG_OVERFLOW", "spill"));
+    }
+
+    /**
+     * @param logFile the log file of a step
+     * @return the compressed file the output omitted from {@code logFile} is spilled into
+     */
+    public static Path overflowFile(Path logFile) {
+        String name = logFile.getFileName().toString();
+        String id = name.endsWith(".log") ? name.substring(0, name.length() - ".log".length()) : name;
+        return logFile.resolveSibling(id + OVERFLOW_LOG_SUFFIX + LogFiles.GZIP_SUFFIX);
+    }
+
+    /**
+     * @return the number of bytes that were left out of the log file so far
+     */
+    public long getOmittedBytes() {
+        return omittedBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int toHead = (int) Math.min(length, headSize - headLength);
+        if (toHead > 0) {
+            out.write(buffer, offset, toHead);
+            headLength += toHead;
+            offset += toHead;
+            length -= toHead;
+        }
+        if (length == 0) {
+            return;
+        }
+        if (tail == null) {
+            tail = new byte[tailSize];
+        }
+
+        // Whatever does not fit into the tail any more falls out of it: first the oldest tail bytes, then the
+        // leading bytes of this write
+        int evicted = Math.max(0, tailLength + length - tailSize);
+        int fromTail = Math.min(evicted, tailLength);
+        if (fromTail > 0) {
+            int firstPart = Math.min(fromTail, tailSize - tailStart);
+            omit(tail, tailStart, firstPart);
+            omit(tail, 0, fromTail - firstPart);
+            tailStart = (tailStart + fromTail) % tailSize;
+            tailLength -= fromTail;
+        }
+        int fromWrite = evicted - fromTail;
+        if (fromWrite > 0) {
+            omit(buffer, offset, fromWrite);
+            offset += fromWrite;
+            length -= fromWrite;
+        }
+
+        while (length > 0) {
+            int end = (tailStart + tailLength) % tailSize;
+            int part = Math.min(length, tailSize - end);
+            System.arraycopy(buffer, offset, tail, end, part);
+            tailLength += part;
+            offset += part;
+            length -= part;
+        }
+    }
+
+    private void omit(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        omittedBytes += length;
+        if (spill) {
+            overflow().write(buffer, offset, length);
+        }
+    }
+
+    private OutputStream overflow() throws IOException {
+        if (overflow == null) {
+            overflow = LogFiles.newOutputStream(overflowFile(logFile));
+        }
+        return overflow;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Appends the marker and the tail to the log file and closes it and the overflow file.
+     */
+    @Override
+    public void close() throws IOException {
+        long markerLength = 0;
+        try {
+            if (overflow != null) {
+                overflow.close();
+            }
+            if (omittedBytes > 0) {
+                String marker = "\n... [" + omittedBytes + " bytes omitted"
+                    + (spill ? ", see " + LogFiles.rawName(overflowFile(logFile).getFileName().toString()) : "")
+                    + "] ...\n";
+                byte[] markerBytes = marker.getBytes(StandardCharsets.UTF_8);
+                out.write(markerBytes);
+                markerLength = markerBytes.length;
+            }
+            if (tailLength > 0) {
+                int firstPart = Math.min(tailLength, tailSize - tailStart);
+                out.write(tail, tailStart, firstPart);
+                out.write(tail, 0, tailLength - firstPart);
+            }
+        } finally {
+            out.close();
+            if (event.shouldCommit()) {
+                event.file = logFile.toString();
+                event.kind = "stream";
+                event.bytes = headLength + omittedBytes + tailLength;
+                event.storedBytes = headLength + markerLength + tailLength;
+                event.omittedBytes = omittedBytes;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.example;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Settings of the CI server, read from {@code config.properties}.
+ * <p>
+ * A setting can be overridden with a system property of the same name (e.g. {@code -DFAIL_FAST=true}).
+ * Settings that can differ per repository are looked up as {@code <KEY>.<owner>/<repo>} first and
+ * {@code <KEY>} second, e.g. {@code FAIL_FAST.dd2480-vt26/assignment-2=true}.
+ * </p>
+ */
+public class CiConfig {
+
+    protected static final String CONFIG_FILE = "config.properties";
+
+    private static Properties properties;
+
+    /**
+     * Loads {@link #CONFIG_FILE} the first time a setting is read. A missing file means all settings use
+     * their defaults.
+     */
+    private static synchronized Properties properties() {
+        if (properties == null) {
+            properties = new Properties();
+            try (FileInputStream in = new FileInputStream(CONFIG_FILE)) {
+                properties.load(in);
+            } catch (FileNotFoundException e) {
+                System.out.println("The config file was not found, using default settings");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * @param key the name of the setting
+     * @param defaultValue the value to use if the setting is not set
+     * @return the value of the setting
+     */
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = properties().getProperty(key);
+        }
+        return (value == null || value.isBlank()) ? defaultValue : value.trim();
+    }
+
+    /**
+     * @param key the name of the setting
+     * @param repository the full name of the repository (owner/repo)
+     * @param defaultValue the value to use if the setting is set neither for the repository nor globally
+     * @return the value of the setting for {@code repository}
+     */
+    public static String get(String key, String repository, String defaultValue) {
+        return get(key + "." + repository, get(key, defaultValue));
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, Boolean.toString(defaultValue)));
+    }
+
+    public static boolean getBoolean(String key, String repository, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, repository, Boolean.toString(defaultValue)));
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        return parseLong(key, get(key, null), defaultValue);
+    }
+
+    public static long getLong(String key, String repository, long defaultValue) {
+        return parseLong(key, get(key, repository, null), defaultValue);
+    }
+
+    private static long parseLong(String key, String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number for " + key + ": \"" + value + "\", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of the CI pipeline, so that slow jobs can be lined up with GC pauses, lock contention
+ * and I/O in the same recording.
+ * <p>
+ * The events are only written while a recording is running, e.g. one started with {@link FlightRecording} or with
+ * {@code -XX:StartFlightRecording}; otherwise creating and committing them costs next to nothing. Events of a job
+ * carry its repository and commit, which are taken from the job the current thread runs (see {@link #beginJob}).
+ * </p>
+ */
+public class CiEvents {
+
+    private static final ThreadLocal<String[]> CURRENT_JOB = new ThreadLocal<>();
+
+    /**
+     * Marks the current thread as running the job of a commit, until {@link #endJob()}.
+     *
+     * @param repository the full name of the repository (owner/repo)
+     * @param sha the SHA of the commit
+     */
+    public static void beginJob(String repository, String sha) {
+        CURRENT_JOB.set(new String[] {repository, sha});
+    }
+
+    public static void endJob() {
+        CURRENT_JOB.remove();
+    }
+
+    /**
+     * An event of a job, filled in with the job of the thread that creates it.
+     */
+    @Category({"CI Server"})
+    @StackTrace(false)
+    public abstract static class JobEvent extends Event {
+        @Label("Repository")
+        public String repository;
+
+        @Label("Commit")
+        public String sha;
+
+        JobEvent() {
+            String[] job = CURRENT_JOB.get();
+            if (job != null) {
+                repository = job[0];
+                sha = job[1];
+            }
+        }
+    }
+
+    @Name("org.example.WebhookReceived")
+    @Label("Webhook Received")
+    @Description("A push webhook was read and parsed")
+    public static class WebhookReceived extends JobEvent {
+        @Label("Ref")
+        public String ref;
+
+        @Label("Payload Size")
+        @DataAmount
+        public long payloadBytes;
+    }
+
+    @Name("org.example.PipelineStage")
+    @Label("Pipeline Stage")
+    @Description("A stage of a CI job, e.g. clone, build or test")
+    public static class PipelineStage extends JobEvent {
+        @Label("Stage")
+        public String stage;
+
+        @Label("Outcome")
+        public String outcome;
+
+        /**
+         * Ends the stage and writes the event.
+         *
+         * @param outcome how the stage ended, e.g. {@link Metrics#SUCCESS}
+         */
+        public void end(String outcome) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    @Name("org.example.ProcessStart")
+    @Label("Process Start")
+    @Description("A git or Gradle process was started")
+    public static class ProcessStart extends JobEvent {
+        @Label("Command")
+        public String command;
+
+        @Label("Directory")
+        public String directory;
+
+        @Label("Process Id")
+        public long pid;
+    }
+
+    @Name("org.example.ProcessExit")
+    @Label("Process Exit")
+    @Description("A git or Gradle process exited; the event lasts from its start to its exit")
+    public static class ProcessExit extends JobEvent {
+        @Label("Command")
+        public String command;
+
+        @Label("Process Id")
+        public long pid;
+
+        @Label("Exit Code")
+        public int exitCode;
+
+        @Label("Output Size")
+        @DataAmount
+        public long outputBytes;
+
+        /**
+         * Records that the process was started and writes a {@link ProcessStart} event.
+         *
+         * @param process the started process
+         * @param builder the builder the process was started with
+         */
+        public void started(Process process, ProcessBuilder builder) {
+            command = String.join(" ", builder.command());
+            pid = process.pid();
+            ProcessStart start = new ProcessStart();
+            if (start.shouldCommit()) {
+                start.command = command;
+                start.directory = builder.directory() != null ? builder.directory().toString() : null;
+                start.pid = pid;
+                start.commit();
+            }
+        }
+
+        /**
+         * Records the exit of the process and writes the event.
+         *
+         * @param exitCode the exit code of the process
+         * @param outputBytes the number of bytes the process printed
+         */
+        public void exited(int exitCode, long outputBytes) {
+            this.exitCode = exitCode;
+            this.outputBytes = outputBytes;
+            commit();
+        }
+    }
+
+    @Name("org.example.LogWrite")
+    @Label("Log Write")
+    @Description("The output of a step was written to its log file, or a log file was compressed or chunked")
+    public static class LogWrite extends JobEvent {
+        @Label("File")
+        public String file;
+
+        @Label("Kind")
+        @Description("stream, gzip or chunks")
+        public String kind;
+
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+
+        @Label("Stored Bytes")
+        @DataAmount
+        public long storedBytes;
+
+        @Label("Omitted Bytes")
+        @Description("Output left out of the log because it exceeded its head and tail")
+        @DataAmount
+        public long omittedBytes;
+    }
+
+    @Name("org.example.GithubCall")
+    @Label("GitHub Call")
+    @Description("A commit status was sent to the GitHub API")
+    public static class GithubCall extends JobEvent {
+        @Label("State")
+        public String state;
+
+        @Label("Context")
+        public String context;
+
+        @Label("HTTP Status")
+        @Description("-1 if no answer was received")
+        public int statusCode;
+
+        @Label("Error")
+        public String error;
+
+        @Label("Request Size")
+        @DataAmount
+        public long requestBytes;
+
+        @Label("Response Size")
+        @DataAmount
+        public long responseBytes;
+    }
+
+    /**
+     * Starts the event of a stage of the job of the current thread.
+     *
+     * @param stage the stage, e.g. {@code clone}
+     * @return the begun event, to be ended with {@link PipelineStage#end(String)}
+     */
+    public static PipelineStage stage(String stage) {
+        PipelineStage event = new PipelineStage();
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts the event of a process that is about to be started.
+     *
+     * @return the begun event, to be completed with {@link ProcessExit#started} and {@link ProcessExit#exited}
+     */
+    public static ProcessExit process() {
+        ProcessExit event = new ProcessExit();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return the names of the event types, e.g. to enable them in a recording
+     */
+    public static String[] eventNames() {
+        return new String[] {
+            "org.example.WebhookReceived", "org.example.PipelineStage", "org.example.ProcessStart",
+            "org.example.ProcessExit", "org.example.LogWrite", "org.example.GithubCall"
+        };
+    }
+}
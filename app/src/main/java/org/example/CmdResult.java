@@ -1,5 +1,7 @@
 package org.example;
 
+import java.nio.file.Path;
+
 /**
  * Represents the result of a build or test execution.
  */
@@ -24,25 +26,46 @@ public class CmdResult{
     public final Type status;
 
     /**
-     * logs: the standard output/error logs captured during execution.
+     * log: a bounded excerpt (head and tail) of the standard output/error captured during execution,
+     * or an error message if the process could not be run.
      */
 
     public final String log;
 
+    /**
+     * logFile: the file the complete standard output/error was streamed to, or null if nothing was captured.
+     */
+
+    public final Path logFile;
+
     /**
      * errorMessage: a descriptive error message if an error occurred.
      */
 
     public String errorMessage;
 
+    /**
+     * durationMillis: how long the process ran, in milliseconds.
+     */
+
+    public long durationMillis;
+
     public CmdResult(Type status) {
         this.status = status;
         this.log = null;
+        this.logFile = null;
     }
 
     public CmdResult(Type status, String log) {
         this.status = status;
         this.log = log;
+        this.logFile = null;
+    }
+
+    public CmdResult(Type status, String log, Path logFile) {
+        this.status = status;
+        this.log = log;
+        this.logFile = logFile;
     }
 
 
@@ -0,0 +1,31 @@
+package org.example;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * The thread pool of the server, which counts the requests that wait for a free thread in {@link Metrics}.
+ * <p>
+ * A job runs on the thread that received its webhook, so while all threads are busy, new webhooks wait in the
+ * queue of this pool. A request is counted from the moment Jetty dispatches it until a thread starts running it.
+ * </p>
+ */
+public class CountingThreadPool extends QueuedThreadPool {
+
+    @Override
+    public boolean dispatch(Runnable job) {
+        Metrics.requestQueued();
+        boolean dispatched = false;
+        try {
+            dispatched = super.dispatch(() -> {
+                Metrics.requestStarted();
+                job.run();
+            });
+            return dispatched;
+        } finally {
+            if (!dispatched) {
+                // Rejected, e.g. because the pool is stopping, so it never starts
+                Metrics.requestStarted();
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk time series of test and step durations, one series per repository and branch.
+ * <p>
+ * Every series is a directory under {@link #HISTORY_DIR} with three append-only files:
+ *   - {@code names.txt}: one test or step name per line, the line number is the id of the name.
+ *   - {@code durations.bin}: fixed-size records of (name id, duration in ms), two ints each.
+ *   - {@code runs.tsv}: one line per job with its timestamp, commit SHA and the range of its records.
+ * A run is only visible once its line in {@code runs.tsv} is written, so an interrupted append is ignored.
+ * Queries only read the records of the last few runs, so they stay fast no matter how long the history is.
+ * </p>
+ */
+public class DurationHistory {
+
+    protected static final Path HISTORY_DIR = Path.of("history");
+
+    /** Prefix of the names of pipeline steps, to tell them apart from test names. */
+    protected static final String STEP_PREFIX = "step:";
+
+    private static final int RECORD_SIZE = 2 * Integer.BYTES;
+    private static final int BASELINE_RUNS = 20;
+    private static final int MIN_BASELINE_RUNS = 5;
+    private static final double REGRESSION_Z_SCORE = 3.0;
+    private static final long MIN_REGRESSION_MILLIS = 20;
+
+    private static final int MAX_CACHED_SERIES = 256;
+
+    /** The series read so far, least recently used first, at most {@value #MAX_CACHED_SERIES}; guarded by itself. */
+    private static final Map<Path, Series> SERIES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Series> eldest) {
+            if (size() <= MAX_CACHED_SERIES) {
+                return false;
+            }
+            // Waits for a job that is appending to it, so the series is read again from complete files
+            synchronized (eldest.getValue()) {
+                eldest.getValue().evicted = true;
+            }
+            return true;
+        }
+    };
+
+    /**
+     * One job of a series: where its records are in {@code durations.bin}.
+     */
+    public static class Run {
+        public String timestamp;
+        public String commitSha;
+        public long offset;
+        public int count;
+    }
+
+    /**
+     * The duration of a test or step in a run.
+     */
+    public static class Duration {
+        public String name;
+        public long durationMillis;
+    }
+
+    /**
+     * A test or step that took significantly longer in the latest run than in the runs before it.
+     */
+    public static class Regression {
+        public String name;
+        public long durationMillis;
+        public double baselineMeanMillis;
+        public double baselineStdDevMillis;
+        public int baselineRuns;
+        public double zScore;
+    }
+
+    /**
+     * The slowest tests and the duration regressions of the latest run of a series.
+     */
+    public static class Report {
+        public String repository;
+        public String branch;
+        public int runs;
+        public Run latestRun;
+        public Run previousRun;
+        public List<Duration> slowest = new ArrayList<>();
+        public List<Regression> regressions = new ArrayList<>();
+    }
+
+    /**
+     * The files of one series and the names and runs read from them.
+     */
+    private static class Series {
+        final Path dir;
+        final List<String> names = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<Run> runs = new ArrayList<>();
+        /** Set once the series was dropped from {@link #SERIES}; it must not be appended to anymore. */
+        boolean evicted;
+
+        Series(Path dir) throws IOException {
+            this.dir = dir;
+            Path namesFile = dir.resolve("names.txt");
+            if (Files.exists(namesFile)) {
+                try (BufferedReader reader = Files.newBufferedReader(namesFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        ids.put(line, names.size());
+                        names.add(line);
+                    }
+                }
+            }
+            Path runsFile = dir.resolve("runs.tsv");
+            if (Files.exists(runsFile)) {
+                try (BufferedReader reader = Files.newBufferedReader(runsFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] fields = line.split("\t");
+                        if (fields.length != 4) {
+                            continue;
+                        }
+                        Run run = new Run();
+                        run.timestamp = fields[0];
+                        run.commitSha = fields[1];
+                        run.offset = Long.parseLong(fields[2]);
+                        run.count = Integer.parseInt(fields[3]);
+                        runs.add(run);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the series of a repository and branch, loading it if it is not cached.
+     *
+     * @param create true to return a new series if none exists; false to return null then, as reports can be
+     *        asked for any repository and branch, whose series must not be kept
+     */
+    private static Series series(String repository, String branch, boolean create) throws IOException {
+        Path dir = HISTORY_DIR.resolve(repository).resolve(URLEncoder.encode(branch, StandardCharsets.UTF_8));
+        Path key = dir.toAbsolutePath().normalize();
+        synchronized (SERIES) {
+            Series series = SERIES.get(key);
+            if (series != null || (!create && !Files.isDirectory(dir))) {
+                return series;
+            }
+        }
+        // Read without holding the cache; if another job loaded the series meanwhile, its copy is used
+        Series loaded = new Series(dir);
+        synchronized (SERIES) {
+            Series series = SERIES.get(key);
+            if (series == null) {
+                series = loaded;
+                SERIES.put(key, series);
+            }
+            return series;
+        }
+    }
+
+    /**
+     * Appends the step durations and the test durations of a job to the series of its repository and branch.
+     *
+     * @param repository the full name of the repository (owner/repo)
+     * @param branch the branch that was built
+     * @param timestamp the timestamp identifying the job
+     * @param commitSha the SHA of the commit that was built
+     * @param stepDurations the duration in ms of each pipeline step, by step name
+     * @param testResultsFile the per-test records collected by {@link TestResults}, may be null
+     * @throws IOException if the series cannot be written
+     */
+    public static void record(String repository,
+                              String branch,
+                              String timestamp,
+                              String commitSha,
+                              Map<String, Long> stepDurations,
+                              Path testResultsFile) throws IOException {
+        Map<String, Long> durations = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> step : stepDurations.entrySet()) {
+            durations.put(STEP_PREFIX + step.getKey(), step.getValue());
+        }
+        if (testResultsFile != null) {
+            TestResults.read(testResultsFile, result -> {
+                if (result.status != TestCaseResult.Status.SKIPPED) {
+                    // names.txt is read line by line, so a name must not hold any line terminator
+                    durations.put((result.className + " > " + result.name).replaceAll("\\R", " "), result.durationMillis);
+                }
+            });
+        }
+
+        while (true) {
+            Series series = series(repository, branch, true);
+            synchronized (series) {
+                if (!series.evicted) {
+                    append(series, timestamp, commitSha, durations);
+                    return;
+                }
+            }
+            // Dropped from the cache before it was locked; append to the series that is cached now
+        }
+    }
+
+    /**
+     * Appends the durations of a job to a series; the caller holds the lock of the series.
+     */
+    private static void append(Series series, String timestamp, String commitSha, Map<String, Long> durations)
+            throws IOException {
+        Files.createDirectories(series.dir);
+
+        List<String> newNames = new ArrayList<>();
+        ByteBuffer records = ByteBuffer.allocate(durations.size() * RECORD_SIZE);
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            Integer id = series.ids.get(entry.getKey());
+            if (id == null) {
+                id = series.names.size();
+                series.ids.put(entry.getKey(), id);
+                series.names.add(entry.getKey());
+                newNames.add(entry.getKey());
+            }
+            records.putInt(id);
+            records.putInt((int) Math.min(Integer.MAX_VALUE, entry.getValue()));
+        }
+        records.flip();
+
+        if (!newNames.isEmpty()) {
+            try (BufferedWriter writer = Files.newBufferedWriter(series.dir.resolve("names.txt"), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String name : newNames) {
+                    writer.write(name);
+                    writer.newLine();
+                }
+            }
+        }
+
+        Run run = new Run();
+        run.timestamp = timestamp;
+        run.commitSha = commitSha;
+        run.count = durations.size();
+        try (FileChannel channel = FileChannel.open(series.dir.resolve("durations.bin"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            run.offset = channel.size();
+            while (records.hasRemaining()) {
+                channel.write(records, run.offset + records.position());
+            }
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(series.dir.resolve("runs.tsv"), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(run.timestamp + "\t" + run.commitSha + "\t" + run.offset + "\t" + run.count);
+            writer.newLine();
+        }
+        series.runs.add(run);
+    }
+
+    /**
+     * Builds the report of the latest run of a series: its slowest tests and the tests and steps whose
+     * duration is more than {@link #REGRESSION_Z_SCORE} standard deviations above the mean of the runs before it.
+     *
+     * @param repository the full name of the repository (owner/repo)
+     * @param branch the branch
+     * @param slowestLimit the number of slowest tests to list
+     * @return the report, with no runs if the series does not exist
+     * @throws IOException if the series cannot be read
+     */
+    public static Report report(String repository, String branch, int slowestLimit) throws IOException {
+        Report report = new Report();
+        report.repository = repository;
+        report.branch = branch;
+
+        Series series = series(repository, branch, false);
+        if (series == null) {
+            return report;
+        }
+        List<Run> runs;
+        List<String> names;
+        synchronized (series) {
+            runs = new ArrayList<>(series.runs.subList(Math.max(0, series.runs.size() - BASELINE_RUNS - 1), series.runs.size()));
+            names = new ArrayList<>(series.names);
+            report.runs = series.runs.size();
+        }
+        if (runs.isEmpty()) {
+            return report;
+        }
+
+        try (FileChannel channel = FileChannel.open(series.dir.resolve("durations.bin"), StandardOpenOption.READ)) {
+            Run latest = runs.get(runs.size() - 1);
+            report.latestRun = latest;
+            report.previousRun = runs.size() > 1 ? runs.get(runs.size() - 2) : null;
+            int[][] latestRecords = readRun(channel, latest);
+
+            // Sum and sum of squares of the baseline durations per name id
+            Map<Integer, double[]> baseline = new HashMap<>();
+            for (Run run : runs.subList(0, runs.size() - 1)) {
+                for (int[] record : readRun(channel, run)) {
+                    double[] stats = baseline.computeIfAbsent(record[0], id -> new double[3]);
+                    stats[0]++;
+                    stats[1] += record[1];
+                    stats[2] += (double) record[1] * record[1];
+                }
+            }
+
+            List<Duration> tests = new ArrayList<>();
+            for (int[] record : latestRecords) {
+                String name = names.get(record[0]);
+                if (!name.startsWith(STEP_PREFIX)) {
+                    Duration duration = new Duration();
+                    duration.name = name;
+                    duration.durationMillis = record[1];
+                    tests.add(duration);
+                }
+
+                double[] stats = baseline.get(record[0]);
+                if (stats == null || stats[0] < MIN_BASELINE_RUNS) {
+                    continue;
+                }
+                double mean = stats[1] / stats[0];
+                double variance = Math.max(0, stats[2] / stats[0] - mean * mean);
+                // Avoid flagging tiny jitter of tests whose duration never changed
+                double stdDev = Math.max(Math.sqrt(variance), Math.max(1.0, mean * 0.05));
+                double zScore = (record[1] - mean) / stdDev;
+                if (zScore >= REGRESSION_Z_SCORE && record[1] - mean >= MIN_REGRESSION_MILLIS) {
+                    Regression regression = new Regression();
+                    regression.name = name;
+                    regression.durationMillis = record[1];
+                    regression.baselineMeanMillis = mean;
+                    regression.baselineStdDevMillis = Math.sqrt(variance);
+                    regression.baselineRuns = (int) stats[0];
+                    regression.zScore = zScore;
+                    report.regressions.add(regression);
+                }
+            }
+
+            tests.sort((a, b) -> Long.compare(b.durationMillis, a.durationMillis));
+            report.slowest = new ArrayList<>(tests.subList(0, Math.min(slowestLimit, tests.size())));
+            report.regressions.sort((a, b) -> Double.compare(b.zScore, a.zScore));
+        }
+        return report;
+    }
+
+    /**
+     * Reads the (name id, duration) records of a run with one positioned read.
+     */
+    private static int[][] readRun(FileChannel channel, Run run) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(run.count * RECORD_SIZE);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, run.offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        int[][] records = new int[buffer.remaining() / RECORD_SIZE][];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new int[] { buffer.getInt(), buffer.getInt() };
+        }
+        return records;
+    }
+}
@@ -0,0 +1,47 @@
+package org.example;
+
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Watches the output of a Gradle test run for the first failing test.
+ * <p>
+ * Gradle logs every failed test as {@code <class> > <test> FAILED}. The first time such a line is seen,
+ * {@code onFirstFailure} is called with the name of the test, so the failure can be reported before
+ * Gradle has finished.
+ * </p>
+ */
+public class FailFastWatcher implements Consumer<String> {
+
+    private static final Pattern FAILED_TEST = Pattern.compile("^(\\S.* > .+) FAILED$");
+
+    private final Consumer<String> onFirstFailure;
+    private String firstFailure;
+
+    /**
+     * @param onFirstFailure called with the name of the first failing test
+     */
+    public FailFastWatcher(Consumer<String> onFirstFailure) {
+        this.onFirstFailure = onFirstFailure;
+    }
+
+    @Override
+    public void accept(String line) {
+        if (firstFailure != null) {
+            return;
+        }
+        Matcher matcher = FAILED_TEST.matcher(line.strip());
+        if (matcher.matches()) {
+            firstFailure = matcher.group(1);
+            onFirstFailure.accept(firstFailure);
+        }
+    }
+
+    /**
+     * @return the name of the first failing test, or null if no test has failed
+     */
+    public String getFirstFailure() {
+        return firstFailure;
+    }
+}
@@ -0,0 +1,165 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import javax.servlet.http.HttpServletResponse;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Starts and dumps a JDK Flight Recorder recording of the running server, with the {@link CiEvents} of the jobs
+ * next to the GC, thread and I/O events of the JVM.
+ * <p>
+ * The recording is controlled on the {@value #ROUTE} route, which is only served if {@code JFR_ENDPOINT} is
+ * {@code true}: {@code /jfr/start} starts it, {@code /jfr/dump} downloads what was recorded so far and
+ * {@code /jfr/stop} downloads it and stops it. The recording uses the JFR settings named by {@code JFR_SETTINGS}
+ * ({@code default} or {@code profile}) and keeps the last {@code JFR_MAX_AGE_MINUTES} (default 30) minutes.
+ * Dumps are written to a temporary file that is deleted once it was sent, so nothing is left on the server.
+ * The environment variables and system properties of the server are left out, since they may hold secrets.
+ * </p>
+ */
+public class FlightRecording {
+
+    protected static final String ROUTE = "jfr";
+
+    private static final long DEFAULT_MAX_AGE_MINUTES = 30;
+    private static final DateTimeFormatter DUMP_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    private static Recording recording;
+
+    /**
+     * @return true if the recording can be controlled over HTTP
+     */
+    public static boolean endpointEnabled() {
+        return CiConfig.getBoolean("JFR_ENDPOINT", false);
+    }
+
+    /**
+     * Starts the recording, unless it is running already.
+     *
+     * @return true if the recording was started, false if it was running
+     * @throws IOException if the settings cannot be read
+     */
+    public static synchronized boolean start() throws IOException {
+        if (recording != null) {
+            return false;
+        }
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(CiConfig.get("JFR_SETTINGS", "default"));
+        } catch (ParseException e) {
+            throw new IOException("Invalid JFR settings", e);
+        }
+        Recording started = new Recording(configuration);
+        started.setName("ci-server");
+        started.setToDisk(true);
+        started.setMaxAge(Duration.ofMinutes(Math.max(1, CiConfig.getLong("JFR_MAX_AGE_MINUTES", DEFAULT_MAX_AGE_MINUTES))));
+        started.disable("jdk.InitialEnvironmentVariable");
+        started.disable("jdk.InitialSystemProperty");
+        for (String event : CiEvents.eventNames()) {
+            started.enable(event);
+        }
+        started.start();
+        recording = started;
+        System.out.println("Started flight recording");
+        return true;
+    }
+
+    /**
+     * Writes what was recorded so far to a new temporary file.
+     *
+     * @return the written file, to be deleted by the caller, or null if no recording is running
+     * @throws IOException if the file cannot be written
+     */
+    public static synchronized Path dump() throws IOException {
+        if (recording == null) {
+            return null;
+        }
+        Path file = Files.createTempFile("ci-server-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        System.out.println("Dumped flight recording to " + file);
+        return file;
+    }
+
+    /**
+     * Dumps the recording and stops it.
+     *
+     * @return the written file, to be deleted by the caller, or null if no recording was running
+     * @throws IOException if the file cannot be written
+     */
+    public static synchronized Path stop() throws IOException {
+        Path file = dump();
+        if (recording != null) {
+            recording.close();
+            recording = null;
+            System.out.println("Stopped flight recording");
+        }
+        return file;
+    }
+
+    /**
+     * @return true if a recording is running
+     */
+    public static synchronized boolean isRunning() {
+        return recording != null;
+    }
+
+    /**
+     * Handles a request on the {@value #ROUTE} route.
+     *
+     * @param action the part of the path after {@code /jfr/}: {@code start}, {@code dump} or {@code stop}
+     * @param response the response to write the state or the dumped recording to
+     * @throws IOException if the recording cannot be started or dumped, or the response cannot be written
+     */
+    public static void handle(String action, HttpServletResponse response) throws IOException {
+        if (!endpointEnabled()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            response.setContentType("text/plain;charset=utf-8");
+            response.getWriter().append("The flight recording endpoint is disabled, set JFR_ENDPOINT=true\n");
+            return;
+        }
+        Path file = null;
+        switch (action) {
+            case "start":
+                start();
+                break;
+            case "dump":
+                file = dump();
+                break;
+            case "stop":
+                file = stop();
+                break;
+            default:
+                break;
+        }
+        if (file == null) {
+            response.setContentType("text/plain;charset=utf-8");
+            PrintWriter out = response.getWriter();
+            out.append("Flight recording ").append(isRunning() ? "running" : "not running").append('\n');
+            return;
+        }
+        try {
+            response.setContentType("application/octet-stream");
+            response.setHeader("Content-Disposition",
+                "attachment; filename=\"ci-server-" + DUMP_NAME.format(Instant.now()) + ".jfr\"");
+            response.setHeader("Content-Length", Long.toString(Files.size(file)));
+            Files.copy(file, response.getOutputStream());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -1,28 +1,76 @@
 package org.example;
 
-import java.io.File;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * Utility class for handling HTTP GET requests for build logs.
  * <p>
  * Features:
- *   - Serve an HTML that lists all build logs as clickable URLs.
+ *   - Serve an HTML that lists the build logs as clickable URLs, one filterable page at a time.
  *   - Serve an HTML that shows details of a specific build.
- * The response is written directly to a {@link HttpServletResponse}.
+ *   - Serve the raw log of a build step, following it while the step is running.
+ *   - Serve the slowest tests and duration regressions of a branch, as HTML or JSON.
+ *   - Search the build and test logs of a repository ({@code /search/<owner>/<repo>?q=...}), as HTML or JSON.
+ *   - Serve the latest build of a commit by its full or abbreviated SHA ({@code /logs/<owner>/<repo>/commit/<sha>}).
+ *   - Serve the spans of a job as a waterfall ({@code /traces/<trace-id>}), or as OTLP JSON.
+ * The response is written directly to a {@link HttpServletResponse}. Stored builds and logs never change,
+ * so they are served with validators and answered with 304 Not Modified when the client's copy is current
+ * (see {@link HttpCaching}). Builds that were moved into an archive by {@link LogRetention} are served from it.
  * </p>
  */
 public class GetRequestHandler {
 
+    private static final int ESCAPE_CHUNK_SIZE = 8 * 1024;
+    private static final int SLOWEST_TESTS_LIMIT = 20;
+    private static final int SEARCH_RESULTS_LIMIT = 50;
+    private static final String SEARCH_ROUTE = "search";
+    /** The route of the latest build of a commit: {@code logs/<owner>/<repo>/commit/<sha-prefix>}. */
+    protected static final String COMMIT_ROUTE = "commit";
+    private static final int MIN_SHA_PREFIX_LENGTH = 4;
+    private static final String RATE_LIMIT_ROUTE = "github/rate-limit";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private static final String HTML_HEADER = """
+            <!DOCTYPE html>
+            <html lang="en">
+            <head>
+                <meta charset="UTF-8">
+                <meta name="viewport" content="width=device-width, initial-scale=1.0">
+            </head>
+            <body style=\"font-family: monospace\">
+        """;
+    private static final String HTML_FOOTER = """
+            </body>
+            </html>     
+        """;
+
+    private static final ObjectWriter JSON_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
     /**
      * Handles a GET request for build logs.
      * <p>
@@ -39,118 +87,1048 @@ public class GetRequestHandler {
      * @throws IOException if writing to the response fails
      */
     public static void handle(String target, HttpServletResponse response) throws IOException {
-        StringBuilder sb = new StringBuilder("""
-            <!DOCTYPE html>
-            <html lang="en">
-            <head>
-                <meta charset="UTF-8">
-                <meta name="viewport" content="width=device-width, initial-scale=1.0">
-            </head>
-            <body style=\"font-family: monospace\">
-        """);
+        handle(target, null, response);
+    }
+
+    /**
+     * Handles a GET request for build logs, see {@link #handle(String, HttpServletResponse)}.
+     * <p>
+     * Requests for a raw log file (ending in {@code .log}) are answered with the plain text of the log,
+     * starting at the byte offset given by the {@code offset} query parameter. If the log is still being
+     * written, the response is streamed (chunked) and follows the log until the step finishes.
+     * </p>
+     * @param target the URL path requested by the client
+     * @param request the HttpServletRequest holding the query parameters, may be null
+     * @param response the HttpServletResponse to write output to
+     * @throws IOException if writing to the response fails
+     */
+    public static void handle(String target, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String relativeTarget = target.replaceAll("^/", "");
+        if (relativeTarget.endsWith(".log") && isValidLogPath(Path.of(relativeTarget))) {
+            handleLogFile(Path.of(relativeTarget), request, response);
+            return;
+        }
+
+        if (relativeTarget.equals(RATE_LIMIT_ROUTE)) {
+            response.setContentType("application/json;charset=utf-8");
+            JSON_WRITER.writeValue(response.getWriter(), GithubRateLimit.shared().snapshot(System.currentTimeMillis()));
+            return;
+        }
+
+        String[] historyTarget = parseHistoryTarget(relativeTarget);
+        if (historyTarget != null && request != null && "json".equals(request.getParameter("format"))) {
+            DurationHistory.Report report = DurationHistory.report(historyTarget[0], historyTarget[1], SLOWEST_TESTS_LIMIT);
+            response.setContentType("application/json;charset=utf-8");
+            JSON_WRITER.writeValue(response.getWriter(), report);
+            return;
+        }
+
+        String searchTarget = parseSearchTarget(relativeTarget);
+        String query = request != null ? request.getParameter("q") : null;
+        if (searchTarget != null && request != null && "json".equals(request.getParameter("format"))) {
+            List<LogSearchIndex.Hit> hits = query == null ? List.of()
+                : LogSearchIndex.forDir(Utils.LOGS_DIR.resolve(searchTarget)).search(query, SEARCH_RESULTS_LIMIT);
+            response.setContentType("application/json;charset=utf-8");
+            JSON_WRITER.writeValue(response.getWriter(), hits);
+            return;
+        }
+
+        String traceTarget = parseTraceTarget(relativeTarget);
+        if (traceTarget != null) {
+            List<Tracing.RecordedSpan> spans = Tracing.find(traceTarget);
+            if (request != null && "json".equals(request.getParameter("format"))) {
+                response.setContentType("application/json;charset=utf-8");
+                Tracing.writeOtlp(spans, response.getWriter());
+                return;
+            }
+            PrintWriter out = response.getWriter();
+            out.append(HTML_HEADER);
+            handleTrace(traceTarget, spans, out);
+            out.append(HTML_FOOTER);
+            return;
+        }
+
+        String[] commitTarget = parseCommitTarget(relativeTarget);
+        if (commitTarget != null) {
+            handleCommit(Utils.LOGS_DIR.resolve(commitTarget[0]), commitTarget[1], request, response);
+            return;
+        }
+
+        Path requestedPath = Path.of(relativeTarget);
+        if (historyTarget == null && isValidLogPath(requestedPath)) {
+            Path logDir = requestedPath.getParent();
+            if (Files.isRegularFile(requestedPath)) {
+                handleBuildPage(requestedPath, logDir, true, request, response);
+                return;
+            }
+            if (!Files.exists(requestedPath)
+                    && LogRetention.withArchivedFile(requestedPath, file -> handleBuildPage(file, logDir, true, request, response))) {
+                return;
+            }
+            if (Files.isDirectory(requestedPath) && listingNotModified(requestedPath, request, response)) {
+                return;
+            }
+        }
+
+        PrintWriter out = response.getWriter();
+        out.append(HTML_HEADER);
 
         target = target.replaceAll("^/", "");       // Remove leading slashes
         Path targetAsPath = Path.of(target);
 
-        if (!targetAsPath.startsWith(Utils.LOGS_DIR) || targetAsPath.toString().contains("..")) {
-            sb.append("<p>Invalid GET request</p>");
+        if (historyTarget != null) {
+            handleHistory(historyTarget[0], historyTarget[1], out);
+        }
+        else if (searchTarget != null) {
+            handleSearch(searchTarget, query, out);
+        }
+        else if (!isValidLogPath(targetAsPath)) {
+            out.append("<p>Invalid GET request</p>");
         }
         else if (Files.isDirectory(targetAsPath)) {
-            handleListAllBuilds(targetAsPath, sb);
+            handleListAllBuilds(targetAsPath, request, out);
         }
-        else if (Files.isRegularFile(targetAsPath)) {
-            handleListSpecificBuild(targetAsPath, sb);
+        else {
+            out.append("<p>Invalid GET request</p>");
+        }
+
+        out.append(HTML_FOOTER);
+    }
+
+    /**
+     * Serves the page of a specific build from the {@link PageCache}, rendering and caching it on a miss.
+     * <p>
+     * Pages are rendered into memory up to {@link PageCache#maxPageBytes()}. A page that grows larger is streamed
+     * to the client from there on and remembered as too large, so later requests stream it right away. Clients
+     * that accept gzip get the pre-compressed copy of a cached page; streamed pages are not compressed, and have
+     * an ETag of their own.
+     * </p>
+     * <p>
+     * The page sets its base URL to the log directory, so its relative links also work when it is served
+     * under another URL, such as the commit route.
+     * </p>
+     * @param path the build log
+     * @param logDir the log directory of the build
+     * @param immutable true if the URL always serves this build; false if it may serve another build later
+     * @param request the request holding the conditional and {@code Accept-Encoding} headers, may be null
+     * @param response the response to write the page to
+     * @throws IOException if reading the build log or writing the response fails
+     */
+    private static void handleBuildPage(Path path,
+                                        Path logDir,
+                                        boolean immutable,
+                                        HttpServletRequest request,
+                                        HttpServletResponse response) throws IOException {
+        String stamp = HttpCaching.strongETag(path, null);
+        PageCache.Page page = PageCache.get(path, stamp);
+        boolean cacheable = page == null && PageCache.maxPageBytes() > 0 && !PageCache.isTooLarge(path, stamp);
+        // Only cached pages are served compressed, and a page that is rendered now is expected to be cached
+        boolean gzip = PageCache.gzipEnabled() && acceptsGzip(request, 0)
+            && (page != null ? page.gzip != null : cacheable);
+        String variant = gzip ? "gzip" : null;
+        response.setHeader("Vary", "Accept-Encoding");
+        if (immutable) {
+            if (HttpCaching.immutableNotModified(request, response, path, variant)) {
+                return;
+            }
+        } else {
+            response.setHeader("Cache-Control", HttpCaching.REVALIDATE);
+            if (HttpCaching.notModified(request, response, HttpCaching.strongETag(path, variant),
+                    Files.getLastModifiedTime(path).toMillis())) {
+                return;
+            }
+        }
+        String header = buildPageHeader(logDir);
+
+        if (cacheable) {
+            // A Java char takes two bytes on the heap
+            SpillingWriter html = new SpillingWriter(PageCache.maxPageBytes() / 2, () -> {
+                PageCache.markTooLarge(path, stamp);
+                if (gzip) {
+                    response.setHeader("ETag", stamp);
+                }
+                return response.getWriter();
+            });
+            PrintWriter pageOut = new PrintWriter(html);
+            pageOut.append(header);
+            handleListSpecificBuild(path, pageOut);
+            pageOut.append(HTML_FOOTER);
+            if (pageOut.checkError()) {
+                throw new IOException("Could not write the page of " + path);
+            }
+            if (html.spilled()) {
+                return;
+            }
+            page = PageCache.put(path, stamp, html.toString());
+        }
+
+        if (page == null) {
+            PrintWriter out = response.getWriter();
+            out.append(header);
+            handleListSpecificBuild(path, out);
+            out.append(HTML_FOOTER);
+        }
+        else if (gzip && page.gzip != null) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.getOutputStream().write(page.gzip);
         }
         else {
-            sb.append("<p>Invalid GET request</p>");
+            response.getWriter().write(page.html);
         }
+    }
 
-        sb.append("""
-            </body>
-            </html>     
-        """);
+    /**
+     * @param logDir the log directory of a build
+     * @return the HTML header of a build page, with the log directory as base URL
+     */
+    private static String buildPageHeader(Path logDir) {
+        String base = "/" + logDir + "/";
+        return HTML_HEADER.replace("</head>",
+            "    <base href=\"" + StringEscapeUtils.escapeHtml4(base) + "\">\n    </head>");
+    }
+
+    /**
+     * Opens the writer a {@link SpillingWriter} continues in once its limit is reached.
+     */
+    private interface WriterSource {
+        Writer open() throws IOException;
+    }
 
-        response.getWriter().print(sb);
+    /**
+     * A writer that collects a page in memory up to a number of characters. If the page grows larger, what was
+     * collected and everything after it is written to the writer of a {@link WriterSource} instead.
+     */
+    private static class SpillingWriter extends Writer {
+        private final StringBuilder buffer = new StringBuilder();
+        private final long maxChars;
+        private final WriterSource spill;
+        private Writer out;
+
+        SpillingWriter(long maxChars, WriterSource spill) {
+            this.maxChars = maxChars;
+            this.spill = spill;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            if (out == null && buffer.length() + (long) length > maxChars) {
+                spill();
+            }
+            if (out != null) {
+                out.write(chars, offset, length);
+            } else {
+                buffer.append(chars, offset, length);
+            }
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            if (out == null && buffer.length() + (long) length > maxChars) {
+                spill();
+            }
+            if (out != null) {
+                out.write(string, offset, length);
+            } else {
+                buffer.append(string, offset, offset + length);
+            }
+        }
+
+        private void spill() throws IOException {
+            out = spill.open();
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+
+        /**
+         * @return true if the page grew beyond the limit and was written to the writer of the source
+         */
+        boolean spilled() {
+            return out != null;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        @Override
+        public String toString() {
+            return buffer.toString();
+        }
     }
 
     /**
-     * Generates an HTML list of all build logs in the {@link #BUILD_LOG_DIR} directory.
+     * Sets the weak ETag of a build listing and checks whether the client's copy is current.
      * <p>
-     * Each build log is a clickable link to its specific URL.
+     * The listing changes whenever a build is added to the {@link BuildIndex} or a build starts or stops
+     * running, so its ETag is made from the index version and the running builds. The query parameters are
+     * part of the URL the client caches by, so they need not be part of the ETag.
      * </p>
-     * @param sb the StringBuilder to append HTML content to
+     * @return true if the response was answered with 304 Not Modified
      */
-    private static void handleListAllBuilds(Path dir, StringBuilder sb) {
-        sb.append("<h1>All Build Logs</h1>");
-        
-        System.out.println("DIR: " + dir);
+    private static boolean listingNotModified(Path dir, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        BuildIndex index = BuildIndex.forDir(dir);
+        String etag = "W/\"" + Long.toHexString(index.getVersion())
+            + "-" + Integer.toHexString(LogFollower.activeIn(dir).hashCode()) + "\"";
+        response.setHeader("Cache-Control", HttpCaching.REVALIDATE);
+        return HttpCaching.notModified(request, response, etag, -1);
+    }
+
+    /**
+     * Parses a target of the form {@code logs/<owner>/<repo>/commit/<sha-prefix>}.
+     *
+     * @param target the URL path without leading slash
+     * @return the repository full name and the SHA prefix, or null if {@code target} is not a commit request
+     */
+    private static String[] parseCommitTarget(String target) {
+        String[] parts = target.split("/");
+        if (parts.length != 5 || !parts[0].equals(Utils.LOGS_DIR.toString()) || !parts[3].equals(COMMIT_ROUTE)) {
+            return null;
+        }
+        if (!parts[1].matches("[A-Za-z0-9._-]+") || !parts[2].matches("[A-Za-z0-9._-]+")
+                || parts[1].equals("..") || parts[2].equals("..")) {
+            return null;
+        }
+        if (!parts[4].matches("[0-9A-Fa-f]{" + MIN_SHA_PREFIX_LENGTH + ",64}")) {
+            return null;
+        }
+        return new String[] { parts[1] + "/" + parts[2], parts[4] };
+    }
+
+    /**
+     * Serves the latest build of the commit whose SHA starts with {@code shaPrefix}, resolved through the
+     * {@link BuildIndex}.
+     * <p>
+     * The URL serves another build when the commit is built again, so the page is revalidated instead of cached
+     * as immutable. If the prefix matches several commits, they are listed with links to their full SHAs.
+     * </p>
+     * @param logDir the log directory of the repository
+     * @param shaPrefix a full or abbreviated commit SHA
+     * @param request the request, may be null
+     * @param response the response to write to
+     * @throws IOException if reading the build log or writing the response fails
+     */
+    private static void handleCommit(Path logDir, String shaPrefix, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        List<BuildIndex.Entry> builds = BuildIndex.forDir(logDir).findByShaPrefix(shaPrefix);
+        Map<String, BuildIndex.Entry> latestByCommit = new LinkedHashMap<>();
+        for (BuildIndex.Entry build : builds) {
+            latestByCommit.putIfAbsent(build.commitSha, build);
+        }
+
+        if (latestByCommit.size() == 1) {
+            Path latest = logDir.resolve(builds.get(0).logFile);
+            if (Files.isRegularFile(latest)) {
+                handleBuildPage(latest, logDir, false, request, response);
+                return;
+            }
+            if (LogRetention.withArchivedFile(latest, file -> handleBuildPage(file, logDir, false, request, response))) {
+                return;
+            }
+        }
+
+        PrintWriter out = response.getWriter();
+        out.append(HTML_HEADER);
+        if (latestByCommit.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            out.append("<p>No build of commit ").append(StringEscapeUtils.escapeHtml4(shaPrefix)).append("</p>");
+        } else if (latestByCommit.size() == 1) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            out.append("<p>The build log of commit ").append(StringEscapeUtils.escapeHtml4(shaPrefix)).append(" is missing</p>");
+        } else {
+            out.append("<h1>Commits matching ").append(StringEscapeUtils.escapeHtml4(shaPrefix)).append("</h1>");
+            out.append("<ul>");
+            for (BuildIndex.Entry build : latestByCommit.values()) {
+                String sha = StringEscapeUtils.escapeHtml4(build.commitSha);
+                out.append("  <li><a href=\"").append(sha).append("\">").append(sha).append("</a> ")
+                    .append(escape(build.timestamp)).append(" ").append(escape(build.status())).append("</li>");
+            }
+            out.append("</ul>");
+        }
+        out.append(HTML_FOOTER);
+    }
+
+    /**
+     * Parses a target of the form {@code search/<owner>/<repo>}.
+     *
+     * @param target the URL path without leading slash
+     * @return the repository full name, or null if {@code target} is not a search request
+     */
+    private static String parseSearchTarget(String target) {
+        String[] parts = target.split("/");
+        if (parts.length != 3 || !parts[0].equals(SEARCH_ROUTE)) {
+            return null;
+        }
+        if (!parts[1].matches("[A-Za-z0-9._-]+") || !parts[2].matches("[A-Za-z0-9._-]+")
+                || parts[1].equals("..") || parts[2].equals("..")) {
+            return null;
+        }
+        return parts[1] + "/" + parts[2];
+    }
+
+    /**
+     * Generates an HTML page with a search form and the builds whose logs match the query, newest first.
+     *
+     * @param repository the full name of the repository
+     * @param query the search query, may be null
+     * @param out the writer to write HTML content to
+     */
+    private static void handleSearch(String repository, String query, PrintWriter out) {
+        String repo = repository.substring(repository.indexOf('/') + 1);
+        out.append("<h1>Search: ").append(StringEscapeUtils.escapeHtml4(repository)).append("</h1>");
+        out.append("<form method=\"get\" action=\"").append(StringEscapeUtils.escapeHtml4(repo)).append("\">")
+            .append("<input name=\"q\" size=\"60\" value=\"").append(escape(query)).append("\"> ")
+            .append("<input type=\"submit\" value=\"Search\">")
+            .append("</form>");
+        if (query == null || query.isBlank()) {
+            return;
+        }
+
+        List<LogSearchIndex.Hit> hits;
+        try {
+            hits = LogSearchIndex.forDir(Utils.LOGS_DIR.resolve(repository)).search(query, SEARCH_RESULTS_LIMIT);
+        } catch (IOException e) {
+            e.printStackTrace();
+            out.append("<p>Error searching the logs</p>");
+            return;
+        }
+        if (hits.isEmpty()) {
+            out.append("(no matches)");
+            return;
+        }
+        out.append("<ul>");
+        for (LogSearchIndex.Hit hit : hits) {
+            String fileNameEscaped = StringEscapeUtils.escapeHtml4(hit.logFile);
+            out.append("<li><a href=\"/").append(Utils.LOGS_DIR.toString()).append("/")
+                .append(StringEscapeUtils.escapeHtml4(repository)).append("/").append(fileNameEscaped).append("\">")
+                .append(fileNameEscaped).append("</a> ").append(escape(hit.status))
+                .append(" ").append(escape(hit.branch)).append(" ").append(escape(hit.commitSha));
+            out.append("<pre style=\"background-color: #f4f4f4; white-space: pre-wrap; word-wrap: break-word\">");
+            for (LogSearchIndex.Snippet snippet : hit.snippets) {
+                out.append(snippet.step).append(":").append(String.valueOf(snippet.line)).append(": ")
+                    .append(StringEscapeUtils.escapeHtml4(snippet.text)).append("\n");
+            }
+            out.append("</pre></li>");
+        }
+        out.append("</ul>");
+    }
+
+    /**
+     * Parses a target of the form {@code traces/<trace-id>}.
+     *
+     * @param target the URL path without leading slash
+     * @return the trace ID, or null if {@code target} is not a trace request
+     */
+    private static String parseTraceTarget(String target) {
+        String[] parts = target.split("/");
+        if (parts.length != 2 || !parts[0].equals(Tracing.ROUTE) || !Tracing.isTraceId(parts[1])) {
+            return null;
+        }
+        return parts[1];
+    }
+
+    /**
+     * Generates an HTML waterfall of the spans of a trace: every span is indented below its parent and shown
+     * with its offset from the start of the trace, its duration, its attributes and its error.
+     *
+     * @param traceId the ID of the trace
+     * @param spans the spans of the trace ordered by their start
+     * @param out the writer to write HTML content to
+     */
+    private static void handleTrace(String traceId, List<Tracing.RecordedSpan> spans, PrintWriter out) {
+        out.append("<h1>Trace: ").append(traceId).append("</h1>");
+        if (spans.isEmpty()) {
+            out.append("<p>No spans of this trace were found</p>");
+            return;
+        }
+        Map<String, Tracing.RecordedSpan> byId = new HashMap<>();
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (Tracing.RecordedSpan span : spans) {
+            byId.put(span.spanId, span);
+            start = Math.min(start, span.startEpochNanos);
+            end = Math.max(end, span.endEpochNanos);
+        }
+        double total = Math.max(1, end - start);
+
+        out.append("<table border=\"1\" cellspacing=\"0\" cellpadding=\"2\">");
+        out.append("<tr><th>span</th><th>start (ms)</th><th>duration (ms)</th><th style=\"width: 30%\"></th>")
+            .append("<th>attributes</th><th>error</th></tr>");
+        for (Tracing.RecordedSpan span : spans) {
+            int depth = 0;
+            Tracing.RecordedSpan parent = byId.get(span.parentSpanId);
+            while (parent != null && depth < spans.size()) {
+                depth++;
+                parent = byId.get(parent.parentSpanId);
+            }
+            long offset = span.startEpochNanos - start;
+            long duration = Math.max(0, span.endEpochNanos - span.startEpochNanos);
+            out.append("<tr><td style=\"padding-left: ").append(String.valueOf(depth * 2)).append("em\">")
+                .append(escape(span.name)).append("</td>");
+            out.append("<td align=\"right\">").append(String.format(Locale.ROOT, "%.1f", offset / 1e6)).append("</td>");
+            out.append("<td align=\"right\">").append(String.format(Locale.ROOT, "%.1f", duration / 1e6)).append("</td>");
+            out.append("<td><div style=\"margin-left: ").append(String.format(Locale.ROOT, "%.2f", 100 * offset / total))
+                .append("%; width: ").append(String.format(Locale.ROOT, "%.2f", Math.max(0.2, 100 * duration / total)))
+                .append("%; background-color: ").append(span.error == null ? "#6a9" : "#d55").append("\">&nbsp;</div></td>");
+            out.append("<td>");
+            for (Map.Entry<String, Object> attribute : span.attributes.entrySet()) {
+                out.append(escape(attribute.getKey())).append("=").append(escape(String.valueOf(attribute.getValue())))
+                    .append(" ");
+            }
+            out.append("</td><td>").append(escape(span.error)).append("</td></tr>");
+        }
+        out.append("</table>");
+        out.append("<p><a href=\"").append(traceId).append("?format=json\">OTLP JSON</a></p>");
+    }
+
+    /**
+     * Parses a target of the form {@code history/<owner>/<repo>/<branch>}.
+     *
+     * @param target the URL path without leading slash
+     * @return the repository full name and the branch, or null if {@code target} is not a history request
+     */
+    private static String[] parseHistoryTarget(String target) {
+        String[] parts = target.split("/", 4);
+        if (parts.length != 4 || !parts[0].equals(DurationHistory.HISTORY_DIR.toString()) || parts[3].isBlank()) {
+            return null;
+        }
+        if (!parts[1].matches("[A-Za-z0-9._-]+") || !parts[2].matches("[A-Za-z0-9._-]+")
+                || parts[1].equals("..") || parts[2].equals("..")) {
+            return null;
+        }
+        return new String[] { parts[1] + "/" + parts[2], parts[3] };
+    }
+
+    /**
+     * Generates an HTML report of the slowest tests and the duration regressions of the latest job of a branch.
+     *
+     * @param repository the full name of the repository
+     * @param branch the branch
+     * @param out the writer to write HTML content to
+     */
+    private static void handleHistory(String repository, String branch, PrintWriter out) {
+        DurationHistory.Report report;
+        try {
+            report = DurationHistory.report(repository, branch, SLOWEST_TESTS_LIMIT);
+        } catch (IOException e) {
+            e.printStackTrace();
+            out.append("<p>Error reading duration history</p>");
+            return;
+        }
+
+        out.append("<h1>Durations: ").append(StringEscapeUtils.escapeHtml4(repository + " " + branch)).append("</h1>");
+        if (report.latestRun == null) {
+            out.append("(empty)");
+            return;
+        }
+        out.append("<ul>");
+        out.append("  <li>runs: ").append(String.valueOf(report.runs)).append("</li>");
+        out.append("  <li>latest: ").append(StringEscapeUtils.escapeHtml4(report.latestRun.timestamp))
+            .append(" (").append(StringEscapeUtils.escapeHtml4(report.latestRun.commitSha)).append(")</li>");
+        if (report.previousRun != null) {
+            out.append("  <li>previous: ").append(StringEscapeUtils.escapeHtml4(report.previousRun.timestamp))
+                .append(" (").append(StringEscapeUtils.escapeHtml4(report.previousRun.commitSha)).append(")</li>");
+        }
+        out.append("</ul>");
+
+        out.append("<h2>Regressions</h2>");
+        if (report.regressions.isEmpty()) {
+            out.append("(none)");
+        } else {
+            out.append("<table>");
+            out.append("<tr><th>Name</th><th>Duration (ms)</th><th>Baseline mean (ms)</th><th>Baseline std dev (ms)</th><th>z-score</th></tr>");
+            for (DurationHistory.Regression regression : report.regressions) {
+                out.append("<tr><td>").append(StringEscapeUtils.escapeHtml4(regression.name)).append("</td>");
+                out.append("<td>").append(String.valueOf(regression.durationMillis)).append("</td>");
+                out.append("<td>").append(String.format(Locale.ROOT, "%.1f", regression.baselineMeanMillis)).append("</td>");
+                out.append("<td>").append(String.format(Locale.ROOT, "%.1f", regression.baselineStdDevMillis)).append("</td>");
+                out.append("<td>").append(String.format(Locale.ROOT, "%.1f", regression.zScore)).append("</td></tr>");
+            }
+            out.append("</table>");
+        }
 
-        File dirFile = dir.toFile();
-        File[] files = dirFile.listFiles();
+        out.append("<h2>Slowest tests</h2>");
+        out.append("<table>");
+        out.append("<tr><th>Test</th><th>Duration (ms)</th></tr>");
+        for (DurationHistory.Duration duration : report.slowest) {
+            out.append("<tr><td>").append(StringEscapeUtils.escapeHtml4(duration.name)).append("</td>");
+            out.append("<td>").append(String.valueOf(duration.durationMillis)).append("</td></tr>");
+        }
+        out.append("</table>");
+    }
 
-        if (files == null) {
+    /**
+     * @param path a requested path
+     * @return true if {@code path} is inside {@link Utils#LOGS_DIR}
+     */
+    private static boolean isValidLogPath(Path path) {
+        return path.startsWith(Utils.LOGS_DIR) && !path.toString().contains("..");
+    }
+
+    /**
+     * Writes a raw log file as plain text, starting at the {@code offset} query parameter.
+     * <p>
+     * If the log is still being written it is followed through its {@link LogFollower}, and every chunk
+     * is flushed to the client as soon as it is available.
+     * </p>
+     * @param path the path of the log file
+     * @param request the request holding the {@code offset} parameter, may be null
+     * @param response the response to write the log to
+     * @throws IOException if writing to the response fails
+     */
+    private static void handleLogFile(Path path, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long offset = 0;
+        String offsetParam = request != null ? request.getParameter("offset") : null;
+        if (offsetParam != null) {
+            try {
+                offset = Math.max(0, Long.parseLong(offsetParam));
+            } catch (NumberFormatException e) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().print("Invalid offset");
+                return;
+            }
+        }
+
+        LogFollower follower = LogFollower.get(path);
+        if (follower != null) {
+            response.setHeader("Cache-Control", HttpCaching.REVALIDATE);
+            response.setContentType("text/plain;charset=utf-8");
+            OutputStream out = response.getOutputStream();
+
+            try {
+                follower.follow(offset, out);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             return;
         }
-        else if (files.length == 0) {
-            sb.append("(empty)");
+
+        Path storedFile = LogFiles.find(path);
+        if (storedFile != null) {
+            handleStoredLogFile(storedFile, offset, request, response);
+            return;
+        }
+        long archivedOffset = offset;
+        boolean archived = LogRetention.withArchivedFile(path, file -> {
+            Path archivedFile = LogFiles.find(file);
+            if (archivedFile == null) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                response.getWriter().print("Invalid GET request");
+                return;
+            }
+            handleStoredLogFile(archivedFile, archivedOffset, request, response);
+        });
+        if (!archived) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            response.getWriter().print("Invalid GET request");
+        }
+    }
+
+    /**
+     * Writes a stored log file of a completed step as plain text, answering conditional requests with 304.
+     *
+     * @param storedFile the log file, possibly compressed or inside an archive
+     * @param offset the byte offset in the uncompressed log to start at
+     * @param request the request holding the conditional and {@code Accept-Encoding} headers, may be null
+     * @param response the response to write the log to
+     * @throws IOException if reading the log or writing the response fails
+     */
+    private static void handleStoredLogFile(Path storedFile, long offset, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean compressed = LogFiles.isCompressed(storedFile);
+        if (compressed) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        if (HttpCaching.immutableNotModified(request, response, storedFile,
+                compressed ? (acceptsGzip(request, offset) ? "gzip" : "plain") : null)) {
+            return;
+        }
+
+        response.setContentType("text/plain;charset=utf-8");
+        if (compressed) {
+            handleCompressedLogFile(storedFile, offset, request, response);
+        }
+        else if (LogChunks.isManifest(storedFile)) {
+            // Reassembled from its chunks; the chunks before the offset are skipped without reading them
+            try (InputStream in = LogFiles.newInputStream(storedFile)) {
+                in.skipNBytes(offset);
+                in.transferTo(response.getOutputStream());
+            } catch (EOFException e) {
+                // The offset is past the end of the log, so there is nothing to write
+            }
         }
         else {
-            Arrays.sort(files);
-            sb.append("<ul>");
-            for (File file : files) {
-                if (file.isFile()) {
-                    String fileNameEscaped = StringEscapeUtils.escapeHtml4(file.getName());
-                    String immediateParent = dir.getName(dir.getNameCount()-1).toString();
-                    sb.append("<li><a href=\"").append(immediateParent).append("/").append(fileNameEscaped).append("\">")
+            LogFollower.copyFrom(storedFile, offset, response.getOutputStream());
+        }
+    }
+
+    /**
+     * Writes a compressed log file as plain text. Clients that accept gzip get the stored bytes as they are
+     * (with {@code Content-Encoding: gzip}), other clients get the log decompressed while it is written.
+     *
+     * @param logFile the compressed log file
+     * @param offset the byte offset in the uncompressed log to start at
+     * @param request the request holding the {@code Accept-Encoding} header, may be null
+     * @param response the response to write the log to
+     * @throws IOException if reading the log or writing the response fails
+     */
+    private static void handleCompressedLogFile(Path logFile, long offset, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (acceptsGzip(request, offset)) {
+            response.setHeader("Content-Encoding", "gzip");
+            LogFollower.copyFrom(logFile, 0, response.getOutputStream());
+            return;
+        }
+
+        try (InputStream in = LogFiles.newInputStream(logFile)) {
+            in.skipNBytes(offset);
+            in.transferTo(response.getOutputStream());
+        } catch (EOFException e) {
+            // The offset is past the end of the log, so there is nothing to write
+        }
+    }
+
+    /**
+     * @param request the request holding the {@code Accept-Encoding} header, may be null
+     * @param offset the requested byte offset in the uncompressed log
+     * @return true if a compressed log can be sent as it is stored
+     */
+    private static boolean acceptsGzip(HttpServletRequest request, long offset) {
+        String acceptEncoding = request != null ? request.getHeader("Accept-Encoding") : null;
+        return offset == 0 && acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    /**
+     * Generates an HTML list of the build logs in a log directory, one page at a time and newest first.
+     * <p>
+     * Each build log is a clickable link to its specific URL. The page is selected with the query parameters:
+     *   - {@code limit}: the number of builds per page (default {@value #DEFAULT_PAGE_SIZE}, at most {@value #MAX_PAGE_SIZE}).
+     *   - {@code before}: the cursor of the page, the timestamp of the last build of the previous page.
+     *   - {@code status}, {@code branch}, {@code sha}: only list builds with that status, branch or SHA prefix.
+     * The builds are read from the {@link BuildIndex} and written to {@code out} as they are visited.
+     * </p>
+     * @param dir the log directory
+     * @param request the request holding the query parameters, may be null
+     * @param out the writer to write HTML content to
+     */
+    private static void handleListAllBuilds(Path dir, HttpServletRequest request, PrintWriter out) {
+        out.append("<h1>All Build Logs</h1>");
+        
+        System.out.println("DIR: " + dir);
+
+        String immediateParent = dir.getName(dir.getNameCount()-1).toString();
+
+        BuildIndex.Filter filter = new BuildIndex.Filter();
+        filter.status = parameter(request, "status");
+        filter.branch = parameter(request, "branch");
+        filter.shaPrefix = parameter(request, "sha");
+        String before = parameter(request, "before");
+        int limit = DEFAULT_PAGE_SIZE;
+        String limitParam = parameter(request, "limit");
+        if (limitParam != null) {
+            try {
+                limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam)));
+            } catch (NumberFormatException e) {
+                // Keep the default page size
+            }
+        }
+
+        out.append("<form method=\"get\" action=\"").append(immediateParent).append("\">")
+            .append("status <input name=\"status\" size=\"10\" value=\"").append(escapeParameter(filter.status)).append("\"> ")
+            .append("branch <input name=\"branch\" size=\"20\" value=\"").append(escapeParameter(filter.branch)).append("\"> ")
+            .append("sha <input name=\"sha\" size=\"12\" value=\"").append(escapeParameter(filter.shaPrefix)).append("\"> ")
+            .append("<input type=\"hidden\" name=\"limit\" value=\"").append(String.valueOf(limit)).append("\">")
+            .append("<input type=\"submit\" value=\"Filter\">")
+            .append("</form>");
+
+        if (before == null) {
+            List<Path> running = LogFollower.activeIn(dir);
+            if (!running.isEmpty()) {
+                out.append("<h2>Running</h2>");
+                out.append("<ul>");
+                for (Path logFile : running) {
+                    String fileNameEscaped = StringEscapeUtils.escapeHtml4(logFile.getFileName().toString());
+                    out.append("<li><a href=\"").append(immediateParent).append("/").append(fileNameEscaped).append("\">")
                         .append(fileNameEscaped)
                         .append("</a></li>");
                 }
+                out.append("</ul>");
+            }
+        }
+
+        BuildIndex index;
+        try {
+            index = BuildIndex.forDir(dir);
+        } catch (IOException e) {
+            e.printStackTrace();
+            out.append("<p>Error reading build index</p>");
+            return;
+        }
+
+        BuildIndex.Page page = index.page(before, filter, limit);
+        if (page.entries.isEmpty()) {
+            // A page that reached the scan limit may be empty, with older builds still to search
+            out.append(page.next == null ? "(empty)" : "(no matching builds on this page)");
+        }
+        else {
+            out.append("<ul>");
+            for (BuildIndex.Entry entry : page.entries) {
+                String fileNameEscaped = StringEscapeUtils.escapeHtml4(entry.logFile);
+                out.append("<li><a href=\"").append(immediateParent).append("/").append(fileNameEscaped).append("\">")
+                    .append(fileNameEscaped)
+                    .append("</a> ").append(StringEscapeUtils.escapeHtml4(String.valueOf(entry.status())));
+                if (entry.branch != null) {
+                    out.append(" ").append(StringEscapeUtils.escapeHtml4(entry.branch));
+                }
+                if (entry.commitSha != null) {
+                    out.append(" ").append(StringEscapeUtils.escapeHtml4(entry.commitSha));
+                }
+                out.append("</li>");
             }
-            sb.append("</ul>");
+            out.append("</ul>");
         }
+
+        String query = "limit=" + limit
+            + (filter.status != null ? "&status=" + encode(filter.status) : "")
+            + (filter.branch != null ? "&branch=" + encode(filter.branch) : "")
+            + (filter.shaPrefix != null ? "&sha=" + encode(filter.shaPrefix) : "");
+        out.append("<p>");
+        if (before != null) {
+            out.append("<a href=\"").append(immediateParent).append("?").append(StringEscapeUtils.escapeHtml4(query)).append("\">Newest</a> ");
+        }
+        if (page.next != null) {
+            out.append("<a href=\"").append(immediateParent).append("?")
+                .append(StringEscapeUtils.escapeHtml4(query + "&before=" + encode(page.next))).append("\">Older</a>");
+        }
+        out.append("</p>");
+    }
+
+    /**
+     * @return the value of a query parameter, or null if it is missing or blank
+     */
+    private static String parameter(HttpServletRequest request, String name) {
+        String value = request != null ? request.getParameter(name) : null;
+        return (value == null || value.isBlank()) ? null : value.trim();
+    }
+
+    private static String escapeParameter(String value) {
+        return value == null ? "" : StringEscapeUtils.escapeHtml4(value);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
     }
 
     /**
      * Generates HTML content showing details of a specific build log.
      * <p>
-     * Resolves the file based on the {@code target} path,
-     * reads it as a {@code BuildLog} JSON object, and
-     * displays the JSON content.
+     * Resolves the file based on the {@code target} path, reads its fields with a streaming parser and
+     * displays them. The logs are never read into memory as a whole: log files are streamed and inline
+     * logs are copied from the parser, both escaped chunk by chunk into {@code out}.
      * </p>
-     * @param sb the StringBuilder to append HTML content to
+     * @param out the writer to write HTML content to
      * @param path the URL path pointing to the specific build log
      */
-    private static void handleListSpecificBuild(Path path, StringBuilder sb) {
+    private static void handleListSpecificBuild(Path path, PrintWriter out) {
         String fileNameEscaped = StringEscapeUtils.escapeHtml4(path.toString());
         
         LogInfo logInfo;
         try {
-            logInfo = new ObjectMapper().readValue(path.toFile(), LogInfo.class);
+            logInfo = LogInfo.readMetadata(path);
         } catch (IOException e) {
             e.printStackTrace();
-            sb.append("<p>Error reading build log \"").append(fileNameEscaped).append("\"</p>");
+            out.append("<p>Error reading build log \"").append(fileNameEscaped).append("\"</p>");
             return;
         }
 
         String logCss = "background-color: #f4f4f4; white-space: pre-wrap; word-wrap: break-word";
 
-        sb.append("<h1>Log Info: ").append(fileNameEscaped).append("</h1>");
-        sb.append("<ul>");
-        sb.append("  <li>timestamp: ").append(logInfo.timestamp).append("</li>");
-        sb.append("  <li>commitIdentifier: ").append(logInfo.commitIdentifier).append("</li>");
-        sb.append("</ul>");
+        out.append("<h1>Log Info: ").append(fileNameEscaped).append("</h1>");
+        out.append("<ul>");
+        out.append("  <li>timestamp: ").append(escape(logInfo.timestamp)).append("</li>");
+        out.append("  <li>commitIdentifier: ").append(escape(logInfo.commitIdentifier)).append("</li>");
+        if (logInfo.branch != null) {
+            out.append("  <li>branch: ").append(escape(logInfo.branch)).append("</li>");
+        }
+        if (logInfo.traceId != null && Tracing.isTraceId(logInfo.traceId)) {
+            // Absolute, since the page's base URL is its log directory
+            out.append("  <li>trace: <a href=\"/").append(Tracing.ROUTE).append("/").append(logInfo.traceId).append("\">")
+                .append(logInfo.traceId).append("</a></li>");
+        }
+        out.append("</ul>");
         
-        sb.append("<h2>Build</h2>");
-        sb.append("<ul>");
-        sb.append("  <li>buildStatus: ").append(logInfo.buildStatus).append("</li>");
-        sb.append("</ul>");
-        sb.append("<pre style=\"").append(logCss).append("\">").append(StringEscapeUtils.escapeHtml4(logInfo.buildLog)).append("</pre>");
-
-        sb.append("<h2>Test</h2>");
-        sb.append("<ul>");
-        sb.append("  <li>testStatus: ").append(logInfo.testStatus).append("</li>");
-        sb.append("</ul>");
-        sb.append("<pre style=\"").append(logCss).append("\">").append(StringEscapeUtils.escapeHtml4(logInfo.testLog)).append("</pre>");
+        out.append("<h2>Build</h2>");
+        out.append("<ul>");
+        out.append("  <li>buildStatus: ").append(escape(logInfo.buildStatus)).append("</li>");
+        appendRawLogLink(out, logInfo.buildLogFile);
+        out.append("</ul>");
+        out.append("<pre style=\"").append(logCss).append("\">");
+        appendLog(out, path, "buildLog", logInfo.buildLogFile);
+        out.append("</pre>");
+
+        out.append("<h2>Test</h2>");
+        out.append("<ul>");
+        out.append("  <li>testStatus: ").append(escape(logInfo.testStatus)).append("</li>");
+        appendRawLogLink(out, logInfo.testLogFile);
+        out.append("</ul>");
+        if (logInfo.testResultsFile != null) {
+            appendTestResults(out, path, logInfo.testResultsFile);
+        }
+        out.append("<pre style=\"").append(logCss).append("\">");
+        appendLog(out, path, "testLog", logInfo.testLogFile);
+        out.append("</pre>");
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : StringEscapeUtils.escapeHtml4(value);
+    }
+
+    /**
+     * Appends a link to the plain text version of a stored log file, if there is one.
+     *
+     * @param out the writer to write HTML content to
+     * @param logFileName the name of the log file, may be null
+     */
+    private static void appendRawLogLink(PrintWriter out, String logFileName) {
+        if (logFileName == null) {
+            return;
+        }
+        String rawName = LogFiles.rawName(logFileName);
+        String rawNameEscaped = StringEscapeUtils.escapeHtml4(Path.of(rawName).getFileName().toString());
+        out.append("  <li>raw log: <a href=\"").append(rawNameEscaped).append("\">").append(rawNameEscaped).append("</a></li>");
+    }
+
+    /**
+     * Appends a table of the per-test records collected by {@link TestResults}, failures first.
+     * <p>
+     * The records file is streamed twice (once for the failures and once for the rest), so the whole
+     * list of test cases is never held in memory.
+     * </p>
+     * @param out the writer to write HTML content to
+     * @param buildLogFile the JSON file of the build
+     * @param resultsFileName the name of the records file
+     */
+    private static void appendTestResults(PrintWriter out, Path buildLogFile, String resultsFileName) {
+        Path resultsFile = siblingFile(buildLogFile, resultsFileName);
+        TestResults.Summary summary = new TestResults.Summary();
+        try {
+            out.append("<table>");
+            out.append("<tr><th>Status</th><th>Test</th><th>Duration (ms)</th><th>Message</th></tr>");
+            TestResults.read(resultsFile, result -> {
+                summary.total++;
+                if (result.isFailure()) {
+                    appendTestRow(out, result);
+                }
+            });
+            TestResults.read(resultsFile, result -> {
+                if (!result.isFailure()) {
+                    appendTestRow(out, result);
+                }
+                if (result.status == TestCaseResult.Status.SKIPPED) {
+                    summary.skipped++;
+                }
+            });
+            out.append("</table>");
+        } catch (IOException e) {
+            e.printStackTrace();
+            out.append("<p>Error reading test results \"").append(StringEscapeUtils.escapeHtml4(resultsFileName)).append("\"</p>");
+            return;
+        }
+        out.append("<p>").append(String.valueOf(summary.total)).append(" test(s), ").append(String.valueOf(summary.skipped)).append(" skipped</p>");
+    }
+
+    /**
+     * Resolves a file named in the JSON log of a build next to it. The name is resolved as a string, since the
+     * JSON log may be inside a segment or an archive, whose paths cannot be resolved against a default file
+     * system {@link Path}.
+     *
+     * @param buildLogFile the JSON file of the build
+     * @param fileName the name of the file, of which only the last element is used
+     * @return the file next to {@code buildLogFile}, in the same file system
+     */
+    private static Path siblingFile(Path buildLogFile, String fileName) {
+        return buildLogFile.resolveSibling(Path.of(fileName).getFileName().toString());
+    }
+
+    private static void appendTestRow(PrintWriter out, TestCaseResult result) {
+        out.append("<tr><td>").append(result.status.toString()).append("</td>");
+        out.append("<td>").append(StringEscapeUtils.escapeHtml4(result.className + " > " + result.name)).append("</td>");
+        out.append("<td>").append(String.valueOf(result.durationMillis)).append("</td>");
+        out.append("<td>").append(result.message != null ? StringEscapeUtils.escapeHtml4(result.message) : "").append("</td></tr>");
+    }
+
+    /**
+     * A writer that HTML escapes everything written to it into another writer, in chunks of at most
+     * {@link #ESCAPE_CHUNK_SIZE} characters.
+     */
+    private static class HtmlEscapingWriter extends Writer {
+        private final PrintWriter out;
+
+        HtmlEscapingWriter(PrintWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            for (int start = offset; start < offset + length; start += ESCAPE_CHUNK_SIZE) {
+                int chunk = Math.min(ESCAPE_CHUNK_SIZE, offset + length - start);
+                out.append(StringEscapeUtils.escapeHtml4(new String(buffer, start, chunk)));
+            }
+        }
+
+        @Override
+        public void flush() {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            // The underlying writer belongs to the response
+        }
+    }
+
+    /**
+     * Appends an HTML escaped log, either stored inline in the build log or in a log file next to it.
+     * <p>
+     * Log files are read (and decompressed) and escaped in chunks of {@link #ESCAPE_CHUNK_SIZE} characters,
+     * which are written to {@code out} right away. Inline logs are copied from the JSON parser the same way.
+     * </p>
+     * @param out the writer to write HTML content to
+     * @param buildLogFile the JSON file of the build
+     * @param inlineField the name of the inline log field, used if {@code logFileName} is null
+     * @param logFileName the name of the log file, may be null
+     */
+    private static void appendLog(PrintWriter out, Path buildLogFile, String inlineField, String logFileName) {
+        Writer escaped = new HtmlEscapingWriter(out);
+        if (logFileName == null) {
+            try {
+                LogInfo.copyInlineLog(buildLogFile, inlineField, escaped);
+            } catch (IOException e) {
+                e.printStackTrace();
+                out.append("(log could not be read)");
+            }
+            return;
+        }
+
+        Path logFile = LogFiles.find(siblingFile(buildLogFile, logFileName));
+        if (logFile == null) {
+            out.append("(log file \"").append(StringEscapeUtils.escapeHtml4(logFileName)).append("\" not found)");
+            return;
+        }
+        try (Reader reader = new InputStreamReader(LogFiles.newInputStream(logFile), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[ESCAPE_CHUNK_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                escaped.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            out.append("(log file \"").append(StringEscapeUtils.escapeHtml4(logFileName)).append("\" could not be read)");
+        }
     }
 
 }
@@ -0,0 +1,187 @@
+package org.example;
+
+import java.net.http.HttpHeaders;
+import java.util.OptionalLong;
+
+/**
+ * Keeps track of the GitHub API rate limit and paces requests so that it is not exceeded.
+ * <p>
+ * The budget is read from the {@code X-RateLimit-Limit}, {@code X-RateLimit-Remaining} and {@code X-RateLimit-Reset}
+ * headers of every answer. Requests are paced by a token bucket that holds at most {@code GITHUB_BURST} requests
+ * and is refilled at the rate that spreads the remaining budget evenly until the reset, capped by
+ * {@code GITHUB_MAX_REQUESTS_PER_SECOND}. Once the budget is used up, or GitHub asks to wait with
+ * {@code Retry-After}, no request is allowed until the reset.
+ * </p>
+ * <p>
+ * When at most {@code GITHUB_RATE_LIMIT_RESERVE} requests are left, the budget is tight and {@link StatusOutbox}
+ * only sends the latest status of every commit, see {@link #recordCoalesced(int)}.
+ * </p>
+ */
+public class GithubRateLimit {
+
+    private static final long DEFAULT_MAX_REQUESTS_PER_SECOND = 10;
+    private static final long DEFAULT_BURST = 10;
+    private static final long DEFAULT_RESERVE = 100;
+
+    private static final GithubRateLimit SHARED = new GithubRateLimit();
+
+    /**
+     * The state of the rate limit, as served on the {@code github/rate-limit} route.
+     */
+    public static class Snapshot {
+        /** The number of requests per hour, or -1 before the first answer. */
+        public long limit;
+        /** The number of requests left until the reset, or -1 before the first answer. */
+        public long remaining;
+        /** When the budget is reset, in ms since the epoch. */
+        public long resetEpochMillis;
+        public boolean tight;
+        public long requests;
+        public long delayedRequests;
+        public long rateLimitedAnswers;
+        public long coalescedStatuses;
+    }
+
+    private long limit = -1;
+    private long remaining = -1;
+    private long resetEpochMillis;
+    private long blockedUntilMillis;
+
+    private double tokens = -1;
+    private long lastRefillMillis;
+
+    private long requests;
+    private long delayedRequests;
+    private long rateLimitedAnswers;
+    private long coalescedStatuses;
+
+    /**
+     * @return the rate limit of the GitHub token of the server
+     */
+    public static GithubRateLimit shared() {
+        return SHARED;
+    }
+
+    /**
+     * Reads the budget from the answer to a request.
+     *
+     * @param statusCode the HTTP status of the answer
+     * @param headers the headers of the answer
+     * @param nowMillis the current time in ms since the epoch
+     */
+    public synchronized void update(int statusCode, HttpHeaders headers, long nowMillis) {
+        OptionalLong headerLimit = headers.firstValueAsLong("X-RateLimit-Limit");
+        OptionalLong headerRemaining = headers.firstValueAsLong("X-RateLimit-Remaining");
+        OptionalLong headerReset = headers.firstValueAsLong("X-RateLimit-Reset");
+        if (headerLimit.isPresent()) {
+            limit = headerLimit.getAsLong();
+        }
+        if (headerRemaining.isPresent()) {
+            remaining = headerRemaining.getAsLong();
+        }
+        if (headerReset.isPresent()) {
+            resetEpochMillis = headerReset.getAsLong() * 1000;
+        }
+
+        if (statusCode == 403 || statusCode == 429) {
+            OptionalLong retryAfter = headers.firstValueAsLong("Retry-After");
+            if (retryAfter.isPresent()) {
+                rateLimitedAnswers++;
+                blockedUntilMillis = Math.max(blockedUntilMillis, nowMillis + retryAfter.getAsLong() * 1000);
+            } else if (remaining == 0) {
+                rateLimitedAnswers++;
+                blockedUntilMillis = Math.max(blockedUntilMillis, resetEpochMillis);
+            }
+        }
+    }
+
+    /**
+     * Takes the permission to send one request, if the budget allows it now.
+     *
+     * @param nowMillis the current time in ms since the epoch
+     * @return 0 if the request may be sent, otherwise the number of ms to wait before asking again
+     */
+    public synchronized long acquire(long nowMillis) {
+        if (nowMillis < blockedUntilMillis) {
+            delayedRequests++;
+            return blockedUntilMillis - nowMillis;
+        }
+        if (remaining >= 0 && nowMillis >= resetEpochMillis) {
+            // A new window started, whose budget is only known from the next answer
+            remaining = -1;
+        }
+        if (remaining == 0) {
+            delayedRequests++;
+            return Math.max(1, resetEpochMillis - nowMillis);
+        }
+
+        double ratePerMilli = ratePerSecond(nowMillis) / 1000;
+        double burst = Math.max(1, CiConfig.getLong("GITHUB_BURST", DEFAULT_BURST));
+        if (tokens < 0) {
+            tokens = burst;
+        } else {
+            tokens = Math.min(burst, tokens + (nowMillis - lastRefillMillis) * ratePerMilli);
+        }
+        lastRefillMillis = nowMillis;
+
+        if (tokens < 1) {
+            delayedRequests++;
+            return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerMilli));
+        }
+        tokens--;
+        requests++;
+        if (remaining > 0) {
+            // Counted down until the answer reports the real budget, so requests in flight are not overspent
+            remaining--;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the rate at which the remaining budget lasts until the reset, capped by {@code GITHUB_MAX_REQUESTS_PER_SECOND}
+     */
+    private double ratePerSecond(long nowMillis) {
+        double max = Math.max(1, CiConfig.getLong("GITHUB_MAX_REQUESTS_PER_SECOND", DEFAULT_MAX_REQUESTS_PER_SECOND));
+        if (remaining < 0) {
+            return max;
+        }
+        double secondsToReset = Math.max(1, (resetEpochMillis - nowMillis) / 1000.0);
+        return Math.min(max, remaining / secondsToReset);
+    }
+
+    /**
+     * @param nowMillis the current time in ms since the epoch
+     * @return true if so few requests are left that only the statuses that matter should be sent
+     */
+    public synchronized boolean isTight(long nowMillis) {
+        if (nowMillis < blockedUntilMillis) {
+            return true;
+        }
+        return remaining >= 0 && nowMillis < resetEpochMillis
+            && remaining <= CiConfig.getLong("GITHUB_RATE_LIMIT_RESERVE", DEFAULT_RESERVE);
+    }
+
+    /**
+     * @param count the number of statuses that were not sent because a newer status of the same commit replaced them
+     */
+    public synchronized void recordCoalesced(int count) {
+        coalescedStatuses += count;
+    }
+
+    /**
+     * @param nowMillis the current time in ms since the epoch
+     * @return the current budget and the counters of the requests
+     */
+    public synchronized Snapshot snapshot(long nowMillis) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.limit = limit;
+        snapshot.remaining = remaining;
+        snapshot.resetEpochMillis = resetEpochMillis;
+        snapshot.tight = isTight(nowMillis);
+        snapshot.requests = requests;
+        snapshot.delayedRequests = delayedRequests;
+        snapshot.rateLimitedAnswers = rateLimitedAnswers;
+        snapshot.coalescedStatuses = coalescedStatuses;
+        return snapshot;
+    }
+}
@@ -3,11 +3,20 @@ package org.example;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.core.util.Separators;
 
 /**
  * Utility class for interacting with the GitHub REST API.
@@ -19,11 +28,29 @@ import java.util.Properties;
  *
  * Commit states are represented using the {@code CommitState} enum to ensure that only valid
  * GitHub API status values can be used.
+ * <p>
+ * All requests go through one long-lived HTTP/2 client, so the connection to GitHub (and its TLS handshake)
+ * is reused by every status post instead of being set up again for each one.
+ * </p>
  */
 public class GithubUtils {
 
     protected static final String BRANCH_PREFIX = "refs/heads/";
 
+    private static final String DEFAULT_API_URL = "https://api.github.com";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .build();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final DefaultPrettyPrinter PRETTY_PRINTER = new DefaultPrettyPrinter(
+        Separators.createDefaultInstance().withObjectFieldValueSpacing(Separators.Spacing.AFTER));
+
     /**
      * Represents the possible commit status states supported by the GitHub API.
      */
@@ -44,21 +71,47 @@ public class GithubUtils {
      * @return A JSON string representing the commit status payload
      */
     public static String buildJsonBody(CommitState state, String targetUrl, String description, String context) {
-        String jsonBody = String.format("""
-            {
-                "state": "%s",
-                "target_url": "%s",
-                "description": "%s",
-                "context": "%s"
-            }
-            """, 
-            state.toString().toLowerCase(),
-            targetUrl != null ? targetUrl : "",
-            description != null ? description : "",
-            context != null ? context : ""
-        );
-
-        return jsonBody;
+        // Written by Jackson, so quotes, backslashes and control characters in test names are escaped
+        StringWriter body = new StringWriter();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(body)) {
+            json.setPrettyPrinter(PRETTY_PRINTER.createInstance());
+            json.writeStartObject();
+            json.writeStringField("state", state.toString().toLowerCase());
+            json.writeStringField("target_url", targetUrl != null ? targetUrl : "");
+            json.writeStringField("description", description != null ? description : "");
+            json.writeStringField("context", context != null ? context : "");
+            json.writeEndObject();
+        } catch (IOException e) {
+            // A StringWriter does not fail
+            throw new UncheckedIOException(e);
+        }
+        return body.toString();
+    }
+
+    /**
+     * Shortens a text to at most {@code maxLength} characters, ending it with "..." if it was cut. The text is
+     * cut between code points, so a character outside the Basic Multilingual Plane is never split in half.
+     *
+     * @param text the text, e.g. the description of a status
+     * @param maxLength the maximum length in UTF-16 characters, at least 4
+     * @return the text, shortened if it was too long
+     */
+    public static String truncate(String text, int maxLength) {
+        if (text.length() <= maxLength) {
+            return text;
+        }
+        int end = maxLength - 3;
+        if (Character.isHighSurrogate(text.charAt(end - 1)) && Character.isLowSurrogate(text.charAt(end))) {
+            end--;
+        }
+        return text.substring(0, end) + "...";
+    }
+
+    /**
+     * @return the base URL of the GitHub REST API, {@code GITHUB_API_URL} if it is set
+     */
+    public static String apiUrl() {
+        return CiConfig.get("GITHUB_API_URL", DEFAULT_API_URL).replaceAll("/+$", "");
     }
 
     /**
@@ -70,7 +123,7 @@ public class GithubUtils {
      * @return URI object pointing to the commit status endpoint for the given repository and commit
      */
     public static URI buildURI(String owner, String repo, String sha) {
-        return URI.create("https://api.github.com/repos/" + owner + "/" + repo + "/statuses/" + sha);
+        return URI.create(apiUrl() + "/repos/" + owner + "/" + repo + "/statuses/" + sha);
     }
 
     /**
@@ -88,6 +141,7 @@ public class GithubUtils {
             .header("Accept", "application/vnd.github+json")
             .header("Authorization", "Bearer " + token)
             .header("X-GitHub-Api-Version", "2022-11-28")
+            .timeout(REQUEST_TIMEOUT)
             .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
             .build();   
 
@@ -95,7 +149,11 @@ public class GithubUtils {
     }
 
     /**
-     * Sends a commit status update to GitHub.
+     * Sends a commit status update to GitHub without waiting for the response.
+     * <p>
+     * Posts are not ordered here: {@link StatusOutbox} only has one status of a commit and context in flight at a
+     * time, so a later status can never be overtaken by an earlier one.
+     * </p>
      *
      * @param owner GitHub repository owner
      * @param repo GitHub repository name
@@ -104,31 +162,61 @@ public class GithubUtils {
      * @param targetUrl Optional URL linking to more details about the status
      * @param description Optional short description of the status
      * @param context Optional context name to differentiate this status from others
-     * @return {@link HttpResponse} containing the response from GitHub
-     * @throws IOException if an I/O error occurs when sending or receiving
-     * @throws InterruptedException if the operation is interrupted
+     * @return a future completed with the response from GitHub, or exceptionally if it could not be sent
      */
-    public static HttpResponse<String> updateStatus(String token,
-                             String owner, 
-                             String repo, 
-                             String sha, 
-                             CommitState state, 
-                             String targetUrl,
-                             String description,
-                             String context) 
-                             throws IOException, InterruptedException {
-
+    public static CompletableFuture<HttpResponse<String>> updateStatusAsync(String token,
+                                                                             String owner,
+                                                                             String repo,
+                                                                             String sha,
+                                                                             CommitState state,
+                                                                             String targetUrl,
+                                                                             String description,
+                                                                             String context) {
+        System.out.println("Posting status " + state + " of " + owner + "/" + repo + "@" + sha + " (" + context + ")");
         String jsonBody = buildJsonBody(state, targetUrl, description, context);
+        HttpRequest request = buildRequest(token, owner, repo, sha, jsonBody);
 
-        System.out.println("owner:" + owner);
-        System.out.println("repo:" + repo);
-        System.out.println("sha:" + sha);
-        System.out.println("jsonbody:" + jsonBody);
+        CiEvents.GithubCall event = githubCall(owner, repo, sha, state, context, jsonBody);
+        event.begin();
+        CompletableFuture<HttpResponse<String>> post = CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .thenApply(GithubUtils::recordRateLimit);
+        post.whenComplete((response, e) -> endGithubCall(event, response, e));
+        return post;
+    }
 
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = buildRequest(token, owner, repo, sha, jsonBody);
+    /**
+     * @return a {@link CiEvents.GithubCall} event of a status post, not begun yet
+     */
+    private static CiEvents.GithubCall githubCall(String owner, String repo, String sha, CommitState state,
+                                                  String context, String jsonBody) {
+        CiEvents.GithubCall event = new CiEvents.GithubCall();
+        event.repository = owner + "/" + repo;
+        event.sha = sha;
+        event.state = state.toString();
+        event.context = context;
+        event.requestBytes = jsonBody.length();
+        return event;
+    }
+
+    /**
+     * Completes the event of a status post with its answer or error and writes it.
+     */
+    private static void endGithubCall(CiEvents.GithubCall event, HttpResponse<String> response, Throwable error) {
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.statusCode = response != null ? response.statusCode() : -1;
+        event.responseBytes = response != null && response.body() != null ? response.body().length() : 0;
+        event.error = error != null ? error.toString() : null;
+        event.commit();
+    }
 
-        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Passes the rate limit headers of an answer to {@link GithubRateLimit#shared()}.
+     */
+    private static HttpResponse<String> recordRateLimit(HttpResponse<String> response) {
+        GithubRateLimit.shared().update(response.statusCode(), response.headers(), System.currentTimeMillis());
+        return response;
     }
 
     /**
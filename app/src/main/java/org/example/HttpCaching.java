@@ -0,0 +1,133 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Utility for HTTP caching of build pages and logs.
+ * <p>
+ * A stored build never changes once it is written, so its responses get a strong ETag derived from the
+ * identity of its file (file key, size and modification time), a {@code Last-Modified} header and a
+ * long-lived {@code Cache-Control} header. Conditional requests ({@code If-None-Match} and
+ * {@code If-Modified-Since}) are answered with 304 Not Modified using only the file attributes,
+ * without reading the file.
+ * </p>
+ */
+public class HttpCaching {
+
+    /** Cache-Control of responses that never change. */
+    protected static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    /** Cache-Control of responses that may change, which must be revalidated before they are reused. */
+    protected static final String REVALIDATE = "no-cache";
+
+    /**
+     * Creates a strong ETag for a stored file.
+     *
+     * @param file the file
+     * @param variant distinguishes representations of the same file (e.g. "gzip"), may be null
+     * @return the quoted ETag
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    public static String strongETag(Path file, String variant) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey();
+        String tag = Long.toHexString(attributes.size())
+            + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis())
+            + (fileKey != null ? "-" + Integer.toHexString(fileKey.hashCode()) : "")
+            + (variant != null ? "-" + variant : "");
+        return "\"" + tag + "\"";
+    }
+
+    /**
+     * Sets the caching headers of an immutable stored file and checks whether the client's copy is current.
+     *
+     * @param request the request holding the conditional headers, may be null
+     * @param response the response to set the headers on
+     * @param file the stored file the response is made from
+     * @param variant the representation of the file, see {@link #strongETag(Path, String)}
+     * @return true if the response was answered with 304 Not Modified and nothing else must be written
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    public static boolean immutableNotModified(HttpServletRequest request,
+                                               HttpServletResponse response,
+                                               Path file,
+                                               String variant) throws IOException {
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        response.setHeader("Cache-Control", IMMUTABLE);
+        return notModified(request, response, strongETag(file, variant), lastModified);
+    }
+
+    /**
+     * Sets the {@code ETag} and {@code Last-Modified} headers, and sets the status to 304 Not Modified
+     * if the request's conditional headers match.
+     * <p>
+     * {@code If-None-Match} takes precedence over {@code If-Modified-Since}, and is compared with the weak
+     * comparison, as RFC 9110 specifies for GET requests.
+     * </p>
+     *
+     * @param request the request holding the conditional headers, may be null
+     * @param response the response to set the headers on
+     * @param etag the quoted ETag of the response
+     * @param lastModified the modification time of the response in ms since the epoch, or -1 if unknown
+     * @return true if the status was set to 304 and nothing else must be written
+     */
+    public static boolean notModified(HttpServletRequest request, HttpServletResponse response, String etag, long lastModified) {
+        response.setHeader("ETag", etag);
+        if (lastModified >= 0) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        if (request == null) {
+            return false;
+        }
+
+        boolean notModified;
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, etag);
+        } else {
+            notModified = lastModified >= 0 && modifiedSince(request) >= 0
+                && lastModified / 1000 <= modifiedSince(request) / 1000;
+        }
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    /**
+     * @return the {@code If-Modified-Since} date in ms since the epoch, or -1 if it is missing or invalid
+     */
+    private static long modifiedSince(HttpServletRequest request) {
+        try {
+            return request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param ifNoneMatch the value of an {@code If-None-Match} header: {@code *} or a list of ETags
+     * @param etag the ETag of the response
+     * @return true if one of the ETags is weakly equal to {@code etag}
+     */
+    protected static boolean matches(String ifNoneMatch, String etag) {
+        String opaqueTag = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || stripWeak(tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -6,8 +6,10 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.OffsetDateTime;
@@ -31,6 +33,9 @@ public class HttpHandler extends AbstractHandler
 {
     private static final Path ALL_REPOS_DIR = Path.of("repos");
 
+    /** GitHub rejects commit status descriptions longer than this. */
+    private static final int MAX_DESCRIPTION_LENGTH = 140;
+
     private boolean handled;
 
     private String configFileName = "config.properties";
@@ -73,7 +78,8 @@ public class HttpHandler extends AbstractHandler
 
                 System.out.println("- - - - - - - - -  - POST START - - - - - - -");
                 try {
-                    handlePOST(request);
+                    // The time Jetty received the request, so the wait for a free thread counts as queue wait
+                    handlePOST(request, baseRequest.getTimeStamp());
                 } catch (IOException | InterruptedException e) {
                     e.printStackTrace();
                 }
@@ -81,7 +87,16 @@ public class HttpHandler extends AbstractHandler
                 break;
 
             case "GET":
-                GetRequestHandler.handle(target, response);
+                if (target.equals("/" + Metrics.ROUTE)) {
+                    response.setContentType(Metrics.CONTENT_TYPE);
+                    Metrics.write(response.getWriter(), ALL_REPOS_DIR);
+                    break;
+                }
+                if (target.startsWith("/" + FlightRecording.ROUTE + "/") || target.equals("/" + FlightRecording.ROUTE)) {
+                    FlightRecording.handle(target.substring(Math.min(target.length(), FlightRecording.ROUTE.length() + 2)), response);
+                    break;
+                }
+                GetRequestHandler.handle(target, request, response);
                 break;
 
             default:
@@ -112,16 +127,84 @@ public class HttpHandler extends AbstractHandler
      * @throws InterruptedException If the HTTP request is interrupted
      */
     public void handlePOST(HttpServletRequest request) throws IOException, InterruptedException {
-        String jsonString = request.getReader().lines().collect(Collectors.joining("\n")); // takes the request and stringafies it into a json structure
+        handlePOST(request, System.currentTimeMillis());
+    }
 
-        if (jsonString.isBlank()) {
-            // to ignore empty messages, seems like it can be solved by checking headers for push
-            return;
+    /**
+     * Handle POST requests that carry webhook payloads, and record the timings of the job in {@link Metrics}.
+     *
+     * @param request servlet request
+     * @param receivedMillis when the request was received, in ms since the epoch
+     * @throws IOException if reading request data fails
+     * @throws InterruptedException If the HTTP request is interrupted
+     */
+    public void handlePOST(HttpServletRequest request, long receivedMillis) throws IOException, InterruptedException {
+        CiEvents.WebhookReceived received = new CiEvents.WebhookReceived();
+        received.begin();
+        boolean started = false;
+        try {
+            String jsonString = request.getReader().lines().collect(Collectors.joining("\n")); // takes the request and stringafies it into a json structure
+
+            if (jsonString.isBlank()) {
+                // to ignore empty messages, seems like it can be solved by checking headers for push
+                return;
+            }
+            ObjectMapper mapper = new ObjectMapper(); // maps JSON structure to existing class
+            PushPayload payload = mapper.readValue(jsonString, PushPayload.class); // maps the JSON to the class PushPayload
+
+            String repository = payload.repository.full_name;
+            received.repository = repository;
+            received.sha = payload.after;
+            received.ref = payload.ref;
+            received.payloadBytes = jsonString.length();
+            received.commit();
+
+            CiEvents.beginJob(repository, payload.after);
+            Metrics.jobStarted();
+            started = true;
+            Metrics.record("queue_wait", repository, Metrics.SUCCESS,
+                TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - receivedMillis)));
+            long jobStart = System.nanoTime();
+            CiEvents.PipelineStage jobEvent = CiEvents.stage("job");
+            long receivedEpochNanos = TimeUnit.MILLISECONDS.toNanos(receivedMillis);
+            Tracing.Span jobSpan = Tracing.startTrace("job", receivedEpochNanos)
+                .attribute("repository", repository)
+                .attribute("sha", payload.after)
+                .attribute("ref", payload.ref);
+            Tracing.start("queue_wait", receivedEpochNanos).end();
+            String outcome = Metrics.ERROR;
+            try {
+                outcome = runJob(payload).toString().toLowerCase();
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                jobSpan.fail(e.toString());
+                throw e;
+            } finally {
+                Metrics.record("job", repository, outcome, System.nanoTime() - jobStart);
+                jobEvent.end(outcome);
+                jobSpan.attribute("outcome", outcome).end();
+            }
+        } finally {
+            if (started) {
+                Metrics.jobFinished();
+                CiEvents.endJob();
+            }
         }
-        ObjectMapper mapper = new ObjectMapper(); // maps JSON structure to existing class
-        PushPayload payload = mapper.readValue(jsonString, PushPayload.class); // maps the JSON to the class PushPayload
+    }
 
+    /**
+     * Runs the CI job of a push: clones, builds and tests the pushed commit, stores the logs and updates the
+     * commit status on GitHub.
+     *
+     * @param payload the push payload
+     * @return the last commit state that was posted
+     * @throws IOException if a step of the job fails
+     * @throws InterruptedException If the job is interrupted
+     */
+    private GithubUtils.CommitState runJob(PushPayload payload) throws IOException, InterruptedException {
+        final String repository = payload.repository.full_name;
         final Path logDir = Utils.LOGS_DIR.resolve(payload.repository.full_name);
+        final long jobStartTime = System.nanoTime();
+        final String jobTimestamp = OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
 
         // --- Step 0: Prepare Github comms ---
         String[] strs = payload.repository.full_name.split("/");
@@ -135,15 +218,16 @@ public class HttpHandler extends AbstractHandler
 
         System.out.println("----------- HttpHandler: Clone --------------");
         RepoCloner cloner = new RepoCloner();
-        String cloneUrl = payload.repository.clone_url;
+        // A local mirror (e.g. for offline tests and benchmarks) can stand in for the repository on GitHub
+        String cloneUrl = CiConfig.get("CLONE_URL", payload.repository.full_name, payload.repository.clone_url);
         final Path REPO_DIR = ALL_REPOS_DIR.resolve(payload.repository.full_name);
 
         if (Files.isDirectory(REPO_DIR)) {
-            new RepoCleanup().deleteRepo(REPO_DIR);
+            runStage("cleanup", repository, () -> new RepoCleanup().deleteRepo(REPO_DIR));
             System.out.println("INFO: Repo existed on disk; deleting it");
         }
         Files.createDirectories(REPO_DIR);
-        cloner.runGitClone(cloneUrl, REPO_DIR);
+        runStage("clone", repository, () -> cloner.runGitClone(cloneUrl, REPO_DIR));
         System.out.println("----------- HttpHandler: Clone DONE --------------");
 
         // --- Step 2: Check out affected branch ---
@@ -151,24 +235,19 @@ public class HttpHandler extends AbstractHandler
         System.out.println("----------- HttpHandler: Checkout --------------");
         String branch = payload.ref.substring(GithubUtils.BRANCH_PREFIX.length());
         BranchCheckout checkouter = new BranchCheckout();
-        checkouter.checkoutBranch(REPO_DIR, branch);
+        runStage("checkout", repository, () -> checkouter.checkoutBranch(REPO_DIR, branch));
         System.out.println("----------- HttpHandler: Checkout DONE --------------");
 
         // --- Step 2.5: Set commit state to PENDING ---
         System.out.println("----------- HttpHandler: Set PENDING --------------");
         String description = "Done: Cloned and checked out affected branch.";
-        try {
-            handleCommitStatus(owner, repoName, commitSha, commitState, null, description, context);
-        } catch (GithubCommitException e) {
-            System.out.println("CI job failed when setting status to PENDING. Status: " + e.CI_STATUS + ". Stopping CI job.");
-            new RepoCleanup().deleteRepo(REPO_DIR);
-            return;
-        }
+        handleCommitStatus(owner, repoName, commitSha, commitState, null, description, context);
         System.out.println("----------- HttpHandler: Set PENDING DONE --------------");
         
         // --- Step 3: Build the project ---
         System.out.println("----------- HttpHandler: Build --------------");
-        CmdResult buildResult = Utils.execGradleCommandInRepo(REPO_DIR, "build", "-x", "test", "--no-daemon");
+        CmdResult buildResult = runStage("build", repository, () -> Utils.execGradleCommandInRepo(REPO_DIR,
+            logDir.resolve(jobTimestamp + Utils.BUILD_LOG_SUFFIX), "build", "-x", "test", "--no-daemon"));
 
         // Step 3.5: Update commit state description
         String targetUrl = null;
@@ -180,8 +259,10 @@ public class HttpHandler extends AbstractHandler
                 description = "Build failed";
                 commitState = GithubUtils.CommitState.FAILURE;
                 CmdResult emptyTestResult = new CmdResult(CmdResult.Type.NON_EXISTENT);
-                Path filePath = Utils.saveLogToFile(logDir, buildResult, emptyTestResult, commitSha);
-                targetUrl = "http://localhost:" + Main.PORT + "/" + filePath.toString();
+                recordDurations(payload.repository.full_name, branch, jobTimestamp, commitSha, buildResult, null, null);
+                LogInfo failedBuildInfo = newLogInfo(jobTimestamp, commitSha, branch, jobStartTime, null);
+                runStage("log_save", repository, () -> Utils.saveLogToFile(logDir, failedBuildInfo, buildResult, emptyTestResult));
+                targetUrl = commitUrl(logDir, commitSha);
                 break;
 
             case CmdResult.Type.ERROR:
@@ -192,24 +273,50 @@ public class HttpHandler extends AbstractHandler
                 break;
         }
 
-        try {
-            handleCommitStatus(owner, repoName, commitSha, commitState, targetUrl, description, context);
-        } catch (GithubCommitException e) {
-            System.out.println("CI job failed when setting status to " + commitState + ". Status: " + e.CI_STATUS + ". Stopping CI job.");
-            new RepoCleanup().deleteRepo(REPO_DIR);
-            return;
-        }
+        handleCommitStatus(owner, repoName, commitSha, commitState, targetUrl, description, context);
 
         if (buildResult.status != CmdResult.Type.SUCCESS) {
             System.out.println("Build: Not success, returning.");
-            return;
+            return commitState;
         }
         System.out.println("----------- HttpHandler: Build DONE --------------");
         
         // --- Step 4: Test the project ---
         System.out.println("----------- HttpHandler: Test --------------");
         // CmdResult testResult = TestRunner.runTests(REPO_DIR.toFile());
-        CmdResult testResult = Utils.execGradleCommandInRepo(REPO_DIR, "test");
+        Path testLogFile = logDir.resolve(jobTimestamp + Utils.TEST_LOG_SUFFIX);
+        boolean failFast = CiConfig.getBoolean("FAIL_FAST", payload.repository.full_name, false);
+        CmdResult testResult = runStage("test", repository, () -> {
+            if (!failFast) {
+                return Utils.execGradleCommandInRepo(REPO_DIR, testLogFile, "test");
+            }
+            // Let Gradle stop after the first failing test, and report that test as soon as it is seen
+            String testLogUrl = "http://localhost:" + Main.PORT + "/" + testLogFile.toString();
+            FailFastWatcher failFastWatcher = new FailFastWatcher(failedTest -> {
+                String failFastDescription = GithubUtils.truncate("Test failed (fail-fast): " + failedTest, MAX_DESCRIPTION_LENGTH);
+                try {
+                    handleCommitStatus(owner, repoName, commitSha, GithubUtils.CommitState.FAILURE, testLogUrl, failFastDescription, context);
+                } catch (IOException e) {
+                    System.out.println("Could not post fail-fast status: " + e);
+                }
+            });
+            return Utils.execGradleCommandInRepo(REPO_DIR, testLogFile, failFastWatcher, "test", "--fail-fast");
+        });
+
+        // Collect the per-test results from the JUnit XML reports
+        Path testResultsFile = null;
+        TestResults.Summary testSummary = null;
+        if (testResult.status != CmdResult.Type.ERROR) {
+            Path resultsFile = logDir.resolve(jobTimestamp + TestResults.TEST_RESULTS_SUFFIX + LogFiles.GZIP_SUFFIX);
+            try {
+                testSummary = TestResults.collect(REPO_DIR, resultsFile);
+                if (testSummary != null) {
+                    testResultsFile = resultsFile;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
         switch (testResult.status) {
             case CmdResult.Type.SUCCESS:
@@ -218,6 +325,9 @@ public class HttpHandler extends AbstractHandler
                 break;
             case CmdResult.Type.FAILURE:
                 description = "Test(s) failed";
+                if (testSummary != null && testSummary.failed + testSummary.errors > 0) {
+                    description = (testSummary.failed + testSummary.errors) + " of " + testSummary.total + " test(s) failed";
+                }
                 commitState = GithubUtils.CommitState.FAILURE;
                 break;
             case CmdResult.Type.ERROR:
@@ -229,31 +339,147 @@ public class HttpHandler extends AbstractHandler
         }
 
         if (testResult.status != CmdResult.Type.ERROR) {
-            Path filePath = Utils.saveLogToFile(logDir, buildResult, testResult, commitSha);
-            targetUrl = "http://localhost:" + Main.PORT + "/" + filePath.toString();
+            // The durations are read from the test results file before it may be moved into a log segment
+            recordDurations(payload.repository.full_name, branch, jobTimestamp, commitSha, buildResult, testResult, testResultsFile);
+            LogInfo info = newLogInfo(jobTimestamp, commitSha, branch, jobStartTime, testResultsFile);
+            runStage("log_save", repository, () -> Utils.saveLogToFile(logDir, info, buildResult, testResult));
+            targetUrl = commitUrl(logDir, commitSha);
         }
 
-        try {
-            handleCommitStatus(owner, repoName, commitSha, commitState, targetUrl, description, context);
-            System.out.println("CI job finished successfully");
-        } catch (GithubCommitException e) {
-            System.out.println("CI job failed when setting status to " + commitState + ". Status: " + e.CI_STATUS + ". Stopping CI job.");
-            new RepoCleanup().deleteRepo(REPO_DIR);
-            return;
-        }
+        handleCommitStatus(owner, repoName, commitSha, commitState, targetUrl, description, context);
+        System.out.println("CI job finished successfully");
         System.out.println("----------- HttpHandler: Test DONE --------------");
 
         // --- Delete cloned repo from disk and link to build log
         System.out.println("----------- HttpHandler: Remove repo --------------");
-        new RepoCleanup().deleteRepo(REPO_DIR);
+        runStage("cleanup", repository, () -> new RepoCleanup().deleteRepo(REPO_DIR));
         System.out.println("----------- HttpHandler: Remove repo DONE --------------");
+        return commitState;
+    }
+
+    /**
+     * A step of a job that ends with the result of a command, such as the build.
+     */
+    private interface CommandStep {
+        CmdResult run() throws IOException;
     }
 
     /**
-     * Updates the status of a specific commit on GitHub.
+     * Runs a step of a job, timed in {@link Metrics}, recorded as a {@link CiEvents.PipelineStage} and traced as a
+     * span of the job, with the outcome {@link Metrics#SUCCESS} if it returns and {@link Metrics#ERROR} if it throws.
+     *
+     * @param stage the stage of the step
+     * @param repository the full name of the repository
+     * @param step the step to run
+     * @throws IOException if the step fails
+     */
+    private static void runStage(String stage, String repository, Metrics.Step step) throws IOException {
+        runStage(stage, repository, () -> {
+            step.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs a step of a job that ends with the result of a command, see {@link #runStage(String, String, Metrics.Step)}.
+     * The outcome of the step is the status of the result. The timer, the event and the span are ended however the
+     * step ends, so a failed step never leaves its span as the current span of the thread.
+     *
+     * @param stage the stage of the step
+     * @param repository the full name of the repository
+     * @param step the step to run
+     * @return the result of the step
+     * @throws IOException if the step fails
+     */
+    private static CmdResult runStage(String stage, String repository, CommandStep step) throws IOException {
+        long start = System.nanoTime();
+        CiEvents.PipelineStage event = CiEvents.stage(stage);
+        Tracing.Span span = Tracing.start(stage);
+        String outcome = Metrics.ERROR;
+        try {
+            CmdResult result = step.run();
+            outcome = result != null ? Metrics.outcome(result) : Metrics.SUCCESS;
+            return result;
+        } catch (IOException | RuntimeException e) {
+            span.fail(e.toString());
+            throw e;
+        } finally {
+            Metrics.record(stage, repository, outcome, System.nanoTime() - start);
+            event.end(outcome);
+            span.attribute("outcome", outcome).end();
+        }
+    }
+
+    /**
+     * Builds the stable link to the latest build of a commit, which does not depend on the name of its log file.
+     *
+     * @param logDir the log directory of the repository
+     * @param commitSha the SHA of the commit
+     * @return the URL of the commit route of {@link GetRequestHandler}
+     */
+    private static String commitUrl(Path logDir, String commitSha) {
+        return "http://localhost:" + Main.PORT + "/" + logDir + "/" + GetRequestHandler.COMMIT_ROUTE + "/" + commitSha;
+    }
+
+    /**
+     * Creates the metadata of a job that is about to be saved with {@link Utils#saveLogToFile}, linked to the
+     * trace of the current thread.
+     *
+     * @param jobTimestamp the timestamp identifying the job
+     * @param commitSha the SHA of the commit that was built
+     * @param branch the branch that was built
+     * @param jobStartTime the {@link System#nanoTime()} at which the job started
+     * @param testResultsFile the per-test records, may be null
+     * @return the metadata of the job
+     */
+    private static LogInfo newLogInfo(String jobTimestamp, String commitSha, String branch, long jobStartTime, Path testResultsFile) {
+        LogInfo info = new LogInfo();
+        info.timestamp = jobTimestamp;
+        info.commitIdentifier = commitSha;
+        info.branch = branch;
+        info.durationMillis = (System.nanoTime() - jobStartTime) / 1_000_000;
+        info.testResultsFile = testResultsFile != null ? testResultsFile.getFileName().toString() : null;
+        info.traceId = Tracing.current() != null ? Tracing.current().traceId() : null;
+        return info;
+    }
+
+    /**
+     * Appends the durations of the steps and tests of a job to its {@link DurationHistory}.
+     * Failing to do so does not fail the job.
+     *
+     * @param repository the full name of the repository
+     * @param branch the branch that was built
+     * @param jobTimestamp the timestamp identifying the job
+     * @param commitSha the SHA of the commit that was built
+     * @param buildResult the result of the build step
+     * @param testResult the result of the test step, or null if it did not run
+     * @param testResultsFile the per-test records, may be null
+     */
+    private void recordDurations(String repository,
+                                 String branch,
+                                 String jobTimestamp,
+                                 String commitSha,
+                                 CmdResult buildResult,
+                                 CmdResult testResult,
+                                 Path testResultsFile) {
+        Map<String, Long> stepDurations = new LinkedHashMap<>();
+        stepDurations.put("build", buildResult.durationMillis);
+        if (testResult != null) {
+            stepDurations.put("test", testResult.durationMillis);
+        }
+        try {
+            DurationHistory.record(repository, branch, jobTimestamp, commitSha, stepDurations, testResultsFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Updates the status of a specific commit on GitHub, without waiting for GitHub to answer.
      * 
      * This method ensures a GitHub token is loaded (from {@code config.properties}) if it hasn't been set already,
-     * then creates an {@link UpdateGithubStatus} instance to send the commit status update.
+     * then stores the status in the {@link StatusOutbox}, which delivers it in the background and retries it while
+     * GitHub is unavailable.
      *
      * @param owner GitHub repository owner 
      * @param repo GitHub repository name
@@ -262,9 +488,7 @@ public class HttpHandler extends AbstractHandler
      * @param targetUrl Optional URL linking to more details about the status
      * @param description Optional short description of the status
      * @param context Optional context name to differentiate this status from others
-     * @return {@code HttpResponse} containing the response from GitHub
-     * @throws IOException If the GitHub token cannot be loaded or an I/O error occurs while sending the request
-     * @throws InterruptedException If the HTTP request is interrupted
+     * @throws IOException If the GitHub token cannot be loaded or the status cannot be written to the outbox
      */
     public void handleCommitStatus(String owner, 
                                    String repo, 
@@ -272,17 +496,26 @@ public class HttpHandler extends AbstractHandler
                                    GithubUtils.CommitState state,
                                    String targetUrl,
                                    String description,
-                                   String context) throws IOException, InterruptedException, GithubCommitException {
+                                   String context) throws IOException {
         
         if (token == null || token.isBlank()) {
             token = GithubUtils.loadToken(configFileName);
         }
 
-        HttpResponse<String> response =  GithubUtils.updateStatus(token, owner, repo, sha, state, targetUrl, description, context);
-
-        int ciStatus = response.statusCode();
-        if (!(ciStatus == 200 || ciStatus == 201)) {
-            throw new GithubCommitException(ciStatus);
+        StatusOutbox.Status status = new StatusOutbox.Status();
+        status.owner = owner;
+        status.repo = repo;
+        status.sha = sha;
+        status.state = state;
+        status.targetUrl = targetUrl;
+        status.description = description;
+        status.context = context;
+        Tracing.Span span = Tracing.current();
+        if (span != null) {
+            // The post is traced as part of the job, although it is sent later by the outbox
+            status.traceId = span.traceId();
+            status.parentSpanId = span.spanId();
         }
+        StatusOutbox.shared().post(token, status);
     }
 }
@@ -0,0 +1,641 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed store of log chunks, which keeps the output that consecutive builds share only once.
+ * <p>
+ * When {@code LOG_DEDUP} is enabled, the logs of a build are not gzip compressed when the build is saved.
+ * Instead they are split into chunks at content-defined boundaries, found with a rolling gear hash over the
+ * last 64 bytes, so an insertion or a changed timing line only changes the chunks around it. Chunks are
+ * 2 KB to 64 KB, 8 KB on average. Every chunk is stored once, keyed by its SHA-256, in an append-only pack
+ * file ({@code logs/.chunks/chunks.pack}) that is shared by all repositories, and the log is replaced by a
+ * manifest ({@code <log>.chunks}) that lists its chunks in order.
+ * </p>
+ * <p>
+ * A pack record is the hash, the uncompressed and compressed length of the chunk, and the deflated chunk.
+ * The offsets of the chunks are read from the record headers when the store is first used; a record cut off by
+ * a crash, or one whose header is not valid, is dropped together with everything after it. New chunks are forced
+ * to disk before the manifest that lists them, and the manifest before the log is deleted, so a dropped record
+ * is never one that a manifest refers to. Logs are read back through {@link LogFiles#newInputStream(Path)}, which streams the
+ * chunks of the manifest one at a time with positioned reads, and skips chunks without reading them.
+ * The dedup ratio since the server started (the size of the stored logs over the size of the new chunks they
+ * added) is logged for every stored log.
+ * </p>
+ * <p>
+ * Chunks that no manifest lists anymore are removed by a mark and sweep that {@link LogRetention} runs after it
+ * deleted builds: {@link #beginCollection()} starts counting every chunk that is stored or reused as live, the
+ * retention service reads the keys of all manifests that are left ({@link #readKeys(Path, Set)}), and
+ * {@link #sweep(Set, Pacer)} copies the live chunks into a new pack, which replaces the old one. Logs are only
+ * kept from being stored while the new pack is swapped in; logs that were opened before keep reading the old pack.
+ * </p>
+ */
+public class LogChunks {
+
+    protected static final String MANIFEST_SUFFIX = ".chunks";
+    protected static final Path STORE_DIR = Utils.LOGS_DIR.resolve(".chunks");
+
+    private static final String PACK_FILE = "chunks.pack";
+    private static final int MIN_CHUNK_SIZE = 2 * 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+    /** A boundary is where the top bits of the hash are zero, which happens once per 2^13 = 8 KB on average. */
+    private static final int BOUNDARY_BITS = 13;
+    private static final int HASH_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = HASH_SIZE + 8;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    /** Random values of the bytes for the gear hash. The seed is fixed, so boundaries never move between runs. */
+    private static final long[] GEAR = new long[256];
+    static {
+        Random random = new Random(0x6c6f67L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private static final Map<Path, LogChunks> STORES = new ConcurrentHashMap<>();
+
+    private final Path pack;
+    /** Held for reading while a log is stored, and for writing while a collection starts or a pack is swapped in. */
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+    /** The offsets of the chunks in the current pack; a new map once a sweep replaced the pack. */
+    private Map<String, Long> offsets = new HashMap<>();
+    /** The chunks stored or reused since the running collection began, or null if none is running. */
+    private Set<String> touched;
+    private long packSize;
+    private long uniqueBytes;
+    private long logicalBytes;
+    private long newBytes;
+
+    private LogChunks(Path dir) {
+        this.pack = dir.resolve(PACK_FILE);
+    }
+
+    /**
+     * Limits the rate at which a sweep reads and writes the pack, see {@link LogRetention}.
+     */
+    public interface Pacer {
+        void acquire(long bytes) throws IOException;
+    }
+
+    /**
+     * Returns the chunk store in a directory, reading the offsets of its chunks the first time.
+     *
+     * @param dir the directory of the pack file
+     * @return the store in {@code dir}
+     * @throws IOException if the pack file cannot be read
+     */
+    public static LogChunks forDir(Path dir) throws IOException {
+        try {
+            return STORES.computeIfAbsent(dir.toAbsolutePath().normalize(), key -> {
+                try {
+                    LogChunks store = new LogChunks(dir);
+                    store.load();
+                    return store;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the store shared by all repositories, in {@link #STORE_DIR}
+     * @throws IOException if the pack file cannot be read
+     */
+    public static LogChunks shared() throws IOException {
+        return forDir(STORE_DIR);
+    }
+
+    /**
+     * @return true if logs are stored as chunks instead of gzip compressed
+     */
+    public static boolean enabled() {
+        return CiConfig.getBoolean("LOG_DEDUP", false);
+    }
+
+    /**
+     * @param file a stored log file
+     * @return true if {@code file} is a chunk manifest
+     */
+    public static boolean isManifest(Path file) {
+        return file.getFileName().toString().endsWith(MANIFEST_SUFFIX);
+    }
+
+    private synchronized void load() throws IOException {
+        if (!Files.isRegularFile(pack)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            long position = 0;
+            while (position + RECORD_HEADER_SIZE <= size) {
+                header.clear();
+                readFully(channel, header, position);
+                int length = header.getInt(HASH_SIZE);
+                int compressedLength = header.getInt(HASH_SIZE + 4);
+                if (length <= 0 || length > MAX_CHUNK_SIZE
+                        || compressedLength < 0 || compressedLength > maxCompressedLength(length)) {
+                    System.out.println("Invalid chunk record at offset " + position + " of " + pack);
+                    break;
+                }
+                if (position + RECORD_HEADER_SIZE + compressedLength > size) {
+                    break;
+                }
+                byte[] hash = new byte[HASH_SIZE];
+                header.get(0, hash);
+                offsets.put(HexFormat.of().formatHex(hash), position);
+                uniqueBytes += length;
+                position += RECORD_HEADER_SIZE + compressedLength;
+            }
+            if (position < size) {
+                System.out.println("Dropping " + (size - position) + " byte(s) of an incomplete chunk from " + pack);
+                channel.truncate(position);
+            }
+            packSize = position;
+        }
+    }
+
+    /**
+     * Splits a log file into chunks, adds the new chunks to the store, writes the manifest of the log next to it
+     * and deletes the log file.
+     *
+     * @param logFile the uncompressed log file
+     * @return the manifest, {@code <logFile>.chunks}
+     * @throws IOException if the log cannot be read or the chunks or the manifest cannot be written
+     */
+    public Path store(Path logFile) throws IOException {
+        Path manifest = logFile.resolveSibling(logFile.getFileName() + MANIFEST_SUFFIX);
+        MessageDigest digest = sha256();
+        long chunks = 0;
+        long newChunks = 0;
+        long bytes = 0;
+        Files.createDirectories(pack.getParent());
+        storeLock.readLock().lock();
+        try (InputStream in = Files.newInputStream(logFile);
+             FileChannel manifestChannel = FileChannel.open(manifest, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             BufferedWriter out = new BufferedWriter(Channels.newWriter(manifestChannel, StandardCharsets.UTF_8));
+             FileChannel channel = FileChannel.open(pack, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            byte[] chunk = new byte[MAX_CHUNK_SIZE];
+            int length = 0;
+            long hash = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    chunk[length++] = buffer[i];
+                    hash = (hash << 1) + GEAR[buffer[i] & 0xFF];
+                    if ((length >= MIN_CHUNK_SIZE && hash >>> (Long.SIZE - BOUNDARY_BITS) == 0) || length == MAX_CHUNK_SIZE) {
+                        newChunks += put(channel, digest, chunk, length, out) ? 1 : 0;
+                        chunks++;
+                        bytes += length;
+                        length = 0;
+                        hash = 0;
+                    }
+                }
+            }
+            if (length > 0) {
+                newChunks += put(channel, digest, chunk, length, out) ? 1 : 0;
+                chunks++;
+                bytes += length;
+            }
+            // The chunks must be on disk before the manifest, and the manifest before the log is deleted,
+            // since load() drops an incomplete record after a crash
+            channel.force(false);
+            out.flush();
+            manifestChannel.force(false);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        Files.delete(logFile);
+
+        synchronized (this) {
+            logicalBytes += bytes;
+        }
+        System.out.println(String.format(Locale.ROOT, "Stored %s in %d chunk(s), %d new; dedup ratio since start %.2f",
+            logFile.getFileName(), chunks, newChunks, ratio()));
+        return manifest;
+    }
+
+    /**
+     * Adds a chunk to the pack unless it is already stored, and lists it in the manifest.
+     *
+     * @return true if the chunk was new
+     */
+    private boolean put(FileChannel channel, MessageDigest digest, byte[] chunk, int length, BufferedWriter manifest) throws IOException {
+        digest.update(chunk, 0, length);
+        byte[] hash = digest.digest();
+        String key = HexFormat.of().formatHex(hash);
+        manifest.write(key + " " + length);
+        manifest.newLine();
+
+        synchronized (this) {
+            if (touched != null) {
+                touched.add(key);
+            }
+            if (offsets.containsKey(key)) {
+                return false;
+            }
+            Deflater deflater = new Deflater(LogFiles.compressionLevel());
+            byte[] compressed = new byte[maxCompressedLength(length)];
+            int compressedLength;
+            try {
+                deflater.setInput(chunk, 0, length);
+                deflater.finish();
+                compressedLength = deflater.deflate(compressed);
+                if (!deflater.finished()) {
+                    throw new IOException("Log chunk did not fit its compression buffer");
+                }
+            } finally {
+                deflater.end();
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + compressedLength);
+            record.put(hash).putInt(length).putInt(compressedLength).put(compressed, 0, compressedLength);
+            record.flip();
+            writeFully(channel, record, packSize);
+            offsets.put(key, packSize);
+            packSize += RECORD_HEADER_SIZE + compressedLength;
+            uniqueBytes += length;
+            newBytes += length;
+            return true;
+        }
+    }
+
+    /**
+     * @return the size of the buffer a chunk of {@code length} bytes is deflated into, which deflate never exceeds
+     */
+    private static int maxCompressedLength(int length) {
+        return length + length / 1000 + 64;
+    }
+
+    /**
+     * Opens a log that was stored as chunks.
+     *
+     * @param manifest the manifest of the log, possibly inside an archive
+     * @return a stream of the log, reading one chunk at a time
+     * @throws IOException if the manifest or the pack cannot be opened
+     */
+    public InputStream open(Path manifest) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8);
+        try {
+            // The pack and its offsets are taken together, since a sweep may replace both
+            synchronized (this) {
+                return new ChunkInputStream(reader, FileChannel.open(pack, StandardOpenOption.READ), offsets);
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Streams the chunks listed in a manifest. Skipped chunks are passed over by their length in the manifest,
+     * without reading them.
+     */
+    private class ChunkInputStream extends InputStream {
+        private final BufferedReader manifest;
+        private final FileChannel channel;
+        private final Map<String, Long> packOffsets;
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        ChunkInputStream(BufferedReader manifest, FileChannel channel, Map<String, Long> packOffsets) {
+            this.manifest = manifest;
+            this.channel = channel;
+            this.packOffsets = packOffsets;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == chunk.length && !nextChunk()) {
+                return -1;
+            }
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == chunk.length && !nextChunk()) {
+                return -1;
+            }
+            int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            if (count <= 0) {
+                return 0;
+            }
+            long skipped = Math.min(count, chunk.length - position);
+            position += (int) skipped;
+            String line;
+            while (skipped < count && (line = manifest.readLine()) != null) {
+                int space = line.indexOf(' ');
+                int length = Integer.parseInt(line.substring(space + 1));
+                if (skipped + length <= count) {
+                    skipped += length;
+                    continue;
+                }
+                chunk = readChunk(channel, packOffsets, line.substring(0, space), length);
+                position = (int) (count - skipped);
+                skipped = count;
+            }
+            return skipped;
+        }
+
+        /**
+         * @return false at the end of the log
+         */
+        private boolean nextChunk() throws IOException {
+            String line = manifest.readLine();
+            if (line == null) {
+                return false;
+            }
+            int space = line.indexOf(' ');
+            chunk = readChunk(channel, packOffsets, line.substring(0, space), Integer.parseInt(line.substring(space + 1)));
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                manifest.close();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private byte[] readChunk(FileChannel channel, Map<String, Long> packOffsets, String key, int length) throws IOException {
+        Long offset;
+        synchronized (this) {
+            offset = packOffsets.get(key);
+        }
+        if (offset == null) {
+            throw new IOException("Missing log chunk " + key + " in " + pack);
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(channel, header, offset);
+        ByteBuffer compressed = ByteBuffer.allocate(header.getInt(HASH_SIZE + 4));
+        readFully(channel, compressed, offset + RECORD_HEADER_SIZE);
+
+        Inflater inflater = new Inflater();
+        byte[] chunk = new byte[length];
+        try {
+            inflater.setInput(compressed.array());
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                inflated += inflater.inflate(chunk, inflated, length - inflated);
+                if (inflater.needsInput()) {
+                    break;
+                }
+            }
+            if (inflated != length) {
+                throw new IOException("Corrupt log chunk " + key + " in " + pack);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt log chunk " + key + " in " + pack, e);
+        } finally {
+            inflater.end();
+        }
+        return chunk;
+    }
+
+    /**
+     * Starts a collection: from now on every chunk that is stored or reused counts as live in {@link #sweep}.
+     * Waits for the logs that are being stored, whose manifests are complete once this returns.
+     */
+    public void beginCollection() {
+        storeLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                touched = new HashSet<>();
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ends a collection without sweeping, e.g. because the manifests could not all be read.
+     */
+    public synchronized void endCollection() {
+        touched = null;
+    }
+
+    /**
+     * Adds the keys of the chunks a manifest lists to {@code keys}.
+     *
+     * @param manifest a manifest, possibly inside a segment or an archive
+     * @param keys receives the keys of the chunks
+     * @throws IOException if the manifest cannot be read
+     */
+    public static void readKeys(Path manifest, Set<String> keys) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    keys.add(line.substring(0, space));
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the chunks that are neither in {@code live} nor stored or reused since {@link #beginCollection()},
+     * and ends the collection. The live chunks are copied into a new pack while logs are still stored; only the
+     * chunks added meanwhile are copied while the new pack is swapped in.
+     *
+     * @param live the keys of the chunks that the manifests left list
+     * @param pacer limits the rate of the copy
+     * @return the number of chunks that were removed
+     * @throws IOException if the pack cannot be copied or replaced
+     */
+    public int sweep(Set<String> live, Pacer pacer) throws IOException {
+        long snapshotSize;
+        List<Map.Entry<String, Long>> records;
+        synchronized (this) {
+            if (touched == null) {
+                throw new IllegalStateException("No collection of " + pack + " is running");
+            }
+            snapshotSize = packSize;
+            records = new ArrayList<>(offsets.entrySet());
+        }
+        if (records.stream().allMatch(record -> live.contains(record.getKey()))) {
+            endCollection();
+            return 0;
+        }
+        records.sort(Map.Entry.comparingByValue());
+
+        Path compactedFile = pack.resolveSibling(PACK_FILE + COMPACT_SUFFIX);
+        try {
+            Compaction compaction = new Compaction();
+            try (FileChannel in = FileChannel.open(pack, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(compactedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<String, Long> record : records) {
+                    if (live.contains(record.getKey())) {
+                        pacer.acquire(compaction.copy(in, out, record.getKey(), record.getValue()));
+                    }
+                }
+
+                storeLock.writeLock().lock();
+                try {
+                    synchronized (this) {
+                        // Chunks added or reused since the copy started are live as well
+                        List<Map.Entry<String, Long>> current = new ArrayList<>(offsets.entrySet());
+                        current.sort(Map.Entry.comparingByValue());
+                        for (Map.Entry<String, Long> record : current) {
+                            if (!compaction.offsets.containsKey(record.getKey())
+                                    && (record.getValue() >= snapshotSize || touched.contains(record.getKey()))) {
+                                compaction.copy(in, out, record.getKey(), record.getValue());
+                            }
+                        }
+                        out.force(true);
+                        int removed = offsets.size() - compaction.offsets.size();
+                        Files.move(compactedFile, pack, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        offsets = compaction.offsets;
+                        packSize = compaction.size;
+                        uniqueBytes = compaction.uniqueBytes;
+                        touched = null;
+                        System.out.println("Removed " + removed + " unused chunk(s) from " + pack);
+                        return removed;
+                    }
+                } finally {
+                    storeLock.writeLock().unlock();
+                }
+            }
+        } finally {
+            endCollection();
+            Files.deleteIfExists(compactedFile);
+        }
+    }
+
+    /**
+     * A new pack that records are copied into by a sweep.
+     */
+    private static class Compaction {
+        final Map<String, Long> offsets = new HashMap<>();
+        long size;
+        long uniqueBytes;
+
+        /**
+         * Copies the record of a chunk to the end of the new pack, which is where {@code out} is positioned.
+         *
+         * @return the size of the record
+         */
+        long copy(FileChannel in, FileChannel out, String key, long offset) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            readFully(in, header, offset);
+            long recordSize = RECORD_HEADER_SIZE + header.getInt(HASH_SIZE + 4);
+            for (long copied = 0; copied < recordSize; ) {
+                copied += in.transferTo(offset + copied, recordSize - copied, out);
+            }
+            offsets.put(key, size);
+            size += recordSize;
+            uniqueBytes += header.getInt(HASH_SIZE);
+            return recordSize;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of chunk pack");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * @return the size of the logs stored since the server started, before deduplication
+     */
+    public synchronized long logicalBytes() {
+        return logicalBytes;
+    }
+
+    /**
+     * @return the uncompressed size of all distinct chunks in the pack
+     */
+    public synchronized long uniqueBytes() {
+        return uniqueBytes;
+    }
+
+    /**
+     * @return the size of the pack file
+     */
+    public synchronized long packBytes() {
+        return packSize;
+    }
+
+    /**
+     * @return the size of the new chunks added since the server started, before compression
+     */
+    public synchronized long newBytes() {
+        return newBytes;
+    }
+
+    /**
+     * @return the dedup ratio since the server started: the size of the stored logs over the size of the new
+     *         chunks they added, or 1 if no log was stored yet
+     */
+    public synchronized double ratio() {
+        return logicalBytes == 0 ? 1 : (double) logicalBytes / Math.max(1, newBytes);
+    }
+}
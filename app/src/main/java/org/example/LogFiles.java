@@ -0,0 +1,134 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Utility for reading and writing stored log files, which are gzip compressed when their name ends in
+ * {@link #GZIP_SUFFIX}, or stored as chunks in {@link LogChunks} when it ends in {@link LogChunks#MANIFEST_SUFFIX}.
+ * <p>
+ * The compression level is set with the {@code LOG_COMPRESSION_LEVEL} setting (0-9, default 6).
+ * All reads and writes are streamed through fixed-size buffers.
+ * </p>
+ */
+public class LogFiles {
+
+    protected static final String GZIP_SUFFIX = ".gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    /**
+     * A {@link GZIPOutputStream} with a configurable compression level.
+     */
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * @return the configured gzip compression level
+     */
+    public static int compressionLevel() {
+        long level = CiConfig.getLong("LOG_COMPRESSION_LEVEL", DEFAULT_COMPRESSION_LEVEL);
+        return (int) Math.max(0, Math.min(9, level));
+    }
+
+    /**
+     * @param file a log file
+     * @return true if {@code file} is gzip compressed
+     */
+    public static boolean isCompressed(Path file) {
+        return file.getFileName().toString().endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * Opens a log file for reading, decompressing it if needed.
+     *
+     * @param file the log file
+     * @return a stream of the uncompressed contents
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream newInputStream(Path file) throws IOException {
+        if (LogChunks.isManifest(file)) {
+            return LogChunks.shared().open(file);
+        }
+        InputStream in = Files.newInputStream(file);
+        if (isCompressed(file)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return new BufferedInputStream(in, BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a log file for writing, compressing it if its name ends in {@link #GZIP_SUFFIX}.
+     *
+     * @param file the log file
+     * @return a stream writing to the file
+     * @throws IOException if the file cannot be created
+     */
+    public static OutputStream newOutputStream(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (isCompressed(file)) {
+            return new LeveledGZIPOutputStream(out, compressionLevel());
+        }
+        return out;
+    }
+
+    /**
+     * Compresses {@code file} into {@code <file>.gz} and deletes {@code file}.
+     *
+     * @param file the uncompressed log file
+     * @return the compressed log file
+     * @throws IOException if the file cannot be compressed
+     */
+    public static Path compress(Path file) throws IOException {
+        Path compressed = file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+        try (InputStream in = Files.newInputStream(file);
+             OutputStream out = newOutputStream(compressed)) {
+            in.transferTo(out);
+        }
+        Files.delete(file);
+        return compressed;
+    }
+
+    /**
+     * Finds a stored log file, which may have been compressed since it was written.
+     *
+     * @param file the path of the log file as it was written
+     * @return {@code file} if it exists, otherwise {@code <file>.gz} or its chunk manifest if that exists,
+     *         otherwise null
+     */
+    public static Path find(Path file) {
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+        Path compressed = file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+        if (Files.isRegularFile(compressed)) {
+            return compressed;
+        }
+        Path manifest = file.resolveSibling(file.getFileName() + LogChunks.MANIFEST_SUFFIX);
+        return Files.isRegularFile(manifest) ? manifest : null;
+    }
+
+    /**
+     * @param fileName the name of a stored log file
+     * @return the name the log file was written with, before it was compressed or stored as chunks
+     */
+    public static String rawName(String fileName) {
+        for (String suffix : new String[] { GZIP_SUFFIX, LogChunks.MANIFEST_SUFFIX }) {
+            if (fileName.endsWith(suffix)) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return fileName;
+    }
+}
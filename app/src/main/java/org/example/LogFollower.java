@@ -0,0 +1,352 @@
+package org.example;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a log file while a process is writing to it and serves it to any number of watchers.
+ * <p>
+ * Every log file that is being written has one follower. A single background thread reads the new bytes
+ * of all followers that have watchers into a fixed-size window of recent output, and the watchers are served
+ * from that window. Only a watcher that asks for an offset older than the window reads that part from the file
+ * itself, once, before it catches up with the shared window.
+ * </p>
+ * <p>
+ * Once the step has ended, its log file is compressed or chunked when the job is saved, and may then be moved into
+ * a {@link LogSegments} segment, while slow watchers are still draining. Whatever a watcher reads from the file
+ * after that is read from the stored copy instead, see {@link #copyStored(long, OutputStream)}.
+ * </p>
+ */
+public class LogFollower {
+
+    private static final int WINDOW_SIZE = 256 * 1024;
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    private static final Map<Path, LogFollower> ACTIVE = new ConcurrentHashMap<>();
+    private static final Map<LogFollower, Boolean> DRAINING = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService READER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-follower");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        READER.scheduleWithFixedDelay(LogFollower::pollAll, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private final Path logFile;
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_CHUNK_SIZE);
+
+    private volatile FileChannel channel;
+    private long windowEnd;
+    private int watchers;
+    private boolean complete;
+    private boolean drained;
+
+    private LogFollower(Path logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * Marks {@code logFile} as being written, so that watchers can follow it until {@link #end(Path)} is called.
+     *
+     * @param logFile the log file a process is about to write to
+     */
+    public static void begin(Path logFile) {
+        ACTIVE.put(key(logFile), new LogFollower(logFile));
+    }
+
+    /**
+     * Marks {@code logFile} as complete. Watchers receive the remaining output and then their responses end.
+     *
+     * @param logFile the log file the process has finished writing
+     */
+    public static void end(Path logFile) {
+        LogFollower follower = ACTIVE.remove(key(logFile));
+        if (follower != null) {
+            synchronized (follower) {
+                follower.complete = true;
+            }
+            DRAINING.put(follower, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @param logFile a log file
+     * @return the follower of {@code logFile}, or null if the file is not being written
+     */
+    public static LogFollower get(Path logFile) {
+        return ACTIVE.get(key(logFile));
+    }
+
+    /**
+     * @param dir a log directory
+     * @return the log files in {@code dir} that are currently being written
+     */
+    public static List<Path> activeIn(Path dir) {
+        Path absoluteDir = dir.toAbsolutePath().normalize();
+        List<Path> files = new ArrayList<>();
+        for (LogFollower follower : ACTIVE.values()) {
+            if (key(follower.logFile).getParent().equals(absoluteDir)) {
+                files.add(follower.logFile);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static Path key(Path logFile) {
+        return logFile.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Copies a log file from {@code offset} to its current end into {@code out}.
+     * Used for logs that are not being written anymore.
+     *
+     * @param logFile the log file
+     * @param offset the byte offset to start at
+     * @param out the stream to write to
+     * @throws IOException if reading the file or writing the stream fails
+     */
+    public static void copyFrom(Path logFile, long offset, OutputStream out) throws IOException {
+        try (FileChannel file = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            byte[] chunk = new byte[READ_CHUNK_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            long position = offset;
+            int read;
+            while ((read = file.read(buffer, position)) > 0) {
+                out.write(chunk, 0, read);
+                position += read;
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the log from {@code offset} into {@code out} as it grows, flushing after every chunk,
+     * until the log is complete or the watcher goes away.
+     *
+     * @param offset the byte offset to start at
+     * @param out the stream to write to
+     * @throws IOException if writing to {@code out} fails, e.g. because the client disconnected
+     * @throws InterruptedException if the thread is interrupted while waiting for output
+     */
+    public void follow(long offset, OutputStream out) throws IOException, InterruptedException {
+        synchronized (this) {
+            watchers++;
+        }
+        try {
+            byte[] chunk = new byte[READ_CHUNK_SIZE];
+            long position = Math.max(0, offset);
+            while (true) {
+                int length;
+                long catchUpEnd = -1;
+                synchronized (this) {
+                    while (position >= windowEnd && !drained) {
+                        wait();
+                    }
+                    if (position >= windowEnd) {
+                        break;
+                    }
+                    long windowStart = Math.max(0, windowEnd - window.length);
+                    if (position < windowStart) {
+                        catchUpEnd = windowStart;
+                        length = 0;
+                    } else {
+                        length = (int) Math.min(chunk.length, windowEnd - position);
+                        for (int i = 0; i < length; i++) {
+                            chunk[i] = window[(int) ((position + i) % window.length)];
+                        }
+                    }
+                }
+                if (catchUpEnd >= 0) {
+                    try {
+                        length = readFromFile(position, chunk, (int) Math.min(chunk.length, catchUpEnd - position));
+                    } catch (NoSuchFileException e) {
+                        // The file is only removed once the log is complete and stored, which has the rest of it
+                        copyStored(position, out);
+                        out.flush();
+                        return;
+                    }
+                    if (length == 0) {
+                        break;
+                    }
+                }
+                out.write(chunk, 0, length);
+                out.flush();
+                position += length;
+            }
+            // The log may have been completed before this watcher arrived, so anything it did not get from
+            // the window is read from the file, or from the copy it was stored as
+            copyStored(position, out);
+            out.flush();
+        } finally {
+            synchronized (this) {
+                watchers--;
+            }
+        }
+    }
+
+    /**
+     * Copies the log from {@code position} to its end: from the file while it exists, otherwise from the compressed
+     * or chunked copy it was stored as, which may since have been moved into an archive or a segment.
+     */
+    private void copyStored(long position, OutputStream out) throws IOException {
+        try {
+            Path stored = LogFiles.find(logFile);
+            if (stored != null) {
+                copyDecoded(stored, position, out);
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            // Moved into a segment after it was found
+        }
+        LogRetention.withArchivedFile(logFile, file -> {
+            Path archived = LogFiles.find(file);
+            if (archived != null) {
+                copyDecoded(archived, position, out);
+            }
+        });
+    }
+
+    private static void copyDecoded(Path storedFile, long position, OutputStream out) throws IOException {
+        if (storedFile.getFileSystem() == FileSystems.getDefault() && !LogFiles.isCompressed(storedFile)
+                && !LogChunks.isManifest(storedFile)) {
+            copyFrom(storedFile, position, out);
+            return;
+        }
+        try (InputStream in = LogFiles.newInputStream(storedFile)) {
+            in.skipNBytes(position);
+            in.transferTo(out);
+        } catch (EOFException e) {
+            // The position is past the end of the log, so there is nothing to copy
+        }
+    }
+
+    /**
+     * Reads a range that has already left the shared window directly from the file.
+     */
+    private int readFromFile(long position, byte[] chunk, int length) throws IOException {
+        try (FileChannel file = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+            int total = 0;
+            while (buffer.hasRemaining()) {
+                int read = file.read(buffer, position + total);
+                if (read <= 0) {
+                    break;
+                }
+                total += read;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Reads new output for every follower with watchers, including followers that were completed
+     * but still have unread output.
+     */
+    private static void pollAll() {
+        for (LogFollower follower : ACTIVE.values()) {
+            follower.poll();
+        }
+        for (LogFollower follower : DRAINING.keySet()) {
+            follower.poll();
+        }
+    }
+
+    private void poll() {
+        boolean isComplete;
+        boolean unwatched;
+        synchronized (this) {
+            if (drained) {
+                DRAINING.remove(this);
+                return;
+            }
+            isComplete = complete;
+            unwatched = watchers == 0;
+            if (unwatched && !isComplete) {
+                return;
+            }
+        }
+        if (unwatched) {
+            // Every watcher left before the step completed, nothing is read anymore
+            markDrained();
+            return;
+        }
+
+        try {
+            if (channel == null) {
+                if (!Files.exists(logFile)) {
+                    if (isComplete) {
+                        markDrained();
+                    }
+                    return;
+                }
+                channel = FileChannel.open(logFile, StandardOpenOption.READ);
+            }
+
+            int read;
+            while ((read = channel.read(readBuffer, windowEnd)) > 0) {
+                synchronized (this) {
+                    for (int i = 0; i < read; i++) {
+                        window[(int) ((windowEnd + i) % window.length)] = readBuffer.get(i);
+                    }
+                    windowEnd += read;
+                    notifyAll();
+                }
+                readBuffer.clear();
+            }
+
+            if (isComplete) {
+                markDrained();
+            }
+        } catch (NoSuchFileException e) {
+            markDrained();
+        } catch (IOException e) {
+            e.printStackTrace();
+            markDrained();
+        }
+    }
+
+    /**
+     * @return true if the log file is held open for the watchers
+     */
+    protected boolean isOpen() {
+        FileChannel current = channel;
+        return current != null && current.isOpen();
+    }
+
+    private void markDrained() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        synchronized (this) {
+            drained = true;
+            notifyAll();
+        }
+        DRAINING.remove(this);
+    }
+}
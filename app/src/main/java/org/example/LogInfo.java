@@ -1,12 +1,249 @@
 package org.example;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ A class for the stored information of a CI job. The logs are either inline or in a separate log file
+ next to the JSON file.
+ <p>
+ The stored JSON is read with a streaming parser: {@link #readMetadata(Path)} reads every field except the
+ inline logs, which are only read on demand by {@link #openInlineLog(Path, String)}. Jobs stored before logs
+ were streamed to files hold their complete output inline, so inline logs are decoded as they are read and
+ never held in memory as a whole.
+ </p>
+*/
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class LogInfo {
     public String timestamp;
     public String commitIdentifier;
+    public String branch;
+    public long durationMillis;
     
     public String buildStatus;
     public String buildLog;
+    public String buildLogFile;
     
     public String testStatus;
     public String testLog;
+    public String testLogFile;
+    public String testResultsFile;
+    /** The ID of the trace of the job, see {@link Tracing}; null for jobs stored before tracing. */
+    public String traceId;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int SLICE_SIZE = 8 * 1024;
+
+    /**
+     * Reads the stored information of a job without its inline logs, whose values are skipped
+     * without being buffered. {@link #buildLog} and {@link #testLog} are left null.
+     *
+     * @param file the JSON file of the job
+     * @return the stored information
+     * @throws IOException if the file cannot be read or is not a JSON object
+     */
+    public static LogInfo readMetadata(Path file) throws IOException {
+        LogInfo info = new LogInfo();
+        try (JsonParser parser = JSON_FACTORY.createParser(Files.newInputStream(file))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not a JSON object: " + file);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "timestamp":
+                        info.timestamp = parser.getValueAsString();
+                        break;
+                    case "commitIdentifier":
+                        info.commitIdentifier = parser.getValueAsString();
+                        break;
+                    case "branch":
+                        info.branch = parser.getValueAsString();
+                        break;
+                    case "durationMillis":
+                        info.durationMillis = parser.getValueAsLong();
+                        break;
+                    case "buildStatus":
+                        info.buildStatus = parser.getValueAsString();
+                        break;
+                    case "buildLogFile":
+                        info.buildLogFile = parser.getValueAsString();
+                        break;
+                    case "testStatus":
+                        info.testStatus = parser.getValueAsString();
+                        break;
+                    case "testLogFile":
+                        info.testLogFile = parser.getValueAsString();
+                        break;
+                    case "testResultsFile":
+                        info.testResultsFile = parser.getValueAsString();
+                        break;
+                    case "traceId":
+                        info.traceId = parser.getValueAsString();
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Writes the value of an inline log field of a stored job to {@code out}, in slices of at most
+     * {@value #SLICE_SIZE} characters.
+     *
+     * @param file the JSON file of the job
+     * @param field the name of the inline log field, {@code buildLog} or {@code testLog}
+     * @param out the writer to copy the log to
+     * @return true if the field was found and had a value
+     * @throws IOException if the file cannot be read or writing fails
+     */
+    public static boolean copyInlineLog(Path file, String field, Writer out) throws IOException {
+        try (Reader log = openInlineLog(file, field)) {
+            if (log == null) {
+                return false;
+            }
+            char[] slice = new char[SLICE_SIZE];
+            int read;
+            while ((read = log.read(slice)) != -1) {
+                out.write(slice, 0, read);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Opens the value of an inline log field of a stored job. The parser only finds where the value starts,
+     * skipping the other values without buffering them; the value is then decoded from the file as it is read.
+     *
+     * @param file the JSON file of the job
+     * @param field the name of the inline log field, {@code buildLog} or {@code testLog}
+     * @return a reader of the log, or null if the field was not found or had no value
+     * @throws IOException if the file cannot be read
+     */
+    public static Reader openInlineLog(Path file, String field) throws IOException {
+        long offset = -1;
+        try (JsonParser parser = JSON_FACTORY.createParser(Files.newInputStream(file))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals(field)) {
+                    if (value != JsonToken.VALUE_STRING) {
+                        return null;
+                    }
+                    offset = parser.currentTokenLocation().getByteOffset();
+                    break;
+                }
+                parser.skipChildren();
+            }
+        }
+        if (offset < 0) {
+            return null;
+        }
+        InputStream in = Files.newInputStream(file);
+        try {
+            in.skipNBytes(offset);
+            Reader raw = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), SLICE_SIZE);
+            if (raw.read() != '"') {
+                throw new IOException("No string value of " + field + " at byte " + offset + " of " + file);
+            }
+            return new JsonStringReader(raw);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes a JSON string value from the character after its opening quote up to its closing quote.
+     */
+    private static class JsonStringReader extends Reader {
+        private final Reader raw;
+        private boolean ended;
+
+        JsonStringReader(Reader raw) {
+            this.raw = raw;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            int count = 0;
+            while (count < length) {
+                int c = next();
+                if (c == '"') {
+                    ended = true;
+                    break;
+                }
+                if (c == '\\') {
+                    c = unescape();
+                }
+                buffer[offset + count++] = (char) c;
+            }
+            return count == 0 && ended ? -1 : count;
+        }
+
+        private int next() throws IOException {
+            int c = raw.read();
+            if (c == -1) {
+                throw new EOFException("Unterminated JSON string");
+            }
+            return c;
+        }
+
+        private int unescape() throws IOException {
+            int c = next();
+            switch (c) {
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0) {
+                            throw new IOException("Invalid unicode escape in JSON string");
+                        }
+                        code = code << 4 | digit;
+                    }
+                    return code;
+                default:
+                    // \", \\ and \/
+                    return c;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            raw.close();
+        }
+    }
 }
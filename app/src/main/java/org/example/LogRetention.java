@@ -0,0 +1,495 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Background service that deletes old builds and compacts old logs into archives.
+ * <p>
+ * Every {@code RETENTION_INTERVAL_MINUTES} (default 60) the builds of each repository are checked against its
+ * rules (all per repository, 0 disables a rule):
+ *   - {@code RETENTION_KEEP_BUILDS}: keep the last N builds.
+ *   - {@code RETENTION_KEEP_DAYS}: keep the builds of the last M days.
+ *   - {@code RETENTION_KEEP_FAILURE_DAYS}: keep failed builds for this many days.
+ *   - {@code RETENTION_ARCHIVE_AFTER_DAYS}: move the files of builds older than this into a zip archive per month.
+ * The latest build of every branch is always kept. Builds are only deleted if {@code RETENTION_KEEP_BUILDS} or
+ * {@code RETENTION_KEEP_DAYS} is set, and a build is kept if any rule keeps it. Archived builds are served
+ * from their archive (see {@link #withArchivedFile(Path, ArchivedFileHandler)}), and so are the builds in
+ * {@link LogSegments}, which are deleted from their segments but never archived again.
+ * </p>
+ * <p>
+ * The service runs on one low-priority thread, handles at most {@value #BATCH_SIZE} builds per repository and
+ * run, and throttles its reads and writes to {@code RETENTION_MAX_BYTES_PER_SECOND} (default 4 MB/s), so it
+ * never competes with running builds or page views for long.
+ * </p>
+ */
+public class LogRetention {
+
+    protected static final String ARCHIVE_PREFIX = "archive-";
+    protected static final String ARCHIVE_SUFFIX = ".zip";
+
+    private static final int BATCH_SIZE = 200;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long DEFAULT_INTERVAL_MINUTES = 60;
+    private static final long DEFAULT_MAX_BYTES_PER_SECOND = 4L * 1024 * 1024;
+    private static final String REWRITE_SUFFIX = ".rewrite";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    /** Bytes a file deletion is counted as when throttling. */
+    private static final long DELETE_COST_BYTES = 4 * 1024;
+
+    private static final DateTimeFormatter ARCHIVE_MONTH = DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * Handles a file of an archived build, which is only readable while its archive is open.
+     */
+    public interface ArchivedFileHandler {
+        void handle(Path file) throws IOException;
+    }
+
+    /**
+     * The retention rules of a repository.
+     */
+    public static class Rules {
+        public long keepBuilds;
+        public long keepDays;
+        public long keepFailureDays;
+        public long archiveAfterDays;
+
+        public static Rules forRepository(String repository) {
+            Rules rules = new Rules();
+            rules.keepBuilds = CiConfig.getLong("RETENTION_KEEP_BUILDS", repository, 0);
+            rules.keepDays = CiConfig.getLong("RETENTION_KEEP_DAYS", repository, 0);
+            rules.keepFailureDays = CiConfig.getLong("RETENTION_KEEP_FAILURE_DAYS", repository, 0);
+            rules.archiveAfterDays = CiConfig.getLong("RETENTION_ARCHIVE_AFTER_DAYS", repository, 0);
+            return rules;
+        }
+    }
+
+    /**
+     * The builds of a repository to delete and to archive, by archive name.
+     */
+    public static class Plan {
+        public List<BuildIndex.Entry> delete = new ArrayList<>();
+        public Map<String, List<BuildIndex.Entry>> archive = new LinkedHashMap<>();
+    }
+
+    /**
+     * Limits the rate of reads, writes and deletions to a number of bytes per second by sleeping.
+     */
+    private static class Throttle implements LogChunks.Pacer {
+        private final long bytesPerSecond;
+        private final long startNanos = System.nanoTime();
+        private long bytes;
+
+        Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void acquire(long count) throws IOException {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            bytes += count;
+            long aheadNanos = bytes * 1_000_000_000L / bytesPerSecond - (System.nanoTime() - startNanos);
+            if (aheadNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts running the retention rules in the background, once per interval.
+     *
+     * @param logsRoot the root of the log directories
+     */
+    public static synchronized void start(Path logsRoot) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-retention");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long interval = Math.max(1, CiConfig.getLong("RETENTION_INTERVAL_MINUTES", DEFAULT_INTERVAL_MINUTES));
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce(logsRoot);
+            } catch (IOException | RuntimeException e) {
+                // Keep the schedule going, the next run retries
+                e.printStackTrace();
+            }
+        }, 1, interval, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Applies the retention rules to every repository directory ({@code <owner>/<repo>}) under {@code logsRoot}.
+     *
+     * @param logsRoot the root of the log directories
+     * @throws IOException if a directory cannot be listed
+     */
+    public static void runOnce(Path logsRoot) throws IOException {
+        if (!Files.isDirectory(logsRoot)) {
+            return;
+        }
+        Throttle throttle = new Throttle(CiConfig.getLong("RETENTION_MAX_BYTES_PER_SECOND", DEFAULT_MAX_BYTES_PER_SECOND));
+        boolean deleted = false;
+        for (Path repoDir : repositoryDirs(logsRoot)) {
+            String repository = repoDir.getParent().getFileName() + "/" + repoDir.getFileName();
+            Plan plan = apply(repoDir, Rules.forRepository(repository), System.currentTimeMillis(), throttle);
+            deleted |= !plan.delete.isEmpty();
+        }
+        if (deleted && LogChunks.enabled()) {
+            collectChunks(logsRoot, throttle);
+        }
+    }
+
+    /**
+     * @return the repository directories ({@code <owner>/<repo>}) under {@code logsRoot}, sorted
+     */
+    private static List<Path> repositoryDirs(Path logsRoot) throws IOException {
+        List<Path> owners;
+        try (Stream<Path> files = Files.list(logsRoot)) {
+            owners = files.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        List<Path> repoDirs = new ArrayList<>();
+        for (Path owner : owners) {
+            try (Stream<Path> files = Files.list(owner)) {
+                files.filter(Files::isDirectory).sorted().forEach(repoDirs::add);
+            }
+        }
+        return repoDirs;
+    }
+
+    /**
+     * Removes the log chunks of deleted builds from the {@link LogChunks} pack: reads the keys of the manifests of
+     * all builds that are left, loose ones first and then those in segments and archives, and sweeps the rest.
+     * <p>
+     * A build that is moved from loose files into a segment while the manifests are read is still found, since
+     * segments are only read after the loose files, and builds are only appended to segments before their loose
+     * files are deleted. Builds saved meanwhile are kept by the collection itself.
+     * </p>
+     *
+     * @param logsRoot the root of the log directories
+     * @param throttle limits the reads of the manifests and the copy of the pack
+     * @throws IOException if a manifest or the pack cannot be read
+     */
+    private static void collectChunks(Path logsRoot, Throttle throttle) throws IOException {
+        LogChunks chunks = LogChunks.shared();
+        chunks.beginCollection();
+        try {
+            Set<String> live = new HashSet<>();
+            for (Path repoDir : repositoryDirs(logsRoot)) {
+                List<Path> manifests;
+                try (Stream<Path> files = Files.list(repoDir)) {
+                    manifests = files.filter(LogChunks::isManifest).sorted().collect(Collectors.toList());
+                }
+                for (Path manifest : manifests) {
+                    try {
+                        throttle.acquire(Files.size(manifest));
+                        LogChunks.readKeys(manifest, live);
+                    } catch (NoSuchFileException e) {
+                        // Moved into a segment, possibly a new one, so the zip files are only listed now
+                    }
+                }
+                List<Path> zipFiles;
+                try (Stream<Path> files = Files.list(repoDir)) {
+                    zipFiles = files.filter(file -> LogSegments.isSegment(file) || isArchive(file)).sorted().collect(Collectors.toList());
+                }
+                for (Path zipFile : zipFiles) {
+                    String name = zipFile.getFileName().toString();
+                    try (FileSystem zip = LogSegments.forDir(repoDir).open(name);
+                         Stream<Path> files = Files.list(zip.getPath("/"))) {
+                        for (Path manifest : (Iterable<Path>) files.filter(LogChunks::isManifest)::iterator) {
+                            throttle.acquire(Files.size(manifest));
+                            LogChunks.readKeys(manifest, live);
+                        }
+                    }
+                }
+            }
+            chunks.sweep(live, throttle);
+        } finally {
+            chunks.endCollection();
+        }
+    }
+
+    /**
+     * Decides which builds to delete and which to archive.
+     *
+     * @param entries the builds of a repository, oldest first
+     * @param rules the retention rules of the repository
+     * @param nowMillis the current time in ms since the epoch
+     * @return the builds to delete and to archive, at most {@value #BATCH_SIZE} in total
+     */
+    public static Plan plan(List<BuildIndex.Entry> entries, Rules rules, long nowMillis) {
+        Plan plan = new Plan();
+        boolean deleting = rules.keepBuilds > 0 || rules.keepDays > 0;
+        Set<String> branches = new HashSet<>();
+        List<BuildIndex.Entry> toArchive = new ArrayList<>();
+
+        for (int rank = 0; rank < entries.size(); rank++) {
+            BuildIndex.Entry entry = entries.get(entries.size() - 1 - rank);
+            long ageMillis = nowMillis - entry.epochMillis;
+            boolean latestOfBranch = branches.add(String.valueOf(entry.branch));
+            boolean failed = !"SUCCESS".equals(entry.buildStatus) || !"SUCCESS".equals(entry.testStatus);
+
+            boolean keep = !deleting
+                || latestOfBranch
+                || (rules.keepBuilds > 0 && rank < rules.keepBuilds)
+                || (rules.keepDays > 0 && ageMillis < rules.keepDays * DAY_MILLIS)
+                || (failed && rules.keepFailureDays > 0 && ageMillis < rules.keepFailureDays * DAY_MILLIS);
+            if (!keep) {
+                plan.delete.add(entry);
+            }
+            else if (entry.archive == null && rules.archiveAfterDays > 0 && ageMillis >= rules.archiveAfterDays * DAY_MILLIS) {
+                toArchive.add(entry);
+            }
+        }
+
+        // Oldest first, so an interrupted run continues where it stopped
+        plan.delete.sort((a, b) -> Long.compare(a.epochMillis, b.epochMillis));
+        if (plan.delete.size() > BATCH_SIZE) {
+            plan.delete = new ArrayList<>(plan.delete.subList(0, BATCH_SIZE));
+        }
+        toArchive.sort((a, b) -> Long.compare(a.epochMillis, b.epochMillis));
+        for (BuildIndex.Entry entry : toArchive.subList(0, Math.min(toArchive.size(), BATCH_SIZE - plan.delete.size()))) {
+            String archive = ARCHIVE_PREFIX + ARCHIVE_MONTH.format(Instant.ofEpochMilli(entry.epochMillis)) + ARCHIVE_SUFFIX;
+            plan.archive.computeIfAbsent(archive, name -> new ArrayList<>()).add(entry);
+        }
+        return plan;
+    }
+
+    /**
+     * Applies the retention rules to the builds of one repository.
+     *
+     * @param dir the log directory of the repository
+     * @param rules the retention rules of the repository
+     * @param nowMillis the current time in ms since the epoch
+     * @return the plan that was applied
+     * @throws IOException if a build cannot be deleted or archived
+     */
+    public static Plan apply(Path dir, Rules rules, long nowMillis) throws IOException {
+        return apply(dir, rules, nowMillis, new Throttle(0));
+    }
+
+    private static Plan apply(Path dir, Rules rules, long nowMillis, Throttle throttle) throws IOException {
+        BuildIndex index = BuildIndex.forDir(dir);
+        Plan plan = plan(index.range(0, index.size()), rules, nowMillis);
+
+        if (!plan.delete.isEmpty()) {
+            // Remove the builds from the index first, so they are never listed without their files
+            index.remove(plan.delete);
+            Map<String, List<BuildIndex.Entry>> byArchive = new LinkedHashMap<>();
+            for (BuildIndex.Entry entry : plan.delete) {
+                if (entry.archive == null) {
+                    for (Path file : buildFiles(dir, entry.logFile)) {
+                        throttle.acquire(DELETE_COST_BYTES);
+                        Files.deleteIfExists(file);
+                    }
+                } else {
+                    byArchive.computeIfAbsent(entry.archive, name -> new ArrayList<>()).add(entry);
+                }
+            }
+            for (Map.Entry<String, List<BuildIndex.Entry>> archive : byArchive.entrySet()) {
+                deleteFromArchive(dir, archive.getKey(), archive.getValue(), throttle);
+            }
+            System.out.println("Retention " + dir + ": deleted " + plan.delete.size() + " build(s)");
+        }
+
+        for (Map.Entry<String, List<BuildIndex.Entry>> archive : plan.archive.entrySet()) {
+            addToArchive(dir, archive.getKey(), archive.getValue(), throttle);
+            index.setArchive(archive.getValue(), archive.getKey());
+            for (BuildIndex.Entry entry : archive.getValue()) {
+                for (Path file : buildFiles(dir, entry.logFile)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            System.out.println("Retention " + dir + ": archived " + archive.getValue().size() + " build(s) in " + archive.getKey());
+        }
+        return plan;
+    }
+
+    /**
+     * @param file a file in a log directory
+     * @return true if {@code file} is a monthly archive
+     */
+    private static boolean isArchive(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(ARCHIVE_PREFIX) && name.endsWith(ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * @param dir the directory of the build, or the root of its archive
+     * @param logFile the name of the JSON log of the build
+     * @return the files of the build that exist in {@code dir}: its JSON log, its (possibly compressed) logs and
+     *         their overflow files
+     */
+    protected static List<Path> buildFiles(Path dir, String logFile) throws IOException {
+        String id = logFile.substring(0, logFile.length() - ".json".length());
+        List<Path> files = new ArrayList<>();
+        for (String suffix : new String[] { Utils.BUILD_LOG_SUFFIX, Utils.TEST_LOG_SUFFIX, TestResults.TEST_RESULTS_SUFFIX }) {
+            Path file = LogFiles.find(dir.resolve(id + suffix));
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        for (String suffix : new String[] { Utils.BUILD_LOG_SUFFIX, Utils.TEST_LOG_SUFFIX }) {
+            Path overflow = CappedLogOutput.overflowFile(dir.resolve(id + suffix));
+            if (Files.isRegularFile(overflow)) {
+                files.add(overflow);
+            }
+        }
+        // The JSON log goes last, so a build whose deletion was interrupted can still be found
+        Path jsonFile = dir.resolve(logFile);
+        if (Files.exists(jsonFile)) {
+            files.add(jsonFile);
+        }
+        return files;
+    }
+
+    /**
+     * Appends the files of builds to a zip archive, creating it if needed. Every build is appended on its own, after
+     * the throttle allowed its size, and the records already in the archive are never rewritten.
+     */
+    private static void addToArchive(Path dir, String archive, List<BuildIndex.Entry> entries, Throttle throttle) throws IOException {
+        LogSegments store = LogSegments.forDir(dir);
+        for (BuildIndex.Entry entry : entries) {
+            List<Path> files = buildFiles(dir, entry.logFile);
+            long size = 0;
+            for (Path file : files) {
+                size += Files.size(file);
+            }
+            throttle.acquire(size);
+            store.appendTo(archive, files);
+        }
+    }
+
+    /**
+     * Deletes the files of builds from a zip archive or a segment, and the file itself once it is empty.
+     * <p>
+     * Deleting from a zip file rewrites all of it, so the file is sealed against appends and rewritten as a copy,
+     * with every byte read and written counted by the throttle. The store of the directory is only locked while the
+     * copy is swapped in, so builds are saved into new segments meanwhile and readers keep reading the old file.
+     * </p>
+     */
+    private static void deleteFromArchive(Path dir, String archive, List<BuildIndex.Entry> entries, Throttle throttle) throws IOException {
+        Path file = dir.resolve(archive);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        LogSegments store = LogSegments.forDir(dir);
+        store.seal(archive);
+        Path copy = dir.resolve(archive + REWRITE_SUFFIX);
+        try {
+            copyThrottled(file, copy, throttle);
+            boolean empty;
+            try (FileSystem zip = FileSystems.newFileSystem(copy)) {
+                Path root = zip.getPath("/");
+                for (BuildIndex.Entry entry : entries) {
+                    for (Path archived : buildFiles(root, entry.logFile)) {
+                        Files.delete(archived);
+                    }
+                }
+                try (Stream<Path> files = Files.list(root)) {
+                    empty = files.findAny().isEmpty();
+                }
+                // The copy is written again when it is closed
+                throttle.acquire(Files.size(copy));
+            }
+            store.replace(archive, empty ? null : copy);
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    /**
+     * Copies a file, at most as fast as the throttle allows. A copy left behind by an interrupted run is replaced.
+     */
+    private static void copyThrottled(Path source, Path target, Throttle throttle) throws IOException {
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                throttle.acquire(read);
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Serves a file of an archived build: finds the archive of the build in its {@link BuildIndex}, opens it and
+     * passes the file inside it to {@code handler}.
+     *
+     * @param file the path of the file as it was before it was archived, e.g. {@code logs/o/r/<ts>.build.log}
+     * @param handler handles the file inside the archive, which may need {@link LogFiles#find(Path)} if it was compressed
+     * @return true if the build is archived and {@code handler} was called
+     * @throws IOException if the archive cannot be read or the handler fails
+     */
+    public static boolean withArchivedFile(Path file, ArchivedFileHandler handler) throws IOException {
+        Path dir = file.getParent();
+        String logFile = jsonLogName(file.getFileName().toString());
+        if (dir == null || logFile == null || !Files.isDirectory(dir)) {
+            return false;
+        }
+        // Archived builds are always recorded in a stored index, so a 404 never needs to build one
+        BuildIndex index = BuildIndex.existing(dir);
+        BuildIndex.Entry entry = index == null ? null : index.find(logFile);
+        if (entry == null || entry.archive == null || !Files.isRegularFile(dir.resolve(entry.archive))) {
+            return false;
+        }
+        // A segment's central directory is rewritten when builds are appended, see LogSegments
+        try (FileSystem zip = LogSegments.forDir(dir).open(entry.archive)) {
+            handler.handle(zip.getPath("/").resolve(file.getFileName().toString()));
+        }
+        return true;
+    }
+
+    /**
+     * @param fileName the name of a file of a build
+     * @return the name of the JSON log of the build, or null if {@code fileName} is not a file of a build
+     */
+    protected static String jsonLogName(String fileName) {
+        String name = LogFiles.rawName(fileName);
+        // The overflow files of the logs go first, see buildFiles
+        String[] suffixes = {
+            ".build" + CappedLogOutput.OVERFLOW_LOG_SUFFIX, ".test" + CappedLogOutput.OVERFLOW_LOG_SUFFIX,
+            TestResults.TEST_RESULTS_SUFFIX, Utils.BUILD_LOG_SUFFIX, Utils.TEST_LOG_SUFFIX, ".json"
+        };
+        for (String suffix : suffixes) {
+            if (name.endsWith(suffix)) {
+                return name.substring(0, name.length() - suffix.length()) + ".json";
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,781 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Embedded full-text index of the build and test logs of one repository, stored in {@link #SEARCH_DIR} in its
+ * log directory.
+ * <p>
+ * The index is an inverted index split into immutable segment files. Each segment maps every token (a run of
+ * letters, digits and underscores, lower-cased) to the builds and the line numbers it occurs on, at most
+ * {@value #MAX_LINES_PER_POSTING} lines per build and step. A segment file holds:
+ *   - a header with its level and the JSON log names of its builds,
+ *   - the postings of every token, in token order,
+ *   - the sorted token dictionary with the offset of the postings of each token,
+ *   - a footer with the offset of the dictionary.
+ * The dictionaries are kept in memory, postings are read from disk when searching.
+ * </p>
+ * <p>
+ * Saved builds are indexed on a background thread, one new level 0 segment at a time. Whenever a level has
+ * {@value #MERGE_FACTOR} segments they are merged into one segment of the next level, dropping builds that were
+ * deleted in the meantime, so the number of segments grows logarithmically with history. Builds saved before
+ * the index existed are indexed in the background the first time the index of their directory is opened.
+ * </p>
+ */
+public class LogSearchIndex {
+
+    protected static final String SEARCH_DIR = "search";
+
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final int MAGIC = 0x4c534958;
+    private static final int MERGE_FACTOR = 10;
+    private static final int BACKFILL_BATCH_SIZE = 50;
+    private static final int MAX_LINES_PER_POSTING = 5;
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int MAX_SNIPPETS_PER_BUILD = 3;
+    private static final int MAX_SNIPPET_LENGTH = 300;
+    private static final String[] STEPS = { "build", "test" };
+
+    private static final Map<Path, LogSearchIndex> INDEXES = new ConcurrentHashMap<>();
+    private static final ExecutorService INDEXER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * A build that matches a search, with the matching lines of its logs.
+     */
+    public static class Hit {
+        public String logFile;
+        public String timestamp;
+        public String commitSha;
+        public String branch;
+        public String status;
+        public List<Snippet> snippets = new ArrayList<>();
+    }
+
+    /**
+     * A line of a log that matches a search.
+     */
+    public static class Snippet {
+        public String step;
+        public int line;
+        public String text;
+    }
+
+    /**
+     * A loaded segment: its builds and its token dictionary.
+     * <p>
+     * Searches read the postings of the segments they started with, so a segment that was merged away is only
+     * deleted once the last search reading it has released it.
+     * </p>
+     */
+    private static class Segment {
+        Path file;
+        int level;
+        String[] docs;
+        String[] terms;
+        long[] offsets;
+        private int readers;
+        private boolean retired;
+
+        synchronized void acquire() {
+            readers++;
+        }
+
+        synchronized void release() throws IOException {
+            if (--readers == 0 && retired) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        synchronized void retire() throws IOException {
+            retired = true;
+            if (readers == 0) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * The lines a token occurs on in one step of one build.
+     */
+    private static class Posting {
+        int doc;
+        int step;
+        int[] lines;
+    }
+
+    /**
+     * Counts the bytes written, to know the offsets of the postings in a segment file that is being written.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private final Path logDir;
+    private final Path dir;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Set<String> indexed = new HashSet<>();
+    private long nextGeneration;
+
+    private LogSearchIndex(Path logDir) {
+        this.logDir = logDir;
+        this.dir = logDir.resolve(SEARCH_DIR);
+    }
+
+    /**
+     * Returns the search index of a log directory, loading its segments the first time. If builds of the
+     * directory are not indexed yet, they are indexed in the background. A directory that does not exist gets
+     * an empty index that is not kept, as any repository name can be searched for.
+     *
+     * @param logDir the log directory of a repository
+     * @return the search index of {@code logDir}
+     * @throws IOException if the segments cannot be listed
+     */
+    public static LogSearchIndex forDir(Path logDir) throws IOException {
+        if (!Files.isDirectory(logDir)) {
+            return new LogSearchIndex(logDir);
+        }
+        LogSearchIndex index;
+        try {
+            index = INDEXES.computeIfAbsent(logDir.toAbsolutePath().normalize(), key -> {
+                try {
+                    LogSearchIndex loaded = new LogSearchIndex(logDir);
+                    loaded.load();
+                    loaded.backfillLater();
+                    return loaded;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return index;
+    }
+
+    /**
+     * Indexes a saved build on the background indexer thread.
+     *
+     * @param logDir the log directory of the build
+     * @param logFile the name of the JSON log of the build
+     */
+    public static void indexLater(Path logDir, String logFile) {
+        INDEXER.submit(() -> {
+            try {
+                forDir(logDir).index(List.of(logFile));
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void backfillLater() throws IOException {
+        BuildIndex buildIndex = BuildIndex.forDir(logDir);
+        List<String> missing = new ArrayList<>();
+        synchronized (this) {
+            for (BuildIndex.Entry entry : buildIndex.range(0, buildIndex.size())) {
+                if (entry.archive == null && !indexed.contains(entry.logFile)) {
+                    missing.add(entry.logFile);
+                }
+            }
+        }
+        for (int i = 0; i < missing.size(); i += BACKFILL_BATCH_SIZE) {
+            List<String> batch = missing.subList(i, Math.min(missing.size(), i + BACKFILL_BATCH_SIZE));
+            INDEXER.submit(() -> {
+                try {
+                    index(batch);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+                // Left over from an interrupted write or merge
+                Files.deleteIfExists(file);
+                continue;
+            }
+            try {
+                Segment segment = readSegment(file);
+                segments.add(segment);
+                indexed.addAll(Arrays.asList(segment.docs));
+                nextGeneration = Math.max(nextGeneration, generation(file) + 1);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Skipping unreadable search segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static long generation(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.indexOf('-', SEGMENT_PREFIX.length())));
+    }
+
+    /**
+     * Splits text into lower-cased tokens of letters, digits and underscores.
+     *
+     * @param text the text to split
+     * @return the tokens, in order, without duplicates
+     */
+    public static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_');
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                int length = i - start;
+                if (length >= MIN_TOKEN_LENGTH && length <= MAX_TOKEN_LENGTH) {
+                    tokens.add(text.substring(start, i).toLowerCase());
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Indexes saved builds into one new segment, skipping builds that are already indexed, and merges
+     * segments if a level is full.
+     *
+     * @param logFiles the names of the JSON logs of the builds
+     * @throws IOException if a log cannot be read or the segment cannot be written
+     */
+    public synchronized void index(List<String> logFiles) throws IOException {
+        List<String> docs = new ArrayList<>();
+        TreeMap<String, List<Posting>> postings = new TreeMap<>();
+        for (String logFile : logFiles) {
+            if (indexed.contains(logFile)) {
+                continue;
+            }
+            Path jsonFile = logDir.resolve(logFile);
+            int doc = docs.size();
+            if (Files.isRegularFile(jsonFile)) {
+                indexBuild(jsonFile, doc, postings);
+                docs.add(logFile);
+            } else if (LogRetention.withArchivedFile(jsonFile, archived -> indexBuild(archived, doc, postings))) {
+                // Archived, or saved into a log segment before it was indexed
+                docs.add(logFile);
+            }
+        }
+        if (docs.isEmpty()) {
+            return;
+        }
+
+        Files.createDirectories(dir);
+        Path file = dir.resolve(SEGMENT_PREFIX + nextGeneration++ + "-0" + SEGMENT_SUFFIX);
+        writeSegment(file, 0, docs, postings.keySet(), postings::get);
+        segments.add(readSegment(file));
+        indexed.addAll(docs);
+        mergeFullLevels();
+    }
+
+    private static void indexBuild(Path jsonFile, int doc, Map<String, List<Posting>> postings) throws IOException {
+        if (!Files.isRegularFile(jsonFile)) {
+            return;
+        }
+        LogInfo info = LogInfo.readMetadata(jsonFile);
+        String[] logFileNames = { info.buildLogFile, info.testLogFile };
+        String[] inlineFields = { "buildLog", "testLog" };
+        for (int step = 0; step < STEPS.length; step++) {
+            try (BufferedReader reader = openLog(jsonFile, logFileNames[step], inlineFields[step])) {
+                if (reader != null) {
+                    indexLog(reader, doc, step, postings);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a log of a build for reading lines, from its log file or from the inline log of the JSON log.
+     *
+     * @return a reader of the log, or null if the build has no such log
+     */
+    private static BufferedReader openLog(Path jsonFile, String logFileName, String inlineField) throws IOException {
+        if (logFileName != null) {
+            Path logFile = LogFiles.find(jsonFile.resolveSibling(Path.of(logFileName).getFileName().toString()));
+            if (logFile == null) {
+                return null;
+            }
+            return new BufferedReader(new InputStreamReader(LogFiles.newInputStream(logFile), StandardCharsets.UTF_8));
+        }
+        // Only builds stored before logs were written to files have inline logs, which hold the whole output of
+        // the step, so they are decoded from the JSON file as they are read
+        Reader inlineLog = LogInfo.openInlineLog(jsonFile, inlineField);
+        return inlineLog != null ? new BufferedReader(inlineLog) : null;
+    }
+
+    private static void indexLog(BufferedReader reader, int doc, int step, Map<String, List<Posting>> postings) throws IOException {
+        Map<String, List<Integer>> lines = new HashMap<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            for (String token : tokenize(line)) {
+                List<Integer> tokenLines = lines.computeIfAbsent(token, key -> new ArrayList<>(1));
+                if (tokenLines.size() < MAX_LINES_PER_POSTING) {
+                    tokenLines.add(lineNumber);
+                }
+            }
+        }
+        for (Map.Entry<String, List<Integer>> token : lines.entrySet()) {
+            Posting posting = new Posting();
+            posting.doc = doc;
+            posting.step = step;
+            posting.lines = token.getValue().stream().mapToInt(Integer::intValue).toArray();
+            postings.computeIfAbsent(token.getKey(), key -> new ArrayList<>()).add(posting);
+        }
+    }
+
+    /**
+     * Supplies the postings of a term while a segment is written.
+     */
+    private interface PostingSource {
+        List<Posting> postings(String term) throws IOException;
+    }
+
+    /**
+     * Writes a segment file under a temporary name and moves it into place once it is complete.
+     */
+    private static void writeSegment(Path file, int level, List<String> docs, Iterable<String> terms, PostingSource source) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        List<String> writtenTerms = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+        try (DataOutputStream out = new DataOutputStream(counter)) {
+            out.writeInt(MAGIC);
+            out.writeInt(level);
+            out.writeInt(docs.size());
+            for (String doc : docs) {
+                out.writeUTF(doc);
+            }
+            for (String term : terms) {
+                List<Posting> postings = source.postings(term);
+                if (postings.isEmpty()) {
+                    continue;
+                }
+                out.flush();
+                writtenTerms.add(term);
+                offsets.add(counter.count);
+                out.writeInt(postings.size());
+                for (Posting posting : postings) {
+                    out.writeInt(posting.doc);
+                    out.writeByte(posting.step);
+                    out.writeByte(posting.lines.length);
+                    for (int line : posting.lines) {
+                        out.writeInt(line);
+                    }
+                }
+            }
+            out.flush();
+            long dictionaryOffset = counter.count;
+            out.writeInt(writtenTerms.size());
+            for (int i = 0; i < writtenTerms.size(); i++) {
+                out.writeUTF(writtenTerms.get(i));
+                out.writeLong(offsets.get(i));
+            }
+            out.writeLong(dictionaryOffset);
+            out.writeInt(MAGIC);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Segment readSegment(Path file) throws IOException {
+        Segment segment = new Segment();
+        segment.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer footer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+            while (footer.hasRemaining()) {
+                if (channel.read(footer, channel.size() - footer.capacity() + footer.position()) < 0) {
+                    throw new IOException("Truncated segment");
+                }
+            }
+            footer.flip();
+            long dictionaryOffset = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Not a search segment");
+            }
+
+            DataInputStream header = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Not a search segment");
+            }
+            segment.level = header.readInt();
+            segment.docs = new String[header.readInt()];
+            for (int i = 0; i < segment.docs.length; i++) {
+                segment.docs[i] = header.readUTF();
+            }
+
+            DataInputStream dictionary = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(dictionaryOffset))));
+            int termCount = dictionary.readInt();
+            segment.terms = new String[termCount];
+            segment.offsets = new long[termCount];
+            for (int i = 0; i < termCount; i++) {
+                segment.terms[i] = dictionary.readUTF();
+                segment.offsets[i] = dictionary.readLong();
+            }
+        }
+        return segment;
+    }
+
+    private static List<Posting> readPostings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Posting> postings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Posting posting = new Posting();
+            posting.doc = in.readInt();
+            posting.step = in.readByte();
+            posting.lines = new int[in.readByte()];
+            for (int j = 0; j < posting.lines.length; j++) {
+                posting.lines[j] = in.readInt();
+            }
+            postings.add(posting);
+        }
+        return postings;
+    }
+
+    private static List<Posting> readPostings(FileChannel channel, long offset) throws IOException {
+        return readPostings(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(offset)))));
+    }
+
+    /**
+     * Merges the segments of every level that has {@value #MERGE_FACTOR} segments into one segment of the next level.
+     */
+    private void mergeFullLevels() throws IOException {
+        for (int level = 0; ; level++) {
+            int currentLevel = level;
+            List<Segment> full = segments.stream().filter(segment -> segment.level == currentLevel).collect(Collectors.toList());
+            if (full.isEmpty() && segments.stream().noneMatch(segment -> segment.level > currentLevel)) {
+                return;
+            }
+            if (full.size() >= MERGE_FACTOR) {
+                merge(full, level + 1);
+            }
+        }
+    }
+
+    /**
+     * Iterates the union of the sorted dictionaries of segments in order, with a k-way merge. The postings of
+     * each segment are read sequentially, and the postings of the last returned term are in {@link #postings}.
+     */
+    private static class TermMerger implements Iterator<String> {
+        private final List<Segment> segments;
+        private final DataInputStream[] inputs;
+        private final int[][] docMaps;
+        private final int[] positions;
+        private final PriorityQueue<Integer> queue;
+        List<Posting> postings;
+
+        TermMerger(List<Segment> segments, List<FileChannel> channels, int[][] docMaps) throws IOException {
+            this.segments = segments;
+            this.inputs = new DataInputStream[segments.size()];
+            this.docMaps = docMaps;
+            this.positions = new int[segments.size()];
+            this.queue = new PriorityQueue<>((a, b) -> term(a).compareTo(term(b)));
+            for (int s = 0; s < segments.size(); s++) {
+                if (segments.get(s).terms.length > 0) {
+                    inputs[s] = new DataInputStream(new BufferedInputStream(
+                        Channels.newInputStream(channels.get(s).position(segments.get(s).offsets[0]))));
+                    queue.add(s);
+                }
+            }
+        }
+
+        private String term(int segment) {
+            return segments.get(segment).terms[positions[segment]];
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            String term = term(queue.peek());
+            postings = new ArrayList<>();
+            while (!queue.isEmpty() && term(queue.peek()).equals(term)) {
+                int s = queue.poll();
+                try {
+                    for (Posting posting : readPostings(inputs[s])) {
+                        posting.doc = docMaps[s][posting.doc];
+                        if (posting.doc >= 0) {
+                            postings.add(posting);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (++positions[s] < segments.get(s).terms.length) {
+                    queue.add(s);
+                }
+            }
+            return term;
+        }
+    }
+
+    /**
+     * Merges segments into one segment of {@code level}. Builds that are no longer in the {@link BuildIndex}
+     * are dropped, and so are the tokens only they had.
+     */
+    private void merge(List<Segment> merged, int level) throws IOException {
+        BuildIndex buildIndex = BuildIndex.forDir(logDir);
+        List<String> docs = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int[][] docMaps = new int[merged.size()][];
+        for (int s = 0; s < merged.size(); s++) {
+            Segment segment = merged.get(s);
+            docMaps[s] = new int[segment.docs.length];
+            for (int d = 0; d < segment.docs.length; d++) {
+                boolean live = buildIndex.find(segment.docs[d]) != null && seen.add(segment.docs[d]);
+                docMaps[s][d] = live ? docs.size() : -1;
+                if (live) {
+                    docs.add(segment.docs[d]);
+                }
+            }
+        }
+
+        Path file = dir.resolve(SEGMENT_PREFIX + nextGeneration++ + "-" + level + SEGMENT_SUFFIX);
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            for (Segment segment : merged) {
+                channels.add(FileChannel.open(segment.file, StandardOpenOption.READ));
+            }
+            TermMerger terms = new TermMerger(merged, channels, docMaps);
+            // The merger is always one term ahead of the writer, so its postings belong to the term being written
+            writeSegment(file, level, docs, () -> terms, term -> terms.postings);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+        segments.removeAll(merged);
+        segments.add(readSegment(file));
+        for (Segment segment : merged) {
+            segment.retire();
+        }
+        indexed.clear();
+        segments.forEach(segment -> indexed.addAll(Arrays.asList(segment.docs)));
+        System.out.println("Merged " + merged.size() + " search segment(s) of " + logDir + " into level " + level);
+    }
+
+    /**
+     * Finds the builds whose logs contain all tokens of a query, newest first, with the matching lines.
+     * <p>
+     * Only the dictionaries (in memory) and the postings of the query tokens are read, and the logs of the
+     * returned builds are read up to their last matching line to show the snippets.
+     * </p>
+     *
+     * @param query the text to search for
+     * @param limit the maximum number of builds to return
+     * @return the matching builds
+     * @throws IOException if the index or a log cannot be read
+     */
+    public List<Hit> search(String query, int limit) throws IOException {
+        List<String> tokens = new ArrayList<>(tokenize(query));
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Segment> current;
+        synchronized (this) {
+            current = new ArrayList<>(segments);
+            current.forEach(Segment::acquire);
+        }
+        Map<String, Map<Integer, TreeSet<Integer>>> candidates;
+        try {
+            candidates = findCandidates(current, tokens);
+        } finally {
+            for (Segment segment : current) {
+                segment.release();
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        BuildIndex buildIndex = BuildIndex.forDir(logDir);
+        List<BuildIndex.Entry> builds = new ArrayList<>();
+        for (String logFile : candidates.keySet()) {
+            BuildIndex.Entry entry = buildIndex.find(logFile);
+            if (entry != null) {
+                builds.add(entry);
+            }
+        }
+        builds.sort((a, b) -> Long.compare(b.epochMillis, a.epochMillis));
+
+        List<Hit> hits = new ArrayList<>();
+        for (BuildIndex.Entry entry : builds.subList(0, Math.min(limit, builds.size()))) {
+            Hit hit = new Hit();
+            hit.logFile = entry.logFile;
+            hit.timestamp = entry.timestamp;
+            hit.commitSha = entry.commitSha;
+            hit.branch = entry.branch;
+            hit.status = entry.status();
+            Map<Integer, TreeSet<Integer>> lines = candidates.get(entry.logFile);
+            Path jsonFile = logDir.resolve(entry.logFile);
+            if (Files.isRegularFile(jsonFile)) {
+                readSnippets(jsonFile, lines, hit);
+            } else {
+                LogRetention.withArchivedFile(jsonFile, archived -> readSnippets(archived, lines, hit));
+            }
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    /**
+     * Reads the postings of the query tokens from segments.
+     *
+     * @return the candidate lines per build and step, of the builds that have every token
+     */
+    private static Map<String, Map<Integer, TreeSet<Integer>>> findCandidates(List<Segment> current, List<String> tokens) throws IOException {
+        Map<String, Map<Integer, TreeSet<Integer>>> candidates = new HashMap<>();
+        for (Segment segment : current) {
+            int[] termIndexes = new int[tokens.size()];
+            boolean allFound = true;
+            for (int t = 0; t < tokens.size() && allFound; t++) {
+                termIndexes[t] = Arrays.binarySearch(segment.terms, tokens.get(t));
+                allFound = termIndexes[t] >= 0;
+            }
+            if (!allFound) {
+                continue;
+            }
+            Map<Integer, Map<Integer, TreeSet<Integer>>> docs = null;
+            try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+                for (int termIndex : termIndexes) {
+                    Map<Integer, Map<Integer, TreeSet<Integer>>> termDocs = new HashMap<>();
+                    for (Posting posting : readPostings(channel, segment.offsets[termIndex])) {
+                        TreeSet<Integer> lines = termDocs.computeIfAbsent(posting.doc, doc -> new HashMap<>())
+                            .computeIfAbsent(posting.step, step -> new TreeSet<>());
+                        Arrays.stream(posting.lines).forEach(lines::add);
+                    }
+                    if (docs == null) {
+                        docs = termDocs;
+                    } else {
+                        docs.keySet().retainAll(termDocs.keySet());
+                        // Prefer lines that have every token, fall back to the lines of the first token
+                        for (Map.Entry<Integer, Map<Integer, TreeSet<Integer>>> doc : docs.entrySet()) {
+                            for (Map.Entry<Integer, TreeSet<Integer>> step : doc.getValue().entrySet()) {
+                                TreeSet<Integer> termLines = termDocs.get(doc.getKey()).get(step.getKey());
+                                if (termLines != null && step.getValue().stream().anyMatch(termLines::contains)) {
+                                    step.getValue().retainAll(termLines);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<Integer, Map<Integer, TreeSet<Integer>>> doc : docs.entrySet()) {
+                candidates.putIfAbsent(segment.docs[doc.getKey()], doc.getValue());
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Reads the candidate lines of a build from its logs, up to {@value #MAX_SNIPPETS_PER_BUILD} per build.
+     */
+    private static void readSnippets(Path jsonFile, Map<Integer, TreeSet<Integer>> lines, Hit hit) throws IOException {
+        if (!Files.isRegularFile(jsonFile)) {
+            return;
+        }
+        LogInfo info = LogInfo.readMetadata(jsonFile);
+        String[] logFileNames = { info.buildLogFile, info.testLogFile };
+        String[] inlineFields = { "buildLog", "testLog" };
+        for (int step = 0; step < STEPS.length && hit.snippets.size() < MAX_SNIPPETS_PER_BUILD; step++) {
+            TreeSet<Integer> stepLines = lines.get(step);
+            if (stepLines == null) {
+                continue;
+            }
+            try (BufferedReader reader = openLog(jsonFile, logFileNames[step], inlineFields[step])) {
+                if (reader == null) {
+                    continue;
+                }
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null && hit.snippets.size() < MAX_SNIPPETS_PER_BUILD
+                        && lineNumber < stepLines.last()) {
+                    lineNumber++;
+                    if (stepLines.contains(lineNumber)) {
+                        Snippet snippet = new Snippet();
+                        snippet.step = STEPS[step];
+                        snippet.line = lineNumber;
+                        snippet.text = line.length() > MAX_SNIPPET_LENGTH ? line.substring(0, MAX_SNIPPET_LENGTH) : line;
+                        hit.snippets.add(snippet);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Append-only store that keeps the files of builds in a few large segment files instead of one set of files per build.
+ * <p>
+ * When {@code LOG_SEGMENTS} is enabled (default), {@link Utils#saveLogToFile} appends the JSON log, the logs and
+ * the test results of every build to the active segment of its repository ({@code logs/<owner>/<repo>/segment-<n>.zip})
+ * and removes the loose files. Once a segment reaches {@code LOG_SEGMENT_BYTES} (default 64 MB) it is sealed and
+ * never appended to again, and the next build starts a new segment.
+ * </p>
+ * <p>
+ * Segments are zip files: every file of a build is one record, and the central directory at the end of the
+ * segment is the offset index of the records. An append writes the new records over the old central directory
+ * and writes the directory again after them, so the records already in the segment are never rewritten. Records
+ * are compressed as they are appended; logs that are already gzip compressed are stored as they are. Builds in
+ * segments are recorded in the {@link BuildIndex} like archived builds and read with positioned reads through
+ * {@link LogRetention#withArchivedFile(Path, LogRetention.ArchivedFileHandler)}, which opens a segment with
+ * {@link #open(String)}. Records are compressed into a spool file first, so readers are only kept out while the
+ * compressed records and the new central directory are copied into the segment, and never while logs are deflated.
+ * The monthly archives of {@link LogRetention} are appended to the same way with {@link #appendTo(String, List)}.
+ * </p>
+ * <p>
+ * Builds that were saved as loose files are moved into segments once with {@link #migrate(Path)}
+ * ({@code ./gradlew run --args=migrate-logs}).
+ * </p>
+ */
+public class LogSegments {
+
+    protected static final String SEGMENT_PREFIX = "segment-";
+    protected static final String SEGMENT_SUFFIX = ".zip";
+
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int MIGRATION_BATCH_SIZE = 200;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Zip format, see APPNOTE.TXT; segments never need its 64-bit extensions
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int MAX_RECORDS = 0xFFFF;
+    private static final long MAX_RECORD_SIZE = 0xFFFFFFFFL;
+    private static final int VERSION = 20;
+    private static final int UTF8_NAMES = 0x800;
+    private static final int DATA_DESCRIPTOR = 0x8;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    /** Compressed size written while a record is being appended, so an interrupted record is never read as complete. */
+    private static final long INCOMPLETE = 0xFFFFFFFFL;
+
+    private static final Map<Path, LogSegments> STORES = new ConcurrentHashMap<>();
+
+    /**
+     * The central directory of a segment.
+     */
+    private static class Directory {
+        /** Where the directory starts, which is where the next record is appended. */
+        long offset;
+        /** The directory entries of the records, in order. */
+        byte[] entries;
+        int records;
+    }
+
+    private final Path dir;
+    /** Held for writing while a central directory is invalid, and for reading while a segment is opened. */
+    private final ReadWriteLock directoryLock = new ReentrantReadWriteLock();
+    private Path active;
+    private int lastNumber;
+
+    private LogSegments(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the segment store of a log directory, finding its active segment the first time.
+     * A segment that was left without a central directory by a crash is recovered.
+     *
+     * @param logDir the log directory of a repository
+     * @return the store of {@code logDir}, which is also the lock of its segments
+     * @throws IOException if the directory cannot be listed or the active segment cannot be recovered
+     */
+    public static LogSegments forDir(Path logDir) throws IOException {
+        try {
+            return STORES.computeIfAbsent(logDir.toAbsolutePath().normalize(), key -> {
+                try {
+                    LogSegments store = new LogSegments(logDir);
+                    store.load();
+                    return store;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return true if builds are saved into segments
+     */
+    public static boolean enabled() {
+        return CiConfig.getBoolean("LOG_SEGMENTS", true);
+    }
+
+    /**
+     * @return the size at which a segment is sealed
+     */
+    public static long maxSegmentBytes() {
+        return Math.max(1, CiConfig.getLong("LOG_SEGMENT_BYTES", DEFAULT_SEGMENT_BYTES));
+    }
+
+    /**
+     * @param file a file in a log directory
+     * @return true if {@code file} is a segment
+     */
+    public static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path segment : files.filter(LogSegments::isSegment).collect(Collectors.toList())) {
+                int number = segmentNumber(segment);
+                if (number > lastNumber) {
+                    lastNumber = number;
+                    active = segment;
+                }
+            }
+        }
+        if (active != null) {
+            try (FileChannel channel = FileChannel.open(active, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                readDirectory(channel);
+            }
+        }
+    }
+
+    /**
+     * Opens a segment or an archive of this directory for reading. A segment is never opened while its central
+     * directory is being rewritten; once it is open, appends do not disturb it, since they never rewrite records.
+     *
+     * @param name the name of the segment or archive in the log directory
+     * @return the opened zip file system, to be closed by the caller
+     * @throws IOException if the file cannot be opened
+     */
+    public FileSystem open(String name) throws IOException {
+        directoryLock.readLock().lock();
+        try {
+            return FileSystems.newFileSystem(dir.resolve(name));
+        } finally {
+            directoryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the files of one build to the active segment, starting a new segment first if it is full.
+     * The segment is forced to disk before this returns, so the loose files can be deleted afterwards.
+     *
+     * @param files the files of the build; the names of the records are their file names
+     * @return the name of the segment the build was appended to
+     * @throws IOException if a file cannot be read or the segment cannot be written
+     */
+    public synchronized String append(List<Path> files) throws IOException {
+        Files.createDirectories(dir);
+        if (active == null || !Files.isRegularFile(active) || Files.size(active) >= maxSegmentBytes()
+                || recordCount(active) + files.size() > MAX_RECORDS) {
+            active = newSegment();
+        }
+        appendRecords(active, files);
+        return active.getFileName().toString();
+    }
+
+    /**
+     * Appends files to an archive of this directory (see {@link LogRetention}), creating it if needed. Like
+     * {@link #append(List)}, the records already in the archive are never rewritten.
+     *
+     * @param name the name of the archive in the log directory
+     * @param files the files to append; the names of the records are their file names
+     * @throws IOException if a file cannot be read, the archive cannot be written or would hold too many records
+     */
+    public synchronized void appendTo(String name, List<Path> files) throws IOException {
+        Path archive = dir.resolve(name);
+        if (!Files.isRegularFile(archive)) {
+            writeEmpty(archive);
+        } else if (recordCount(archive) + files.size() > MAX_RECORDS) {
+            throw new IOException("Too many records for archive " + archive);
+        }
+        appendRecords(archive, files);
+    }
+
+    /**
+     * Stops appending to a segment, so that it can be rewritten without holding this store: if it is the active
+     * segment, the next build starts a new one.
+     *
+     * @param name the name of a segment or an archive in the log directory
+     */
+    public synchronized void seal(String name) {
+        if (active != null && active.getFileName().toString().equals(name)) {
+            active = null;
+        }
+    }
+
+    /**
+     * Swaps a rewritten copy in for a sealed segment or an archive, or deletes it. Segments and archives are only
+     * kept from being opened while the file is replaced; readers that opened it before keep reading the old file.
+     *
+     * @param name the name of the segment or archive in the log directory
+     * @param rewritten the file to move into its place, or null to delete it
+     * @throws IOException if the file cannot be replaced
+     */
+    public void replace(String name, Path rewritten) throws IOException {
+        directoryLock.writeLock().lock();
+        try {
+            if (rewritten == null) {
+                Files.deleteIfExists(dir.resolve(name));
+            } else {
+                Files.move(rewritten, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            directoryLock.writeLock().unlock();
+        }
+    }
+
+    private void appendRecords(Path target, List<Path> files) throws IOException {
+        Path spool = Files.createTempFile(dir, "append-", ".tmp");
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel records = FileChannel.open(spool, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                 StandardOpenOption.DELETE_ON_CLOSE)) {
+            Directory directory = readDirectory(channel);
+            ByteArrayOutputStream entries = new ByteArrayOutputStream(directory.entries.length + files.size() * 128);
+            entries.write(directory.entries);
+            long length = 0;
+            for (Path file : files) {
+                length = writeRecord(records, file, length, directory.offset, entries);
+            }
+            long position = directory.offset + length;
+            byte[] newEntries = entries.toByteArray();
+            ByteBuffer tail = ByteBuffer.allocate(newEntries.length + END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            tail.put(newEntries);
+            putEnd(tail, directory.records + files.size(), newEntries.length, position);
+            tail.flip();
+
+            directoryLock.writeLock().lock();
+            try {
+                channel.position(directory.offset);
+                for (long copied = 0; copied < length; ) {
+                    copied += records.transferTo(copied, length - copied, channel);
+                }
+                // The records must be on disk before a directory that refers to them, and both before the caller
+                // deletes the loose files, since recovery cuts off whatever is not on disk after a crash
+                channel.force(false);
+                writeFully(channel, tail, position);
+                channel.truncate(position + newEntries.length + END_HEADER_SIZE);
+                channel.force(true);
+            } finally {
+                directoryLock.writeLock().unlock();
+            }
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    private Path newSegment() throws IOException {
+        Path segment;
+        do {
+            lastNumber++;
+            segment = dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, lastNumber, SEGMENT_SUFFIX));
+        } while (Files.exists(segment));
+        writeEmpty(segment);
+        System.out.println("Started log segment " + segment);
+        return segment;
+    }
+
+    /**
+     * Creates a zip file with no records, which is only its end of central directory record.
+     */
+    private static void writeEmpty(Path file) throws IOException {
+        ByteBuffer end = ByteBuffer.allocate(END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        putEnd(end, 0, 0, 0);
+        Files.write(file, end.array(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static int recordCount(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return readDirectory(channel).records;
+        }
+    }
+
+    /**
+     * Reads the central directory of a segment, recovering it if the segment has none.
+     */
+    private static Directory readDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int tailSize = (int) Math.min(size, END_HEADER_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, tail, size - tailSize);
+        for (int i = tailSize - END_HEADER_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) != END_SIGNATURE) {
+                continue;
+            }
+            long endOffset = size - tailSize + i;
+            long entriesSize = tail.getInt(i + 12) & 0xFFFFFFFFL;
+            long entriesOffset = tail.getInt(i + 16) & 0xFFFFFFFFL;
+            if (entriesOffset + entriesSize == endOffset) {
+                Directory directory = new Directory();
+                directory.offset = entriesOffset;
+                directory.records = tail.getShort(i + 10) & 0xFFFF;
+                ByteBuffer entries = ByteBuffer.allocate((int) entriesSize);
+                readFully(channel, entries, entriesOffset);
+                directory.entries = entries.array();
+                return directory;
+            }
+        }
+        return recover(channel);
+    }
+
+    /**
+     * Rebuilds the central directory of a segment whose append was interrupted from the headers of its
+     * complete records, and cuts off the rest.
+     */
+    private static Directory recover(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(LOC_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 0;
+        int records = 0;
+        while (position + LOC_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            if (header.getInt(0) != LOC_SIGNATURE) {
+                break;
+            }
+            long compressedSize = header.getInt(18) & 0xFFFFFFFFL;
+            int nameSize = header.getShort(26) & 0xFFFF;
+            int extraSize = header.getShort(28) & 0xFFFF;
+            long next = position + LOC_HEADER_SIZE + nameSize + extraSize + compressedSize;
+            if ((header.getShort(6) & DATA_DESCRIPTOR) != 0 || compressedSize == INCOMPLETE || next > size) {
+                break;
+            }
+            ByteBuffer name = ByteBuffer.allocate(nameSize);
+            readFully(channel, name, position + LOC_HEADER_SIZE);
+            entries.write(directoryEntry(header.getShort(8), header.getInt(10), header.getInt(14),
+                compressedSize, header.getInt(22) & 0xFFFFFFFFL, name.array(), position));
+            records++;
+            position = next;
+        }
+
+        byte[] bytes = entries.toByteArray();
+        ByteBuffer tail = ByteBuffer.allocate(bytes.length + END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        tail.put(bytes);
+        putEnd(tail, records, bytes.length, position);
+        tail.flip();
+        writeFully(channel, tail, position);
+        channel.truncate(position + bytes.length + END_HEADER_SIZE);
+        System.out.println("Recovered log segment with " + records + " record(s)");
+
+        Directory directory = new Directory();
+        directory.offset = position;
+        directory.entries = bytes;
+        directory.records = records;
+        return directory;
+    }
+
+    /**
+     * Writes a file as a record at {@code offset}: writes its header with a placeholder size, streams its
+     * contents, then fills in its sizes and checksum.
+     *
+     * @param base the offset in the segment that offset 0 of {@code channel} will be copied to
+     * @param entries receives the directory entry of the record
+     * @return the offset after the record
+     */
+    private static long writeRecord(FileChannel channel, Path file, long offset, long base, ByteArrayOutputStream entries) throws IOException {
+        byte[] name = file.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+        boolean deflate = !LogFiles.isCompressed(file);
+        int method = deflate ? DEFLATED : STORED;
+        int dosDateTime = dosDateTime(Files.getLastModifiedTime(file).toMillis());
+
+        ByteBuffer header = ByteBuffer.allocate(LOC_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOC_SIGNATURE).putShort((short) VERSION).putShort((short) UTF8_NAMES).putShort((short) method)
+            .putInt(dosDateTime).putInt(0).putInt((int) INCOMPLETE).putInt(0)
+            .putShort((short) name.length).putShort((short) 0).put(name);
+        header.flip();
+        writeFully(channel, header, offset);
+
+        long dataOffset = offset + LOC_HEADER_SIZE + name.length;
+        channel.position(dataOffset);
+        // Not closed, closing it would close the channel
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        Deflater deflater = deflate ? new Deflater(LogFiles.compressionLevel(), true) : null;
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            OutputStream data = deflate ? new DeflaterOutputStream(out, deflater, BUFFER_SIZE) : out;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                size += read;
+                data.write(buffer, 0, read);
+            }
+            if (deflate) {
+                ((DeflaterOutputStream) data).finish();
+            }
+            out.flush();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        long compressedSize = channel.position() - dataOffset;
+        if (size >= MAX_RECORD_SIZE || compressedSize >= MAX_RECORD_SIZE) {
+            throw new IOException("File too large for a log segment: " + file);
+        }
+
+        ByteBuffer sizes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        sizes.putInt((int) crc.getValue()).putInt((int) compressedSize).putInt((int) size);
+        sizes.flip();
+        writeFully(channel, sizes, offset + 14);
+
+        entries.write(directoryEntry((short) method, dosDateTime, (int) crc.getValue(), compressedSize, size, name, base + offset));
+        return dataOffset + compressedSize;
+    }
+
+    private static byte[] directoryEntry(short method, int dosDateTime, int crc, long compressedSize, long size, byte[] name, long offset) {
+        ByteBuffer entry = ByteBuffer.allocate(CEN_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putInt(CEN_SIGNATURE).putShort((short) VERSION).putShort((short) VERSION).putShort((short) UTF8_NAMES)
+            .putShort(method).putInt(dosDateTime).putInt(crc).putInt((int) compressedSize).putInt((int) size)
+            .putShort((short) name.length).putShort((short) 0).putShort((short) 0)
+            .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) offset).put(name);
+        return entry.array();
+    }
+
+    private static void putEnd(ByteBuffer buffer, int records, long entriesSize, long entriesOffset) {
+        buffer.putInt(END_SIGNATURE).putShort((short) 0).putShort((short) 0)
+            .putShort((short) records).putShort((short) records)
+            .putInt((int) entriesSize).putInt((int) entriesOffset).putShort((short) 0);
+    }
+
+    /**
+     * @return the time in MS-DOS format: the date in the high and the time in the low 16 bits
+     */
+    private static int dosDateTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        int date = (time.getYear() - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+        int clock = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() / 2;
+        return date << 16 | clock;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of log segment");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Moves the builds that are stored as loose files in every repository directory ({@code <owner>/<repo>})
+     * under {@code logsRoot} into segments. Meant to be run once, while the server is stopped.
+     *
+     * @param logsRoot the root of the log directories
+     * @return the number of builds that were moved
+     * @throws IOException if a build cannot be moved
+     */
+    public static int migrate(Path logsRoot) throws IOException {
+        if (!Files.isDirectory(logsRoot)) {
+            return 0;
+        }
+        int migrated = 0;
+        List<Path> owners;
+        try (Stream<Path> files = Files.list(logsRoot)) {
+            owners = files.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        for (Path owner : owners) {
+            List<Path> repos;
+            try (Stream<Path> files = Files.list(owner)) {
+                repos = files.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+            }
+            for (Path repoDir : repos) {
+                migrated += forDir(repoDir).migrateLooseBuilds();
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * Moves the loose builds of this directory into segments, oldest first and in batches, so the index is only
+     * rewritten once per batch. A build's files are deleted only after the index records its segment.
+     */
+    private int migrateLooseBuilds() throws IOException {
+        BuildIndex index = BuildIndex.forDir(dir);
+        List<BuildIndex.Entry> loose = index.range(0, index.size()).stream()
+            .filter(entry -> entry.archive == null)
+            .collect(Collectors.toList());
+        int migrated = 0;
+        for (int start = 0; start < loose.size(); start += MIGRATION_BATCH_SIZE) {
+            Map<String, List<BuildIndex.Entry>> bySegment = new LinkedHashMap<>();
+            List<Path> moved = new ArrayList<>();
+            for (BuildIndex.Entry entry : loose.subList(start, Math.min(loose.size(), start + MIGRATION_BATCH_SIZE))) {
+                List<Path> files = LogRetention.buildFiles(dir, entry.logFile);
+                if (files.isEmpty()) {
+                    continue;
+                }
+                bySegment.computeIfAbsent(append(files), name -> new ArrayList<>()).add(entry);
+                moved.addAll(files);
+                migrated++;
+            }
+            for (Map.Entry<String, List<BuildIndex.Entry>> segment : bySegment.entrySet()) {
+                index.setArchive(segment.getValue(), segment.getKey());
+            }
+            for (Path file : moved) {
+                Files.deleteIfExists(file);
+            }
+        }
+        if (migrated > 0) {
+            System.out.println("Migrated " + migrated + " build(s) of " + dir + " into log segments");
+        }
+        return migrated;
+    }
+}
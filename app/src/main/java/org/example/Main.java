@@ -8,12 +8,32 @@ public class Main {
 
     /**
      * Start the CI webhook server on port {@link PORT}.
+     * <p>
+     * The build indexes of all repositories are loaded first, so the first listing request does not
+     * have to scan the log directories. Old builds are then cleaned up in the background by {@link LogRetention},
+     * and the commit statuses that were not delivered before the last shutdown are sent by {@link StatusOutbox}.
+     * Requests are run by a {@link CountingThreadPool}, so the webhooks waiting for a thread show in {@link Metrics}.
+     * </p>
+     * <p>
+     * Run with the argument {@code migrate-logs} to move the builds stored as loose files into
+     * {@link LogSegments} once, instead of starting the server.
+     * </p>
      *
      * @param args command line arguments
      * @throws Exception if server startup fails
      */
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("migrate-logs")) {
+            int migrated = LogSegments.migrate(Utils.LOGS_DIR);
+            System.out.println("Migrated " + migrated + " build(s) into log segments");
+            return;
+        }
+        BuildIndex.loadAll(Utils.LOGS_DIR);
+        LogRetention.start(Utils.LOGS_DIR);
+        StatusOutbox.shared().start();
+
         Server server = new Server(PORT);
+        server.setThreadPool(new CountingThreadPool());
         server.setHandler(new HttpHandler()); 
         server.start();
         server.join();
@@ -0,0 +1,287 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings of the stages of CI jobs and gauges of the server, served in the Prometheus text format on the
+ * {@value #ROUTE} route.
+ * <p>
+ * Every stage (queue wait, clone, checkout, build, test, log save, cleanup, status post and the whole job) is
+ * recorded in a histogram per repository and outcome. Recording only adds to {@link LongAdder}s, so the jobs never
+ * wait for each other or for a scrape. The gauges (queue depth, running jobs, status outbox, workspace disk use, JVM memory) and the
+ * counters of {@link GithubRateLimit}, {@link PageCache} and {@link LogChunks} are read when the metrics are served.
+ * The disk use of the workspace is scanned at most every {@code METRICS_DISK_SCAN_SECONDS} (default 30) seconds.
+ * </p>
+ */
+public class Metrics {
+
+    /** The route the metrics are served on. */
+    protected static final String ROUTE = "metrics";
+    protected static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+
+    /** The upper bounds of the buckets of the stage histograms, in seconds. */
+    private static final double[] BUCKET_SECONDS = {
+        0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600, 1800, 3600
+    };
+    private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+    private static final String[] BUCKET_LABELS = new String[BUCKET_SECONDS.length];
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * 1e9);
+            BUCKET_LABELS[i] = BUCKET_SECONDS[i] == Math.rint(BUCKET_SECONDS[i])
+                ? Long.toString((long) BUCKET_SECONDS[i]) : Double.toString(BUCKET_SECONDS[i]);
+        }
+    }
+
+    private static final long DEFAULT_DISK_SCAN_SECONDS = 30;
+
+    private static final Map<String, Histogram> STAGES = new ConcurrentHashMap<>();
+    private static final LongAdder ACTIVE_JOBS = new LongAdder();
+    private static final LongAdder QUEUED_REQUESTS = new LongAdder();
+
+    private static long workspaceBytes;
+    private static long workspaceScannedMillis;
+
+    /**
+     * A step of a job that is timed as a stage.
+     */
+    public interface Step {
+        void run() throws IOException;
+    }
+
+    /**
+     * The durations of one stage of the jobs of a repository that ended with the same outcome.
+     */
+    private static class Histogram {
+        final String labels;
+        /** The number of durations per bucket, not cumulative; the last one counts those above all bounds. */
+        final LongAdder[] buckets = new LongAdder[BUCKET_NANOS.length + 1];
+        final LongAdder sumNanos = new LongAdder();
+
+        Histogram(String stage, String repository, String outcome) {
+            labels = "stage=\"" + escape(stage) + "\",repository=\"" + escape(repository)
+                + "\",outcome=\"" + escape(outcome) + "\"";
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            int bucket = 0;
+            while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sumNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Records the duration of a stage of a job.
+     *
+     * @param stage the stage, e.g. {@code clone} or {@code build}
+     * @param repository the full name of the repository (owner/repo)
+     * @param outcome how the stage ended, e.g. {@link #SUCCESS} or {@link #ERROR}
+     * @param nanos the duration of the stage in nanoseconds
+     */
+    public static void record(String stage, String repository, String outcome, long nanos) {
+        String key = stage + '\0' + repository + '\0' + outcome;
+        Histogram histogram = STAGES.get(key);
+        if (histogram == null) {
+            histogram = STAGES.computeIfAbsent(key, k -> new Histogram(stage, repository, outcome));
+        }
+        histogram.record(Math.max(0, nanos));
+    }
+
+    /**
+     * @param result the result of a build or test step
+     * @return the outcome label of the step, e.g. {@code failure}
+     */
+    public static String outcome(CmdResult result) {
+        return result.status.toString().toLowerCase();
+    }
+
+    /** Counts a job as running. */
+    public static void jobStarted() {
+        ACTIVE_JOBS.increment();
+    }
+
+    /** Counts a running job as finished. */
+    public static void jobFinished() {
+        ACTIVE_JOBS.decrement();
+    }
+
+    /** Counts a request as waiting for a free server thread, see {@link CountingThreadPool}. */
+    public static void requestQueued() {
+        QUEUED_REQUESTS.increment();
+    }
+
+    /** Counts a waiting request as started on a server thread. */
+    public static void requestStarted() {
+        QUEUED_REQUESTS.decrement();
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text format.
+     *
+     * @param out the writer to write the metrics to
+     * @param workspaceDir the directory the repositories are cloned into
+     */
+    public static void write(PrintWriter out, Path workspaceDir) {
+        out.append("# HELP ci_stage_duration_seconds Duration of the stages of CI jobs.\n");
+        out.append("# TYPE ci_stage_duration_seconds histogram\n");
+        for (Histogram histogram : new TreeMap<>(STAGES).values()) {
+            long cumulative = 0;
+            for (int i = 0; i < histogram.buckets.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                String bound = i < BUCKET_LABELS.length ? BUCKET_LABELS[i] : "+Inf";
+                out.append("ci_stage_duration_seconds_bucket{").append(histogram.labels)
+                    .append(",le=\"").append(bound).append("\"} ").append(Long.toString(cumulative)).append('\n');
+            }
+            out.append("ci_stage_duration_seconds_sum{").append(histogram.labels).append("} ")
+                .append(Double.toString(histogram.sumNanos.sum() / 1e9)).append('\n');
+            out.append("ci_stage_duration_seconds_count{").append(histogram.labels).append("} ")
+                .append(Long.toString(cumulative)).append('\n');
+        }
+
+        gauge(out, "ci_jobs_active", "Jobs that are running.", ACTIVE_JOBS.sum());
+        gauge(out, "ci_queue_depth", "Requests waiting for a free server thread, webhooks of new jobs included.", QUEUED_REQUESTS.sum());
+        // Scrapes must not create or load the outbox, so it is only read once the server has opened it
+        StatusOutbox outbox = StatusOutbox.sharedIfOpen();
+        if (outbox != null) {
+            gauge(out, "ci_status_outbox_depth", "Commit statuses waiting to be delivered.", outbox.size());
+        }
+        gauge(out, "ci_workspace_bytes", "Disk space used by the cloned repositories.", workspaceBytes(workspaceDir));
+        try {
+            Path store = Files.exists(workspaceDir) ? workspaceDir : Path.of("");
+            gauge(out, "ci_workspace_free_bytes", "Usable space left on the disk of the workspace.",
+                Files.getFileStore(store).getUsableSpace());
+        } catch (IOException e) {
+            System.out.println("Could not read the free disk space: " + e.getMessage());
+        }
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        out.append("# HELP jvm_memory_used_bytes Used JVM memory.\n# TYPE jvm_memory_used_bytes gauge\n");
+        out.append("jvm_memory_used_bytes{area=\"heap\"} ").append(Long.toString(heap.getUsed())).append('\n');
+        out.append("jvm_memory_used_bytes{area=\"nonheap\"} ").append(Long.toString(nonHeap.getUsed())).append('\n');
+        out.append("# HELP jvm_memory_committed_bytes Committed JVM memory.\n# TYPE jvm_memory_committed_bytes gauge\n");
+        out.append("jvm_memory_committed_bytes{area=\"heap\"} ").append(Long.toString(heap.getCommitted())).append('\n');
+        out.append("jvm_memory_committed_bytes{area=\"nonheap\"} ").append(Long.toString(nonHeap.getCommitted())).append('\n');
+        gauge(out, "jvm_memory_max_bytes", "Maximum heap size, or -1 if it is not limited.", heap.getMax());
+
+        GithubRateLimit.Snapshot rateLimit = GithubRateLimit.shared().snapshot(System.currentTimeMillis());
+        gauge(out, "ci_github_rate_limit", "Requests per hour allowed by GitHub, or -1 before the first answer.", rateLimit.limit);
+        gauge(out, "ci_github_rate_limit_remaining", "Requests left until the rate limit is reset, or -1 if unknown.", rateLimit.remaining);
+        counter(out, "ci_github_requests_total", "Requests sent to GitHub.", rateLimit.requests);
+        counter(out, "ci_github_delayed_requests_total", "Requests held back by the rate limit.", rateLimit.delayedRequests);
+        counter(out, "ci_github_rate_limited_answers_total", "Answers of GitHub saying the rate limit was exceeded.", rateLimit.rateLimitedAnswers);
+        counter(out, "ci_github_coalesced_statuses_total", "Commit statuses not sent because a newer one replaced them.", rateLimit.coalescedStatuses);
+
+        counter(out, "ci_page_cache_hits_total", "Build pages served from the page cache.", PageCache.hits());
+        counter(out, "ci_page_cache_misses_total", "Build pages not found in the page cache.", PageCache.misses());
+        counter(out, "ci_page_cache_evictions_total", "Build pages evicted from the page cache.", PageCache.evictions());
+        gauge(out, "ci_page_cache_pages", "Build pages in the page cache.", PageCache.size());
+        gauge(out, "ci_page_cache_bytes", "Approximate heap size of the page cache.", PageCache.weight());
+
+        if (LogChunks.enabled()) {
+            try {
+                LogChunks chunks = LogChunks.shared();
+                counter(out, "ci_log_chunks_logical_bytes_total", "Size of the logs stored as chunks, before deduplication.", chunks.logicalBytes());
+                counter(out, "ci_log_chunks_new_bytes_total", "Size of the new chunks the stored logs added.", chunks.newBytes());
+                gauge(out, "ci_log_chunks_unique_bytes", "Uncompressed size of the distinct chunks in the pack.", chunks.uniqueBytes());
+                gauge(out, "ci_log_chunks_pack_bytes", "Size of the chunk pack file.", chunks.packBytes());
+            } catch (IOException e) {
+                System.out.println("Could not read the log chunk store: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void gauge(PrintWriter out, String name, String help, long value) {
+        sample(out, name, "gauge", help, value);
+    }
+
+    private static void counter(PrintWriter out, String name, String help, long value) {
+        sample(out, name, "counter", help, value);
+    }
+
+    private static void sample(PrintWriter out, String name, String type, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(Long.toString(value)).append('\n');
+    }
+
+    /**
+     * @return {@code value} escaped for a label value of the Prometheus text format
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * @param dir the workspace directory
+     * @return the size of the files in {@code dir}, scanned again if the last scan is older than
+     *         {@code METRICS_DISK_SCAN_SECONDS}
+     */
+    private static synchronized long workspaceBytes(Path dir) {
+        long now = System.currentTimeMillis();
+        long interval = TimeUnit.SECONDS.toMillis(CiConfig.getLong("METRICS_DISK_SCAN_SECONDS", DEFAULT_DISK_SCAN_SECONDS));
+        if (workspaceScannedMillis != 0 && now - workspaceScannedMillis < interval) {
+            return workspaceBytes;
+        }
+        long[] total = new long[1];
+        if (Files.isDirectory(dir)) {
+            try {
+                Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        total[0] += attrs.size();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        // Jobs delete their clones while they are scanned
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path subDir, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.out.println("Could not scan the workspace: " + e.getMessage());
+            }
+        }
+        workspaceBytes = total[0];
+        workspaceScannedMillis = now;
+        return workspaceBytes;
+    }
+
+    /**
+     * Forgets all recorded timings and job counts.
+     */
+    protected static synchronized void reset() {
+        STAGES.clear();
+        ACTIVE_JOBS.reset();
+        QUEUED_REQUESTS.reset();
+        workspaceScannedMillis = 0;
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps a bounded excerpt of a byte stream: the first {@code headSize} bytes and the last {@code tailSize} bytes.
+ * <p>
+ * Used when streaming process output to disk so that a short summary of the output stays available
+ * in memory no matter how much the process prints.
+ * </p>
+ */
+public class OutputExcerpt {
+
+    private final byte[] head;
+    private int headLength;
+
+    private final byte[] tail;
+    private int tailStart;
+    private int tailLength;
+
+    private long totalBytes;
+
+    /**
+     * @param headSize the number of leading bytes to keep
+     * @param tailSize the number of trailing bytes to keep
+     */
+    public OutputExcerpt(int headSize, int tailSize) {
+        this.head = new byte[headSize];
+        this.tail = new byte[tailSize];
+    }
+
+    /**
+     * Records {@code length} bytes of {@code buffer} starting at {@code offset}.
+     *
+     * @param buffer the bytes read from the stream
+     * @param offset the offset of the first byte to record
+     * @param length the number of bytes to record
+     */
+    public void append(byte[] buffer, int offset, int length) {
+        totalBytes += length;
+
+        int toHead = Math.min(length, head.length - headLength);
+        System.arraycopy(buffer, offset, head, headLength, toHead);
+        headLength += toHead;
+        offset += toHead;
+        length -= toHead;
+
+        if (length == 0 || tail.length == 0) {
+            return;
+        }
+
+        // Only the last tail.length bytes of this write can end up in the tail
+        if (length > tail.length) {
+            offset += length - tail.length;
+            length = tail.length;
+        }
+        for (int i = 0; i < length; i++) {
+            tail[(tailStart + tailLength) % tail.length] = buffer[offset + i];
+            if (tailLength < tail.length) {
+                tailLength++;
+            } else {
+                tailStart = (tailStart + 1) % tail.length;
+            }
+        }
+    }
+
+    /**
+     * @return the total number of bytes seen, including the ones that were not kept
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the kept head and tail as UTF-8 text, separated by a marker if bytes were left out
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(new String(head, 0, headLength, StandardCharsets.UTF_8));
+
+        long omitted = totalBytes - headLength - tailLength;
+        if (omitted > 0) {
+            sb.append("\n... [").append(omitted).append(" bytes omitted] ...\n");
+        }
+
+        byte[] ordered = new byte[tailLength];
+        for (int i = 0; i < tailLength; i++) {
+            ordered[i] = tail[(tailStart + i) % tail.length];
+        }
+        sb.append(new String(ordered, StandardCharsets.UTF_8));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,234 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory LRU cache of rendered build pages, bounded by their size in bytes.
+ * <p>
+ * Pages are keyed by the path of the build log and its modification stamp (see
+ * {@link HttpCaching#strongETag(Path, String)}), so a rewritten log never serves a stale page. When enabled
+ * with {@code PAGE_CACHE_GZIP}, a gzip compressed copy is kept next to every page so that clients accepting
+ * gzip are served without compressing again. The heap budget is set with {@code PAGE_CACHE_BYTES}
+ * (default 32 MB, 0 disables the cache); a single page may use at most an eighth of it, larger pages are
+ * streamed as before. The least recently used pages are evicted first.
+ * </p>
+ * <p>
+ * The keys of pages that turned out too large are remembered (up to {@value #MAX_TOO_LARGE} of them), so they are
+ * streamed right away instead of being rendered into memory again on every request.
+ * </p>
+ */
+public class PageCache {
+
+    private static final long DEFAULT_BUDGET_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_PAGE_FRACTION_DIVISOR = 8;
+    private static final int MAX_TOO_LARGE = 1024;
+
+    /**
+     * A rendered page and its gzip compressed copy, which is null if pre-compression is disabled.
+     */
+    public static class Page {
+        public final String html;
+        public final byte[] gzip;
+
+        Page(String html, byte[] gzip) {
+            this.html = html;
+            this.gzip = gzip;
+        }
+
+        /**
+         * @return the approximate heap size of the page in bytes
+         */
+        long weight() {
+            return 2L * html.length() + (gzip != null ? gzip.length : 0);
+        }
+    }
+
+    private static final Map<String, Page> PAGES = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<String, Boolean> TOO_LARGE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_TOO_LARGE;
+        }
+    };
+    private static long weight;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    /**
+     * @return the heap budget of the cache in bytes
+     */
+    public static long budget() {
+        return Math.max(0, CiConfig.getLong("PAGE_CACHE_BYTES", DEFAULT_BUDGET_BYTES));
+    }
+
+    /**
+     * @return the size in bytes of the largest page that is cached
+     */
+    public static long maxPageBytes() {
+        return budget() / MAX_PAGE_FRACTION_DIVISOR;
+    }
+
+    /**
+     * @return true if pages are cached with a gzip compressed copy
+     */
+    public static boolean gzipEnabled() {
+        return CiConfig.getBoolean("PAGE_CACHE_GZIP", true);
+    }
+
+    /**
+     * Builds the key of a page from the URI of its build log, which also tells apart logs inside archives.
+     */
+    private static String key(Path file, String stamp) {
+        return file.toAbsolutePath().normalize().toUri() + "|" + stamp;
+    }
+
+    /**
+     * @param file the build log the page was rendered from
+     * @param stamp the modification stamp of {@code file}
+     * @return the cached page, or null if it is not cached
+     */
+    public static synchronized Page get(Path file, String stamp) {
+        Page page = PAGES.get(key(file, stamp));
+        if (page == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return page;
+    }
+
+    /**
+     * @param file the build log of a page
+     * @param stamp the modification stamp of {@code file}
+     * @return true if the page was found to be too large to cache
+     */
+    public static synchronized boolean isTooLarge(Path file, String stamp) {
+        return TOO_LARGE.containsKey(key(file, stamp));
+    }
+
+    /**
+     * Remembers that a page is too large to cache, e.g. because rendering it exceeded
+     * {@link #maxPageBytes()}.
+     *
+     * @param file the build log of the page
+     * @param stamp the modification stamp of {@code file}
+     */
+    public static synchronized void markTooLarge(Path file, String stamp) {
+        TOO_LARGE.put(key(file, stamp), Boolean.TRUE);
+    }
+
+    /**
+     * Caches a rendered page, compressing it first if {@code PAGE_CACHE_GZIP} is enabled, and evicts the least
+     * recently used pages until the cache fits its budget again.
+     *
+     * @param file the build log the page was rendered from
+     * @param stamp the modification stamp of {@code file}
+     * @param html the rendered page
+     * @return the cached page, or a page that was not cached (and is remembered as too large) if it is too large
+     */
+    public static Page put(Path file, String stamp, String html) {
+        byte[] gzip = null;
+        if (gzipEnabled()) {
+            gzip = compress(html);
+        }
+        Page page = new Page(html, gzip);
+        long budget = budget();
+        if (page.weight() > budget / MAX_PAGE_FRACTION_DIVISOR) {
+            markTooLarge(file, stamp);
+            return page;
+        }
+
+        synchronized (PageCache.class) {
+            Page previous = PAGES.put(key(file, stamp), page);
+            if (previous != null) {
+                weight -= previous.weight();
+            }
+            weight += page.weight();
+            Iterator<Page> eldest = PAGES.values().iterator();
+            while (weight > budget && eldest.hasNext()) {
+                weight -= eldest.next().weight();
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Removes the pages of all build logs in a directory, e.g. when a new build log lands in it.
+     *
+     * @param dir the log directory
+     */
+    public static synchronized void invalidate(Path dir) {
+        String prefix = dir.toAbsolutePath().normalize().toUri().toString();
+        if (!prefix.endsWith("/")) {
+            prefix += "/";
+        }
+        Iterator<Map.Entry<String, Page>> entries = PAGES.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Page> entry = entries.next();
+            if (inDir(entry.getKey(), prefix)) {
+                weight -= entry.getValue().weight();
+                entries.remove();
+            }
+        }
+        String dirPrefix = prefix;
+        TOO_LARGE.keySet().removeIf(key -> inDir(key, dirPrefix));
+    }
+
+    private static boolean inDir(String key, String dirPrefix) {
+        String uri = key.substring(0, key.lastIndexOf('|'));
+        return uri.startsWith(dirPrefix) && uri.indexOf('/', dirPrefix.length()) < 0;
+    }
+
+    /**
+     * Empties the cache and resets its counters.
+     */
+    public static synchronized void clear() {
+        PAGES.clear();
+        TOO_LARGE.clear();
+        weight = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    private static byte[] compress(String html) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(html.length() / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(html.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Cannot happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static synchronized long hits() {
+        return hits;
+    }
+
+    public static synchronized long misses() {
+        return misses;
+    }
+
+    public static synchronized long evictions() {
+        return evictions;
+    }
+
+    public static synchronized int size() {
+        return PAGES.size();
+    }
+
+    public static synchronized long weight() {
+        return weight;
+    }
+}
@@ -1,9 +1,6 @@
 package org.example;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -86,18 +83,8 @@ public class RepoCloner {
         System.out.println("Executing: " + String.join(" ", command));
         ProcessBuilder builder = new ProcessBuilder(command);
         builder.redirectErrorStream(true);
-        Process process = builder.start();
-
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
-            }
-        }
-
         try {
-            int exitCode = process.waitFor();
+            int exitCode = Utils.execTraced(builder, null, Utils::printLines);
             if (exitCode != 0) {
                 throw new IOException("git clone failed with exit code " + exitCode);
             }
@@ -0,0 +1,425 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A persistent queue of commit status updates that a background thread delivers to GitHub.
+ * <p>
+ * {@link #post} writes the status to a file of its own in the outbox directory, forces it to disk and returns, so a
+ * job never waits for GitHub or fails because GitHub is unavailable. The sender thread posts the statuses in the order they were
+ * written: only the oldest status of every commit and context is in flight at a time, and a newer one is only sent
+ * once the older one was delivered or given up. Statuses of different commits are sent independently.
+ * </p>
+ * <p>
+ * A status that could not be delivered (no answer, 5xx, 408, 403 or 429) is retried after an exponential backoff
+ * with jitter, up to {@code STATUS_MAX_ATTEMPTS} times. Other answers mean that GitHub will never accept the status,
+ * which is then dropped. Statuses still in the outbox when the server stops are delivered after {@link #start()};
+ * while the GitHub token cannot be loaded, delivery is retried with the same backoff.
+ * </p>
+ * <p>
+ * Requests are paced by {@link GithubRateLimit}. When the rate limit budget is tight, the statuses of a commit that
+ * a newer one replaces (e.g. a PENDING that was not sent yet when the SUCCESS arrives) are skipped.
+ * </p>
+ */
+public class StatusOutbox {
+
+    protected static final Path OUTBOX_DIR = Path.of("outbox");
+
+    private static final String STATUS_SUFFIX = ".json";
+    private static final long DEFAULT_RETRY_BASE_MILLIS = 1000;
+    private static final long DEFAULT_RETRY_MAX_MILLIS = 10 * 60 * 1000;
+    private static final long DEFAULT_MAX_ATTEMPTS = 20;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Map<Path, StatusOutbox> OUTBOXES = new ConcurrentHashMap<>();
+
+    /**
+     * A commit status update as it is stored in the outbox.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Status {
+        public String owner;
+        public String repo;
+        public String sha;
+        public GithubUtils.CommitState state;
+        public String targetUrl;
+        public String description;
+        public String context;
+        /** The trace and span of the job that posted the status, see {@link Tracing}; may be null. */
+        public String traceId;
+        public String parentSpanId;
+
+        /**
+         * @return the key that statuses are ordered by: their repository, commit and context
+         */
+        String orderKey() {
+            return owner + "/" + repo + "/" + sha + "/" + context;
+        }
+    }
+
+    /**
+     * A status waiting in the outbox, together with its delivery state. Only used on the sender thread.
+     */
+    private static class Pending {
+        final Path file;
+        final Status status;
+        int attempts;
+        long notBefore;
+        boolean inFlight;
+        /** The {@link System#nanoTime()} at which the last attempt was sent. */
+        long sentNanos;
+
+        Pending(Path file, Status status) {
+            this.file = file;
+            this.status = status;
+        }
+    }
+
+    private final Path dir;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final TreeMap<Long, Pending> pending = new TreeMap<>();
+    private final ScheduledExecutorService sender;
+    private ScheduledFuture<?> wakeUp;
+    /** The number of times in a row the token could not be loaded. Only used on the sender thread. */
+    private int tokenAttempts;
+    private volatile String token;
+
+    private StatusOutbox(Path dir) {
+        this.dir = dir;
+        this.sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "status-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the outbox in a directory, reading the statuses that are still in it the first time.
+     *
+     * @param dir the directory of the outbox
+     * @return the outbox in {@code dir}
+     * @throws IOException if the directory cannot be created or read
+     */
+    public static StatusOutbox forDir(Path dir) throws IOException {
+        try {
+            return OUTBOXES.computeIfAbsent(dir.toAbsolutePath().normalize(), key -> {
+                try {
+                    StatusOutbox outbox = new StatusOutbox(dir);
+                    outbox.load();
+                    return outbox;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the outbox of the server, in {@link #OUTBOX_DIR}
+     * @throws IOException if the outbox cannot be read
+     */
+    public static StatusOutbox shared() throws IOException {
+        return forDir(OUTBOX_DIR);
+    }
+
+    /**
+     * @return the outbox of the server if it was opened with {@link #shared()}, otherwise null
+     */
+    public static StatusOutbox sharedIfOpen() {
+        return OUTBOXES.get(OUTBOX_DIR.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Reads the statuses left in the outbox. They are only sent once {@link #start()} or {@link #post} is called.
+     */
+    private void load() throws IOException {
+        Files.createDirectories(dir);
+        long maxSequence = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + STATUS_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long sequence;
+                try {
+                    sequence = Long.parseLong(name.substring(0, name.length() - STATUS_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                try {
+                    pending.put(sequence, new Pending(file, MAPPER.readValue(file.toFile(), Status.class)));
+                } catch (IOException e) {
+                    // A status whose write was interrupted is incomplete and can never be sent
+                    System.out.println("Dropping unreadable status " + file + ": " + e.getMessage());
+                    Files.deleteIfExists(file);
+                }
+                maxSequence = Math.max(maxSequence, sequence);
+            }
+        }
+        nextSequence.set(maxSequence + 1);
+        if (!pending.isEmpty()) {
+            System.out.println("Status outbox " + dir + ": " + pending.size() + " status(es) to deliver");
+        }
+    }
+
+    /**
+     * Starts delivering the statuses left in the outbox, with the GitHub token from the config file.
+     */
+    public void start() {
+        sender.execute(this::deliver);
+    }
+
+    /**
+     * Stores a status in the outbox and has it delivered in the background.
+     *
+     * @param token the GitHub token to deliver the statuses with
+     * @param status the status to deliver
+     * @throws IOException if the status cannot be written to the outbox
+     */
+    public void post(String token, Status status) throws IOException {
+        this.token = token;
+        long sequence = nextSequence.getAndIncrement();
+        Path file = dir.resolve(String.format("%016d", sequence) + STATUS_SUFFIX);
+        Path tempFile = dir.resolve(file.getFileName() + ".tmp");
+        // The status must be on disk before it is named, and the name before the job goes on without it
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(MAPPER.writeValueAsBytes(status));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        sender.execute(() -> {
+            pending.put(sequence, new Pending(file, status));
+            deliver();
+        });
+    }
+
+    /**
+     * Forces the entries of the outbox directory to disk, so a status that was moved into place survives a crash.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on every platform, e.g. on Windows, where the move is durable
+        }
+    }
+
+    /**
+     * @return the number of statuses that have not been delivered or given up yet
+     */
+    public int size() {
+        try {
+            return sender.submit(pending::size).get();
+        } catch (InterruptedException | ExecutionException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sends the oldest status of every commit and context that is not in flight or waiting for a retry, as far as
+     * {@link GithubRateLimit} allows, and schedules the next run for the earliest retry. Runs on the sender thread.
+     */
+    private void deliver() {
+        String deliveryToken = token;
+        if (deliveryToken == null) {
+            try {
+                deliveryToken = token = GithubUtils.loadToken(CiConfig.CONFIG_FILE);
+            } catch (IOException e) {
+                // Try again later, unless a post brings a token before then
+                tokenAttempts++;
+                long retryMillis = backoffMillis(tokenAttempts);
+                System.out.println("Status outbox " + dir + ": cannot deliver yet, " + e.getMessage()
+                    + ", retrying in " + retryMillis + " ms");
+                scheduleDelivery(retryMillis);
+                return;
+            }
+        }
+        tokenAttempts = 0;
+
+        long now = System.currentTimeMillis();
+        long nextRetry = Long.MAX_VALUE;
+        Map<String, List<Pending>> byKey = new LinkedHashMap<>();
+        for (Pending next : pending.values()) {
+            byKey.computeIfAbsent(next.status.orderKey(), key -> new ArrayList<>()).add(next);
+        }
+        GithubRateLimit rateLimit = GithubRateLimit.shared();
+        boolean tight = rateLimit.isTight(now);
+        for (List<Pending> statuses : byKey.values()) {
+            Pending next = statuses.get(0);
+            if (tight) {
+                // With few requests left only the latest state of a commit is worth one: the older
+                // ones that are not in flight are dropped
+                int first = next.inFlight ? 1 : 0;
+                int stale = statuses.size() - 1 - first;
+                if (stale > 0) {
+                    for (Pending dropped : statuses.subList(first, statuses.size() - 1)) {
+                        remove(dropped);
+                    }
+                    rateLimit.recordCoalesced(stale);
+                    System.out.println("Status outbox " + dir + ": skipped " + stale + " superseded status(es) of "
+                        + next.status.sha + ", the rate limit is low");
+                    next = statuses.get(statuses.size() - 1);
+                    if (first == 1) {
+                        continue;
+                    }
+                }
+            }
+            if (next.inFlight) {
+                continue;
+            }
+            if (next.notBefore > now) {
+                nextRetry = Math.min(nextRetry, next.notBefore);
+                continue;
+            }
+            long wait = rateLimit.acquire(now);
+            if (wait > 0) {
+                // Nothing else can be sent before then either
+                nextRetry = Math.min(nextRetry, now + wait);
+                break;
+            }
+            Pending sent = next;
+            sent.inFlight = true;
+            sent.attempts++;
+            sent.sentNanos = System.nanoTime();
+            Status status = sent.status;
+            GithubUtils.updateStatusAsync(deliveryToken, status.owner, status.repo, status.sha, status.state,
+                    status.targetUrl, status.description, status.context)
+                .whenCompleteAsync((response, e) -> completed(sent, response, e), sender);
+        }
+
+        if (nextRetry != Long.MAX_VALUE) {
+            scheduleDelivery(nextRetry - now);
+        } else if (wakeUp != null) {
+            wakeUp.cancel(false);
+            wakeUp = null;
+        }
+    }
+
+    /**
+     * Runs {@link #deliver()} again after a delay, instead of any run that was scheduled before. Runs on the
+     * sender thread.
+     */
+    private void scheduleDelivery(long delayMillis) {
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
+        wakeUp = sender.schedule(this::deliver, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Handles the outcome of sending a status: removes it if it was delivered or can never be, otherwise
+     * schedules a retry. Runs on the sender thread.
+     */
+    private void completed(Pending sent, HttpResponse<String> response, Throwable error) {
+        sent.inFlight = false;
+        int statusCode = response != null ? response.statusCode() : -1;
+        String outcome = response != null ? "status " + statusCode : String.valueOf(error);
+        Status status = sent.status;
+        String description = status.state + " of " + status.owner + "/" + status.repo + "@" + status.sha;
+
+        boolean delivered = statusCode >= 200 && statusCode < 300;
+        boolean retry = !delivered && (response == null || isRetryable(response));
+        String postOutcome = delivered ? "delivered" : retry ? "retryable" : "rejected";
+        Metrics.record("status_post", status.owner + "/" + status.repo, postOutcome, System.nanoTime() - sent.sentNanos);
+        if (status.traceId != null) {
+            Tracing.Span span = Tracing.startRemote("status_post", status.traceId, status.parentSpanId,
+                    Tracing.epochNanos(sent.sentNanos))
+                .attribute("state", String.valueOf(status.state))
+                .attribute("attempt", sent.attempts)
+                .attribute("http.response.status_code", statusCode)
+                .attribute("outcome", postOutcome);
+            if (!delivered) {
+                span.fail(outcome);
+            }
+            span.end();
+        }
+        if (retry && sent.attempts < maxAttempts()) {
+            sent.notBefore = System.currentTimeMillis() + backoffMillis(sent.attempts);
+            System.out.println("Could not deliver " + description + " (" + outcome + "), attempt " + sent.attempts
+                + ", retrying in " + (sent.notBefore - System.currentTimeMillis()) + " ms");
+        } else {
+            if (!delivered) {
+                System.out.println("Giving up on " + description + " after " + sent.attempts + " attempt(s) (" + outcome + ")");
+            }
+            remove(sent);
+        }
+        deliver();
+    }
+
+    /**
+     * Removes a status from the outbox. Runs on the sender thread.
+     */
+    private void remove(Pending status) {
+        pending.values().remove(status);
+        try {
+            Files.deleteIfExists(status.file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param response GitHub's answer
+     * @return true if the same request may be accepted later
+     */
+    private static boolean isRetryable(HttpResponse<String> response) {
+        int statusCode = response.statusCode();
+        if (statusCode == 403) {
+            // GitHub answers 403 to rate limited requests, but also to a bad token or a missing permission,
+            // which would block the newer statuses of the commit for hours of retries
+            return response.headers().firstValue("Retry-After").isPresent()
+                || response.headers().firstValueAsLong("X-RateLimit-Remaining").orElse(-1) == 0;
+        }
+        return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+    }
+
+    /**
+     * @param attempts the number of attempts so far
+     * @return a random delay of at least half of the exponential backoff for {@code attempts}, capped by
+     *         {@code STATUS_RETRY_MAX_MILLIS}
+     */
+    protected static long backoffMillis(int attempts) {
+        long base = Math.max(1, CiConfig.getLong("STATUS_RETRY_BASE_MILLIS", DEFAULT_RETRY_BASE_MILLIS));
+        long max = Math.max(base, CiConfig.getLong("STATUS_RETRY_MAX_MILLIS", DEFAULT_RETRY_MAX_MILLIS));
+        long backoff = base << Math.min(attempts - 1, 30);
+        if (backoff <= 0 || backoff > max) {
+            backoff = max;
+        }
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private static long maxAttempts() {
+        return Math.max(1, CiConfig.getLong("STATUS_MAX_ATTEMPTS", DEFAULT_MAX_ATTEMPTS));
+    }
+}
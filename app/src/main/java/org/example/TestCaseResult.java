@@ -0,0 +1,34 @@
+package org.example;
+
+/**
+ * The outcome of a single test case, as read from a JUnit XML report.
+ */
+public class TestCaseResult {
+
+    /**
+     * The possible outcomes of a test case.
+     */
+    public enum Status {
+        PASSED,
+        FAILED,
+        ERROR,
+        SKIPPED
+    }
+
+    public String className;
+    public String name;
+    public Status status;
+    public long durationMillis;
+
+    /**
+     * message: the (truncated) failure, error or skip message, or null.
+     */
+    public String message;
+
+    /**
+     * @return true if the test failed or could not run because of an error
+     */
+    public boolean isFailure() {
+        return status == Status.FAILED || status == Status.ERROR;
+    }
+}
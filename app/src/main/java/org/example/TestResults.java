@@ -0,0 +1,277 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Utility for collecting the JUnit XML reports written by Gradle into compact per-test records.
+ * <p>
+ * Reports are read with a streaming (StAX) parser and the records are written one by one as a JSON array,
+ * so neither side ever holds a whole report or all records in memory. The records file is gzip compressed
+ * if its name ends in {@link LogFiles#GZIP_SUFFIX}.
+ * </p>
+ */
+public class TestResults {
+
+    protected static final String TEST_RESULTS_SUFFIX = ".tests.json";
+
+    private static final int MAX_MESSAGE_LENGTH = 500;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final XMLInputFactory XML_FACTORY = createXmlFactory();
+
+    /**
+     * Counts of test cases per status.
+     */
+    public static class Summary {
+        public int total;
+        public int failed;
+        public int errors;
+        public int skipped;
+    }
+
+    private static XMLInputFactory createXmlFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Finds all JUnit XML reports under {@code build/test-results} directories of {@code repoDir}
+     * (including those of subprojects) and writes their test cases to {@code outFile}.
+     *
+     * @param repoDir the directory of the repository
+     * @param outFile the file to write the records to
+     * @return the counts of the collected test cases, or null if the repository has no reports
+     * @throws IOException if the reports cannot be listed or the records cannot be written
+     */
+    public static Summary collect(Path repoDir, Path outFile) throws IOException {
+        List<Path> reports = findReports(repoDir);
+        if (reports.isEmpty()) {
+            return null;
+        }
+
+        Summary summary = new Summary();
+        Files.createDirectories(outFile.toAbsolutePath().getParent());
+        try (Writer writer = new OutputStreamWriter(LogFiles.newOutputStream(outFile), StandardCharsets.UTF_8);
+             JsonGenerator json = JSON_FACTORY.createGenerator(writer)) {
+            json.writeStartArray();
+            for (Path report : reports) {
+                try (InputStream in = Files.newInputStream(report)) {
+                    parseReport(in, result -> {
+                        count(summary, result);
+                        writeRecord(json, result);
+                    });
+                } catch (XMLStreamException e) {
+                    System.out.println("Skipping unreadable test report " + report + ": " + e.getMessage());
+                }
+            }
+            json.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return summary;
+    }
+
+    /**
+     * Lists the XML files in all {@code build/test-results} directories below {@code repoDir}.
+     */
+    private static List<Path> findReports(Path repoDir) throws IOException {
+        List<Path> reports = new ArrayList<>();
+        Files.walkFileTree(repoDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                Path name = dir.getFileName();
+                if (name != null && name.toString().equals(".git")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.getFileName().toString().endsWith(".xml") && isInTestResults(repoDir.relativize(file))) {
+                    reports.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        reports.sort(null);
+        return reports;
+    }
+
+    private static boolean isInTestResults(Path relative) {
+        for (int i = 0; i + 1 < relative.getNameCount(); i++) {
+            if (relative.getName(i).toString().equals("build") && relative.getName(i + 1).toString().equals("test-results")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses one JUnit XML report and passes every test case to {@code consumer}.
+     *
+     * @param in the report
+     * @param consumer receives the test cases in report order
+     * @throws XMLStreamException if the report is not well-formed XML
+     */
+    public static void parseReport(InputStream in, Consumer<TestCaseResult> consumer) throws XMLStreamException {
+        XMLStreamReader reader = XML_FACTORY.createXMLStreamReader(in);
+        try {
+            TestCaseResult current = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if (element.equals("testcase")) {
+                        current = new TestCaseResult();
+                        current.className = reader.getAttributeValue(null, "classname");
+                        current.name = reader.getAttributeValue(null, "name");
+                        current.status = TestCaseResult.Status.PASSED;
+                        current.durationMillis = parseSeconds(reader.getAttributeValue(null, "time"));
+                    } else if (current != null && current.status == TestCaseResult.Status.PASSED) {
+                        if (element.equals("failure")) {
+                            current.status = TestCaseResult.Status.FAILED;
+                            current.message = messageOf(reader);
+                        } else if (element.equals("error")) {
+                            current.status = TestCaseResult.Status.ERROR;
+                            current.message = messageOf(reader);
+                        } else if (element.equals("skipped")) {
+                            current.status = TestCaseResult.Status.SKIPPED;
+                            current.message = messageOf(reader);
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("testcase")) {
+                    if (current != null) {
+                        consumer.accept(current);
+                    }
+                    current = null;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String messageOf(XMLStreamReader reader) {
+        String message = reader.getAttributeValue(null, "message");
+        if (message == null) {
+            message = reader.getAttributeValue(null, "type");
+        }
+        if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH) + "...";
+        }
+        return message;
+    }
+
+    private static long parseSeconds(String seconds) {
+        if (seconds == null) {
+            return 0;
+        }
+        try {
+            return Math.round(Double.parseDouble(seconds.replace(",", "")) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void count(Summary summary, TestCaseResult result) {
+        summary.total++;
+        switch (result.status) {
+            case FAILED:
+                summary.failed++;
+                break;
+            case ERROR:
+                summary.errors++;
+                break;
+            case SKIPPED:
+                summary.skipped++;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void writeRecord(JsonGenerator json, TestCaseResult result) {
+        try {
+            json.writeStartObject();
+            json.writeStringField("class", result.className);
+            json.writeStringField("name", result.name);
+            json.writeStringField("status", result.status.toString());
+            json.writeNumberField("duration", result.durationMillis);
+            if (result.message != null) {
+                json.writeStringField("message", result.message);
+            }
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the records written by {@link #collect(Path, Path)} one by one.
+     *
+     * @param file the records file
+     * @param consumer receives the test cases in the order they were written
+     * @throws IOException if the file cannot be read
+     */
+    public static void read(Path file, Consumer<TestCaseResult> consumer) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(LogFiles.newInputStream(file))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Test results file is not a JSON array: " + file);
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                TestCaseResult result = new TestCaseResult();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "class":
+                            result.className = parser.getValueAsString();
+                            break;
+                        case "name":
+                            result.name = parser.getValueAsString();
+                            break;
+                        case "status":
+                            result.status = TestCaseResult.Status.valueOf(parser.getValueAsString());
+                            break;
+                        case "duration":
+                            result.durationMillis = parser.getValueAsLong();
+                            break;
+                        case "message":
+                            result.message = parser.getValueAsString();
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+                consumer.accept(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Traces of CI jobs: every job gets a trace ID, and its stages, processes and GitHub calls are recorded as nested
+ * spans with attributes.
+ * <p>
+ * A span started with {@link #start(String)} is a child of the span the current thread is in, and becomes the
+ * current span until it ends, so the stages of a job nest without passing the spans around. Work done on another
+ * thread (e.g. the status posts of {@link StatusOutbox}) joins a trace with {@link #startRemote}.
+ * </p>
+ * <p>
+ * The spans of a trace are kept in memory until its root span ends, and are then appended as one line to a file
+ * in {@link #TRACES_DIR}, in the OTLP JSON format of OpenTelemetry (the format of the file exporter of the
+ * OpenTelemetry Collector), so the files can be imported into any OpenTelemetry backend. Spans that end after their
+ * root are written on a line of their own. A file is rotated once it grows beyond {@code TRACE_FILE_BYTES}
+ * (default 16 MB), and only the newest {@code TRACE_MAX_FILES} (default 5) files are kept. {@code TRACING=false}
+ * turns the export off.
+ * </p>
+ */
+public class Tracing {
+
+    protected static final Path TRACES_DIR = Path.of("traces");
+    /** The route of the spans of a trace: {@code traces/<trace-id>}. */
+    protected static final String ROUTE = "traces";
+
+    private static final String FILE_PREFIX = "traces-";
+    private static final String FILE_SUFFIX = ".jsonl";
+    private static final long DEFAULT_FILE_BYTES = 16L * 1024 * 1024;
+    private static final long DEFAULT_MAX_FILES = 5;
+    private static final String SERVICE_NAME = "ci-server";
+
+    /** Added to {@link System#nanoTime()} to get the time since the epoch in nanoseconds. */
+    private static final long EPOCH_OFFSET_NANOS = System.currentTimeMillis() * 1_000_000 - System.nanoTime();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    /** The ended spans of every trace whose root span is still open. */
+    private static final Map<String, List<RecordedSpan>> OPEN_TRACES = new ConcurrentHashMap<>();
+
+    private static int fileIndex = -1;
+
+    /**
+     * An ended span, as it is exported and read back.
+     */
+    public static class RecordedSpan {
+        public String traceId;
+        public String spanId;
+        public String parentSpanId;
+        public String name;
+        public long startEpochNanos;
+        public long endEpochNanos;
+        public Map<String, Object> attributes = new LinkedHashMap<>();
+        /** The error the span ended with, or null if it succeeded. */
+        public String error;
+    }
+
+    /**
+     * A running span. It is ended with {@link #end()}, which also ends it as the current span of its thread.
+     */
+    public static class Span implements AutoCloseable {
+        private final RecordedSpan span = new RecordedSpan();
+        /** The span that was current before this one, or null if this one is not a current span. */
+        private final Span previous;
+        private final boolean current;
+        private boolean ended;
+
+        private Span(String traceId, String parentSpanId, String name, long startEpochNanos, boolean current) {
+            span.traceId = traceId;
+            span.spanId = randomId(8);
+            span.parentSpanId = parentSpanId;
+            span.name = name;
+            span.startEpochNanos = startEpochNanos;
+            this.current = current;
+            this.previous = current ? CURRENT.get() : null;
+            if (current) {
+                CURRENT.set(this);
+            }
+        }
+
+        /**
+         * @return the ID of the trace of the span, or null if it is not recorded
+         */
+        public String traceId() {
+            return span.traceId;
+        }
+
+        public String spanId() {
+            return span.spanId;
+        }
+
+        /**
+         * @param key the name of the attribute, e.g. {@code repository}
+         * @param value a string, number or boolean
+         * @return this span
+         */
+        public Span attribute(String key, Object value) {
+            if (value != null) {
+                span.attributes.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Marks the span as failed.
+         *
+         * @param error what went wrong
+         * @return this span
+         */
+        public Span fail(String error) {
+            span.error = error;
+            return this;
+        }
+
+        /**
+         * Ends the span, makes the span it was started in current again and exports it.
+         */
+        public void end() {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            span.endEpochNanos = epochNanos(System.nanoTime());
+            if (current && CURRENT.get() == this) {
+                CURRENT.set(previous);
+            }
+            export(span);
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+    }
+
+    /**
+     * Starts the root span of a new trace, which becomes the current span of this thread.
+     *
+     * @param name the name of the span, e.g. {@code job}
+     * @param startEpochNanos when the span started, in ns since the epoch
+     * @return the started span
+     */
+    public static Span startTrace(String name, long startEpochNanos) {
+        String traceId = randomId(16);
+        OPEN_TRACES.put(traceId, new ArrayList<>());
+        return new Span(traceId, null, name, startEpochNanos, true);
+    }
+
+    /**
+     * Starts a span in the current span of this thread. Outside of a trace (e.g. a process started by a test) the
+     * span is not recorded.
+     *
+     * @param name the name of the span, e.g. {@code clone}
+     * @return the started span, which is the current span until it ends
+     */
+    public static Span start(String name) {
+        return start(name, epochNanos(System.nanoTime()));
+    }
+
+    /**
+     * Starts a span in the current span of this thread that started earlier, see {@link #start(String)}.
+     *
+     * @param name the name of the span
+     * @param startEpochNanos when the span started, in ns since the epoch
+     * @return the started span
+     */
+    public static Span start(String name, long startEpochNanos) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return new Span(null, null, name, startEpochNanos, false);
+        }
+        return new Span(parent.traceId(), parent.spanId(), name, startEpochNanos, true);
+    }
+
+    /**
+     * Starts a span of a trace on a thread that does not run it, e.g. for work handed over to a background thread.
+     * The span does not become the current span of the thread.
+     *
+     * @param name the name of the span
+     * @param traceId the trace to join
+     * @param parentSpanId the span to nest the span in
+     * @param startEpochNanos when the span started, in ns since the epoch
+     * @return the started span
+     */
+    public static Span startRemote(String name, String traceId, String parentSpanId, long startEpochNanos) {
+        return new Span(traceId, parentSpanId, name, startEpochNanos, false);
+    }
+
+    /**
+     * @return the current span of this thread, or null if it is not in a span
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param nanoTime a value of {@link System#nanoTime()}
+     * @return the same time in ns since the epoch
+     */
+    public static long epochNanos(long nanoTime) {
+        return EPOCH_OFFSET_NANOS + nanoTime;
+    }
+
+    private static String randomId(int bytes) {
+        byte[] id = new byte[bytes];
+        do {
+            ThreadLocalRandom.current().nextBytes(id);
+        } while (Arrays.equals(id, new byte[bytes]));  // All-zero IDs are invalid
+        return HEX.formatHex(id);
+    }
+
+    /**
+     * @param traceId a string from a URL
+     * @return true if {@code traceId} has the form of a trace ID
+     */
+    public static boolean isTraceId(String traceId) {
+        return traceId != null && traceId.matches("[0-9a-f]{32}");
+    }
+
+    /**
+     * Keeps an ended span until the root span of its trace ends, and writes the whole trace then.
+     */
+    private static void export(RecordedSpan span) {
+        if (span.traceId == null) {
+            return;
+        }
+        if (span.parentSpanId == null) {
+            List<RecordedSpan> spans = OPEN_TRACES.remove(span.traceId);
+            List<RecordedSpan> trace = new ArrayList<>(spans != null ? spans : List.of());
+            trace.add(span);
+            write(trace);
+            return;
+        }
+        boolean kept = OPEN_TRACES.computeIfPresent(span.traceId, (traceId, spans) -> {
+            spans.add(span);
+            return spans;
+        }) != null;
+        if (!kept) {
+            // The root span already ended
+            write(List.of(span));
+        }
+    }
+
+    private static boolean enabled() {
+        return CiConfig.getBoolean("TRACING", true);
+    }
+
+    /**
+     * Appends spans as one OTLP JSON line to the newest trace file, rotating it if it is full.
+     */
+    private static synchronized void write(List<RecordedSpan> spans) {
+        if (!enabled()) {
+            return;
+        }
+        try {
+            StringWriter line = new StringWriter();
+            writeOtlp(spans, line);
+            line.append('\n');
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+            Files.createDirectories(TRACES_DIR);
+            if (fileIndex < 0) {
+                List<Path> files = traceFiles();
+                fileIndex = files.isEmpty() ? 1 : index(files.get(0));
+            }
+            Path file = traceFile(fileIndex);
+            long maxBytes = Math.max(1, CiConfig.getLong("TRACE_FILE_BYTES", DEFAULT_FILE_BYTES));
+            if (Files.exists(file) && Files.size(file) + bytes.length > maxBytes) {
+                fileIndex++;
+                file = traceFile(fileIndex);
+                deleteOldFiles();
+            }
+            try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not export spans: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the oldest trace files beyond {@code TRACE_MAX_FILES}, counting the one that is about to be started.
+     */
+    private static void deleteOldFiles() throws IOException {
+        long maxFiles = Math.max(1, CiConfig.getLong("TRACE_MAX_FILES", DEFAULT_MAX_FILES));
+        List<Path> files = traceFiles();
+        for (int i = (int) Math.max(0, maxFiles - 1); i < files.size(); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private static Path traceFile(int index) {
+        return TRACES_DIR.resolve(FILE_PREFIX + String.format(Locale.ROOT, "%06d", index) + FILE_SUFFIX);
+    }
+
+    private static int index(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the trace files, newest first
+     */
+    private static List<Path> traceFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(TRACES_DIR)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(TRACES_DIR, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparingInt(Tracing::index).reversed());
+        return files;
+    }
+
+    /**
+     * Writes spans as an OTLP JSON {@code ExportTraceServiceRequest}.
+     *
+     * @param spans the spans to write
+     * @param out the writer to write the JSON to
+     * @throws IOException if writing fails
+     */
+    public static void writeOtlp(List<RecordedSpan> spans, Writer out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("resourceSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("resource");
+            json.writeArrayFieldStart("attributes");
+            writeAttribute(json, "service.name", SERVICE_NAME);
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeArrayFieldStart("scopeSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("scope");
+            json.writeStringField("name", Tracing.class.getName());
+            json.writeEndObject();
+            json.writeArrayFieldStart("spans");
+            for (RecordedSpan span : spans) {
+                json.writeStartObject();
+                json.writeStringField("traceId", span.traceId);
+                json.writeStringField("spanId", span.spanId);
+                if (span.parentSpanId != null) {
+                    json.writeStringField("parentSpanId", span.parentSpanId);
+                }
+                json.writeStringField("name", span.name);
+                // SPAN_KIND_INTERNAL
+                json.writeNumberField("kind", 1);
+                // 64-bit integers are strings in OTLP JSON
+                json.writeStringField("startTimeUnixNano", Long.toString(span.startEpochNanos));
+                json.writeStringField("endTimeUnixNano", Long.toString(span.endEpochNanos));
+                json.writeArrayFieldStart("attributes");
+                for (Map.Entry<String, Object> attribute : span.attributes.entrySet()) {
+                    writeAttribute(json, attribute.getKey(), attribute.getValue());
+                }
+                json.writeEndArray();
+                json.writeObjectFieldStart("status");
+                if (span.error != null) {
+                    // STATUS_CODE_ERROR
+                    json.writeNumberField("code", 2);
+                    json.writeStringField("message", span.error);
+                }
+                json.writeEndObject();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeAttribute(JsonGenerator json, String key, Object value) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("key", key);
+        json.writeObjectFieldStart("value");
+        if (value instanceof Integer || value instanceof Long) {
+            json.writeStringField("intValue", value.toString());
+        } else if (value instanceof Number) {
+            json.writeNumberField("doubleValue", ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            json.writeBooleanField("boolValue", (Boolean) value);
+        } else {
+            json.writeStringField("stringValue", value.toString());
+        }
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    /**
+     * Reads the spans of a trace from the trace files. Lines that do not mention the trace are skipped without
+     * being parsed.
+     *
+     * @param traceId the ID of the trace
+     * @return the spans of the trace ordered by their start, empty if the trace is unknown or was rotated away
+     * @throws IOException if a trace file cannot be read
+     */
+    public static List<RecordedSpan> find(String traceId) throws IOException {
+        List<RecordedSpan> spans = new ArrayList<>();
+        if (!isTraceId(traceId)) {
+            return spans;
+        }
+        for (Path file : traceFiles()) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains(traceId)) {
+                        readSpans(line, traceId, spans);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Rotated away while it was read
+            }
+        }
+        spans.sort(Comparator.comparingLong(span -> span.startEpochNanos));
+        return spans;
+    }
+
+    private static void readSpans(String line, String traceId, List<RecordedSpan> spans) {
+        JsonNode request;
+        try {
+            request = MAPPER.readTree(line);
+        } catch (IOException e) {
+            // A line that is still being written
+            return;
+        }
+        for (JsonNode resourceSpans : request.path("resourceSpans")) {
+            for (JsonNode scopeSpans : resourceSpans.path("scopeSpans")) {
+                for (JsonNode node : scopeSpans.path("spans")) {
+                    if (!traceId.equals(node.path("traceId").asText())) {
+                        continue;
+                    }
+                    RecordedSpan span = new RecordedSpan();
+                    span.traceId = traceId;
+                    span.spanId = node.path("spanId").asText();
+                    span.parentSpanId = node.hasNonNull("parentSpanId") ? node.get("parentSpanId").asText() : null;
+                    span.name = node.path("name").asText();
+                    span.startEpochNanos = node.path("startTimeUnixNano").asLong();
+                    span.endEpochNanos = node.path("endTimeUnixNano").asLong();
+                    for (JsonNode attribute : node.path("attributes")) {
+                        JsonNode value = attribute.path("value");
+                        Object attributeValue;
+                        if (value.has("intValue")) {
+                            attributeValue = value.get("intValue").asLong();
+                        } else if (value.has("doubleValue")) {
+                            attributeValue = value.get("doubleValue").asDouble();
+                        } else if (value.has("boolValue")) {
+                            attributeValue = value.get("boolValue").asBoolean();
+                        } else {
+                            attributeValue = value.path("stringValue").asText();
+                        }
+                        span.attributes.put(attribute.path("key").asText(), attributeValue);
+                    }
+                    if (node.path("status").path("code").asInt() == 2) {
+                        span.error = node.path("status").path("message").asText();
+                    }
+                    spans.add(span);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the open traces and the current trace file, e.g. after {@link #TRACES_DIR} was emptied.
+     */
+    protected static synchronized void reset() {
+        OPEN_TRACES.clear();
+        CURRENT.remove();
+        fileIndex = -1;
+    }
+}
@@ -3,25 +3,61 @@ package org.example;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 public class Utils {
 
     protected static final Path LOGS_DIR = Path.of("logs");
 
-    public static CmdResult execGradleCommandInRepo(Path repoDir, String... args) {
+    protected static final String BUILD_LOG_SUFFIX = ".build.log";
+    protected static final String TEST_LOG_SUFFIX = ".test.log";
+
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+    private static final int EXCERPT_HEAD_SIZE = 4 * 1024;
+    private static final int EXCERPT_TAIL_SIZE = 16 * 1024;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Runs the Gradle wrapper in {@code repoDir} and streams its output into {@code logFile}.
+     * <p>
+     * The output is copied through a fixed-size buffer, so memory use does not depend on how much
+     * the process prints. Only a bounded head/tail excerpt is kept in the returned {@link CmdResult}, and
+     * the log file itself is capped by {@link CappedLogOutput}.
+     * While the command runs, the log file can be followed through {@link LogFollower}.
+     * </p>
+     * @param repoDir the directory of the repository
+     * @param logFile the file to write the combined standard output/error to
+     * @param args the arguments to pass to Gradle
+     * @return the status of the command together with the log file and an excerpt of the output
+     */
+    public static CmdResult execGradleCommandInRepo(Path repoDir, Path logFile, String... args) {
+        return execGradleCommandInRepo(repoDir, logFile, null, args);
+    }
+
+    /**
+     * Runs the Gradle wrapper in {@code repoDir} and streams its output into {@code logFile},
+     * see {@link #execGradleCommandInRepo(Path, Path, String...)}.
+     *
+     * @param repoDir the directory of the repository
+     * @param logFile the file to write the combined standard output/error to
+     * @param lineListener receives every line of output while the command runs, may be null
+     * @param args the arguments to pass to Gradle
+     * @return the status of the command together with the log file and an excerpt of the output
+     */
+    public static CmdResult execGradleCommandInRepo(Path repoDir, Path logFile, Consumer<String> lineListener, String... args) {
 
         if(repoDir == null || !Files.isDirectory(repoDir)) {
             // throw new FileNotFoundException("Repo dir \"" + repoDir + "\" not found");
@@ -50,20 +86,33 @@ public class Utils {
         pb.redirectErrorStream(true);
 
         try {
-            Process process = pb.start();
-
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
+            Files.createDirectories(logFile.toAbsolutePath().getParent());
+            LogFollower.begin(logFile);
+            long startTime = System.nanoTime();
+            OutputExcerpt excerpt = new OutputExcerpt(EXCERPT_HEAD_SIZE, EXCERPT_TAIL_SIZE);
+            int exitCode = execTraced(pb, logFile, in -> {
+                long outputBytes = 0;
+                try (CappedLogOutput out = new CappedLogOutput(logFile)) {
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    LineSplitter lines = lineListener != null ? new LineSplitter(lineListener) : null;
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        outputBytes += read;
+                        out.write(buffer, 0, read);
+                        excerpt.append(buffer, 0, read);
+                        if (lines != null) {
+                            // Make sure everything a listener reacts to is already in the log file
+                            out.flush();
+                            lines.append(buffer, read);
+                        }
+                    }
                 }
-            }
-
-            int exitCode = process.waitFor();
+                return outputBytes;
+            });
 
             CmdResult.Type status = (exitCode == 0) ? CmdResult.Type.SUCCESS : CmdResult.Type.FAILURE;
-            CmdResult result = new CmdResult(status, output.toString());
+            CmdResult result = new CmdResult(status, excerpt.toString(), logFile);
+            result.durationMillis = (System.nanoTime() - startTime) / 1_000_000;
 
             return result;
 
@@ -73,32 +122,218 @@ public class Utils {
         } catch (InterruptedException e) {
             System.out.println("INTERRUPT ERROR");
             return new CmdResult(CmdResult.Type.ERROR, e.getMessage());
+        } finally {
+            LogFollower.end(logFile);
         }
     }
 
-    protected static Path saveLogToFile(Path logDir, CmdResult buildResult, CmdResult testResult, String commitSha) throws IOException {
-        String timeNow = OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-        // Path outputDir = ALL_BUILDS_DIR.resolve(payload.repository.full_name);
-        Path filePath = logDir.resolve(timeNow + ".json");
+    /**
+     * Reads the output of a process while it runs.
+     */
+    public interface OutputReader {
+        /**
+         * @param in the combined standard output/error of the process, closed afterwards
+         * @return the number of bytes read
+         * @throws IOException if the output cannot be read or stored
+         */
+        long read(InputStream in) throws IOException;
+    }
 
-        Files.createDirectories(logDir);
+    /**
+     * Starts a process and waits for it to exit. The process is recorded as a {@link CiEvents.ProcessExit} event
+     * and traced as an {@code exec} span, which is ended however the process ends; a non-zero exit code fails it.
+     *
+     * @param builder the builder of the process, with standard error redirected to standard output
+     * @param logFile the file the output is written to, recorded on the span, may be null
+     * @param output reads the output of the process
+     * @return the exit code of the process
+     * @throws IOException if the process cannot be started or its output cannot be read
+     * @throws InterruptedException if the thread is interrupted while waiting for the process
+     */
+    public static int execTraced(ProcessBuilder builder, Path logFile, OutputReader output) throws IOException, InterruptedException {
+        Tracing.Span span = Tracing.start("exec").attribute("process.command_line", String.join(" ", builder.command()));
+        if (logFile != null) {
+            span.attribute("log.file", logFile.toString());
+        }
+        try {
+            CiEvents.ProcessExit event = CiEvents.process();
+            Process process = builder.start();
+            event.started(process, builder);
+            span.attribute("process.pid", process.pid());
+
+            long outputBytes;
+            try (InputStream in = process.getInputStream()) {
+                outputBytes = output.read(in);
+            }
+            int exitCode = process.waitFor();
+            event.exited(exitCode, outputBytes);
+            span.attribute("process.exit_code", exitCode).attribute("output_bytes", outputBytes);
+            if (exitCode != 0) {
+                span.fail("exit code " + exitCode);
+            }
+            return exitCode;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            span.fail(e.toString());
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
 
-        BufferedWriter writer = new BufferedWriter(new FileWriter(filePath.toFile()));
+    /**
+     * Prints the output of a process line by line, for {@link #execTraced(ProcessBuilder, Path, OutputReader)}.
+     *
+     * @param in the output of the process
+     * @return the number of bytes read
+     * @throws IOException if the output cannot be read
+     */
+    public static long printLines(InputStream in) throws IOException {
+        long outputBytes = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            System.out.println(line);
+            outputBytes += line.length() + 1;
+        }
+        return outputBytes;
+    }
 
-        // Create log and add info
-        ObjectMapper logMapper = new ObjectMapper();
-        ObjectNode jsonObject = logMapper.createObjectNode();
+    /**
+     * Splits a byte stream into lines for a line listener. Lines longer than {@link #MAX_LINE_LENGTH}
+     * bytes are cut off.
+     */
+    private static class LineSplitter {
+        private static final int MAX_LINE_LENGTH = 4 * 1024;
 
-        jsonObject.put("timestamp", timeNow);
-        jsonObject.put("commitIdentifier", commitSha);
-        jsonObject.put("buildStatus", buildResult.status.toString());
-        jsonObject.put("buildLog", buildResult.log);
-        jsonObject.put("testStatus", testResult.status.toString());
-        jsonObject.put("testLog", testResult.log);
+        private final Consumer<String> listener;
+        private final byte[] line = new byte[MAX_LINE_LENGTH];
+        private int length;
 
-        writer.write(jsonObject.toPrettyString());
-        writer.close();
+        LineSplitter(Consumer<String> listener) {
+            this.listener = listener;
+        }
+
+        void append(byte[] buffer, int count) {
+            for (int i = 0; i < count; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    int end = (length > 0 && line[length - 1] == '\r') ? length - 1 : length;
+                    listener.accept(new String(line, 0, end, StandardCharsets.UTF_8));
+                    length = 0;
+                } else if (length < line.length) {
+                    line[length++] = b;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the metadata of a CI job to {@code <timestamp>.json} in {@code logDir} and adds it to the
+     * {@link BuildIndex} of the directory.
+     * <p>
+     * The outputs of the build and test steps are not copied into the JSON file; it only refers to the
+     * log files they were streamed to, which are gzip compressed when the job is saved.
+     * Results without a log file (e.g. errors) store their message inline.
+     * </p>
+     * <p>
+     * If {@link LogSegments#enabled()}, the JSON file, the logs and the test results are then appended to the
+     * active segment of the directory and the loose files are removed.
+     * </p>
+     * @param logDir the directory holding the logs of the repository
+     * @param info the timestamp, commit, branch, duration and test results file of the job; the status and
+     *             log fields are filled in from {@code buildResult} and {@code testResult}
+     * @param buildResult the result of the build step
+     * @param testResult the result of the test step
+     * @return the path of the written JSON file, which is served from its segment if it was moved into one
+     * @throws IOException if the file cannot be written
+     */
+    protected static Path saveLogToFile(Path logDir, LogInfo info, CmdResult buildResult, CmdResult testResult) throws IOException {
+        Path filePath = logDir.resolve(info.timestamp + ".json");
+
+        Files.createDirectories(logDir);
+
+        info.buildStatus = buildResult.status.toString();
+        info.buildLogFile = storeLogFile(buildResult);
+        info.buildLog = info.buildLogFile == null ? buildResult.log : null;
+        info.testStatus = testResult.status.toString();
+        info.testLogFile = storeLogFile(testResult);
+        info.testLog = info.testLogFile == null ? testResult.log : null;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8);
+             JsonGenerator json = JSON_FACTORY.createGenerator(writer).useDefaultPrettyPrinter()) {
+            json.writeStartObject();
+            json.writeStringField("timestamp", info.timestamp);
+            json.writeStringField("commitIdentifier", info.commitIdentifier);
+            if (info.branch != null) {
+                json.writeStringField("branch", info.branch);
+            }
+            json.writeNumberField("durationMillis", info.durationMillis);
+            writeResultFields(json, "build", info.buildStatus, info.buildLog, info.buildLogFile);
+            writeResultFields(json, "test", info.testStatus, info.testLog, info.testLogFile);
+            if (info.testResultsFile != null) {
+                json.writeStringField("testResultsFile", info.testResultsFile);
+            }
+            if (info.traceId != null) {
+                json.writeStringField("traceId", info.traceId);
+            }
+            json.writeEndObject();
+        }
+
+        String logFileName = filePath.getFileName().toString();
+        if (LogSegments.enabled()) {
+            List<Path> files = LogRetention.buildFiles(logDir, logFileName);
+            // Both the segment and the index are on disk when these return, so the build survives a crash
+            // that happens after its loose files are removed
+            String segment = LogSegments.forDir(logDir).append(files);
+            BuildIndex.forDir(logDir).add(info, logFileName, segment);
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } else {
+            BuildIndex.forDir(logDir).add(info, logFileName);
+        }
+        LogSearchIndex.indexLater(logDir, logFileName);
 
         return filePath;
     }
+
+    /**
+     * Compresses the log file of {@code result}, see {@link LogFiles}, or splits it into deduplicated chunks
+     * if {@link LogChunks#enabled()}.
+     *
+     * @return the name of the stored log file, or null if {@code result} has no log file
+     */
+    private static String storeLogFile(CmdResult result) throws IOException {
+        Path storedLogFile = result.logFile != null ? LogFiles.find(result.logFile) : null;
+        if (storedLogFile == null) {
+            return null;
+        }
+        if (!LogFiles.isCompressed(storedLogFile) && !LogChunks.isManifest(storedLogFile)) {
+            CiEvents.LogWrite event = new CiEvents.LogWrite();
+            event.begin();
+            long bytes = Files.size(storedLogFile);
+            boolean chunks = LogChunks.enabled();
+            storedLogFile = chunks ? LogChunks.shared().store(storedLogFile) : LogFiles.compress(storedLogFile);
+            if (event.shouldCommit()) {
+                event.file = storedLogFile.toString();
+                event.kind = chunks ? "chunks" : "gzip";
+                event.bytes = bytes;
+                event.storedBytes = Files.size(storedLogFile);
+                event.commit();
+            }
+        }
+        return storedLogFile.getFileName().toString();
+    }
+
+    /**
+     * Writes the status of a step and either a reference to its log file or its inline log.
+     */
+    private static void writeResultFields(JsonGenerator json, String step, String status, String log, String logFile) throws IOException {
+        json.writeStringField(step + "Status", status);
+        if (logFile != null) {
+            json.writeStringField(step + "LogFile", logFile);
+        } else {
+            json.writeStringField(step + "Log", log);
+        }
+    }
 }
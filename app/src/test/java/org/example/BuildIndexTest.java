@@ -0,0 +1,196 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BuildIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("INDEX_PAGE_SCAN_LIMIT");
+    }
+
+    private static LogInfo logInfo(String timestamp, String sha, String buildStatus) {
+        LogInfo info = new LogInfo();
+        info.timestamp = timestamp;
+        info.commitIdentifier = sha;
+        info.branch = "main";
+        info.buildStatus = buildStatus;
+        info.testStatus = "NON_EXISTENT";
+        info.durationMillis = 1234;
+        return info;
+    }
+
+    /**
+     * Positive test: A missing index is rebuilt from the JSON logs.
+     * Test case: A log directory has two JSON logs written out of order, a test results file and no index.
+     * Expected: The index lists the two builds oldest first and is written to disk.
+     */
+    @Test
+    void forDir_missingIndex_rebuildsFromLogs() throws IOException {
+        Path logDir = tempDir.resolve("rebuild");
+        Files.createDirectories(logDir);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.writeValue(logDir.resolve("2026-02-02T10:00:00+01:00.json").toFile(),
+            logInfo("2026-02-02T10:00:00+01:00", "bbb", "FAILURE"));
+        mapper.writeValue(logDir.resolve("2026-02-01T10:00:00+01:00.json").toFile(),
+            logInfo("2026-02-01T10:00:00+01:00", "aaa", "SUCCESS"));
+        Files.writeString(logDir.resolve("2026-02-01T10:00:00+01:00" + TestResults.TEST_RESULTS_SUFFIX), "[]");
+
+        BuildIndex index = BuildIndex.forDir(logDir);
+
+        List<BuildIndex.Entry> entries = index.range(0, 10);
+        assertEquals(2, entries.size());
+        assertEquals("aaa", entries.get(0).commitSha);
+        assertEquals("SUCCESS", entries.get(0).buildStatus);
+        assertEquals("main", entries.get(0).branch);
+        assertEquals(1234, entries.get(0).durationMillis);
+        assertEquals("2026-02-01T10:00:00+01:00.json", entries.get(0).logFile);
+        assertEquals("bbb", entries.get(1).commitSha);
+        assertTrue(Files.exists(logDir.resolve(BuildIndex.INDEX_FILE)));
+    }
+
+    /**
+     * Positive test: Added builds are appended to the index file and kept in order.
+     * Test case: A build is added, then the index file is loaded into a new directory's index.
+     * Expected: The build is in memory and in the index file, which loads back the same entry.
+     */
+    @Test
+    void add_appendsToIndexFile() throws IOException {
+        Path logDir = tempDir.resolve("add");
+        BuildIndex index = BuildIndex.forDir(logDir);
+        long version = index.getVersion();
+
+        index.add(logInfo("2026-03-01T12:00:00Z", "ccc", "SUCCESS"), "2026-03-01T12:00:00Z.json");
+
+        assertEquals(1, index.size());
+        assertTrue(index.getVersion() > version);
+
+        Path copyDir = tempDir.resolve("copy");
+        Files.createDirectories(copyDir);
+        Files.copy(logDir.resolve(BuildIndex.INDEX_FILE), copyDir.resolve(BuildIndex.INDEX_FILE));
+        List<BuildIndex.Entry> entries = BuildIndex.forDir(copyDir).range(0, 10);
+        assertEquals(1, entries.size());
+        assertEquals("ccc", entries.get(0).commitSha);
+        assertEquals("2026-03-01T12:00:00Z.json", entries.get(0).logFile);
+    }
+
+    /**
+     * Positive test: Pages of builds are listed newest first and continue after the cursor.
+     * Test case: Five builds are added, then listed two per page, and filtered by status and SHA prefix.
+     * Expected: The pages hold the builds 5-4, 3-2 and 1, and the filters return only the matching builds.
+     */
+    @Test
+    void page_cursorAndFilters() throws IOException {
+        BuildIndex index = BuildIndex.forDir(tempDir.resolve("page"));
+        for (int i = 1; i <= 5; i++) {
+            String timestamp = "2026-03-0" + i + "T12:00:00Z";
+            index.add(logInfo(timestamp, "sha" + i, i % 2 == 0 ? "FAILURE" : "SUCCESS"), timestamp + ".json");
+        }
+        BuildIndex.Filter all = new BuildIndex.Filter();
+
+        BuildIndex.Page first = index.page(null, all, 2);
+        BuildIndex.Page second = index.page(first.next, all, 2);
+        BuildIndex.Page third = index.page(second.next, all, 2);
+
+        assertEquals(List.of("sha5", "sha4"), first.entries.stream().map(entry -> entry.commitSha).toList());
+        assertEquals(List.of("sha3", "sha2"), second.entries.stream().map(entry -> entry.commitSha).toList());
+        assertEquals(List.of("sha1"), third.entries.stream().map(entry -> entry.commitSha).toList());
+        assertNull(third.next);
+
+        BuildIndex.Filter failed = new BuildIndex.Filter();
+        failed.status = "failure";
+        assertEquals(List.of("sha4", "sha2"), index.page(null, failed, 10).entries.stream().map(entry -> entry.commitSha).toList());
+
+        BuildIndex.Filter sha = new BuildIndex.Filter();
+        sha.shaPrefix = "SHA3";
+        BuildIndex.Page shaPage = index.page(null, sha, 10);
+        assertEquals(List.of("sha3"), shaPage.entries.stream().map(entry -> entry.commitSha).toList());
+        assertNull(shaPage.next);
+    }
+
+    /**
+     * Positive test: A page stops after the scan limit and continues from where it stopped.
+     * Test case: With a scan limit of 3, six builds of which only the oldest one failed are listed filtered by
+     * the failed status.
+     * Expected: The first page visits the three newest builds and is empty, with a cursor after them; the second
+     * page holds the failed build and has no cursor.
+     */
+    @Test
+    void page_scanLimit_returnsContinuationCursor() throws IOException {
+        System.setProperty("INDEX_PAGE_SCAN_LIMIT", "3");
+        BuildIndex index = BuildIndex.forDir(tempDir.resolve("scan"));
+        for (int i = 1; i <= 6; i++) {
+            String timestamp = "2026-03-0" + i + "T12:00:00Z";
+            index.add(logInfo(timestamp, "sha" + i, i == 1 ? "FAILURE" : "SUCCESS"), timestamp + ".json");
+        }
+        BuildIndex.Filter failed = new BuildIndex.Filter();
+        failed.status = "failure";
+
+        BuildIndex.Page first = index.page(null, failed, 10);
+        BuildIndex.Page second = index.page(first.next, failed, 10);
+
+        assertTrue(first.entries.isEmpty());
+        assertEquals("2026-03-04T12:00:00Z", first.next);
+        assertEquals(List.of("sha1"), second.entries.stream().map(entry -> entry.commitSha).toList());
+        assertNull(second.next);
+    }
+
+    /**
+     * Positive test: Builds are found by a full or abbreviated commit SHA.
+     * Test case: Commit "abcd11" is built twice and commit "abce22" once, then one build of "abcd11" is removed.
+     * Expected: "ABCD" finds the builds of "abcd11" newest first, "abc" finds both commits, "ffff" finds
+     * nothing, and the removed build is no longer found.
+     */
+    @Test
+    void findByShaPrefix_resolvesAbbreviatedShas() throws IOException {
+        BuildIndex index = BuildIndex.forDir(tempDir.resolve("sha"));
+        index.add(logInfo("2026-04-01T12:00:00Z", "abcd11", "SUCCESS"), "2026-04-01T12:00:00Z.json");
+        index.add(logInfo("2026-04-02T12:00:00Z", "abce22", "SUCCESS"), "2026-04-02T12:00:00Z.json");
+        index.add(logInfo("2026-04-03T12:00:00Z", "abcd11", "FAILURE"), "2026-04-03T12:00:00Z.json");
+
+        assertEquals(List.of("2026-04-03T12:00:00Z.json", "2026-04-01T12:00:00Z.json"),
+            index.findByShaPrefix("ABCD").stream().map(entry -> entry.logFile).toList());
+        assertEquals(List.of("abcd11", "abce22", "abcd11"),
+            index.findByShaPrefix("abc").stream().map(entry -> entry.commitSha).toList());
+        assertTrue(index.findByShaPrefix("ffff").isEmpty());
+
+        index.remove(List.of(index.find("2026-04-03T12:00:00Z.json")));
+        assertEquals(List.of("2026-04-01T12:00:00Z.json"),
+            index.findByShaPrefix("abcd11").stream().map(entry -> entry.logFile).toList());
+    }
+
+    /**
+     * Negative test: Rebuilding the index with a corrupt JSON log.
+     * Test case: A log directory has one valid and one truncated JSON log.
+     * Expected: The truncated log is skipped and the valid one is indexed.
+     */
+    @Test
+    void forDir_corruptLog_isSkipped() throws IOException {
+        Path logDir = tempDir.resolve("corrupt");
+        Files.createDirectories(logDir);
+        new ObjectMapper().writeValue(logDir.resolve("2026-02-01T10:00:00Z.json").toFile(),
+            logInfo("2026-02-01T10:00:00Z", "aaa", "SUCCESS"));
+        Files.writeString(logDir.resolve("2026-02-02T10:00:00Z.json"), "{\"timestamp\": \"2026-02-");
+
+        List<BuildIndex.Entry> entries = BuildIndex.forDir(logDir).range(0, 10);
+
+        assertEquals(1, entries.size());
+        assertEquals("aaa", entries.get(0).commitSha);
+    }
+}
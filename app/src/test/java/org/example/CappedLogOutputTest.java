@@ -0,0 +1,82 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CappedLogOutputTest {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz";
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Writes {@link #ALPHABET} in pieces of {@code pieceSize} bytes.
+     */
+    private static void writeAlphabet(CappedLogOutput out, int pieceSize) throws IOException {
+        byte[] bytes = ALPHABET.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += pieceSize) {
+            out.write(bytes, i, Math.min(pieceSize, bytes.length - i));
+        }
+    }
+
+    /**
+     * Positive test: Output that fits in the head is written unchanged.
+     * Test case: 26 bytes written to a log with a 64 byte head.
+     * Expected: The log equals the output and there is no overflow file.
+     */
+    @Test
+    void shortOutput_writtenWhole() throws IOException {
+        Path logFile = tempDir.resolve("1.build.log");
+        try (CappedLogOutput out = new CappedLogOutput(logFile, 64, 8, true)) {
+            writeAlphabet(out, 5);
+        }
+
+        assertEquals(ALPHABET, Files.readString(logFile));
+        assertFalse(Files.exists(CappedLogOutput.overflowFile(logFile)));
+    }
+
+    /**
+     * Positive test: The middle of long output is spilled into the overflow file.
+     * Test case: 26 letters written in pieces of 5 bytes to a log with a 3 byte head and a 4 byte tail.
+     * Expected: The log holds "abc", a marker naming the overflow file and "wxyz"; the overflow file holds the rest.
+     */
+    @Test
+    void longOutput_spillsMiddle() throws IOException {
+        Path logFile = tempDir.resolve("2.build.log");
+        try (CappedLogOutput out = new CappedLogOutput(logFile, 3, 4, true)) {
+            writeAlphabet(out, 5);
+            assertEquals(19, out.getOmittedBytes());
+        }
+
+        assertEquals("abc\n... [19 bytes omitted, see 2.build.overflow.log] ...\nwxyz", Files.readString(logFile));
+        try (InputStream in = LogFiles.newInputStream(CappedLogOutput.overflowFile(logFile))) {
+            assertEquals("defghijklmnopqrstuv", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Positive test: The middle of long output is dropped.
+     * Test case: 26 letters written in one piece to a log with a 3 byte head, a 4 byte tail and no spilling.
+     * Expected: The log holds "abc", a marker and "wxyz", and there is no overflow file.
+     */
+    @Test
+    void longOutput_dropsMiddle() throws IOException {
+        Path logFile = tempDir.resolve("3.test.log");
+        try (CappedLogOutput out = new CappedLogOutput(logFile, 3, 4, false)) {
+            writeAlphabet(out, 26);
+        }
+
+        assertEquals("abc\n... [19 bytes omitted] ...\nwxyz", Files.readString(logFile));
+        assertFalse(Files.exists(CappedLogOutput.overflowFile(logFile)));
+    }
+}
@@ -0,0 +1,123 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class DurationHistoryTest {
+
+    /**
+     * Positive test: A step that suddenly takes much longer than in previous runs is flagged.
+     * Test case: Ten runs where the build step takes about 1000 ms, then a run where it takes 5000 ms.
+     * Expected: The report lists the build step as a regression and refers to the latest commit.
+     */
+    @Test
+    void report_slowerStep_isRegression() throws IOException {
+        String repository = "test-owner/" + UUID.randomUUID();
+        for (int i = 0; i < 10; i++) {
+            DurationHistory.record(repository, "main", "t" + i, "sha" + i, Map.of("build", 1000L + (i % 3) * 10), null);
+        }
+        DurationHistory.record(repository, "main", "t10", "sha10", Map.of("build", 5000L), null);
+
+        DurationHistory.Report report = DurationHistory.report(repository, "main", 10);
+
+        assertEquals(11, report.runs);
+        assertEquals("sha10", report.latestRun.commitSha);
+        assertEquals("sha9", report.previousRun.commitSha);
+        assertEquals(1, report.regressions.size());
+        assertEquals(DurationHistory.STEP_PREFIX + "build", report.regressions.get(0).name);
+        assertTrue(report.regressions.get(0).zScore >= 3.0);
+
+        new RepoCleanup().deleteRepo(DurationHistory.HISTORY_DIR.resolve(repository));
+    }
+
+    /**
+     * Positive test: A series that did not exist when its report was asked for is read once it exists.
+     * Test case: The report of a branch is asked for before its series exists, then the series of another repository
+     * is copied into its place and the report is asked for again.
+     * Expected: The first report is empty, the second one has the copied run.
+     */
+    @Test
+    void report_seriesCreatedAfterEmptyReport_isRead() throws IOException {
+        String repository = "test-owner/" + UUID.randomUUID();
+        String source = "test-owner/" + UUID.randomUUID();
+        DurationHistory.record(source, "main", "t0", "sha0", Map.of("build", 1000L), null);
+
+        assertEquals(0, DurationHistory.report(repository, "main", 10).runs);
+        Path target = DurationHistory.HISTORY_DIR.resolve(repository).resolve("main");
+        Files.createDirectories(target);
+        try (Stream<Path> files = Files.list(DurationHistory.HISTORY_DIR.resolve(source).resolve("main"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+
+        DurationHistory.Report report = DurationHistory.report(repository, "main", 10);
+
+        assertEquals(1, report.runs);
+        assertEquals("sha0", report.latestRun.commitSha);
+
+        new RepoCleanup().deleteRepo(DurationHistory.HISTORY_DIR.resolve(repository));
+        new RepoCleanup().deleteRepo(DurationHistory.HISTORY_DIR.resolve(source));
+    }
+
+    /**
+     * Positive test: A test name holding a line terminator keeps its duration once the series is read from disk.
+     * Test case: A job with a test named "a\rb" and a test named "c" is recorded, then its series is copied
+     * to another repository, whose report is read from the copied files.
+     * Expected: Each test of the report has its own duration, under the name with the terminator replaced by a space.
+     */
+    @Test
+    void report_testNameWithCarriageReturn_keepsDurations() throws IOException {
+        String repository = "test-owner/" + UUID.randomUUID();
+        String source = "test-owner/" + UUID.randomUUID();
+        Path testResults = Files.createTempFile("test-results", ".json");
+        Files.writeString(testResults, "["
+                + "{\"class\":\"C\",\"name\":\"a\\rb\",\"status\":\"PASSED\",\"duration\":5,\"message\":null},"
+                + "{\"class\":\"C\",\"name\":\"c\",\"status\":\"PASSED\",\"duration\":7,\"message\":null}]");
+        DurationHistory.record(source, "main", "t0", "sha0", Map.of(), testResults);
+
+        Path target = DurationHistory.HISTORY_DIR.resolve(repository).resolve("main");
+        Files.createDirectories(target);
+        try (Stream<Path> files = Files.list(DurationHistory.HISTORY_DIR.resolve(source).resolve("main"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+
+        DurationHistory.Report report = DurationHistory.report(repository, "main", 10);
+
+        assertEquals(2, report.slowest.size());
+        assertEquals("C > c", report.slowest.get(0).name);
+        assertEquals(7, report.slowest.get(0).durationMillis);
+        assertEquals("C > a b", report.slowest.get(1).name);
+        assertEquals(5, report.slowest.get(1).durationMillis);
+
+        Files.delete(testResults);
+        new RepoCleanup().deleteRepo(DurationHistory.HISTORY_DIR.resolve(repository));
+        new RepoCleanup().deleteRepo(DurationHistory.HISTORY_DIR.resolve(source));
+    }
+
+    /**
+     * Negative test: A branch without any recorded jobs has an empty report.
+     * Test case: Report of a branch that was never recorded.
+     * Expected: No runs and no regressions.
+     */
+    @Test
+    void report_unknownBranch_isEmpty() throws IOException {
+        DurationHistory.Report report = DurationHistory.report("test-owner/" + UUID.randomUUID(), "feature/x", 10);
+
+        assertEquals(0, report.runs);
+        assertNull(report.latestRun);
+        assertTrue(report.regressions.isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class FailFastWatcherTest {
+
+    /**
+     * Positive test: Only the first failing test of a Gradle test run is reported.
+     * Test case: Gradle output with two failed tests.
+     * Expected: The callback is called once, with the first failed test.
+     */
+    @Test
+    void failedTests_firstOneReported() {
+        List<String> reported = new ArrayList<>();
+        FailFastWatcher watcher = new FailFastWatcher(reported::add);
+
+        watcher.accept("> Task :app:test");
+        watcher.accept("");
+        watcher.accept("FooTest > bar() FAILED");
+        watcher.accept("    org.opentest4j.AssertionFailedError at FooTest.java:12");
+        watcher.accept("FooTest > baz() FAILED");
+
+        assertEquals(List.of("FooTest > bar()"), reported);
+        assertEquals("FooTest > bar()", watcher.getFirstFailure());
+    }
+
+    /**
+     * Negative test: Output of a passing test run is not reported.
+     * Test case: Gradle output without failed tests.
+     * Expected: The callback is never called.
+     */
+    @Test
+    void passingTests_nothingReported() {
+        List<String> reported = new ArrayList<>();
+        FailFastWatcher watcher = new FailFastWatcher(reported::add);
+
+        watcher.accept("> Task :app:test");
+        watcher.accept("BUILD SUCCESSFUL in 6s");
+
+        assertEquals(0, reported.size());
+        assertNull(watcher.getFirstFailure());
+    }
+}
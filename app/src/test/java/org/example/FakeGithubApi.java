@@ -0,0 +1,205 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded stand-in for the commit statuses endpoint of the GitHub REST API, so that tests and benchmarks of the
+ * pipeline can run offline.
+ * <p>
+ * Set {@code GITHUB_API_URL} to {@link #url()} to send the statuses of the server here. Every request is recorded
+ * as a {@link Call}. The answers can be slowed down with {@link #setLatencyMillis(long)}, and errors can be injected
+ * with {@link #failNext(int, int)} or at random with {@link #setErrorRate(double, int)}. With
+ * {@link #setRateLimit(long, long)} the answers carry rate limit headers counting down a budget, and requests
+ * beyond it are answered 403.
+ * </p>
+ */
+public class FakeGithubApi implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * A recorded status request.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Call {
+        public String owner;
+        public String repo;
+        public String sha;
+        public String state;
+        public String target_url;
+        public String description;
+        public String context;
+        public String authorization;
+        /** The {@link System#nanoTime()} at which the request was received. */
+        public long receivedNanos;
+        /** The HTTP status the request was answered with. */
+        public int answer;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fake-github-api");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Call> calls = new ArrayList<>();
+    private final Random random = new Random(42);
+    private long latencyMillis;
+    private double errorRate;
+    private int errorCode = 502;
+    private int failuresLeft;
+    private int failureCode;
+    private long rateLimitRemaining = -1;
+    private long rateLimitResetEpochSeconds;
+
+    /**
+     * Starts the endpoint on a free port of the loopback interface.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public FakeGithubApi() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/repos/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return the base URL to set {@code GITHUB_API_URL} to
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the requests received so far, in the order they were received
+     */
+    public synchronized List<Call> calls() {
+        return new ArrayList<>(calls);
+    }
+
+    /**
+     * @param latencyMillis how long every request waits before it is answered
+     */
+    public synchronized void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param errorRate the share of requests (0 to 1) that are answered with {@code errorCode}
+     * @param errorCode the HTTP status of the injected errors
+     */
+    public synchronized void setErrorRate(double errorRate, int errorCode) {
+        this.errorRate = errorRate;
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @param count the number of next requests that fail
+     * @param code the HTTP status they are answered with
+     */
+    public synchronized void failNext(int count, int code) {
+        this.failuresLeft = count;
+        this.failureCode = code;
+    }
+
+    /**
+     * @param remaining the number of requests that are accepted before the budget is used up
+     * @param resetEpochSeconds when the budget is reported to be reset
+     */
+    public synchronized void setRateLimit(long remaining, long resetEpochSeconds) {
+        this.rateLimitRemaining = remaining;
+        this.rateLimitResetEpochSeconds = resetEpochSeconds;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long receivedNanos = System.nanoTime();
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        if (!"POST".equals(exchange.getRequestMethod()) || parts.length != 6 || !parts[4].equals("statuses")) {
+            answer(exchange, 404, -1, 0);
+            return;
+        }
+        Call call;
+        try (InputStream in = exchange.getRequestBody()) {
+            call = MAPPER.readValue(in, Call.class);
+        }
+        call.owner = parts[2];
+        call.repo = parts[3];
+        call.sha = parts[5];
+        call.authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        call.receivedNanos = receivedNanos;
+
+        long latency;
+        long remaining;
+        long reset;
+        synchronized (this) {
+            latency = latencyMillis;
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                call.answer = failureCode;
+            } else if (errorRate > 0 && random.nextDouble() < errorRate) {
+                call.answer = errorCode;
+            } else if (rateLimitRemaining == 0) {
+                call.answer = 403;
+            } else {
+                call.answer = 201;
+                if (rateLimitRemaining > 0) {
+                    rateLimitRemaining--;
+                }
+            }
+            remaining = rateLimitRemaining;
+            reset = rateLimitResetEpochSeconds;
+            calls.add(call);
+        }
+
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        answer(exchange, call.answer, remaining, reset);
+    }
+
+    /**
+     * Answers a request, with rate limit headers unless {@code remaining} is negative.
+     */
+    private static void answer(HttpExchange exchange, int code, long remaining, long resetEpochSeconds) throws IOException {
+        if (remaining >= 0) {
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", "5000");
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", Long.toString(remaining));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(resetEpochSeconds));
+        }
+        byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Stops the endpoint.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,141 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class FlightRecordingTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Path file = FlightRecording.stop();
+        if (file != null) {
+            Files.delete(file);
+        }
+        CiEvents.endJob();
+        System.clearProperty("JFR_ENDPOINT");
+    }
+
+    private static long dumpFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("ci-server-")).count();
+        }
+    }
+
+    private static List<RecordedEvent> events(Path file, String name) throws IOException {
+        return RecordingFile.readAllEvents(file).stream()
+            .filter(event -> event.getEventType().getName().equals(name))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Positive test: The events of a job are recorded with its repository and commit.
+     * Test case: A recording is started, a job clones a local repository and writes 100 bytes through a log
+     * capped to 10 + 10 bytes, and the recording is stopped.
+     * Expected: The dump holds the exit of git clone with exit code 0 and the log write with 80 omitted bytes,
+     * both carrying the repository and commit of the job.
+     */
+    @Test
+    void stop_afterJob_dumpsJobEvents() throws IOException {
+        LocalGitRepo repo = LocalGitRepo.create(tempDir.resolve("remote"), 1, 1, 100, 0, 0);
+        assertTrue(FlightRecording.start());
+
+        CiEvents.beginJob("owner/repo", repo.headSha);
+        new RepoCloner().runGitClone(repo.cloneUrl, tempDir.resolve("clone"));
+        try (CappedLogOutput out = new CappedLogOutput(tempDir.resolve("build.log"), 10, 10, false)) {
+            out.write(new byte[100]);
+        }
+        CiEvents.endJob();
+        Path file = FlightRecording.stop();
+
+        assertNotNull(file);
+        List<RecordedEvent> exits = events(file, "org.example.ProcessExit");
+        assertEquals(1, exits.size());
+        assertTrue(exits.get(0).getString("command").startsWith("git clone"));
+        assertEquals(0, exits.get(0).getInt("exitCode"));
+        assertEquals("owner/repo", exits.get(0).getString("repository"));
+        assertEquals(1, events(file, "org.example.ProcessStart").size());
+
+        List<RecordedEvent> writes = events(file, "org.example.LogWrite");
+        assertEquals(1, writes.size());
+        assertEquals(100, writes.get(0).getLong("bytes"));
+        assertEquals(80, writes.get(0).getLong("omittedBytes"));
+        assertEquals(repo.headSha, writes.get(0).getString("sha"));
+        Files.delete(file);
+    }
+
+    /**
+     * Negative test: Nothing is dumped without a recording, and a running recording is not started twice.
+     * Test case: A dump is asked for before the recording starts, and the recording is started twice.
+     * Expected: The dump returns null, and only the first start starts the recording.
+     */
+    @Test
+    void start_twice_startsOnce() throws IOException {
+        assertNull(FlightRecording.dump());
+        assertFalse(FlightRecording.isRunning());
+
+        assertTrue(FlightRecording.start());
+        assertFalse(FlightRecording.start());
+        assertTrue(FlightRecording.isRunning());
+    }
+
+    /**
+     * Positive test: A dump is sent and not kept on the server.
+     * Test case: With the endpoint enabled, a recording is started and dumped over HTTP.
+     * Expected: The whole dump is written to the response, and no dump file is left behind.
+     */
+    @Test
+    void handle_dump_deletesDumpFile() throws IOException {
+        System.setProperty("JFR_ENDPOINT", "true");
+        assertTrue(FlightRecording.start());
+        long filesBefore = dumpFiles();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Map<String, String> headers = new HashMap<>();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+        doAnswer(invocation -> headers.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(response).setHeader(anyString(), anyString());
+
+        FlightRecording.handle("dump", response);
+
+        assertTrue(body.size() > 0);
+        assertEquals(Integer.toString(body.size()), headers.get("Content-Length"));
+        assertEquals(filesBefore, dumpFiles());
+        assertTrue(FlightRecording.isRunning());
+    }
+}
@@ -1,22 +1,37 @@
 package org.example;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class GetRequestHandlerTest {
     
     private HttpServletResponse response;
@@ -87,4 +102,210 @@ public class GetRequestHandlerTest {
         assertTrue(htmlOutput.contains("<h2>Test</h2>"));
     }
 
+    /**
+     * Positive test: Ensures a build whose logs are stored in separate log files renders those logs.
+     * Test case: GET a build log referring to "temp.build.log" and "temp.test.log"
+     * Expected: The HTML escaped contents of both log files
+     */
+    @Test
+    void handle_requestBuildWithLogFiles_rendersLogFiles() throws IOException {
+        Path dir = Path.of("logs/dd2480-vt26/assignment-2");
+        Files.createDirectories(dir);
+
+        Path filePath = dir.resolve("temp.json");
+        Path buildLogPath = dir.resolve("temp.build.log");
+        Path testLogPath = dir.resolve("temp.test.log");
+        Files.writeString(buildLogPath, "> Task :app:build <done>");
+        Files.writeString(testLogPath, "> Task :app:test");
+        Files.writeString(filePath, """
+            {
+            "timestamp" : "2026-02-12T14:40:59.905714443+01:00",
+            "commitIdentifier" : "9d471bf817f2c0e4d189f76c593aa500619e0b21",
+            "buildStatus" : "SUCCESS",
+            "buildLogFile" : "temp.build.log",
+            "testStatus" : "SUCCESS",
+            "testLogFile" : "temp.test.log"
+            }
+        """);
+
+        GetRequestHandler.handle("/logs/dd2480-vt26/assignment-2/temp.json", response);
+        Files.delete(filePath);
+        Files.delete(buildLogPath);
+        Files.delete(testLogPath);
+
+        response.getWriter().flush();
+        String htmlOutput = stringWriter.toString();
+
+        assertTrue(htmlOutput.contains("&gt; Task :app:build &lt;done&gt;"));
+        assertTrue(htmlOutput.contains("&gt; Task :app:test"));
+    }
+
+    /**
+     * Positive test: The page of a build whose files were moved into a log segment renders its logs and tests.
+     * Test case: A build with a compressed build log, a test log and a test results file is appended to a segment
+     * and its loose files are deleted, then its page is requested.
+     * Expected: The page holds the escaped contents of both logs and the failed test, read from the segment.
+     */
+    @Test
+    void handle_requestSegmentedBuild_rendersLogFiles() throws IOException {
+        Path dir = emptyLogDir("segmented-page");
+
+        String id = "2026-02-12T14:40:59.905714443+01:00";
+        LogInfo info = new LogInfo();
+        info.timestamp = id;
+        info.commitIdentifier = "9d471bf817f2c0e4d189f76c593aa500619e0b21";
+        info.buildStatus = "SUCCESS";
+        info.buildLogFile = id + Utils.BUILD_LOG_SUFFIX + LogFiles.GZIP_SUFFIX;
+        info.testStatus = "FAILURE";
+        info.testLogFile = id + Utils.TEST_LOG_SUFFIX;
+        info.testResultsFile = id + TestResults.TEST_RESULTS_SUFFIX;
+        Path jsonFile = dir.resolve(id + ".json");
+        new ObjectMapper().writeValue(jsonFile.toFile(), info);
+        Path buildLog = dir.resolve(info.buildLogFile);
+        try (OutputStream out = LogFiles.newOutputStream(buildLog)) {
+            out.write("> Task :app:build <done>".getBytes(StandardCharsets.UTF_8));
+        }
+        Path testLog = dir.resolve(info.testLogFile);
+        Files.writeString(testLog, "> Task :app:test");
+        Path results = dir.resolve(info.testResultsFile);
+        Files.writeString(results, "[{\"class\":\"AppTest\",\"name\":\"fails\",\"status\":\"FAILED\",\"duration\":5}]");
+
+        moveToSegment(dir, info, List.of(buildLog, testLog, results, jsonFile));
+
+        GetRequestHandler.handle("/" + jsonFile, response);
+        new RepoCleanup().deleteRecursively(dir);
+
+        response.getWriter().flush();
+        String htmlOutput = stringWriter.toString();
+
+        assertTrue(htmlOutput.contains("&gt; Task :app:build &lt;done&gt;"), htmlOutput);
+        assertTrue(htmlOutput.contains("&gt; Task :app:test"), htmlOutput);
+        assertTrue(htmlOutput.contains("AppTest &gt; fails"), htmlOutput);
+    }
+
+    /**
+     * Positive test: The overflow log of a build in a log segment is served under the name its log refers to.
+     * Test case: A build whose build log was capped, with the output in between spilled into a compressed overflow
+     * file, is moved into a segment; the overflow log is requested by its uncompressed name.
+     * Expected: The uncompressed contents of the overflow file.
+     */
+    @Test
+    void handle_requestSegmentedOverflowLog_returnsLog() throws IOException {
+        Path dir = emptyLogDir("segmented-overflow");
+
+        String id = "2026-02-12T14:40:59.905714443+01:00";
+        LogInfo info = new LogInfo();
+        info.timestamp = id;
+        info.buildStatus = "SUCCESS";
+        info.buildLogFile = id + Utils.BUILD_LOG_SUFFIX;
+        Path jsonFile = dir.resolve(id + ".json");
+        new ObjectMapper().writeValue(jsonFile.toFile(), info);
+        Path buildLog = dir.resolve(info.buildLogFile);
+        Files.writeString(buildLog, "head\n... 6 bytes omitted, see " + id + ".build.overflow.log ...\ntail\n");
+        Path overflow = CappedLogOutput.overflowFile(buildLog);
+        try (OutputStream out = LogFiles.newOutputStream(overflow)) {
+            out.write("middle".getBytes(StandardCharsets.UTF_8));
+        }
+        moveToSegment(dir, info, List.of(buildLog, overflow, jsonFile));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+        GetRequestHandler.handle("/" + dir.resolve(id + ".build.overflow.log"), response);
+        new RepoCleanup().deleteRecursively(dir);
+
+        assertEquals("middle", body.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Positive test: A build page too large for the page cache is streamed uncompressed with its own ETag, is not
+     * rendered into memory again, and its 304 responses vary by encoding.
+     * Test case: With a page cache of 4000 bytes, a client accepting gzip requests a page of a larger build log
+     * twice, then once more with the ETag it got.
+     * Expected: Both pages are complete and sent without Content-Encoding, with the ETag of the uncompressed
+     * variant; the page is remembered as too large; the last response is 304 with Vary: Accept-Encoding.
+     */
+    @Test
+    void handle_requestLargeBuildPage_streamsPlainVariant() throws IOException {
+        Path dir = emptyLogDir("large-page");
+        System.setProperty("PAGE_CACHE_BYTES", "4000");
+        PageCache.clear();
+        try {
+            LogInfo info = new LogInfo();
+            info.timestamp = "2026-02-12T14:40:59.905714443+01:00";
+            info.buildStatus = "SUCCESS";
+            info.buildLog = "x".repeat(5000);
+            Path jsonFile = dir.resolve("large.json");
+            new ObjectMapper().writeValue(jsonFile.toFile(), info);
+            String plainETag = HttpCaching.strongETag(jsonFile, null);
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+            for (int i = 0; i < 2; i++) {
+                StringWriter body = new StringWriter();
+                Map<String, String> headers = new HashMap<>();
+                GetRequestHandler.handle("/" + jsonFile, request, recordingResponse(body, headers));
+
+                assertTrue(body.toString().contains(info.buildLog));
+                assertTrue(body.toString().contains("</html>"));
+                assertEquals(plainETag, headers.get("ETag"));
+                assertNull(headers.get("Content-Encoding"));
+                assertTrue(PageCache.isTooLarge(jsonFile, plainETag));
+            }
+            assertEquals(0, PageCache.size());
+
+            when(request.getHeader("If-None-Match")).thenReturn(plainETag);
+            Map<String, String> headers = new HashMap<>();
+            HttpServletResponse notModified = recordingResponse(new StringWriter(), headers);
+            GetRequestHandler.handle("/" + jsonFile, request, notModified);
+
+            verify(notModified).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            assertEquals("Accept-Encoding", headers.get("Vary"));
+        } finally {
+            System.clearProperty("PAGE_CACHE_BYTES");
+            PageCache.clear();
+            new RepoCleanup().deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * Mocks a response that writes its body into {@code body} and records the last value of every header.
+     */
+    private static HttpServletResponse recordingResponse(StringWriter body, Map<String, String> headers) throws IOException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(body, true));
+        doAnswer(invocation -> headers.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(response).setHeader(anyString(), anyString());
+        return response;
+    }
+
+    /**
+     * Returns an empty log directory of a repository, whose (empty) index is loaded, so it is not rebuilt from the
+     * loose files the test writes.
+     */
+    private static Path emptyLogDir(String repo) throws IOException {
+        Path dir = Path.of("logs/dd2480-vt26").resolve(repo);
+        if (Files.isDirectory(dir)) {
+            new RepoCleanup().deleteRecursively(dir);
+        }
+        Files.createDirectories(dir);
+        BuildIndex.forDir(dir);
+        return dir;
+    }
+
+    /**
+     * Moves the files of a build into a log segment and indexes it there, the way {@link Utils#saveLogToFile} does.
+     */
+    private static void moveToSegment(Path dir, LogInfo info, List<Path> files) throws IOException {
+        String segment = LogSegments.forDir(dir).append(files);
+        BuildIndex.forDir(dir).add(info, info.timestamp + ".json", segment);
+        for (Path file : files) {
+            Files.delete(file);
+        }
+    }
+
 }
@@ -0,0 +1,82 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class GithubRateLimitTest {
+
+    private static final long NOW = 1_800_000_000_000L;
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("GITHUB_BURST");
+        System.clearProperty("GITHUB_MAX_REQUESTS_PER_SECOND");
+    }
+
+    private static HttpHeaders headers(long remaining, long resetEpochMillis) {
+        return HttpHeaders.of(Map.of(
+            "X-RateLimit-Limit", List.of("5000"),
+            "X-RateLimit-Remaining", List.of(Long.toString(remaining)),
+            "X-RateLimit-Reset", List.of(Long.toString(resetEpochMillis / 1000))), (name, value) -> true);
+    }
+
+    /**
+     * Positive test: Requests are sent in a burst and then paced.
+     * Test case: With a burst of 2 and at most 1 request per second, and no known budget, 3 requests are asked for
+     * at once and one more a second later.
+     * Expected: The first two are allowed, the third has to wait a second, the fourth is allowed.
+     */
+    @Test
+    void acquire_afterBurst_pacesRequests() {
+        System.setProperty("GITHUB_BURST", "2");
+        System.setProperty("GITHUB_MAX_REQUESTS_PER_SECOND", "1");
+        GithubRateLimit rateLimit = new GithubRateLimit();
+
+        assertEquals(0, rateLimit.acquire(NOW));
+        assertEquals(0, rateLimit.acquire(NOW));
+        assertEquals(1000, rateLimit.acquire(NOW));
+        assertEquals(0, rateLimit.acquire(NOW + 1000));
+        assertEquals(3, rateLimit.snapshot(NOW).requests);
+    }
+
+    /**
+     * Positive test: A small budget is spread until its reset.
+     * Test case: GitHub reports 10 requests left for the next 100 seconds, and the burst is 1.
+     * Expected: After one request the next one waits about 11 seconds, and the budget is tight.
+     */
+    @Test
+    void acquire_smallBudget_spreadsRequests() {
+        System.setProperty("GITHUB_BURST", "1");
+        GithubRateLimit rateLimit = new GithubRateLimit();
+        rateLimit.update(201, headers(10, NOW + 100_000), NOW);
+
+        assertEquals(0, rateLimit.acquire(NOW));
+        long wait = rateLimit.acquire(NOW);
+        assertTrue(wait >= 10_000 && wait <= 12_000, "wait: " + wait);
+        assertTrue(rateLimit.isTight(NOW));
+    }
+
+    /**
+     * Negative test: The budget is used up.
+     * Test case: GitHub answers 403 with no requests left and a reset in a minute.
+     * Expected: Requests wait until the reset and are allowed again after it; the answer is counted.
+     */
+    @Test
+    void acquire_exhaustedBudget_waitsForReset() {
+        GithubRateLimit rateLimit = new GithubRateLimit();
+        rateLimit.update(403, headers(0, NOW + 60_000), NOW);
+
+        assertEquals(60_000, rateLimit.acquire(NOW));
+        assertEquals(0, rateLimit.acquire(NOW + 60_000));
+        assertFalse(rateLimit.isTight(NOW + 60_000));
+        assertEquals(1, rateLimit.snapshot(NOW).rateLimitedAnswers);
+    }
+}
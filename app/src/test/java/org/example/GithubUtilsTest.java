@@ -13,6 +13,9 @@ import java.nio.file.Path;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class GithubUtilsTest {
     @TempDir
     Path tempDir;
@@ -81,6 +84,37 @@ public class GithubUtilsTest {
         assertTrue(json.contains("\"context\": \"\""));
     }
 
+    /**
+     * Positive test: {@code buildJsonBody} escapes the characters JSON does not allow in strings.
+     * Test case: A description with the name of a parameterized test holding quotes, a backslash and a tab.
+     * Expected: The body is valid JSON and the description is read back unchanged.
+     */
+    @Test
+    void buildJsonBody_quotedTestName_isEscaped() throws IOException {
+        String description = "Test failed (fail-fast): ParserTest > parse(\"a\\b\"\t) FAILED";
+
+        String json = GithubUtils.buildJsonBody(GithubUtils.CommitState.FAILURE, null, description, "ci/test");
+
+        JsonNode body = new ObjectMapper().readTree(json);
+        assertEquals("failure", body.get("state").asText());
+        assertEquals(description, body.get("description").asText());
+        assertEquals("ci/test", body.get("context").asText());
+    }
+
+    /**
+     * Positive test: {@code truncate} shortens a long text without splitting a surrogate pair.
+     * Test case: A text whose cut would fall between the two halves of an emoji, and a short text.
+     * Expected: The long text is cut before the emoji and ends with "...", the short text is unchanged.
+     */
+    @Test
+    void truncate_surrogatePairAtCut_keepsPairWhole() {
+        String text = "abcd\uD83D\uDE00efgh";
+
+        assertEquals("abcd...", GithubUtils.truncate(text, 8));
+        assertEquals("abcd\uD83D\uDE00...", GithubUtils.truncate(text, 9));
+        assertEquals(text, GithubUtils.truncate(text, text.length()));
+    }
+
     /**
      * Positive test: {@code buildURI} builds URI for a given owner, repo, and commit SHA.
      * Test case: {@code owner = dd2480-vt26}, {@code repo = assignment-2} and {@code sha = abc123}.
@@ -0,0 +1,75 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HttpCachingTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Positive test: A client with the current ETag of a stored file gets 304 Not Modified.
+     * Test case: The request's If-None-Match holds the weak form of the file's ETag among other ETags.
+     * Expected: The response is not modified.
+     */
+    @Test
+    void immutableNotModified_matchingETag_returnsTrue() throws IOException {
+        Path file = tempDir.resolve("job.json");
+        Files.writeString(file, "{}");
+        String etag = HttpCaching.strongETag(file, null);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("If-None-Match")).thenReturn("\"other\", W/" + etag);
+
+        assertTrue(HttpCaching.immutableNotModified(request, mock(HttpServletResponse.class), file, null));
+    }
+
+    /**
+     * Negative test: A client with an outdated ETag gets the full response.
+     * Test case: The file is rewritten with a different size after its ETag was taken.
+     * Expected: The ETag changes and the response is modified.
+     */
+    @Test
+    void immutableNotModified_changedFile_returnsFalse() throws IOException {
+        Path file = tempDir.resolve("job.json");
+        Files.writeString(file, "{}");
+        String etag = HttpCaching.strongETag(file, null);
+        Files.writeString(file, "{\"timestamp\": \"2026-02-01T10:00:00Z\"}");
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("If-None-Match")).thenReturn(etag);
+
+        assertNotEquals(etag, HttpCaching.strongETag(file, null));
+        assertFalse(HttpCaching.immutableNotModified(request, mock(HttpServletResponse.class), file, null));
+    }
+
+    /**
+     * Positive test: Representations of the same file have different ETags.
+     * Test case: ETags of a compressed log sent as gzip and as plain text.
+     * Expected: The ETags differ and neither matches the other.
+     */
+    @Test
+    void strongETag_variants_differ() throws IOException {
+        Path file = tempDir.resolve("job.build.log.gz");
+        Files.writeString(file, "log");
+
+        String gzip = HttpCaching.strongETag(file, "gzip");
+        String plain = HttpCaching.strongETag(file, "plain");
+
+        assertNotEquals(gzip, plain);
+        assertFalse(HttpCaching.matches(gzip, plain));
+        assertTrue(HttpCaching.matches("*", plain));
+    }
+}
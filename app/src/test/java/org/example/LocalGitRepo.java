@@ -0,0 +1,116 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a local bare git repository that the pipeline can clone instead of a repository on GitHub, so that
+ * tests and benchmarks of the pipeline can run offline.
+ * <p>
+ * The repository has a {@code gradlew} script that stands in for Gradle: it prints a configurable number of lines
+ * and exits with a configurable code, so the build and test steps run without Gradle or network access. The size
+ * of the repository is set by the number of commits and of the files each commit adds.
+ * </p>
+ */
+public class LocalGitRepo {
+
+    public static final String BRANCH = "main";
+
+    /** The bare repository. */
+    public final Path bareDir;
+    /** The URL to clone the repository from, e.g. the {@code clone_url} of a push payload or {@code CLONE_URL}. */
+    public final String cloneUrl;
+    /** The SHA of the last commit of {@link #BRANCH}. */
+    public final String headSha;
+
+    private LocalGitRepo(Path bareDir, String headSha) {
+        this.bareDir = bareDir;
+        this.cloneUrl = bareDir.toUri().toString();
+        this.headSha = headSha;
+    }
+
+    /**
+     * Creates a repository in {@code dir}.
+     *
+     * @param dir the directory to create the repository in, which holds the bare repository and its work tree
+     * @param commits the number of commits on {@link #BRANCH}
+     * @param filesPerCommit the number of source files every commit adds
+     * @param fileBytes the size of every source file
+     * @param gradleOutputLines the number of lines the {@code gradlew} script prints
+     * @param gradleExitCode the exit code of the {@code gradlew} script
+     * @return the repository
+     * @throws IOException if git fails
+     */
+    public static LocalGitRepo create(Path dir, int commits, int filesPerCommit, int fileBytes,
+                                      int gradleOutputLines, int gradleExitCode) throws IOException {
+        Path workTree = dir.resolve("work");
+        Path bareDir = dir.resolve("repo.git");
+        Files.createDirectories(workTree);
+        git(workTree, "init", "-q", "-b", BRANCH);
+
+        Path gradlew = workTree.resolve("gradlew");
+        Files.writeString(gradlew, "#!/bin/sh\n"
+            + "i=0\n"
+            + "while [ $i -lt " + gradleOutputLines + " ]; do\n"
+            + "  echo \"> Task :app:step$i of $*\"\n"
+            + "  i=$((i+1))\n"
+            + "done\n"
+            + "exit " + gradleExitCode + "\n");
+        gradlew.toFile().setExecutable(true);
+        git(workTree, "add", "gradlew");
+
+        Random random = new Random(commits * 31L + filesPerCommit);
+        String alphabet = "abcdefghijklmnopqrstuvwxyz \n";
+        for (int commit = 0; commit < commits; commit++) {
+            Path sourceDir = workTree.resolve("src").resolve("c" + commit);
+            Files.createDirectories(sourceDir);
+            for (int file = 0; file < filesPerCommit; file++) {
+                StringBuilder content = new StringBuilder(fileBytes);
+                for (int i = 0; i < fileBytes; i++) {
+                    content.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                Files.writeString(sourceDir.resolve("File" + file + ".java"), content);
+            }
+            git(workTree, "add", "-A");
+            git(workTree, "commit", "-q", "--allow-empty", "-m", "Commit " + commit);
+        }
+
+        git(dir, "clone", "-q", "--bare", workTree.toString(), bareDir.toString());
+        String headSha = git(bareDir, "rev-parse", BRANCH).trim();
+        return new LocalGitRepo(bareDir, headSha);
+    }
+
+    /**
+     * Runs git in {@code dir} with a fixed identity and no user or system configuration.
+     *
+     * @return the output of git
+     */
+    private static String git(Path dir, String... args) throws IOException {
+        List<String> command = new ArrayList<>(List.of("git",
+            "-c", "user.name=CI Test", "-c", "user.email=ci@example.com", "-c", "commit.gpgsign=false"));
+        command.addAll(List.of(args));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true);
+        builder.environment().put("GIT_CONFIG_NOSYSTEM", "1");
+        builder.environment().put("GIT_CONFIG_GLOBAL", "/dev/null");
+        Process process = builder.start();
+        String output;
+        try (InputStream in = process.getInputStream()) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("git " + String.join(" ", args) + " failed: " + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("git interrupted", e);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,163 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogChunksTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Builds a Gradle-like log of {@code lines} lines, with a different timing on line {@code changedLine}.
+     */
+    private static byte[] log(int lines, int changedLine) {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            log.append("> Task :app:compileJava").append(i).append(" UP-TO-DATE");
+            if (i == changedLine) {
+                log.append(" took 1234ms");
+            }
+            log.append('\n');
+        }
+        return log.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(LogChunks store, Path manifest, long offset) throws IOException {
+        try (InputStream in = store.open(manifest)) {
+            in.skipNBytes(offset);
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Positive test: The chunks that two logs share are stored once.
+     * Test case: Two logs of about 300 KB that differ in one line in the middle are stored.
+     * Expected: Both logs are read back unchanged, the second log adds only a few chunks, and the dedup
+     * ratio is close to 2.
+     */
+    @Test
+    void store_similarLogs_storesSharedChunksOnce() throws IOException {
+        LogChunks store = LogChunks.forDir(tempDir.resolve("store"));
+        byte[] first = log(8000, -1);
+        byte[] second = log(8000, 4000);
+        Files.write(tempDir.resolve("1.build.log"), first);
+        Files.write(tempDir.resolve("2.build.log"), second);
+
+        Path firstManifest = store.store(tempDir.resolve("1.build.log"));
+        long afterFirst = store.newBytes();
+        Path secondManifest = store.store(tempDir.resolve("2.build.log"));
+
+        assertFalse(Files.exists(tempDir.resolve("1.build.log")));
+        assertArrayEquals(first, readAll(store, firstManifest, 0));
+        assertArrayEquals(second, readAll(store, secondManifest, 0));
+        assertTrue(store.newBytes() - afterFirst < 3 * 64 * 1024, "new bytes: " + (store.newBytes() - afterFirst));
+        assertTrue(store.ratio() > 1.5, "ratio: " + store.ratio());
+        assertTrue(store.packBytes() < first.length);
+    }
+
+    /**
+     * Positive test: A log is read from an offset.
+     * Test case: A stored log is read from an offset in the middle, and from its end.
+     * Expected: The bytes from the offset on, and nothing.
+     */
+    @Test
+    void open_skip_startsAtOffset() throws IOException {
+        LogChunks store = LogChunks.forDir(tempDir.resolve("skip"));
+        byte[] log = log(5000, -1);
+        Files.write(tempDir.resolve("3.build.log"), log);
+        Path manifest = store.store(tempDir.resolve("3.build.log"));
+
+        assertArrayEquals(Arrays.copyOfRange(log, 100_000, log.length), readAll(store, manifest, 100_000));
+        assertEquals(0, readAll(store, manifest, log.length).length);
+    }
+
+    /**
+     * Positive test: A sweep removes the chunks that only deleted logs used and keeps the others readable.
+     * Test case: Two different logs are stored and a collection begins; the manifest of the second log is deleted,
+     * a third log, which shares all chunks with the second one, is stored, and the chunks of the first log are
+     * swept as live.
+     * Expected: No chunk is removed, since the third log reused those of the second; once the third log is gone
+     * as well, the next sweep removes its chunks, the pack shrinks, and the first log is still read back.
+     */
+    @Test
+    void sweep_deletedLogs_removesTheirChunks() throws IOException {
+        LogChunks store = LogChunks.forDir(tempDir.resolve("sweep"));
+        byte[] first = log(3000, -1);
+        byte[] second = "other output\n".repeat(20000).getBytes(StandardCharsets.UTF_8);
+        Files.write(tempDir.resolve("4.build.log"), first);
+        Files.write(tempDir.resolve("5.build.log"), second);
+        Path firstManifest = store.store(tempDir.resolve("4.build.log"));
+        Path secondManifest = store.store(tempDir.resolve("5.build.log"));
+        Set<String> live = new HashSet<>();
+        LogChunks.readKeys(firstManifest, live);
+
+        store.beginCollection();
+        Files.delete(secondManifest);
+        Files.write(tempDir.resolve("6.build.log"), second);
+        Path thirdManifest = store.store(tempDir.resolve("6.build.log"));
+        assertEquals(0, store.sweep(live, bytes -> { }));
+        assertArrayEquals(second, readAll(store, thirdManifest, 0));
+
+        long packBytes = store.packBytes();
+        store.beginCollection();
+        Files.delete(thirdManifest);
+        assertTrue(store.sweep(live, bytes -> { }) > 0);
+
+        assertTrue(store.packBytes() < packBytes);
+        assertArrayEquals(first, readAll(store, firstManifest, 0));
+    }
+
+    /**
+     * Negative test: A pack that ends in a record torn by a crash, or in a record with an invalid header.
+     * Test case: A log is stored, then copies of the pack get a record whose compressed length runs past the end
+     * of the pack, and one whose compressed length is negative, and are loaded again by new stores.
+     * Expected: The bad record is dropped, the stored log is still read back unchanged, and another log is stored
+     * and read back after it.
+     */
+    @Test
+    void forDir_tornRecord_keepsStoredLogs() throws IOException {
+        Path storeDir = tempDir.resolve("crash");
+        byte[] log = log(100, -1);
+        Files.write(tempDir.resolve("4.build.log"), log);
+        Path manifest = LogChunks.forDir(storeDir).store(tempDir.resolve("4.build.log"));
+        long stored = Files.size(storeDir.resolve("chunks.pack"));
+
+        for (int compressedLength : new int[] { 1_000_000, -8 }) {
+            Path copyDir = tempDir.resolve("crash-" + compressedLength);
+            Files.createDirectories(copyDir);
+            Files.copy(storeDir.resolve("chunks.pack"), copyDir.resolve("chunks.pack"));
+            ByteBuffer record = ByteBuffer.allocate(60).put(new byte[32]).putInt(100).putInt(compressedLength);
+            record.rewind();
+            try (FileChannel channel = FileChannel.open(copyDir.resolve("chunks.pack"), StandardOpenOption.WRITE)) {
+                channel.write(record, stored);
+            }
+
+            LogChunks copy = LogChunks.forDir(copyDir);
+
+            assertEquals(stored, Files.size(copyDir.resolve("chunks.pack")));
+            assertArrayEquals(log, readAll(copy, manifest, 0));
+            byte[] other = log(100, 50);
+            Path otherLog = tempDir.resolve(compressedLength + ".build.log");
+            Files.write(otherLog, other);
+            assertArrayEquals(other, readAll(copy, copy.store(otherLog), 0));
+        }
+    }
+}
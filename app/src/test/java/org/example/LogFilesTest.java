@@ -0,0 +1,53 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogFilesTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Positive test: A compressed log reads back as the original log.
+     * Test case: A repetitive log file is compressed.
+     * Expected: The original file is replaced by a smaller .gz file with the same contents.
+     */
+    @Test
+    void compress_readsBackOriginal() throws IOException {
+        Path logFile = tempDir.resolve("job.build.log");
+        String log = "> Task :app:compileJava UP-TO-DATE\n".repeat(1000);
+        Files.writeString(logFile, log);
+
+        Path compressed = LogFiles.compress(logFile);
+
+        assertFalse(Files.exists(logFile));
+        assertEquals("job.build.log.gz", compressed.getFileName().toString());
+        assertTrue(Files.size(compressed) < log.length() / 10);
+        try (InputStream in = LogFiles.newInputStream(compressed)) {
+            assertEquals(log, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(compressed, LogFiles.find(logFile));
+    }
+
+    /**
+     * Negative test: Finding a log that was never written.
+     * Test case: Neither the log nor its compressed version exists.
+     * Expected: {@code find} returns null.
+     */
+    @Test
+    void find_missingLog_returnsNull() {
+        assertNull(LogFiles.find(tempDir.resolve("missing.test.log")));
+    }
+}
@@ -0,0 +1,184 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogFollowerTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Positive test: Several watchers following a log that is being written receive all of it.
+     * Test case: Two watchers follow a log while lines are appended, then the log is ended.
+     * Expected: Both watchers receive every line, the second one starting at its offset.
+     */
+    @Test
+    void follow_whileWriting_receivesAllOutput() throws Exception {
+        Path logFile = tempDir.resolve("job.build.log");
+        LogFollower.begin(logFile);
+        Files.writeString(logFile, "first\n");
+
+        ByteArrayOutputStream fromStart = new ByteArrayOutputStream();
+        ByteArrayOutputStream fromOffset = new ByteArrayOutputStream();
+        LogFollower follower = LogFollower.get(logFile);
+        Thread watcher1 = startWatcher(follower, 0, fromStart);
+        Thread watcher2 = startWatcher(follower, 2, fromOffset);
+
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(50);
+            Files.writeString(logFile, "line " + i + "\n", StandardOpenOption.APPEND);
+        }
+        LogFollower.end(logFile);
+
+        watcher1.join(5000);
+        watcher2.join(5000);
+
+        String expected = "first\nline 0\nline 1\nline 2\nline 3\nline 4\n";
+        assertEquals(expected, fromStart.toString(StandardCharsets.UTF_8));
+        assertEquals(expected.substring(2), fromOffset.toString(StandardCharsets.UTF_8));
+        assertNull(LogFollower.get(logFile));
+    }
+
+    /**
+     * Positive test: A watcher that arrives after the log was completed still receives the log.
+     * Test case: The log is ended before anyone follows it.
+     * Expected: The follower serves the file contents and returns.
+     */
+    @Test
+    void follow_afterEnd_servesFile() throws Exception {
+        Path logFile = tempDir.resolve("job.test.log");
+        LogFollower.begin(logFile);
+        LogFollower follower = LogFollower.get(logFile);
+        Files.writeString(logFile, "done\n");
+        LogFollower.end(logFile);
+        Thread.sleep(500);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        follower.follow(0, out);
+
+        assertEquals("done\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Positive test: A watcher that arrives after the log was completed and compressed receives the stored log.
+     * Test case: The log is ended and compressed into a .gz file before anyone follows it.
+     * Expected: The follower serves the decompressed log and returns.
+     */
+    @Test
+    void follow_afterLogWasCompressed_servesStoredLog() throws Exception {
+        Path logFile = tempDir.resolve("job.build.log");
+        LogFollower.begin(logFile);
+        LogFollower follower = LogFollower.get(logFile);
+        Files.writeString(logFile, "done\n");
+        LogFollower.end(logFile);
+        LogFiles.compress(logFile);
+        Thread.sleep(500);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        follower.follow(0, out);
+
+        assertEquals("done\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Positive test: A watcher that fell behind the shared window catches up from the stored log once the file
+     * was compressed.
+     * Test case: A watcher blocks on its first write while a log of 600 KB is read and ended, then the log is
+     * compressed and the watcher is released.
+     * Expected: The watcher receives the whole log.
+     */
+    @Test
+    void follow_slowWatcherAfterCompression_catchesUpFromStoredLog() throws Exception {
+        Path logFile = tempDir.resolve("job.test.log");
+        String log = "x".repeat(599 * 1024) + "\nend\n";
+        LogFollower.begin(logFile);
+        LogFollower follower = LogFollower.get(logFile);
+        Files.writeString(logFile, log);
+
+        CountDownLatch released = new CountDownLatch(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(bytes, offset, length);
+            }
+        };
+        Thread watcher = startWatcher(follower, 0, out);
+        Thread.sleep(500);
+        LogFollower.end(logFile);
+        Thread.sleep(500);
+        LogFiles.compress(logFile);
+        released.countDown();
+        watcher.join(5000);
+
+        String received = out.toString(StandardCharsets.UTF_8);
+        assertEquals(log.length(), received.length());
+        assertTrue(received.endsWith("x\nend\n"));
+    }
+
+    /**
+     * Negative test: A log whose watchers all left before it was completed is not held open.
+     * Test case: A watcher disconnects after its first chunk, then the log is ended.
+     * Expected: The log file was opened for the watcher, and is closed once the log is ended.
+     */
+    @Test
+    void end_afterWatchersLeft_closesFile() throws Exception {
+        Path logFile = tempDir.resolve("job.build.log");
+        LogFollower.begin(logFile);
+        LogFollower follower = LogFollower.get(logFile);
+        Files.writeString(logFile, "first\n");
+
+        Thread watcher = new Thread(() -> {
+            try {
+                follower.follow(0, new ByteArrayOutputStream() {
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) {
+                        throw new UncheckedIOException(new IOException("client disconnected"));
+                    }
+                });
+            } catch (IOException | InterruptedException | UncheckedIOException e) {
+                // The watcher leaves
+            }
+        });
+        watcher.start();
+        watcher.join(5000);
+        assertTrue(follower.isOpen());
+
+        LogFollower.end(logFile);
+        for (int i = 0; i < 50 && follower.isOpen(); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(follower.isOpen());
+    }
+
+    private static Thread startWatcher(LogFollower follower, long offset, ByteArrayOutputStream out) {
+        Thread thread = new Thread(() -> {
+            try {
+                follower.follow(offset, out);
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class LogInfoTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Positive test: The metadata of a stored job is read without its inline logs, which are copied on demand.
+     * Test case: A job with an inline build log and a test log file is stored as JSON.
+     * Expected: The metadata has every field except the inline log, and the inline log is copied as is.
+     */
+    @Test
+    void readMetadata_skipsInlineLogs() throws IOException {
+        LogInfo stored = new LogInfo();
+        stored.timestamp = "2026-02-01T10:00:00Z";
+        stored.commitIdentifier = "abc";
+        stored.buildStatus = "SUCCESS";
+        stored.buildLog = "line 1\n<line 2>\n".repeat(1000);
+        stored.testStatus = "FAILURE";
+        stored.testLogFile = "2026-02-01T10:00:00Z.test.log.gz";
+        Path file = tempDir.resolve("job.json");
+        new ObjectMapper().writeValue(file.toFile(), stored);
+
+        LogInfo metadata = LogInfo.readMetadata(file);
+        StringWriter buildLog = new StringWriter();
+
+        assertEquals("abc", metadata.commitIdentifier);
+        assertEquals("FAILURE", metadata.testStatus);
+        assertEquals(stored.testLogFile, metadata.testLogFile);
+        assertNull(metadata.buildLog);
+        assertTrue(LogInfo.copyInlineLog(file, "buildLog", buildLog));
+        assertEquals(stored.buildLog, buildLog.toString());
+    }
+
+    /**
+     * Positive test: An inline log is decoded from the file with its escapes.
+     * Test case: A job whose test log holds quotes, backslashes, control characters and non-ASCII characters, and
+     * whose build log before it is larger than the slices the log is read in, is stored as JSON.
+     * Expected: The test log is read back unchanged, and ends where its value ends.
+     */
+    @Test
+    void openInlineLog_escapedLog_isDecoded() throws IOException {
+        LogInfo stored = new LogInfo();
+        stored.timestamp = "2026-02-01T10:00:00Z";
+        stored.buildLog = "x".repeat(100_000);
+        stored.testLog = "\"quoted\" C:\\dir\ttab\u0001 caf\u00e9 \ud83d\ude00 / end\n".repeat(1000);
+        stored.testStatus = "FAILURE";
+        Path file = tempDir.resolve("job.json");
+        new ObjectMapper().writeValue(file.toFile(), stored);
+
+        StringWriter testLog = new StringWriter();
+        try (Reader reader = LogInfo.openInlineLog(file, "testLog")) {
+            reader.transferTo(testLog);
+        }
+
+        assertEquals(stored.testLog, testLog.toString());
+    }
+
+    /**
+     * Negative test: Copying an inline log that was not stored.
+     * Test case: The test log of a job has no value.
+     * Expected: Nothing is copied and false is returned.
+     */
+    @Test
+    void copyInlineLog_missingLog_returnsFalse() throws IOException {
+        LogInfo stored = new LogInfo();
+        stored.timestamp = "2026-02-01T10:00:00Z";
+        Path file = tempDir.resolve("job.json");
+        new ObjectMapper().writeValue(file.toFile(), stored);
+
+        StringWriter testLog = new StringWriter();
+
+        assertFalse(LogInfo.copyInlineLog(file, "testLog", testLog));
+        assertEquals("", testLog.toString());
+    }
+}
@@ -0,0 +1,218 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogRetentionTest {
+
+    private static final long NOW = Instant.parse("2026-06-30T12:00:00Z").toEpochMilli();
+
+    @TempDir
+    Path tempDir;
+
+    private static BuildIndex.Entry entry(int daysAgo, String branch, String status) {
+        BuildIndex.Entry entry = new BuildIndex.Entry();
+        entry.epochMillis = NOW - TimeUnit.DAYS.toMillis(daysAgo);
+        entry.timestamp = Instant.ofEpochMilli(entry.epochMillis).toString();
+        entry.logFile = entry.timestamp + ".json";
+        entry.branch = branch;
+        entry.buildStatus = status;
+        entry.testStatus = status;
+        return entry;
+    }
+
+    /**
+     * Positive test: Builds that no rule keeps are deleted.
+     * Test case: Keep the last 2 builds and failures for 30 days; six builds on main and one old build on a branch.
+     * Expected: The old successful builds on main are deleted, the recent failure and the latest build of
+     * the other branch are kept.
+     */
+    @Test
+    void plan_deletesBuildsNoRuleKeeps() {
+        List<BuildIndex.Entry> entries = new ArrayList<>();
+        entries.add(entry(100, "feature", "SUCCESS"));
+        entries.add(entry(90, "main", "SUCCESS"));
+        entries.add(entry(60, "main", "FAILURE"));
+        entries.add(entry(20, "main", "FAILURE"));
+        entries.add(entry(10, "main", "SUCCESS"));
+        entries.add(entry(2, "main", "SUCCESS"));
+        entries.add(entry(1, "main", "SUCCESS"));
+        LogRetention.Rules rules = new LogRetention.Rules();
+        rules.keepBuilds = 2;
+        rules.keepFailureDays = 30;
+
+        LogRetention.Plan plan = LogRetention.plan(entries, rules, NOW);
+
+        assertEquals(List.of(entries.get(1), entries.get(2), entries.get(4)), plan.delete);
+        assertTrue(plan.archive.isEmpty());
+    }
+
+    /**
+     * Negative test: Without a rule that limits the number or age of builds, nothing is deleted.
+     * Test case: Only failures are kept longer.
+     * Expected: No build is deleted.
+     */
+    @Test
+    void plan_noLimit_deletesNothing() {
+        LogRetention.Rules rules = new LogRetention.Rules();
+        rules.keepFailureDays = 1;
+
+        LogRetention.Plan plan = LogRetention.plan(List.of(entry(100, "main", "SUCCESS"), entry(1, "main", "SUCCESS")), rules, NOW);
+
+        assertTrue(plan.delete.isEmpty());
+    }
+
+    /**
+     * Positive test: Old builds are moved into a monthly archive and are still served from it.
+     * Test case: A build from 40 days ago with a compressed build log, archived after 30 days.
+     * Expected: Its files are moved into the archive of its month, the index records the archive, and
+     * the build log is read back from the archive.
+     */
+    @Test
+    void apply_archivesOldBuilds() throws IOException {
+        Path logDir = tempDir.resolve("logs").resolve("owner").resolve("repo");
+        Files.createDirectories(logDir);
+        String timestamp = "2026-05-21T10:00:00Z";
+        Path buildLog = logDir.resolve(timestamp + Utils.BUILD_LOG_SUFFIX);
+        Files.writeString(buildLog, "BUILD SUCCESSFUL\n");
+        LogFiles.compress(buildLog);
+        LogInfo info = new LogInfo();
+        info.timestamp = timestamp;
+        info.commitIdentifier = "abc";
+        info.buildStatus = "SUCCESS";
+        info.buildLogFile = timestamp + Utils.BUILD_LOG_SUFFIX + LogFiles.GZIP_SUFFIX;
+        info.testStatus = "SUCCESS";
+        Files.writeString(logDir.resolve(timestamp + ".json"), "{\"timestamp\": \"" + timestamp + "\"}");
+        BuildIndex index = BuildIndex.forDir(logDir);
+        index.add(info, timestamp + ".json");
+        LogRetention.Rules rules = new LogRetention.Rules();
+        rules.archiveAfterDays = 30;
+
+        LogRetention.apply(logDir, rules, NOW);
+
+        String archive = LogRetention.ARCHIVE_PREFIX + "2026-05" + LogRetention.ARCHIVE_SUFFIX;
+        assertTrue(Files.isRegularFile(logDir.resolve(archive)));
+        assertFalse(Files.exists(logDir.resolve(timestamp + ".json")));
+        assertNull(LogFiles.find(buildLog));
+        assertEquals(archive, index.find(timestamp + ".json").archive);
+
+        StringBuilder log = new StringBuilder();
+        assertTrue(LogRetention.withArchivedFile(buildLog, file -> {
+            try (InputStream in = LogFiles.newInputStream(LogFiles.find(file))) {
+                log.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }));
+        assertEquals("BUILD SUCCESSFUL\n", log.toString());
+    }
+
+    private static void saveBuild(Path logDir, String timestamp, String buildLog) throws IOException {
+        Files.writeString(logDir.resolve(timestamp + Utils.BUILD_LOG_SUFFIX), buildLog);
+        LogInfo info = new LogInfo();
+        info.timestamp = timestamp;
+        info.buildStatus = "SUCCESS";
+        info.buildLogFile = timestamp + Utils.BUILD_LOG_SUFFIX;
+        info.testStatus = "SUCCESS";
+        Files.writeString(logDir.resolve(timestamp + ".json"), "{\"timestamp\": \"" + timestamp + "\"}");
+        BuildIndex.forDir(logDir).add(info, timestamp + ".json");
+    }
+
+    private static String readArchived(Path file) throws IOException {
+        StringBuilder content = new StringBuilder();
+        assertTrue(LogRetention.withArchivedFile(file, archived -> {
+            try (InputStream in = LogFiles.newInputStream(LogFiles.find(archived))) {
+                content.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }));
+        return content.toString();
+    }
+
+    /**
+     * Positive test: A later run appends to the archive of a month instead of replacing it.
+     * Test case: A build from 40 days ago is archived, then a build from 39 days ago of the same month.
+     * Expected: Both builds are in the same archive and both build logs are read back from it.
+     */
+    @Test
+    void apply_archiveOfMonthExists_appendsBuilds() throws IOException {
+        Path logDir = tempDir.resolve("logs").resolve("owner").resolve("repo");
+        Files.createDirectories(logDir);
+        LogRetention.Rules rules = new LogRetention.Rules();
+        rules.archiveAfterDays = 30;
+        saveBuild(logDir, "2026-05-21T10:00:00Z", "first\n");
+        LogRetention.apply(logDir, rules, NOW);
+
+        saveBuild(logDir, "2026-05-22T10:00:00Z", "second\n");
+        LogRetention.apply(logDir, rules, NOW);
+
+        String archive = LogRetention.ARCHIVE_PREFIX + "2026-05" + LogRetention.ARCHIVE_SUFFIX;
+        BuildIndex index = BuildIndex.forDir(logDir);
+        assertEquals(archive, index.find("2026-05-21T10:00:00Z.json").archive);
+        assertEquals(archive, index.find("2026-05-22T10:00:00Z.json").archive);
+        assertEquals("first\n", readArchived(logDir.resolve("2026-05-21T10:00:00Z" + Utils.BUILD_LOG_SUFFIX)));
+        assertEquals("second\n", readArchived(logDir.resolve("2026-05-22T10:00:00Z" + Utils.BUILD_LOG_SUFFIX)));
+    }
+
+    /**
+     * Positive test: Deleting a build from an archive rewrites the archive without it and keeps the others.
+     * Test case: Two builds of the same month are archived, then only the last build is kept.
+     * Expected: The older build is gone from the index, the newer one is still read from the archive, and no copy
+     * of the archive is left behind.
+     */
+    @Test
+    void apply_deleteArchivedBuild_rewritesArchive() throws IOException {
+        Path logDir = tempDir.resolve("logs").resolve("owner").resolve("repo");
+        Files.createDirectories(logDir);
+        LogRetention.Rules rules = new LogRetention.Rules();
+        rules.archiveAfterDays = 30;
+        saveBuild(logDir, "2026-05-21T10:00:00Z", "first\n");
+        saveBuild(logDir, "2026-05-22T10:00:00Z", "second\n");
+        LogRetention.apply(logDir, rules, NOW);
+
+        rules.keepBuilds = 1;
+        LogRetention.Plan plan = LogRetention.apply(logDir, rules, NOW);
+
+        String archive = LogRetention.ARCHIVE_PREFIX + "2026-05" + LogRetention.ARCHIVE_SUFFIX;
+        assertEquals(1, plan.delete.size());
+        assertNull(BuildIndex.forDir(logDir).find("2026-05-21T10:00:00Z.json"));
+        assertEquals("second\n", readArchived(logDir.resolve("2026-05-22T10:00:00Z" + Utils.BUILD_LOG_SUFFIX)));
+        try (FileSystem zip = FileSystems.newFileSystem(logDir.resolve(archive))) {
+            assertFalse(Files.exists(zip.getPath("2026-05-21T10:00:00Z.json")));
+        }
+        try (Stream<Path> files = Files.list(logDir)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".rewrite")));
+        }
+    }
+
+    /**
+     * Negative test: Looking up a file in a directory without an index does not create one.
+     * Test case: A build log is looked up in an existing owner directory that holds no builds.
+     * Expected: The file is not found, and no index file is written to the directory.
+     */
+    @Test
+    void withArchivedFile_directoryWithoutIndex_createsNoIndex() throws IOException {
+        Path ownerDir = tempDir.resolve("logs").resolve("owner");
+        Files.createDirectories(ownerDir);
+
+        assertFalse(LogRetention.withArchivedFile(ownerDir.resolve("2026-05-21T10:00:00Z" + Utils.BUILD_LOG_SUFFIX), file -> {
+            throw new AssertionError("unexpected archived file " + file);
+        }));
+        assertFalse(Files.exists(ownerDir.resolve(BuildIndex.INDEX_FILE)));
+    }
+}
@@ -0,0 +1,145 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class LogSearchIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Saves a build with a compressed test log, the way {@link Utils#saveLogToFile} does.
+     */
+    private static String saveBuild(Path logDir, int day, String testLog) throws IOException {
+        String timestamp = String.format("2026-03-%02dT12:00:00Z", day);
+        Path testLogFile = logDir.resolve(timestamp + Utils.TEST_LOG_SUFFIX);
+        Files.writeString(testLogFile, testLog);
+        LogFiles.compress(testLogFile);
+        LogInfo info = new LogInfo();
+        info.timestamp = timestamp;
+        info.commitIdentifier = "sha" + day;
+        info.buildStatus = "SUCCESS";
+        info.testStatus = "FAILURE";
+        info.testLogFile = testLogFile.getFileName() + LogFiles.GZIP_SUFFIX;
+        new ObjectMapper().writeValue(logDir.resolve(timestamp + ".json").toFile(), info);
+        BuildIndex.forDir(logDir).add(info, timestamp + ".json");
+        return timestamp + ".json";
+    }
+
+    /**
+     * Positive test: Builds whose logs contain every token of the query are found, newest first, with their lines.
+     * Test case: Three builds, two of which log the same exception on different lines.
+     * Expected: The two builds are found with the matching line as snippet.
+     */
+    @Test
+    void search_findsMatchingBuildsWithSnippets() throws IOException {
+        Path logDir = tempDir.resolve("search");
+        Files.createDirectories(logDir);
+        List<String> builds = new ArrayList<>();
+        builds.add(saveBuild(logDir, 1, "> Task :app:test\nAppTest > connects() FAILED\n    java.net.ConnectException: Connection refused\n"));
+        builds.add(saveBuild(logDir, 2, "> Task :app:test\nBUILD SUCCESSFUL\n"));
+        builds.add(saveBuild(logDir, 3, "> Task :app:test\n\nAppTest > connects() FAILED\n    java.net.ConnectException: Connection refused\n"));
+        LogSearchIndex index = LogSearchIndex.forDir(logDir);
+        index.index(builds);
+
+        List<LogSearchIndex.Hit> hits = index.search("connection REFUSED", 10);
+
+        assertEquals(2, hits.size());
+        assertEquals("sha3", hits.get(0).commitSha);
+        assertEquals("sha1", hits.get(1).commitSha);
+        assertEquals(1, hits.get(0).snippets.size());
+        assertEquals("test", hits.get(0).snippets.get(0).step);
+        assertEquals(4, hits.get(0).snippets.get(0).line);
+        assertTrue(hits.get(0).snippets.get(0).text.contains("ConnectException"));
+    }
+
+    /**
+     * Positive test: Full levels of segments are merged and the merged segment is still searchable.
+     * Test case: Ten builds are indexed one at a time.
+     * Expected: The ten level 0 segments are merged into one segment and all builds are found.
+     */
+    @Test
+    void index_fullLevel_isMerged() throws IOException {
+        Path logDir = tempDir.resolve("merge");
+        Files.createDirectories(logDir);
+        LogSearchIndex index = LogSearchIndex.forDir(logDir);
+        for (int day = 1; day <= 10; day++) {
+            index.index(List.of(saveBuild(logDir, day, "test t" + day + " timed out\n")));
+        }
+
+        try (Stream<Path> segments = Files.list(logDir.resolve(LogSearchIndex.SEARCH_DIR))) {
+            assertEquals(1, segments.count());
+        }
+        assertEquals(10, index.search("timed out", 20).size());
+        assertEquals("sha7", index.search("t7", 20).get(0).commitSha);
+    }
+
+    /**
+     * Positive test: The inline log of a build stored before logs were written to files is indexed.
+     * Test case: A build whose JSON log holds its test log inline, with escaped quotes and line breaks.
+     * Expected: The build is found, with the decoded line as snippet.
+     */
+    @Test
+    void search_inlineLog_findsDecodedLine() throws IOException {
+        Path logDir = tempDir.resolve("inline");
+        Files.createDirectories(logDir);
+        LogInfo info = new LogInfo();
+        info.timestamp = "2026-03-01T12:00:00Z";
+        info.commitIdentifier = "sha1";
+        info.buildStatus = "SUCCESS";
+        info.testStatus = "FAILURE";
+        info.testLog = "> Task :app:test\n\tassert \"ok\" failed\n";
+        new ObjectMapper().writeValue(logDir.resolve(info.timestamp + ".json").toFile(), info);
+        BuildIndex.forDir(logDir).add(info, info.timestamp + ".json");
+        LogSearchIndex index = LogSearchIndex.forDir(logDir);
+        index.index(List.of(info.timestamp + ".json"));
+
+        List<LogSearchIndex.Hit> hits = index.search("ok failed", 10);
+
+        assertEquals(1, hits.size());
+        assertEquals(2, hits.get(0).snippets.get(0).line);
+        assertEquals("\tassert \"ok\" failed", hits.get(0).snippets.get(0).text);
+    }
+
+    /**
+     * Negative test: Searching a repository that has no log directory.
+     * Test case: The index of a directory that does not exist is searched.
+     * Expected: No builds are found, and the directory is not created.
+     */
+    @Test
+    void search_missingDirectory_findsNothing() throws IOException {
+        Path logDir = tempDir.resolve("missing");
+
+        assertTrue(LogSearchIndex.forDir(logDir).search("build failed", 10).isEmpty());
+        assertFalse(Files.exists(logDir));
+    }
+
+    /**
+     * Negative test: Searching for a token that no log contains.
+     * Test case: One build is indexed and the query has one known and one unknown token.
+     * Expected: No builds are found.
+     */
+    @Test
+    void search_unknownToken_findsNothing() throws IOException {
+        Path logDir = tempDir.resolve("unknown");
+        Files.createDirectories(logDir);
+        LogSearchIndex index = LogSearchIndex.forDir(logDir);
+        index.index(List.of(saveBuild(logDir, 1, "BUILD SUCCESSFUL\n")));
+
+        assertTrue(index.search("build OutOfMemoryError", 10).isEmpty());
+    }
+}
@@ -0,0 +1,190 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class LogSegmentsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("LOG_SEGMENT_BYTES");
+    }
+
+    /**
+     * Writes the JSON log and the compressed build log of a build, and returns them.
+     */
+    private static List<Path> writeBuild(Path logDir, String id, String sha) throws IOException {
+        Files.createDirectories(logDir);
+        LogInfo info = new LogInfo();
+        info.timestamp = id;
+        info.commitIdentifier = sha;
+        info.buildStatus = "SUCCESS";
+        info.testStatus = "NON_EXISTENT";
+        info.buildLogFile = id + Utils.BUILD_LOG_SUFFIX + LogFiles.GZIP_SUFFIX;
+        Path jsonFile = logDir.resolve(id + ".json");
+        new ObjectMapper().writeValue(jsonFile.toFile(), info);
+        Path logFile = logDir.resolve(info.buildLogFile);
+        try (OutputStream out = LogFiles.newOutputStream(logFile)) {
+            out.write(("> Task :build of " + sha + "\n").repeat(100).getBytes(StandardCharsets.UTF_8));
+        }
+        return List.of(logFile, jsonFile);
+    }
+
+    /**
+     * Positive test: Appended builds are records of a valid zip file.
+     * Test case: Two builds are appended to the segment store of a directory.
+     * Expected: Both go into the same segment, which a zip reader opens; the JSON log is compressed and
+     * the already compressed log is stored as it is.
+     */
+    @Test
+    void append_buildsAreZipRecords() throws IOException {
+        Path logDir = tempDir.resolve("append");
+        List<Path> first = writeBuild(logDir, "2026-07-01T10:00:00Z", "aaa");
+        List<Path> second = writeBuild(logDir, "2026-07-02T10:00:00Z", "bbb");
+        LogSegments store = LogSegments.forDir(logDir);
+
+        String segment = store.append(first);
+        assertEquals(segment, store.append(second));
+
+        try (ZipFile zip = new ZipFile(logDir.resolve(segment).toFile())) {
+            assertEquals(4, zip.size());
+            ZipEntry json = zip.getEntry("2026-07-02T10:00:00Z.json");
+            assertEquals(ZipEntry.DEFLATED, json.getMethod());
+            assertArrayEquals(Files.readAllBytes(second.get(1)), zip.getInputStream(json).readAllBytes());
+            ZipEntry log = zip.getEntry("2026-07-01T10:00:00Z" + Utils.BUILD_LOG_SUFFIX + LogFiles.GZIP_SUFFIX);
+            assertEquals(ZipEntry.STORED, log.getMethod());
+            assertArrayEquals(Files.readAllBytes(first.get(0)), zip.getInputStream(log).readAllBytes());
+        }
+    }
+
+    /**
+     * Positive test: Segments are read while their store is busy appending.
+     * Test case: A build is appended, then a segment is opened and read on another thread while the store's lock
+     * is held, as it is while an append compresses logs.
+     * Expected: The build is read without waiting for the lock, and the append left no spool file behind.
+     */
+    @Test
+    void open_whileAppending_readsSegment() throws Exception {
+        Path logDir = tempDir.resolve("open");
+        List<Path> build = writeBuild(logDir, "2026-07-01T10:00:00Z", "aaa");
+        LogSegments store = LogSegments.forDir(logDir);
+        String segment = store.append(build);
+
+        byte[][] read = new byte[1][];
+        synchronized (store) {
+            Thread reader = new Thread(() -> {
+                try (FileSystem zip = store.open(segment)) {
+                    read[0] = Files.readAllBytes(zip.getPath("2026-07-01T10:00:00Z.json"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            reader.start();
+            reader.join(10_000);
+        }
+
+        assertArrayEquals(Files.readAllBytes(build.get(1)), read[0]);
+        try (Stream<Path> files = Files.list(logDir)) {
+            assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    /**
+     * Positive test: A full segment is sealed.
+     * Test case: With a segment size of 1 byte, two builds are appended.
+     * Expected: Each build is appended to its own segment.
+     */
+    @Test
+    void append_fullSegment_startsNewSegment() throws IOException {
+        System.setProperty("LOG_SEGMENT_BYTES", "1");
+        Path logDir = tempDir.resolve("full");
+        LogSegments store = LogSegments.forDir(logDir);
+
+        String first = store.append(writeBuild(logDir, "2026-07-01T10:00:00Z", "aaa"));
+        String second = store.append(writeBuild(logDir, "2026-07-02T10:00:00Z", "bbb"));
+
+        assertNotEquals(first, second);
+        assertTrue(LogSegments.isSegment(logDir.resolve(second)));
+    }
+
+    /**
+     * Negative test: A segment whose append was interrupted.
+     * Test case: A segment holding one build loses its central directory and ends in a partial record, as after a crash,
+     * then opened by a new store that appends a third build.
+     * Expected: The cut-off record is dropped and the segment holds the first and the third build.
+     */
+    @Test
+    void forDir_interruptedAppend_isRecovered() throws IOException {
+        Path logDir = tempDir.resolve("crash");
+        String segment = LogSegments.forDir(logDir).append(writeBuild(logDir, "2026-07-01T10:00:00Z", "aaa"));
+        Path copyDir = tempDir.resolve("crash-copy");
+        Files.createDirectories(copyDir);
+        Path copy = copyDir.resolve(segment);
+        Files.copy(logDir.resolve(segment), copy);
+        long complete;
+        try (ZipFile zip = new ZipFile(copy.toFile())) {
+            complete = Files.size(copy) - 22 - zip.stream().mapToLong(entry -> 46 + entry.getName().length()).sum();
+        }
+        try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+            channel.truncate(complete);
+            channel.write(ByteBuffer.wrap(new byte[] { 0x50, 0x4b, 0x03, 0x04, 20, 0 }), complete);
+        }
+
+        LogSegments.forDir(copyDir).append(writeBuild(copyDir, "2026-07-03T10:00:00Z", "ccc"));
+
+        try (ZipFile zip = new ZipFile(copy.toFile())) {
+            assertEquals(4, zip.size());
+            assertNotNull(zip.getEntry("2026-07-01T10:00:00Z.json"));
+            assertNotNull(zip.getEntry("2026-07-03T10:00:00Z.json"));
+        }
+    }
+
+    /**
+     * Positive test: Loose builds are migrated into segments.
+     * Test case: A repository directory under a logs root holds one build as loose files.
+     * Expected: The loose files are removed, the index records the segment and the build is read from it.
+     */
+    @Test
+    void migrate_looseBuilds_movedIntoSegment() throws IOException {
+        Path logDir = tempDir.resolve("logs").resolve("owner").resolve("repo");
+        List<Path> files = writeBuild(logDir, "2026-07-01T10:00:00Z", "aaa");
+
+        assertEquals(1, LogSegments.migrate(tempDir.resolve("logs")));
+
+        files.forEach(file -> assertFalse(Files.exists(file)));
+        BuildIndex.Entry entry = BuildIndex.forDir(logDir).find("2026-07-01T10:00:00Z.json");
+        assertTrue(LogSegments.isSegment(logDir.resolve(entry.archive)));
+        StringBuilder sha = new StringBuilder();
+        assertTrue(LogRetention.withArchivedFile(files.get(1),
+            file -> sha.append(LogInfo.readMetadata(file).commitIdentifier)));
+        assertEquals("aaa", sha.toString());
+    }
+}
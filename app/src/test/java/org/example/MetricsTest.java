@@ -0,0 +1,117 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        Metrics.reset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.reset();
+        System.clearProperty("METRICS_DISK_SCAN_SECONDS");
+    }
+
+    private String scrape() {
+        StringWriter text = new StringWriter();
+        try (PrintWriter out = new PrintWriter(text)) {
+            Metrics.write(out, tempDir.resolve("repos"));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Positive test: Stage durations are served as a cumulative histogram.
+     * Test case: A build of 3 ms and one of 2 minutes are recorded for a repository.
+     * Expected: The 0.005 s bucket counts one build, the 120 s and +Inf buckets count both, and the sum is the total
+     * duration in seconds.
+     */
+    @Test
+    void write_recordedStages_servesHistogram() {
+        Metrics.record("build", "owner/repo", Metrics.SUCCESS, TimeUnit.MILLISECONDS.toNanos(3));
+        Metrics.record("build", "owner/repo", Metrics.SUCCESS, TimeUnit.MINUTES.toNanos(2));
+
+        String labels = "stage=\"build\",repository=\"owner/repo\",outcome=\"success\"";
+        String text = scrape();
+        assertTrue(text.contains("# TYPE ci_stage_duration_seconds histogram\n"), text);
+        assertTrue(text.contains("ci_stage_duration_seconds_bucket{" + labels + ",le=\"0.005\"} 1\n"), text);
+        assertTrue(text.contains("ci_stage_duration_seconds_bucket{" + labels + ",le=\"60\"} 1\n"), text);
+        assertTrue(text.contains("ci_stage_duration_seconds_bucket{" + labels + ",le=\"120\"} 2\n"), text);
+        assertTrue(text.contains("ci_stage_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"), text);
+        assertTrue(text.contains("ci_stage_duration_seconds_sum{" + labels + "} 120.003\n"), text);
+        assertTrue(text.contains("ci_stage_duration_seconds_count{" + labels + "} 2\n"), text);
+    }
+
+    /**
+     * Positive test: Requests are counted in the queue depth until a thread starts running them.
+     * Test case: A request is dispatched to the thread pool and holds its thread until it is released.
+     * Expected: The queue depth is 0 once the request started, also while it is still running.
+     */
+    @Test
+    void dispatch_startedRequest_leavesQueue() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        Metrics.requestQueued();
+        assertTrue(scrape().contains("\nci_queue_depth 1\n"));
+        Metrics.requestStarted();
+
+        assertTrue(new CountingThreadPool().dispatch(() -> {
+            started.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(scrape().contains("\nci_queue_depth 0\n"));
+        released.countDown();
+    }
+
+    /**
+     * Positive test: The gauges follow the jobs and the workspace, without opening the status outbox.
+     * Test case: Two jobs start and one of them finishes, while the workspace holds a file of 1000 bytes.
+     * Expected: One job is active, the workspace uses 1000 bytes, and the outbox depth is only served if the outbox
+     * was already opened, whose directory is not created by the scrape.
+     */
+    @Test
+    void write_jobsAndWorkspace_servesGauges() throws IOException {
+        Path clone = tempDir.resolve("repos").resolve("owner").resolve("repo");
+        Files.createDirectories(clone);
+        Files.write(clone.resolve("build.gradle"), new byte[1000]);
+
+        Metrics.jobStarted();
+        Metrics.jobStarted();
+        Metrics.jobFinished();
+        boolean outboxOpen = StatusOutbox.sharedIfOpen() != null;
+        boolean outboxExists = Files.exists(StatusOutbox.OUTBOX_DIR);
+
+        String text = scrape();
+        assertTrue(text.contains("\nci_jobs_active 1\n"), text);
+        assertEquals(outboxOpen, text.contains("\nci_status_outbox_depth "));
+        assertEquals(outboxExists, Files.exists(StatusOutbox.OUTBOX_DIR));
+        assertTrue(text.contains("\nci_workspace_bytes 1000\n"), text);
+        assertEquals(1, text.lines().filter(line -> line.startsWith("jvm_memory_used_bytes{area=\"heap\"}")).count());
+    }
+}
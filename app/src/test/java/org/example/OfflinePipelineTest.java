@@ -0,0 +1,80 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs the steps of a CI job against a {@link LocalGitRepo} and a {@link FakeGithubApi}, without network access.
+ */
+class OfflinePipelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FakeGithubApi github;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        github = new FakeGithubApi();
+        System.setProperty("GITHUB_API_URL", github.url());
+    }
+
+    @AfterEach
+    void tearDown() {
+        github.close();
+        System.clearProperty("GITHUB_API_URL");
+    }
+
+    private static StatusOutbox.Status status(String sha, GithubUtils.CommitState state) {
+        StatusOutbox.Status status = new StatusOutbox.Status();
+        status.owner = "owner";
+        status.repo = "repo";
+        status.sha = sha;
+        status.state = state;
+        status.context = "continuous integration";
+        return status;
+    }
+
+    /**
+     * Positive test: A job runs end to end offline.
+     * Test case: A generated repository of 3 commits is cloned and checked out, built with its stand-in Gradle
+     * script, and PENDING and SUCCESS are posted for its last commit.
+     * Expected: The build succeeds with the output of the script in its log, and the fake API receives both statuses
+     * for the right commit, in order.
+     */
+    @Test
+    void job_localRepoAndFakeApi_runsOffline() throws Exception {
+        LocalGitRepo repo = LocalGitRepo.create(tempDir.resolve("remote"), 3, 5, 1024, 20, 0);
+        Path repoDir = tempDir.resolve("repos").resolve("owner").resolve("repo");
+        Files.createDirectories(repoDir.getParent());
+        StatusOutbox outbox = StatusOutbox.forDir(tempDir.resolve("outbox"));
+
+        new RepoCloner().runGitClone(repo.cloneUrl, repoDir);
+        new BranchCheckout().checkoutBranch(repoDir, LocalGitRepo.BRANCH);
+        outbox.post("token", status(repo.headSha, GithubUtils.CommitState.PENDING));
+        CmdResult build = Utils.execGradleCommandInRepo(repoDir, tempDir.resolve("build.log"), "build");
+        outbox.post("token", status(repo.headSha, GithubUtils.CommitState.SUCCESS));
+
+        assertEquals(CmdResult.Type.SUCCESS, build.status);
+        assertTrue(Files.readString(build.logFile).contains("> Task :app:step19 of build"));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (outbox.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        List<String> calls = github.calls().stream()
+            .map(call -> call.sha + " " + call.state + " " + call.authorization)
+            .collect(Collectors.toList());
+        assertEquals(List.of(repo.headSha + " pending Bearer token", repo.headSha + " success Bearer token"), calls);
+    }
+}
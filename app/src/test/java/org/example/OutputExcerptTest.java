@@ -0,0 +1,46 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class OutputExcerptTest {
+
+    /**
+     * Positive test: Output that fits in the head is kept unchanged.
+     * Test case: 5 bytes written to an excerpt with a 16 byte head.
+     * Expected: The excerpt equals the written text.
+     */
+    @Test
+    void shortOutput_keptWhole() {
+        OutputExcerpt excerpt = new OutputExcerpt(16, 8);
+        byte[] bytes = "hello".getBytes(StandardCharsets.UTF_8);
+        excerpt.append(bytes, 0, bytes.length);
+
+        assertEquals("hello", excerpt.toString());
+        assertEquals(5, excerpt.getTotalBytes());
+    }
+
+    /**
+     * Positive test: Output larger than head and tail only keeps its start and end.
+     * Test case: 26 letters written in small pieces to an excerpt with a 3 byte head and 4 byte tail.
+     * Expected: The excerpt holds "abc", an omission marker and "wxyz".
+     */
+    @Test
+    void longOutput_keepsHeadAndTail() {
+        OutputExcerpt excerpt = new OutputExcerpt(3, 4);
+        byte[] bytes = "abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += 5) {
+            excerpt.append(bytes, i, Math.min(5, bytes.length - i));
+        }
+
+        String text = excerpt.toString();
+        assertTrue(text.startsWith("abc"));
+        assertTrue(text.contains("[19 bytes omitted]"));
+        assertTrue(text.endsWith("wxyz"));
+        assertEquals(26, excerpt.getTotalBytes());
+    }
+}
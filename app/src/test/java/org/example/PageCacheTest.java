@@ -0,0 +1,98 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PageCacheTest {
+
+    private final Path dir = Path.of("logs", "owner", "repo");
+
+    @BeforeEach
+    void setUp() {
+        PageCache.clear();
+        System.setProperty("PAGE_CACHE_GZIP", "false");
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("PAGE_CACHE_BYTES");
+        System.clearProperty("PAGE_CACHE_GZIP");
+        PageCache.clear();
+    }
+
+    /**
+     * Positive test: A cached page is found with the same stamp only.
+     * Test case: A page is cached, then looked up with its stamp and with a newer stamp.
+     * Expected: One hit and one miss.
+     */
+    @Test
+    void get_sameStamp_hits() {
+        Path file = dir.resolve("a.json");
+        PageCache.put(file, "\"1\"", "<p>a</p>");
+
+        assertNotNull(PageCache.get(file, "\"1\""));
+        assertNull(PageCache.get(file, "\"2\""));
+        assertEquals(1, PageCache.hits());
+        assertEquals(1, PageCache.misses());
+    }
+
+    /**
+     * Positive test: The least recently used page is evicted when the budget is exceeded.
+     * Test case: With a budget of 8000 bytes, eight pages of 1000 bytes fill the cache, the first one is
+     * read again and a ninth page is cached.
+     * Expected: The least recently used page is evicted and the weight stays within the budget.
+     */
+    @Test
+    void put_overBudget_evictsLeastRecentlyUsed() {
+        System.setProperty("PAGE_CACHE_BYTES", "8000");
+        String html = "x".repeat(500);
+        for (int i = 0; i < 8; i++) {
+            PageCache.put(dir.resolve(i + ".json"), "s", html);
+        }
+        PageCache.get(dir.resolve("0.json"), "s");
+
+        PageCache.put(dir.resolve("8.json"), "s", html);
+
+        assertEquals(1, PageCache.evictions());
+        assertEquals(8000, PageCache.weight());
+        assertNotNull(PageCache.get(dir.resolve("0.json"), "s"));
+        assertNull(PageCache.get(dir.resolve("1.json"), "s"));
+    }
+
+    /**
+     * Negative test: Pages larger than an eighth of the budget are not cached.
+     * Test case: A 2000 byte page with a budget of 8000 bytes.
+     * Expected: The page is returned but not cached.
+     */
+    @Test
+    void put_largePage_isNotCached() {
+        System.setProperty("PAGE_CACHE_BYTES", "8000");
+
+        assertNotNull(PageCache.put(dir.resolve("big.json"), "s", "x".repeat(1000)));
+
+        assertEquals(0, PageCache.size());
+    }
+
+    /**
+     * Positive test: New logs in a directory invalidate its pages only.
+     * Test case: Pages of two directories are cached, then one directory is invalidated.
+     * Expected: Only the page of the other directory is left.
+     */
+    @Test
+    void invalidate_removesPagesOfDirectory() {
+        PageCache.put(dir.resolve("a.json"), "s", "<p>a</p>");
+        PageCache.put(Path.of("logs", "owner", "other").resolve("b.json"), "s", "<p>b</p>");
+
+        PageCache.invalidate(dir);
+
+        assertEquals(1, PageCache.size());
+        assertNull(PageCache.get(dir.resolve("a.json"), "s"));
+    }
+}
@@ -0,0 +1,181 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StatusOutboxTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FakeGithubApi github;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        github = new FakeGithubApi();
+        System.setProperty("GITHUB_API_URL", github.url());
+        System.setProperty("STATUS_RETRY_BASE_MILLIS", "10");
+        System.setProperty("STATUS_RETRY_MAX_MILLIS", "50");
+    }
+
+    @AfterEach
+    void tearDown() {
+        github.close();
+        System.clearProperty("GITHUB_API_URL");
+        System.clearProperty("STATUS_RETRY_BASE_MILLIS");
+        System.clearProperty("STATUS_RETRY_MAX_MILLIS");
+        System.clearProperty("STATUS_MAX_ATTEMPTS");
+    }
+
+    private static StatusOutbox.Status status(String sha, GithubUtils.CommitState state) {
+        StatusOutbox.Status status = new StatusOutbox.Status();
+        status.owner = "owner";
+        status.repo = "repo";
+        status.sha = sha;
+        status.state = state;
+        status.description = state.toString();
+        status.context = "continuous integration";
+        return status;
+    }
+
+    /**
+     * @return the state and the answer of every request the endpoint received
+     */
+    private List<String> received() {
+        return github.calls().stream().map(call -> call.state + " " + call.answer).collect(Collectors.toList());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "condition not met in time");
+    }
+
+    private static long statusFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Positive test: Statuses are retried until GitHub accepts them, in order.
+     * Test case: PENDING and SUCCESS are posted for a commit while the endpoint fails the first two requests.
+     * Expected: PENDING is sent until it is accepted and SUCCESS only after it; the outbox is empty afterwards.
+     */
+    @Test
+    void post_failingEndpoint_retriesInOrder() throws Exception {
+        github.failNext(2, 500);
+        Path dir = tempDir.resolve("retry");
+        StatusOutbox outbox = StatusOutbox.forDir(dir);
+
+        outbox.post("token", status("aaa", GithubUtils.CommitState.PENDING));
+        outbox.post("token", status("aaa", GithubUtils.CommitState.SUCCESS));
+
+        await(() -> received().size() == 4 && outbox.size() == 0);
+        assertEquals(List.of("pending 500", "pending 500", "pending 201", "success 201"), received());
+        assertEquals(0, statusFiles(dir));
+    }
+
+    /**
+     * Negative test: A status GitHub rejects for good is not retried.
+     * Test case: The endpoint answers 422 to the first request.
+     * Expected: The status is sent once and dropped from the outbox.
+     */
+    @Test
+    void post_rejectedStatus_isDropped() throws Exception {
+        github.failNext(1, 422);
+        Path dir = tempDir.resolve("rejected");
+        StatusOutbox outbox = StatusOutbox.forDir(dir);
+
+        outbox.post("token", status("bbb", GithubUtils.CommitState.FAILURE));
+
+        await(() -> outbox.size() == 0);
+        assertEquals(List.of("failure 422"), received());
+        assertEquals(0, statusFiles(dir));
+    }
+
+    /**
+     * Positive test: A status refused because the rate limit is used up is retried.
+     * Test case: The endpoint answers 403 with no remaining budget until the reset a second later, then a new
+     * budget starts.
+     * Expected: The status is sent again after the reset and delivered.
+     */
+    @Test
+    void post_rateLimitedStatus_isRetried() throws Exception {
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        github.setRateLimit(0, nowSeconds + 1);
+        Path dir = tempDir.resolve("rate-limited");
+        StatusOutbox outbox = StatusOutbox.forDir(dir);
+
+        outbox.post("token", status("fff", GithubUtils.CommitState.PENDING));
+        await(() -> received().size() == 1);
+        github.setRateLimit(5000, nowSeconds);
+
+        await(() -> outbox.size() == 0);
+        assertEquals(List.of("pending 403", "pending 201"), received());
+    }
+
+    /**
+     * Negative test: A status forbidden for another reason than the rate limit is not retried.
+     * Test case: The endpoint answers 403 without Retry-After or rate limit headers, then accepts.
+     * Expected: The status is sent once and dropped, and the next status of the commit is delivered.
+     */
+    @Test
+    void post_forbiddenStatus_isDropped() throws Exception {
+        github.failNext(1, 403);
+        Path dir = tempDir.resolve("forbidden");
+        StatusOutbox outbox = StatusOutbox.forDir(dir);
+
+        outbox.post("token", status("eee", GithubUtils.CommitState.PENDING));
+        outbox.post("token", status("eee", GithubUtils.CommitState.SUCCESS));
+
+        await(() -> received().size() == 2 && outbox.size() == 0);
+        assertEquals(List.of("pending 403", "success 201"), received());
+    }
+
+    /**
+     * Positive test: Statuses left in the outbox survive a restart.
+     * Test case: A status cannot be delivered with one attempt and stays in the outbox; its files are copied to
+     * another directory, whose outbox is loaded as after a restart and given a token by a new status.
+     * Expected: The new outbox finds the copied status and delivers it before the new one.
+     */
+    @Test
+    void forDir_leftoverStatus_isDelivered() throws Exception {
+        System.setProperty("STATUS_MAX_ATTEMPTS", "1000");
+        System.setProperty("STATUS_RETRY_BASE_MILLIS", "60000");
+        System.setProperty("STATUS_RETRY_MAX_MILLIS", "60000");
+        github.failNext(1, 500);
+        Path dir = tempDir.resolve("crash");
+        StatusOutbox.forDir(dir).post("token", status("ccc", GithubUtils.CommitState.PENDING));
+        await(() -> received().size() == 1);
+        Path copyDir = tempDir.resolve("crash-copy");
+        Files.createDirectories(copyDir);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, copyDir.resolve(file.getFileName()));
+            }
+        }
+
+        StatusOutbox copy = StatusOutbox.forDir(copyDir);
+        assertEquals(1, copy.size());
+        copy.post("token", status("ddd", GithubUtils.CommitState.PENDING));
+
+        await(() -> copy.size() == 0);
+        assertEquals(List.of("pending 500", "pending 201", "pending 201"), received());
+    }
+}
@@ -0,0 +1,77 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TestResultsTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Positive test: Test cases of all reports in a subproject's test-results directory are collected.
+     * Test case: One report with a passed, a failed and a skipped test case.
+     * Expected: The summary counts and the stored records match the report.
+     */
+    @Test
+    void collect_reportInSubproject_recordsAllTestCases() throws IOException {
+        Path reportDir = tempDir.resolve("repo/app/build/test-results/test");
+        Files.createDirectories(reportDir);
+        Files.writeString(reportDir.resolve("TEST-org.example.FooTest.xml"), """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <testsuite name="org.example.FooTest" tests="3" skipped="1" failures="1" errors="0">
+              <properties/>
+              <testcase name="passes()" classname="org.example.FooTest" time="0.012"/>
+              <testcase name="fails()" classname="org.example.FooTest" time="1.5">
+                <failure message="expected: &lt;1&gt; but was: &lt;2&gt;" type="AssertionFailedError">stack trace</failure>
+              </testcase>
+              <testcase name="skipped()" classname="org.example.FooTest" time="0.0">
+                <skipped/>
+              </testcase>
+              <system-out><![CDATA[output]]></system-out>
+            </testsuite>
+            """);
+
+        Path outFile = tempDir.resolve("logs/job.tests.json");
+        TestResults.Summary summary = TestResults.collect(tempDir.resolve("repo"), outFile);
+
+        assertEquals(3, summary.total);
+        assertEquals(1, summary.failed);
+        assertEquals(1, summary.skipped);
+
+        List<TestCaseResult> results = new ArrayList<>();
+        TestResults.read(outFile, results::add);
+        assertEquals(3, results.size());
+        assertEquals("passes()", results.get(0).name);
+        assertEquals(12, results.get(0).durationMillis);
+        assertEquals(TestCaseResult.Status.FAILED, results.get(1).status);
+        assertEquals("expected: <1> but was: <2>", results.get(1).message);
+        assertEquals(1500, results.get(1).durationMillis);
+        assertEquals(TestCaseResult.Status.SKIPPED, results.get(2).status);
+    }
+
+    /**
+     * Negative test: A repository without test reports has no results.
+     * Test case: An empty repository directory.
+     * Expected: {@code collect} returns null and writes nothing.
+     */
+    @Test
+    void collect_noReports_returnsNull() throws IOException {
+        Path repoDir = tempDir.resolve("repo");
+        Files.createDirectories(repoDir);
+        Path outFile = tempDir.resolve("job.tests.json");
+
+        assertNull(TestResults.collect(repoDir, outFile));
+        assertFalse(Files.exists(outFile));
+    }
+}
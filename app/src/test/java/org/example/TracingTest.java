@@ -0,0 +1,155 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TracingTest {
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteTraces();
+        Tracing.reset();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        System.clearProperty("TRACE_FILE_BYTES");
+        System.clearProperty("TRACE_MAX_FILES");
+        System.clearProperty("TRACING");
+        deleteTraces();
+        Tracing.reset();
+    }
+
+    private static void deleteTraces() throws IOException {
+        if (Files.isDirectory(Tracing.TRACES_DIR)) {
+            new RepoCleanup().deleteRecursively(Tracing.TRACES_DIR);
+        }
+    }
+
+    private static long traceFiles() throws IOException {
+        if (!Files.isDirectory(Tracing.TRACES_DIR)) {
+            return 0;
+        }
+        try (Stream<?> files = Files.list(Tracing.TRACES_DIR)) {
+            return files.count();
+        }
+    }
+
+    private static String runJob() {
+        try (Tracing.Span job = Tracing.startTrace("job", Tracing.epochNanos(System.nanoTime()))) {
+            job.attribute("repository", "owner/repo");
+            try (Tracing.Span stage = Tracing.start("clone")) {
+                Tracing.start("exec").attribute("process.exit_code", 128).fail("exit code 128").end();
+                stage.fail("git clone failed");
+            }
+            return job.traceId();
+        }
+    }
+
+    /**
+     * Positive test: The spans of a job are written as one trace and read back with their nesting.
+     * Test case: A job span holds a clone span, which holds a failed exec span.
+     * Expected: The trace file holds one line, and the trace is read back as the three spans in start order,
+     * each the child of the one before, with their attributes and errors.
+     */
+    @Test
+    void find_endedTrace_returnsNestedSpans() throws IOException {
+        String traceId = runJob();
+
+        assertTrue(Tracing.isTraceId(traceId));
+        assertNull(Tracing.current());
+        assertEquals(1, traceFiles());
+        try (Stream<Path> files = Files.list(Tracing.TRACES_DIR)) {
+            Path file = files.findFirst().orElseThrow();
+            assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+        }
+
+        List<Tracing.RecordedSpan> spans = Tracing.find(traceId);
+        assertEquals(3, spans.size());
+        assertEquals("job", spans.get(0).name);
+        assertNull(spans.get(0).parentSpanId);
+        assertEquals("owner/repo", spans.get(0).attributes.get("repository"));
+        assertEquals("clone", spans.get(1).name);
+        assertEquals(spans.get(0).spanId, spans.get(1).parentSpanId);
+        assertEquals("git clone failed", spans.get(1).error);
+        assertEquals("exec", spans.get(2).name);
+        assertEquals(spans.get(1).spanId, spans.get(2).parentSpanId);
+        assertEquals(128L, spans.get(2).attributes.get("process.exit_code"));
+        assertTrue(spans.get(2).endEpochNanos >= spans.get(2).startEpochNanos);
+    }
+
+    /**
+     * Positive test: Full trace files are rotated and only the newest ones are kept.
+     * Test case: With files of at most 1 byte and at most 2 files, 5 jobs are traced.
+     * Expected: 2 trace files are left, which hold the last job but not the first one.
+     */
+    @Test
+    void write_fullFiles_keepsNewestFiles() throws IOException {
+        System.setProperty("TRACE_FILE_BYTES", "1");
+        System.setProperty("TRACE_MAX_FILES", "2");
+        List<String> traceIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            traceIds.add(runJob());
+        }
+
+        assertEquals(2, traceFiles());
+        assertEquals(3, Tracing.find(traceIds.get(4)).size());
+        assertTrue(Tracing.find(traceIds.get(0)).isEmpty());
+    }
+
+    /**
+     * Negative test: The exec span of a process that cannot be started is ended.
+     * Test case: Within a job span, a command that does not exist is run.
+     * Expected: The run fails, the job span is current again, and the exec span is written with an error.
+     */
+    @Test
+    void execTraced_missingCommand_endsSpan() throws IOException {
+        Tracing.Span job = Tracing.startTrace("job", Tracing.epochNanos(System.nanoTime()));
+        ProcessBuilder builder = new ProcessBuilder("/nonexistent/command");
+
+        assertThrows(IOException.class, () -> Utils.execTraced(builder, null, Utils::printLines));
+        assertSame(job, Tracing.current());
+        job.end();
+
+        List<Tracing.RecordedSpan> spans = Tracing.find(job.traceId());
+        assertEquals(2, spans.size());
+        assertEquals("exec", spans.get(1).name);
+        assertNotNull(spans.get(1).error);
+    }
+
+    /**
+     * Negative test: Spans outside of a trace, and all spans with tracing disabled, are not written.
+     * Test case: A span is started with no current span, and a job is traced with TRACING=false.
+     * Expected: The span has no trace ID, and no trace file is written.
+     */
+    @Test
+    void write_orphanOrDisabled_writesNothing() throws IOException {
+        Tracing.Span orphan = Tracing.start("exec");
+        assertNull(orphan.traceId());
+        orphan.end();
+
+        System.setProperty("TRACING", "false");
+        String traceId = runJob();
+
+        assertEquals(0, traceFiles());
+        assertTrue(Tracing.find(traceId).isEmpty());
+        assertFalse(Files.exists(Tracing.TRACES_DIR.resolve("traces-000001.jsonl")));
+    }
+}
@@ -0,0 +1,58 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Creates {@link HttpServletResponse}s for benchmarks that discard what is written to them.
+ * <p>
+ * Only {@code getWriter()} and {@code getOutputStream()} do anything; every other method is ignored and returns
+ * its default value, so the cost of the response does not show up in the measurements.
+ * </p>
+ */
+public class DiscardingResponse {
+
+    /**
+     * @return a response that counts and drops its output
+     */
+    public static HttpServletResponse create() {
+        PrintWriter writer = new PrintWriter(Writer.nullWriter());
+        ServletOutputStream out = new ServletOutputStream() {
+            private final OutputStream target = OutputStream.nullOutputStream();
+
+            @Override
+            public void write(int b) throws IOException {
+                target.write(b);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                target.write(buffer, offset, length);
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(DiscardingResponse.class.getClassLoader(),
+            new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getWriter":
+                        return writer;
+                    case "getOutputStream":
+                        return out;
+                    case "containsHeader":
+                    case "isCommitted":
+                        return false;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,79 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Utils#saveLogToFile} for build logs of different sizes: compressing (or chunking) the log,
+ * writing the JSON log, appending to the log segment and updating the build index.
+ * <p>
+ * The log file is written again before every invocation, outside of the measurement.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogSaveBenchmark {
+
+    @Param({ "16384", "1048576", "16777216" })
+    public int logBytes;
+
+    private Path logDir;
+    private byte[] log;
+    private int builds;
+    private LogInfo info;
+    private CmdResult buildResult;
+
+    @Setup(Level.Trial)
+    public void createLog() throws IOException {
+        logDir = Files.createTempDirectory("jmh-logs").resolve("owner").resolve("repo");
+        Files.createDirectories(logDir);
+        StringBuilder text = new StringBuilder(logBytes + 128);
+        for (int line = 0; text.length() < logBytes; line++) {
+            text.append("> Task :app:compileJava").append(line % 97).append(" UP-TO-DATE in ").append(line * 7 % 1000).append("ms\n");
+        }
+        log = text.substring(0, logBytes).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Setup(Level.Invocation)
+    public void writeLog() throws IOException {
+        String timestamp = String.format("2026-07-01T10:00:00.%09dZ", builds++);
+        Path logFile = logDir.resolve(timestamp + Utils.BUILD_LOG_SUFFIX);
+        Files.write(logFile, log);
+        info = new LogInfo();
+        info.timestamp = timestamp;
+        info.commitIdentifier = "3f2a9c1d5e7b9a0c2e4f6a8b0c1d3e5f7a9b1c2d";
+        info.branch = "main";
+        buildResult = new CmdResult(CmdResult.Type.SUCCESS, "", logFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLogs() throws IOException {
+        new RepoCleanup().deleteRecursively(logDir.getParent().getParent());
+    }
+
+    @Benchmark
+    public Path saveLogToFile() throws IOException {
+        return Utils.saveLogToFile(logDir, info, buildResult, new CmdResult(CmdResult.Type.NON_EXISTENT));
+    }
+}
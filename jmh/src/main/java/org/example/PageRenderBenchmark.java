@@ -0,0 +1,99 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link GetRequestHandler#handle} rendering the listing of a repository with {@code builds} builds
+ * and the detail page of one build, with and without the {@link PageCache}.
+ * <p>
+ * The builds are saved under {@code logs/jmh/} in the working directory, where the server looks for them, and
+ * deleted after the trial.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageRenderBenchmark {
+
+    private static final int LOG_LINES = 2000;
+
+    @Param({ "100", "1000" })
+    public int builds;
+
+    @Param({ "0", "33554432" })
+    public String pageCacheBytes;
+
+    private Path logDir;
+    private String listingTarget;
+    private String detailTarget;
+    private final HttpServletResponse response = DiscardingResponse.create();
+
+    @Setup(Level.Trial)
+    public void saveBuilds() throws IOException {
+        System.setProperty("PAGE_CACHE_BYTES", pageCacheBytes);
+        logDir = Utils.LOGS_DIR.resolve("jmh").resolve("repo-" + builds + "-" + pageCacheBytes);
+        if (Files.exists(logDir)) {
+            new RepoCleanup().deleteRecursively(logDir);
+        }
+        Files.createDirectories(logDir);
+
+        StringBuilder log = new StringBuilder();
+        for (int line = 0; line < LOG_LINES; line++) {
+            log.append("> Task :app:test <Test").append(line).append("> PASSED in ").append(line % 50).append("ms\n");
+        }
+        String lastBuild = null;
+        for (int build = 0; build < builds; build++) {
+            LogInfo info = new LogInfo();
+            info.timestamp = String.format("2026-07-01T10:00:00.%09dZ", build);
+            info.commitIdentifier = String.format("%040x", build);
+            info.branch = build % 5 == 0 ? "feature" : "main";
+            Path buildLog = logDir.resolve(info.timestamp + Utils.BUILD_LOG_SUFFIX);
+            Files.writeString(buildLog, log, StandardCharsets.UTF_8);
+            CmdResult buildResult = new CmdResult(build % 7 == 0 ? CmdResult.Type.FAILURE : CmdResult.Type.SUCCESS, "", buildLog);
+            lastBuild = Utils.saveLogToFile(logDir, info, buildResult, new CmdResult(CmdResult.Type.NON_EXISTENT))
+                .getFileName().toString();
+        }
+        listingTarget = "/" + logDir;
+        detailTarget = "/" + logDir.resolve(lastBuild);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBuilds() throws IOException {
+        new RepoCleanup().deleteRecursively(logDir);
+        PageCache.clear();
+        System.clearProperty("PAGE_CACHE_BYTES");
+    }
+
+    @Benchmark
+    public void renderListing() throws IOException {
+        GetRequestHandler.handle(listingTarget, response);
+    }
+
+    @Benchmark
+    public void renderBuildPage() throws IOException {
+        GetRequestHandler.handle(detailTarget, response);
+    }
+}
@@ -0,0 +1,77 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.example.payload.PushPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmarks the handling of a webhook before the job starts: reading the push payload and building the
+ * JSON body of a commit status.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    /** A push payload as GitHub sends it, with the many fields the server ignores. */
+    private static final String PAYLOAD = """
+        {
+            "ref": "refs/heads/main",
+            "before": "0000000000000000000000000000000000000000",
+            "after": "3f2a9c1d5e7b9a0c2e4f6a8b0c1d3e5f7a9b1c2d",
+            "created": false,
+            "deleted": false,
+            "forced": false,
+            "compare": "https://github.com/dd2480-vt26/assignment-2/compare/0000000...3f2a9c1",
+            "commits": [
+                {
+                    "id": "3f2a9c1d5e7b9a0c2e4f6a8b0c1d3e5f7a9b1c2d",
+                    "message": "Fix the build",
+                    "timestamp": "2026-02-12T18:03:57+01:00",
+                    "author": { "name": "Dev", "email": "dev@example.com", "username": "dev" },
+                    "added": [], "removed": [], "modified": ["app/src/main/java/org/example/Main.java"]
+                }
+            ],
+            "repository": {
+                "id": 123456789,
+                "name": "assignment-2",
+                "full_name": "dd2480-vt26/assignment-2",
+                "private": false,
+                "owner": { "name": "dd2480-vt26", "login": "dd2480-vt26", "id": 987654321 },
+                "html_url": "https://github.com/dd2480-vt26/assignment-2",
+                "clone_url": "https://github.com/dd2480-vt26/assignment-2.git",
+                "default_branch": "main"
+            },
+            "pusher": { "name": "dev", "email": "dev@example.com" },
+            "sender": { "login": "dev", "id": 1 }
+        }
+        """;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Benchmark
+    public PushPayload readPushPayload() throws Exception {
+        return mapper.readValue(PAYLOAD, PushPayload.class);
+    }
+
+    @Benchmark
+    public String buildStatusJsonBody() {
+        return GithubUtils.buildJsonBody(GithubUtils.CommitState.SUCCESS,
+            "http://localhost:8019/logs/dd2480-vt26/assignment-2/commit/3f2a9c1d5e7b9a0c2e4f6a8b0c1d3e5f7a9b1c2d",
+            "All tests passed", "continuous integration");
+    }
+}
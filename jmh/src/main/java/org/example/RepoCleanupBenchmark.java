@@ -0,0 +1,74 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link RepoCleanup#deleteRecursively} on synthetic checkouts: {@code files} small files spread over
+ * directories of {@value #FILES_PER_DIR} files, nested {@value #DEPTH} levels deep like a source tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepoCleanupBenchmark {
+
+    private static final int FILES_PER_DIR = 20;
+    private static final int DEPTH = 4;
+    private static final byte[] CONTENT = new byte[512];
+
+    @Param({ "100", "10000" })
+    public int files;
+
+    private Path root;
+    private Path tree;
+    private int trees;
+
+    @Setup(Level.Trial)
+    public void createRoot() throws IOException {
+        root = Files.createTempDirectory("jmh-cleanup");
+    }
+
+    @Setup(Level.Invocation)
+    public void createTree() throws IOException {
+        tree = root.resolve("repo" + trees++);
+        for (int file = 0; file < files; file++) {
+            int dirIndex = file / FILES_PER_DIR;
+            Path dir = tree;
+            for (int level = 0; level < DEPTH; level++) {
+                dir = dir.resolve("d" + (dirIndex % 8));
+                dirIndex /= 8;
+            }
+            Files.createDirectories(dir);
+            Files.write(dir.resolve("File" + file + ".java"), CONTENT);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRoot() throws IOException {
+        new RepoCleanup().deleteRecursively(root);
+    }
+
+    @Benchmark
+    public void deleteRecursively() throws IOException {
+        new RepoCleanup().deleteRecursively(tree);
+    }
+}